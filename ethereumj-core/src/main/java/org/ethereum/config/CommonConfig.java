@@ -28,6 +28,7 @@ import org.ethereum.listener.CompositeEthereumListener;
 import org.ethereum.listener.EthereumListener;
 import org.ethereum.net.eth.handler.Eth63;
 import org.ethereum.sync.FastSyncManager;
+import org.ethereum.util.ByteUtil;
 import org.ethereum.validator.*;
 import org.ethereum.vm.DataWord;
 import org.ethereum.vm.program.ProgramPrecompile;
@@ -50,6 +51,7 @@ import static java.util.Arrays.asList;
 public class CommonConfig {
     private static final Logger logger = LoggerFactory.getLogger("general");
     private Set<DbSource> dbSources = new HashSet<>();
+    private volatile StateSnapshot stateSnapshot;
 
     private static CommonConfig defaultInstance;
 
@@ -83,12 +85,27 @@ public class CommonConfig {
 
     @Bean
     public Repository defaultRepository() {
-        return new RepositoryRoot(stateSource(), null);
+        return new RepositoryRoot(stateSource(), null, stateSnapshot());
     }
 
     @Bean @Scope("prototype")
     public Repository repository(byte[] stateRoot) {
-        return new RepositoryRoot(stateSource(), stateRoot);
+        return new RepositoryRoot(stateSource(), stateRoot, stateSnapshot());
+    }
+
+    /**
+     * Flat state snapshot, is null when disabled
+     */
+    private StateSnapshot stateSnapshot() {
+        if (!systemProperties().databaseSnapshotEnabled()) return null;
+        if (stateSnapshot == null) {
+            synchronized (this) {
+                if (stateSnapshot == null) {
+                    stateSnapshot = new StateSnapshot(cachedDbSource("snapshot"), systemProperties().databaseSnapshotLayers());
+                }
+            }
+        }
+        return stateSnapshot;
     }
 
     /**
@@ -107,7 +124,9 @@ public class CommonConfig {
      */
     @Bean
     public Source<byte[], byte[]> trieNodeSource() {
-        DbSource<byte[]> db = blockchainDB();
+        RocksDbDataSource families = columnFamiliesDB();
+        DbSource<byte[]> db = families != null && families.hasColumnFamily("state") ?
+                families.getColumnFamily("state") : blockchainDB();
         Source<byte[], byte[]> src = new PrefixLookupSource<>(db, NodeKeyCompositor.PREFIX_BYTES);
         return new XorDataSource<>(src, HashUtil.sha3("state".getBytes()));
     }
@@ -116,7 +135,7 @@ public class CommonConfig {
     public StateSource stateSource() {
         fastSyncCleanUp();
         StateSource stateSource = new StateSource(blockchainSource("state"),
-                systemProperties().databasePruneDepth() >= 0);
+                systemProperties().databasePruneDepth() >= 0, systemProperties().cacheFlushOffHeap());
 
         dbFlushManager().addCache(stateSource.getWriteCache());
 
@@ -142,17 +161,45 @@ public class CommonConfig {
     @Bean
     @Scope("prototype")
     public Source<byte[], byte[]> blockchainSource(String name) {
-        return new XorDataSource<>(blockchainDbCache(), HashUtil.sha3(name.getBytes()));
+        Source<byte[], byte[]> src = blockchainDbCache();
+        RocksDbDataSource families = columnFamiliesDB();
+        if (families != null) {
+            // the tag routes keys to the family of the source when the cache is flushed
+            final byte[] tag = new byte[] {families.getColumnFamilyTag(name)};
+            src = new SourceCodec.KeyOnly<>(src, new Serializer<byte[], byte[]>() {
+                public byte[] serialize(byte[] key) {
+                    return ByteUtil.merge(tag, key);
+                }
+                public byte[] deserialize(byte[] stream) {
+                    throw new RuntimeException("Shouldn't be called");
+                }
+            });
+        }
+        return new XorDataSource<>(src, HashUtil.sha3(name.getBytes()));
     }
 
     @Bean
     public AbstractCachedSource<byte[], byte[]> blockchainDbCache() {
+        RocksDbDataSource families = columnFamiliesDB();
         WriteCache.BytesKey<byte[]> ret = new WriteCache.BytesKey<>(
-                new BatchSourceWriter<>(blockchainDB()), WriteCache.CacheType.SIMPLE);
+                new BatchSourceWriter<>(families != null ? families.columnFamiliesSource() : blockchainDB()),
+                WriteCache.CacheType.SIMPLE);
         ret.setFlushSource(true);
         return ret;
     }
 
+    /**
+     * @return blockchain DB if it's opened with column families, null otherwise
+     */
+    private RocksDbDataSource columnFamiliesDB() {
+        DbSource<byte[]> db = blockchainDB();
+        if (db instanceof RocksDbDataSource && ((RocksDbDataSource) db).hasColumnFamilies()) {
+            return (RocksDbDataSource) db;
+        } else {
+            return null;
+        }
+    }
+
     public DbSource<byte[]> keyValueDataSource(String name) {
         return keyValueDataSource(name, DbSettings.DEFAULT);
     }
@@ -254,7 +301,7 @@ public class CommonConfig {
     public Source<byte[], ProgramPrecompile> precompileSource() {
 
         StateSource source = stateSource();
-        return new SourceCodec<byte[], ProgramPrecompile, byte[], byte[]>(source,
+        SourceCodec<byte[], ProgramPrecompile, byte[], byte[]> codec = new SourceCodec<byte[], ProgramPrecompile, byte[], byte[]>(source,
                 new Serializer<byte[], byte[]>() {
                     public byte[] serialize(byte[] object) {
                         DataWord ret = DataWord.of(object);
@@ -272,13 +319,19 @@ public class CommonConfig {
                         return stream == null ? null : ProgramPrecompile.deserialize(stream);
                     }
         });
+
+        // keeps analysis of hot contracts, sized by the contract code
+        ReadCache.BytesKey<ProgramPrecompile> cache = new ReadCache.BytesKey<>(codec);
+        cache.withSizeEstimators(MemSizeEstimator.ByteArrayEstimator, ProgramPrecompile.MemEstimator);
+        return cache.withMaxSize(systemProperties().programPrecompileCacheSize());
     }
 
     @Bean
     public DbSource<byte[]> blockchainDB() {
         DbSettings settings = DbSettings.newInstance()
                 .withMaxOpenFiles(systemProperties().getConfig().getInt("database.maxOpenFiles"))
-                .withMaxThreads(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+                .withMaxThreads(Math.max(1, Runtime.getRuntime().availableProcessors() / 2))
+                .withColumnFamilies(systemProperties().databaseColumnFamilies());
 
         return keyValueDataSource("blockchain", settings);
     }
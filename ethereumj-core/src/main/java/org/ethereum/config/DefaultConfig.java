@@ -19,6 +19,8 @@ package org.ethereum.config;
 
 import org.ethereum.datasource.Source;
 import org.ethereum.db.BlockStore;
+import org.ethereum.db.BloomBitsIndex;
+import org.ethereum.db.BloomBitsIndexer;
 import org.ethereum.db.IndexedBlockStore;
 import org.ethereum.db.PruneManager;
 import org.ethereum.db.TransactionStore;
@@ -83,6 +85,19 @@ public class DefaultConfig {
         return new TransactionStore(commonConfig.cachedDbSource("transactions"));
     }
 
+    @Bean
+    public BloomBitsIndexer bloomBitsIndexer() {
+        if (config.databaseBloomBitsEnabled()) {
+            BloomBitsIndex index = new BloomBitsIndex(commonConfig.cachedDbSource("bloombits"));
+            BloomBitsIndexer indexer = new BloomBitsIndexer(index, blockStore(),
+                    config.databaseBloomBitsConfirmations());
+            indexer.start(commonConfig.ethereumListener());
+            return indexer;
+        } else {
+            return new BloomBitsIndexer(null, null, 0); // dummy
+        }
+    }
+
     @Bean
     public PruneManager pruneManager() {
         if (config.databasePruneDepth() >= 0) {
@@ -29,6 +29,7 @@ import org.ethereum.core.genesis.GenesisConfig;
 import org.ethereum.core.genesis.GenesisJson;
 import org.ethereum.core.genesis.GenesisLoader;
 import org.ethereum.crypto.ECKey;
+import org.ethereum.datasource.rocksdb.ColumnFamilySettings;
 import org.ethereum.net.p2p.P2pHandler;
 import org.ethereum.net.rlpx.MessageCodec;
 import org.ethereum.net.rlpx.Node;
@@ -37,6 +38,8 @@ import org.ethereum.util.ByteUtil;
 import org.ethereum.util.Utils;
 import org.ethereum.validator.BlockCustomHashRule;
 import org.ethereum.validator.BlockHeaderValidator;
+import org.rocksdb.CompactionStyle;
+import org.rocksdb.CompressionType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.util.encoders.Hex;
@@ -483,6 +486,62 @@ public class SystemProperties {
         return config.getBoolean("database.prune.enabled") ? config.getInt("database.prune.maxDepth") : -1;
     }
 
+    @ValidateMe
+    public boolean databaseSnapshotEnabled() {
+        return config.getBoolean("database.snapshot.enabled");
+    }
+
+    @ValidateMe
+    public int databaseSnapshotLayers() {
+        return config.getInt("database.snapshot.layers");
+    }
+
+    @ValidateMe
+    public boolean databaseBloomBitsEnabled() {
+        return config.getBoolean("database.bloomBits.enabled");
+    }
+
+    @ValidateMe
+    public int databaseBloomBitsConfirmations() {
+        return config.getInt("database.bloomBits.confirmations");
+    }
+
+    @ValidateMe
+    public List<ColumnFamilySettings> databaseColumnFamilies() {
+        if (!config.getBoolean("database.columnFamilies.enabled")) return Collections.emptyList();
+
+        long cacheSize = config.getLong("database.columnFamilies.cacheSize") * 1024 * 1024;
+        Config families = config.getConfig("database.columnFamilies.families");
+
+        List<ColumnFamilySettings> ret = new ArrayList<>();
+        for (String name : new TreeSet<>(families.root().keySet())) {
+            Config family = families.getConfig(name);
+            ColumnFamilySettings settings = ColumnFamilySettings.newInstance(name)
+                    .withCompaction(CompactionStyle.valueOf(family.getString("compaction").toUpperCase()))
+                    .withCompression(compressionType(name, family.getString("compression")))
+                    .withBloomBits(family.getInt("bloomBits"))
+                    .withPrefixBloom(family.getBoolean("prefixBloom"))
+                    .withBlockCacheSize((long) (cacheSize * family.getDouble("cacheShare")));
+            if (family.hasPath("fifoMaxSize")) {
+                settings.withFifoMaxSize(family.getLong("fifoMaxSize") * 1024 * 1024);
+            }
+            ret.add(settings);
+        }
+        return ret;
+    }
+
+    private static CompressionType compressionType(String family, String compression) {
+        switch (compression) {
+            case "none": return CompressionType.NO_COMPRESSION;
+            case "snappy": return CompressionType.SNAPPY_COMPRESSION;
+            case "lz4": return CompressionType.LZ4_COMPRESSION;
+            case "zstd": return CompressionType.ZSTD_COMPRESSION;
+            default:
+                throw new RuntimeException("Unknown value for 'database.columnFamilies.families." + family +
+                        ".compression': '" + compression + "', expected none | snappy | lz4 | zstd");
+        }
+    }
+
     @ValidateMe
     public List<Node> peerActive() {
         if (!config.hasPath("peer.active")) {
@@ -551,6 +610,16 @@ public class SystemProperties {
         return config.getInt("cache.headerQueueSize") * 1024 * 1024;
     }
 
+    @ValidateMe
+    public long programPrecompileCacheSize() {
+        return config.getLong("cache.programPrecompileCacheSize") * 1024 * 1024;
+    }
+
+    @ValidateMe
+    public long blockServingCacheSize() {
+        return config.getLong("cache.blockServingCacheSize") * 1024 * 1024;
+    }
+
     @ValidateMe
     public Integer peerChannelReadTimeout() {
         return config.getInt("peer.channel.read.timeout");
@@ -666,6 +735,16 @@ public class SystemProperties {
         return vmTrace == null ? (vmTrace = config.getBoolean("vm.structured.trace")) : vmTrace;
     }
 
+    @ValidateMe
+    public boolean vmParallelExecution() {
+        return config.getBoolean("vm.parallel.enabled");
+    }
+
+    @ValidateMe
+    public int vmParallelThreads() {
+        return config.getInt("vm.parallel.threads");
+    }
+
     @ValidateMe
     public boolean vmTraceCompressed() {
         return config.getBoolean("vm.structured.compressed");
@@ -681,6 +760,11 @@ public class SystemProperties {
         return config.getInt("cache.flush.blocks");
     }
 
+    @ValidateMe
+    public boolean cacheFlushOffHeap() {
+        return config.getBoolean("cache.flush.offHeap");
+    }
+
     @ValidateMe
     public String vmTraceDir() {
         return config.getString("vm.structured.dir");
@@ -850,6 +934,28 @@ public class SystemProperties {
         return config.getInt("transaction.outdated.threshold");
     }
 
+    @ValidateMe
+    public int txPoolCapacity() {
+        return config.getInt("transaction.pool.capacity");
+    }
+
+    /**
+     * @return true if the cheapest pending transactions are evicted by new ones when the pool is full,
+     * false if new transactions are rejected
+     */
+    @ValidateMe
+    public boolean txPoolEvictCheapest() {
+        String policy = config.getString("transaction.pool.eviction");
+        switch (policy) {
+            case "gasPrice":
+                return true;
+            case "reject":
+                return false;
+            default:
+                throw new RuntimeException("Unknown value for 'transaction.pool.eviction': '" + policy + "'");
+        }
+    }
+
     public void setGenesisInfo(String genesisInfo){
         this.genesisInfo = genesisInfo;
     }
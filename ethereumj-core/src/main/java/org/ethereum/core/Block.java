@@ -28,7 +28,6 @@ import org.spongycastle.util.Arrays;
 import org.spongycastle.util.encoders.Hex;
 
 import java.math.BigInteger;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -140,23 +139,18 @@ public class Block {
     private synchronized void parseRLP() {
         if (parsed) return;
 
-        RLPList params = RLP.decode2(rlpEncoded);
-        RLPList block = (RLPList) params.get(0);
+        RLPReader block = RLPReader.readList(rlpEncoded);
 
         // Parse Header
-        RLPList header = (RLPList) block.get(0);
-        this.header = new BlockHeader(header);
+        this.header = new BlockHeader(block.readList());
 
         // Parse Transactions
-        RLPList txTransactions = (RLPList) block.get(1);
-        this.parseTxs(this.header.getTxTrieRoot(), txTransactions, false);
+        this.parseTxs(this.header.getTxTrieRoot(), block.readList(), false);
 
         // Parse Uncles
-        RLPList uncleBlocks = (RLPList) block.get(2);
-        for (RLPElement rawUncle : uncleBlocks) {
-
-            RLPList uncleHeader = (RLPList) rawUncle;
-            BlockHeader blockData = new BlockHeader(uncleHeader);
+        RLPReader uncleBlocks = block.readList();
+        while (uncleBlocks.hasNext()) {
+            BlockHeader blockData = new BlockHeader(uncleBlocks.readList());
             this.uncleList.add(blockData);
         }
         this.parsed = true;
@@ -350,21 +344,21 @@ public class Block {
         return toStringBuff.toString();
     }
 
-    private byte[] parseTxs(RLPList txTransactions, boolean validate) {
+    private byte[] parseTxs(RLPReader txTransactions, boolean validate) {
 
         Trie<byte[]> txsState = new TrieImpl();
-        for (int i = 0; i < txTransactions.size(); i++) {
-            RLPElement transactionRaw = txTransactions.get(i);
-            Transaction tx = new Transaction(transactionRaw.getRLPData());
+        for (int i = 0; txTransactions.hasNext(); i++) {
+            byte[] transactionRaw = txTransactions.readEncoded();
+            Transaction tx = new Transaction(transactionRaw);
             if (validate) tx.verify();
             this.transactionsList.add(tx);
-            txsState.put(RLP.encodeInt(i), transactionRaw.getRLPData());
+            txsState.put(RLP.encodeInt(i), transactionRaw);
         }
         return txsState.getRootHash();
     }
 
 
-    private boolean parseTxs(byte[] expectedRoot, RLPList txTransactions, boolean validate) {
+    private boolean parseTxs(byte[] expectedRoot, RLPReader txTransactions, boolean validate) {
 
         byte[] rootHash = parseTxs(txTransactions, validate);
         String calculatedRoot = Hex.toHexString(rootHash);
@@ -394,26 +388,24 @@ public class Block {
         return Arrays.areEqual(this.getHash(), block.getHash());
     }
 
-    private byte[] getTransactionsEncoded() {
+    private byte[] getUnclesEncoded() {
+        return RLPWriter.encode(this::encodeUncles);
+    }
 
-        byte[][] transactionsEncoded = new byte[transactionsList.size()][];
-        int i = 0;
+    private void encodeTransactions(RLPWriter writer) {
+        writer.startList();
         for (Transaction tx : transactionsList) {
-            transactionsEncoded[i] = tx.getEncoded();
-            ++i;
+            writer.writeEncoded(tx.getEncoded());
         }
-        return RLP.encodeList(transactionsEncoded);
+        writer.endList();
     }
 
-    private byte[] getUnclesEncoded() {
-
-        byte[][] unclesEncoded = new byte[uncleList.size()][];
-        int i = 0;
+    private void encodeUncles(RLPWriter writer) {
+        writer.startList();
         for (BlockHeader uncle : uncleList) {
-            unclesEncoded[i] = uncle.getEncoded();
-            ++i;
+            uncle.encode(writer, true);
         }
-        return RLP.encodeList(unclesEncoded);
+        writer.endList();
     }
 
     public void addUncle(BlockHeader uncle) {
@@ -424,13 +416,15 @@ public class Block {
 
     public byte[] getEncoded() {
         if (rlpEncoded == null) {
-            byte[] header = this.header.getEncoded();
-
-            List<byte[]> block = getBodyElements();
-            block.add(0, header);
-            byte[][] elements = block.toArray(new byte[block.size()][]);
-
-            this.rlpEncoded = RLP.encodeList(elements);
+            parseRLP();
+
+            this.rlpEncoded = RLPWriter.encode(w -> {
+                w.startList();
+                header.encode(w, true);
+                encodeTransactions(w);
+                encodeUncles(w);
+                w.endList();
+            });
         }
         return rlpEncoded;
     }
@@ -441,22 +435,14 @@ public class Block {
     }
 
     public byte[] getEncodedBody() {
-        List<byte[]> body = getBodyElements();
-        byte[][] elements = body.toArray(new byte[body.size()][]);
-        return RLP.encodeList(elements);
-    }
-
-    private List<byte[]> getBodyElements() {
         parseRLP();
 
-        byte[] transactions = getTransactionsEncoded();
-        byte[] uncles = getUnclesEncoded();
-
-        List<byte[]> body = new ArrayList<>();
-        body.add(transactions);
-        body.add(uncles);
-
-        return body;
+        return RLPWriter.encode(w -> {
+            w.startList();
+            encodeTransactions(w);
+            encodeUncles(w);
+            w.endList();
+        });
     }
 
     public String getShortHash() {
@@ -494,24 +480,24 @@ public class Block {
             block.header = header;
             block.parsed = true;
 
-            RLPList items = (RLPList) RLP.decode2(body).get(0);
+            RLPReader items = RLPReader.readList(body);
+
+            RLPReader transactions = items.readList();
 
-            RLPList transactions = (RLPList) items.get(0);
-            RLPList uncles = (RLPList) items.get(1);
+            // uncles hash is calculated over the encoded list in place
+            byte[] unclesHash = HashUtil.sha3(body, items.encodedOffset(), items.encodedLength());
+            RLPReader uncles = items.readList();
 
             if (!block.parseTxs(header.getTxTrieRoot(), transactions, false)) {
                 return null;
             }
 
-            byte[] unclesHash = HashUtil.sha3(uncles.getRLPData());
             if (!java.util.Arrays.equals(header.getUnclesHash(), unclesHash)) {
                 return null;
             }
 
-            for (RLPElement rawUncle : uncles) {
-
-                RLPList uncleHeader = (RLPList) rawUncle;
-                BlockHeader blockData = new BlockHeader(uncleHeader);
+            while (uncles.hasNext()) {
+                BlockHeader blockData = new BlockHeader(uncles.readList());
                 block.uncleList.add(blockData);
             }
 
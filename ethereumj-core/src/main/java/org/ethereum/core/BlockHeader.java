@@ -94,7 +94,35 @@ public class BlockHeader {
     private byte[] hashCache;
 
     public BlockHeader(byte[] encoded) {
-        this((RLPList) RLP.decode2(encoded).get(0));
+        this(RLPReader.readList(encoded));
+    }
+
+    public BlockHeader(RLPReader rlpHeader) {
+
+        this.parentHash = rlpHeader.readItem();
+        this.unclesHash = rlpHeader.readItem();
+        this.coinbase = rlpHeader.readItem();
+        this.stateRoot = rlpHeader.readItem();
+
+        this.txTrieRoot = rlpHeader.readItem();
+        if (this.txTrieRoot == null)
+            this.txTrieRoot = EMPTY_TRIE_HASH;
+
+        this.receiptTrieRoot = rlpHeader.readItem();
+        if (this.receiptTrieRoot == null)
+            this.receiptTrieRoot = EMPTY_TRIE_HASH;
+
+        this.logsBloom = rlpHeader.readItem();
+        this.difficulty = rlpHeader.readItem();
+
+        this.number = rlpHeader.readLong();
+        this.gasLimit = rlpHeader.readItem();
+        this.gasUsed = rlpHeader.readLong();
+        this.timestamp = rlpHeader.readLong();
+
+        this.extraData = rlpHeader.readItem();
+        this.mixHash = rlpHeader.readItem();
+        this.nonce = rlpHeader.readItem();
     }
 
     public BlockHeader(RLPList rlpHeader) {
@@ -306,49 +334,46 @@ public class BlockHeader {
     }
 
     public byte[] getEncoded(boolean withNonce) {
-        byte[] parentHash = RLP.encodeElement(this.parentHash);
-
-        byte[] unclesHash = RLP.encodeElement(this.unclesHash);
-        byte[] coinbase = RLP.encodeElement(this.coinbase);
-
-        byte[] stateRoot = RLP.encodeElement(this.stateRoot);
+        return RLPWriter.encode(w -> encode(w, withNonce));
+    }
 
+    /**
+     * Writes header list to the writer, used to encode the header
+     * as a part of enclosing structure without intermediate copies
+     */
+    public void encode(RLPWriter writer, boolean withNonce) {
         if (txTrieRoot == null) this.txTrieRoot = EMPTY_TRIE_HASH;
-        byte[] txTrieRoot = RLP.encodeElement(this.txTrieRoot);
-
         if (receiptTrieRoot == null) this.receiptTrieRoot = EMPTY_TRIE_HASH;
-        byte[] receiptTrieRoot = RLP.encodeElement(this.receiptTrieRoot);
-
-        byte[] logsBloom = RLP.encodeElement(this.logsBloom);
-        byte[] difficulty = RLP.encodeBigInteger(new BigInteger(1, this.difficulty));
-        byte[] number = RLP.encodeBigInteger(BigInteger.valueOf(this.number));
-        byte[] gasLimit = RLP.encodeElement(this.gasLimit);
-        byte[] gasUsed = RLP.encodeBigInteger(BigInteger.valueOf(this.gasUsed));
-        byte[] timestamp = RLP.encodeBigInteger(BigInteger.valueOf(this.timestamp));
 
-        byte[] extraData = RLP.encodeElement(this.extraData);
+        writer.startList()
+                .writeItem(parentHash)
+                .writeItem(unclesHash)
+                .writeItem(coinbase)
+                .writeItem(stateRoot)
+                .writeItem(txTrieRoot)
+                .writeItem(receiptTrieRoot)
+                .writeItem(logsBloom)
+                .writeBigInteger(getDifficultyBI())
+                .writeLong(number)
+                .writeItem(gasLimit)
+                .writeLong(gasUsed)
+                .writeLong(timestamp)
+                .writeItem(extraData);
         if (withNonce) {
-            byte[] mixHash = RLP.encodeElement(this.mixHash);
-            byte[] nonce = RLP.encodeElement(this.nonce);
-            return RLP.encodeList(parentHash, unclesHash, coinbase,
-                    stateRoot, txTrieRoot, receiptTrieRoot, logsBloom, difficulty, number,
-                    gasLimit, gasUsed, timestamp, extraData, mixHash, nonce);
-        } else {
-            return RLP.encodeList(parentHash, unclesHash, coinbase,
-                    stateRoot, txTrieRoot, receiptTrieRoot, logsBloom, difficulty, number,
-                    gasLimit, gasUsed, timestamp, extraData);
+            writer.writeItem(mixHash)
+                    .writeItem(nonce);
         }
+        writer.endList();
     }
 
     public byte[] getUnclesEncoded(List<BlockHeader> uncleList) {
-
-        byte[][] unclesEncoded = new byte[uncleList.size()][];
-        int i = 0;
-        for (BlockHeader uncle : uncleList) {
-            unclesEncoded[i] = uncle.getEncoded();
-            ++i;
-        }
-        return RLP.encodeList(unclesEncoded);
+        return RLPWriter.encode(w -> {
+            w.startList();
+            for (BlockHeader uncle : uncleList) {
+                uncle.encode(w, true);
+            }
+            w.endList();
+        });
     }
 
     public byte[] getPowBoundary() {
@@ -364,8 +389,7 @@ public class BlockHeader {
         byte[] seed = Arrays.concatenate(hashWithoutNonce, nonceReverted);
         byte[] seedHash = HashUtil.sha512(seed);
 
-        byte[] concat = Arrays.concatenate(seedHash, mixHash);
-        return HashUtil.sha3(concat);
+        return HashUtil.sha3(seedHash, mixHash);
     }
 
     public BigInteger calcDifficulty(BlockchainNetConfig config, BlockHeader parent) {
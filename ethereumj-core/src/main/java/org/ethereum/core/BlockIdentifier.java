@@ -17,10 +17,9 @@
  */
 package org.ethereum.core;
 
-import org.ethereum.util.RLP;
 import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPWriter;
 
-import java.math.BigInteger;
 import java.util.Arrays;
 
 import static org.ethereum.util.ByteUtil.byteArrayToLong;
@@ -66,10 +65,14 @@ public class BlockIdentifier {
     }
 
     public byte[] getEncoded() {
-        byte[] hash = RLP.encodeElement(this.hash);
-        byte[] number = RLP.encodeBigInteger(BigInteger.valueOf(this.number));
+        return RLPWriter.encode(this::encode);
+    }
 
-        return RLP.encodeList(hash, number);
+    public void encode(RLPWriter writer) {
+        writer.startList()
+                .writeItem(hash)
+                .writeLong(number)
+                .endList();
     }
 
     @Override
@@ -97,6 +97,18 @@ public interface Blockchain {
      */
     Iterator<BlockHeader> getIteratorOfHeadersStartFrom(BlockIdentifier identifier, int skip, int limit, boolean reverse);
 
+    /**
+     * Returns up to limit RLP encoded headers found with following search parameters,
+     * headers are taken from the stored blocks as is, without decoding them
+     * [Synchronized only in blockstore, not using any synchronized BlockchainImpl methods]
+     * @param identifier        Identifier of start block, by number of by hash
+     * @param skip              Number of blocks to skip between consecutive headers
+     * @param limit             Maximum number of headers in return
+     * @param reverse           Is search reverse or not
+     * @return  RLP encoded headers
+     */
+    List<byte[]> getListOfEncodedHeadersStartFrom(BlockIdentifier identifier, int skip, int limit, boolean reverse);
+
     /**
      * @deprecated
      * Returns list of block bodies by block hashes, stopping on first not found block
@@ -49,6 +49,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.HashMap;
@@ -119,6 +120,8 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
 
     private HeaderStore headerStore = null;
 
+    private BlockServingCache servingCache;
+
     @Autowired
     private TransactionStore transactionStore;
 
@@ -175,6 +178,7 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
 
     private byte[] minerCoinbase;
     private byte[] minerExtraData;
+    private ParallelTransactionExecutor parallelExecutor;
     private int UNCLE_LIST_LIMIT;
     private int UNCLE_GENERATION_LIMIT;
 
@@ -183,6 +187,7 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
 
     /** Tests only **/
     public BlockchainImpl() {
+        servingCache = createServingCache(config);
     }
 
     @Autowired
@@ -234,11 +239,27 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         return this;
     }
 
+    /**
+     * Enables speculative parallel execution of block transactions
+     * @param threads number of worker threads, 0 - number of available processors
+     */
+    public BlockchainImpl withParallelExecution(int threads) {
+        if (parallelExecutor != null) {
+            parallelExecutor.shutdown();
+        }
+        this.parallelExecutor = new ParallelTransactionExecutor(threads);
+        return this;
+    }
+
     private void initConst(SystemProperties config) {
+        servingCache = createServingCache(config);
         minerCoinbase = config.getMinerCoinbase();
         minerExtraData = config.getMineExtraData();
         UNCLE_LIST_LIMIT = config.getBlockchainConfig().getCommonConstants().getUNCLE_LIST_LIMIT();
         UNCLE_GENERATION_LIMIT = config.getBlockchainConfig().getCommonConstants().getUNCLE_GENERATION_LIMIT();
+        if (config.vmParallelExecution()) {
+            withParallelExecution(config.vmParallelThreads());
+        }
     }
 
     @Override
@@ -881,23 +902,51 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         List<TransactionReceipt> receipts = new ArrayList<>();
         List<TransactionExecutionSummary> summaries = new ArrayList<>();
 
-        for (Transaction tx : block.getTransactionsList()) {
+        List<ParallelTransactionExecutor.Speculation> speculations = null;
+        if (parallelExecutor != null && track instanceof RepositoryImpl && block.getTransactionsList().size() > 1 &&
+                !config.vmTrace() && (vmHook == null || vmHook.isEmpty())) {
+            // listener is notified and block gas accounted when results are committed in order
+            speculations = parallelExecutor.execute(block, (RepositoryImpl) track, blockchainConfig.eip161(),
+                    (tx, txTrack) -> new TransactionExecutor(
+                            tx, block.getCoinbase(), txTrack, blockStore, programInvokeFactory, block,
+                            new EthereumListenerAdapter(), 0, VMHook.EMPTY)
+                            .withCommonConfig(commonConfig));
+        }
+
+        int reexecuted = 0;
+        for (int txIdx = 0; txIdx < block.getTransactionsList().size(); txIdx++) {
+            Transaction tx = block.getTransactionsList().get(txIdx);
             stateLogger.debug("apply block: [{}] tx: [{}] ", block.getNumber(), i);
 
-            Repository txTrack = track.startTracking();
-            TransactionExecutor executor = new TransactionExecutor(
-                    tx, block.getCoinbase(),
-                    txTrack, blockStore, programInvokeFactory, block, listener, totalGasUsed, vmHook)
-                    .withCommonConfig(commonConfig);
+            TransactionExecutor executor;
+            TransactionExecutionSummary summary;
+
+            ParallelTransactionExecutor.Speculation speculation = speculations == null ? null : speculations.get(txIdx);
+            if (speculation != null && speculation.commit(totalGasUsed)) {
+                executor = speculation.getExecutor();
+                summary = speculation.getSummary();
+                if (summary != null) {
+                    listener.onTransactionExecuted(summary);
+                }
+            } else {
+                if (speculations != null) reexecuted++;
+
+                Repository txTrack = track.startTracking();
+                executor = new TransactionExecutor(
+                        tx, block.getCoinbase(),
+                        txTrack, blockStore, programInvokeFactory, block, listener, totalGasUsed, vmHook)
+                        .withCommonConfig(commonConfig);
+
+                executor.init();
+                executor.execute();
+                executor.go();
+                summary = executor.finalization();
 
-            executor.init();
-            executor.execute();
-            executor.go();
-            TransactionExecutionSummary summary = executor.finalization();
+                txTrack.commit();
+            }
 
             totalGasUsed += executor.getGasUsed();
 
-            txTrack.commit();
             final TransactionReceipt receipt = executor.getReceipt();
 
             if (blockchainConfig.eip658()) {
@@ -925,6 +974,11 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
             }
         }
 
+        if (speculations != null) {
+            logger.debug("applyBlock: block: [{}] re-executed {} of {} speculatively executed txs",
+                    block.getNumber(), reexecuted, speculations.size());
+        }
+
         Map<byte[], BigInteger> rewards = addReward(track, block, summaries);
 
         if (stateLogger.isInfoEnabled())
@@ -994,9 +1048,7 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         else
             blockStore.saveBlock(block, totalDifficulty, true);
 
-        for (int i = 0; i < receipts.size(); i++) {
-            transactionStore.put(new TransactionInfo(receipts.get(i), block.getHash(), i));
-        }
+        transactionStore.put(block, receipts);
 
         if (pruneManager != null) {
             pruneManager.blockCommitted(block.getHeader());
@@ -1262,6 +1314,72 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         }
     }
 
+    private BlockServingCache createServingCache(SystemProperties config) {
+        return new BlockServingCache(hash -> blockStore.getEncodedBlockByHash(hash), config.blockServingCacheSize());
+    }
+
+    public BlockServingCache getServingCache() {
+        return servingCache;
+    }
+
+    @Override
+    public List<byte[]> getListOfEncodedHeadersStartFrom(BlockIdentifier identifier, int skip, int limit, boolean reverse) {
+
+        // Identifying block header we'll move from
+        long number;
+        byte[] header;
+        if (identifier.getHash() != null) {
+            header = findEncodedHeaderByHash(identifier.getHash());
+            if (header == null) return emptyList();
+
+            // provided hash should be on main chain
+            number = new BlockHeader(header).getNumber();
+            if (!Arrays.equals(header, findEncodedHeaderByNumber(number))) return emptyList();
+        } else {
+            number = identifier.getNumber();
+            header = findEncodedHeaderByNumber(number);
+        }
+
+        List<byte[]> headers = new ArrayList<>();
+        long bestNumber = -1;
+        while (header != null && headers.size() < limit) {
+            headers.add(header);
+            if (headers.size() == limit) break;
+
+            if (bestNumber < 0) bestNumber = blockStore.getBestBlock().getNumber();
+            number = reverse ? number - 1 - skip : number + 1 + skip;
+            header = number >= 0 && number <= bestNumber ? findEncodedHeaderByNumber(number) : null;
+        }
+
+        servingCache.headersServed(headers);
+        return headers;
+    }
+
+    /**
+     * Encoded analogue of {@link #findHeaderByNumber(long)}
+     */
+    private byte[] findEncodedHeaderByNumber(long number) {
+        byte[] hash = blockStore.getBlockHashByNumber(number);
+        byte[] header = hash == null ? null : servingCache.getEncodedHeader(hash);
+        if (header == null && headerStore != null) {
+            BlockHeader storedHeader = headerStore.getHeaderByNumber(number);
+            return storedHeader == null ? null : storedHeader.getEncoded();
+        }
+        return header;
+    }
+
+    /**
+     * Encoded analogue of {@link #findHeaderByHash(byte[])}
+     */
+    private byte[] findEncodedHeaderByHash(byte[] hash) {
+        byte[] header = servingCache.getEncodedHeader(hash);
+        if (header == null && headerStore != null) {
+            BlockHeader storedHeader = headerStore.getHeaderByHash(hash);
+            return storedHeader == null ? null : storedHeader.getEncoded();
+        }
+        return header;
+    }
+
     static class EmptyBlockHeadersIterator implements Iterator<BlockHeader> {
         final static EmptyBlockHeadersIterator INSTANCE = new EmptyBlockHeadersIterator();
 
@@ -1348,9 +1466,9 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         List<byte[]> bodies = new ArrayList<>(hashes.size());
 
         for (byte[] hash : hashes) {
-            Block block = blockStore.getBlockByHash(hash);
-            if (block == null) break;
-            bodies.add(block.getEncodedBody());
+            byte[] body = servingCache.getEncodedBody(hash);
+            if (body == null) break;
+            bodies.add(body);
         }
 
         return bodies;
@@ -1363,7 +1481,8 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
 
     class BlockBodiesIterator implements Iterator<byte[]> {
         private final List<byte[]> hashes;
-        private Integer position = 0;
+        private int position = 0;
+        private byte[] nextBody;
 
 
         BlockBodiesIterator(List<byte[]> hashes) {
@@ -1372,7 +1491,10 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
 
         @Override
         public boolean hasNext() {
-            return position < hashes.size() && blockStore.getBlockByHash(hashes.get(position)) != null;
+            if (nextBody == null && position < hashes.size()) {
+                nextBody = servingCache.getEncodedBody(hashes.get(position));
+            }
+            return nextBody != null;
         }
 
         @Override
@@ -1381,13 +1503,11 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
                 throw new NoSuchElementException("Nothing left");
             }
 
-            Block block = blockStore.getBlockByHash(hashes.get(position));
-            if (block == null) {
-                throw new NoSuchElementException("Nothing left");
-            }
+            byte[] ret = nextBody;
+            nextBody = null;
             ++position;
 
-            return block.getEncodedBody();
+            return ret;
         }
     }
 
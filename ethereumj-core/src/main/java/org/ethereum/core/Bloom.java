@@ -80,6 +80,24 @@ public class Bloom {
         return data;
     }
 
+    /**
+     * Bit i is the (i % 8) most significant bit of the byte i / 8
+     * @return indexes of bits which are set
+     */
+    public int[] getSetBits() {
+        int count = 0;
+        for (byte b : data) count += Integer.bitCount(b & 0xFF);
+
+        int[] ret = new int[count];
+        int idx = 0;
+        for (int i = 0; i < data.length * 8; i++) {
+            if ((data[i >> 3] & (0x80 >>> (i & 7))) != 0) {
+                ret[idx++] = i;
+            }
+        }
+        return ret;
+    }
+
     public Bloom copy() {
         return new Bloom(Arrays.copyOf(getData(), getData().length));
     }
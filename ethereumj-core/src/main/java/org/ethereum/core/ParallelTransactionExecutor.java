@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.core;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.ethereum.db.RepositoryImpl;
+import org.ethereum.db.SpeculativeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+
+/**
+ * Executes transactions of a block speculatively in parallel (optimistic concurrency).
+ *
+ * Each transaction is executed against the state the block starts with in its own
+ * {@link SpeculativeRepository} which records every state entry read. The results are then
+ * committed in the block order: a result is accepted if no preceding transaction has changed
+ * any of the entries read, else the transaction should be re-executed on the actual state.
+ * Thus receipts and the resulting state are identical to the serial execution.
+ */
+public class ParallelTransactionExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger("blockchain");
+
+    private final ExecutorService executor;
+
+    /**
+     * @param threads the number of worker threads, 0 or negative to use the number of available processors
+     */
+    public ParallelTransactionExecutor(int threads) {
+        executor = Executors.newFixedThreadPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ParallelTxExecutor-%d").build());
+    }
+
+    /**
+     * Speculatively executes all the block transactions in parallel and waits for them to complete.
+     * The track is not modified, results are applied by {@link Speculation#commit(long)}
+     *
+     * @param executorFactory creates an executor for the transaction over the speculative track.
+     *                        The executor should neither notify listeners nor account the
+     *                        block gas used by preceding transactions
+     * @return speculation results in the block order, null items for failed executions
+     */
+    public List<Speculation> execute(Block block, RepositoryImpl track, boolean eip161,
+                                     BiFunction<Transaction, Repository, TransactionExecutor> executorFactory) {
+
+        List<Callable<Speculation>> tasks = new ArrayList<>();
+        for (Transaction tx : block.getTransactionsList()) {
+            tasks.add(() -> {
+                // the transaction sent by the coinbase can't treat the coinbase balance as write only
+                byte[] coinbase = Arrays.equals(tx.getSender(), block.getCoinbase()) ? null : block.getCoinbase();
+                SpeculativeRepository txTrack = new SpeculativeRepository(track, coinbase, eip161);
+
+                TransactionExecutor executor = executorFactory.apply(tx, txTrack);
+                executor.init();
+                executor.execute();
+                executor.go();
+                TransactionExecutionSummary summary = executor.finalization();
+
+                return new Speculation(block, tx, txTrack, executor, summary);
+            });
+        }
+
+        List<Speculation> ret = new ArrayList<>(tasks.size());
+        try {
+            for (Future<Speculation> future : executor.invokeAll(tasks)) {
+                try {
+                    ret.add(future.get());
+                } catch (ExecutionException e) {
+                    logger.warn("Speculative transaction execution failed: block: [{}]", block.getNumber(), e.getCause());
+                    ret.add(null);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        return ret;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The result of a speculative transaction execution
+     */
+    public static class Speculation {
+        private final Block block;
+        private final Transaction tx;
+        private final SpeculativeRepository track;
+        private final TransactionExecutor executor;
+        private final TransactionExecutionSummary summary;
+
+        Speculation(Block block, Transaction tx, SpeculativeRepository track,
+                    TransactionExecutor executor, TransactionExecutionSummary summary) {
+            this.block = block;
+            this.tx = tx;
+            this.track = track;
+            this.executor = executor;
+            this.summary = summary;
+        }
+
+        /**
+         * Applies the result to the block track if all the preceding transactions are
+         * already applied and none of them has affected this transaction
+         *
+         * @param gasUsedInTheBlock gas used by the preceding transactions
+         * @return false if the result is invalid and the transaction needs to be re-executed
+         */
+        public boolean commit(long gasUsedInTheBlock) {
+            // the speculative execution has checked the block gas limit against the tx gas only
+            BigInteger gasLimitLeft = new BigInteger(1, block.getGasLimit()).subtract(BigInteger.valueOf(gasUsedInTheBlock));
+            if (new BigInteger(1, tx.getGasLimit()).compareTo(gasLimitLeft) > 0) return false;
+
+            if (!track.isValid()) return false;
+
+            track.commit();
+            executor.getReceipt().setCumulativeGas(gasUsedInTheBlock + executor.getGasUsed());
+            return true;
+        }
+
+        public TransactionExecutor getExecutor() {
+            return executor;
+        }
+
+        /**
+         * @return the execution summary or null if the transaction wasn't executed
+         */
+        public TransactionExecutionSummary getSummary() {
+            return summary;
+        }
+    }
+}
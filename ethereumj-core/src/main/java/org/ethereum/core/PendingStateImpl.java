@@ -22,11 +22,13 @@ import static org.ethereum.listener.EthereumListener.PendingTransactionState.INC
 import static org.ethereum.listener.EthereumListener.PendingTransactionState.NEW_PENDING;
 import static org.ethereum.listener.EthereumListener.PendingTransactionState.PENDING;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
 
 import org.apache.commons.collections4.map.LRUMap;
@@ -95,7 +97,7 @@ public class PendingStateImpl implements PendingState {
 
 //    private Repository repository;
 
-    private final List<PendingTransaction> pendingTransactions = new ArrayList<>();
+    private PendingTransactionPool pendingTransactions;
 
     // to filter out the transactions we have already processed
     // transactions could be sent by peers even if they were already included into blocks
@@ -104,6 +106,10 @@ public class PendingStateImpl implements PendingState {
 
     private Repository pendingState;
 
+    // senders whose pending transactions are applied to the pending state, after a new best block
+    // the transactions of the rest senders are applied lazily, on the first sender state access
+    private final Set<ByteArrayWrapper> appliedSenders = new HashSet<>();
+
     private Block best = null;
 
     @Autowired
@@ -114,17 +120,44 @@ public class PendingStateImpl implements PendingState {
 
     public void init() {
         this.pendingState = getOrigRepository().startTracking();
+        this.appliedSenders.clear();
     }
 
     private Repository getOrigRepository() {
         return blockchain.getRepositorySnapshot();
     }
 
+    private PendingTransactionPool getPool() {
+        if (pendingTransactions == null) {
+            pendingTransactions = new PendingTransactionPool(config.txPoolCapacity());
+        }
+        return pendingTransactions;
+    }
+
     @Override
     public synchronized Repository getRepository() {
         if (pendingState == null) {
             init();
         }
+        for (PendingTransaction tx : getPool().getAll()) {
+            getSenderState(tx.getSender());
+        }
+        return pendingState;
+    }
+
+    /**
+     * Returns the pending state with the sender pending transactions applied,
+     * the transactions of other senders may be not applied yet
+     */
+    private Repository getSenderState(byte[] sender) {
+        if (pendingState == null) {
+            init();
+        }
+        if (appliedSenders.add(new ByteArrayWrapper(sender))) {
+            for (PendingTransaction tx : getPool().getBySender(sender)) {
+                getPool().setReceipt(tx, executeTx(tx.getTransaction(), pendingState));
+            }
+        }
         return pendingState;
     }
 
@@ -133,7 +166,7 @@ public class PendingStateImpl implements PendingState {
 
         List<Transaction> txs = new ArrayList<>();
 
-        for (PendingTransaction tx : pendingTransactions) {
+        for (PendingTransaction tx : getPool().getAll()) {
             txs.add(tx.getTransaction());
         }
 
@@ -199,7 +232,7 @@ public class PendingStateImpl implements PendingState {
     private void fireTxUpdate(TransactionReceipt txReceipt, PendingTransactionState state, Block block) {
         if (logger.isDebugEnabled()) {
             logger.debug(String.format("PendingTransactionUpdate: (Tot: %3s) %12s : %s %8s %s [%s]",
-                    getPendingTransactions().size(),
+                    getPool().size(),
                     state, toHexString(txReceipt.getTransaction().getSender()).substring(0, 8),
                     ByteUtil.byteArrayToLong(txReceipt.getTransaction().getNonce()),
                     block.getShortDescr(), txReceipt.getError()));
@@ -223,16 +256,38 @@ public class PendingStateImpl implements PendingState {
         if (err != null) {
             txReceipt = createDroppedReceipt(tx, err);
         } else {
-            txReceipt = executeTx(tx);
+            txReceipt = executeTx(tx, getSenderState(tx.getSender()));
         }
 
         if (!txReceipt.isValid()) {
             fireTxUpdate(txReceipt, DROPPED, getBestBlock());
-        } else {
-            pendingTransactions.add(new PendingTransaction(tx, getBestBlock().getNumber()));
-            fireTxUpdate(txReceipt, NEW_PENDING, getBestBlock());
+            return false;
         }
-        return txReceipt.isValid();
+
+        getPool().add(new PendingTransaction(tx, getBestBlock().getNumber()), txReceipt);
+        evictPending();
+
+        if (!getPool().contains(tx.getHash())) {
+            // evicted along with the cheaper transaction of the same sender
+            return false;
+        }
+
+        fireTxUpdate(txReceipt, NEW_PENDING, getBestBlock());
+        return true;
+    }
+
+    private void evictPending() {
+        List<PendingTransaction> evicted = getPool().evict();
+        if (evicted.isEmpty()) return;
+
+        for (PendingTransaction tx : evicted) {
+            fireTxUpdate(createDroppedReceipt(tx.getTransaction(), "Evicted from the full pending transactions pool"),
+                    DROPPED, getBestBlock());
+        }
+
+        // evicted transactions are applied to the pending state already, the state is rebuilt
+        // lazily, so only the queues of the senders accessed till the next block are re-executed
+        init();
     }
 
     private TransactionReceipt createDroppedReceipt(Transaction tx, String error) {
@@ -250,8 +305,14 @@ public class PendingStateImpl implements PendingState {
             return String.format("Invalid transaction: %s", e.getMessage());
         }
 
-        if (config.getMineMinGasPrice().compareTo(ByteUtil.bytesToBigInteger(tx.getGasPrice())) > 0) {
-            return "Too low gas price for transaction: " + ByteUtil.bytesToBigInteger(tx.getGasPrice());
+        BigInteger gasPrice = ByteUtil.bytesToBigInteger(tx.getGasPrice());
+        if (config.getMineMinGasPrice().compareTo(gasPrice) > 0) {
+            return "Too low gas price for transaction: " + gasPrice;
+        }
+
+        if (getPool().isFull() && (!config.txPoolEvictCheapest() ||
+                getPool().getLowestGasPrice().compareTo(gasPrice) >= 0)) {
+            return "Pending transactions pool is full";
         }
 
         return null;
@@ -289,18 +350,17 @@ public class PendingStateImpl implements PendingState {
             // first return back the transactions from forked blocks
             Block rollback = getBestBlock();
             while(!rollback.isEqual(commonAncestor)) {
-                List<PendingTransaction> blockTxs = new ArrayList<>();
                 for (Transaction tx : rollback.getTransactionsList()) {
                     logger.trace("Returning transaction back to pending: " + tx);
-                    blockTxs.add(new PendingTransaction(tx, commonAncestor.getNumber()));
+                    PendingTransaction replaced = getPool().add(new PendingTransaction(tx, commonAncestor.getNumber()), null);
+                    if (replaced != null && !FastByteComparisons.equal(replaced.getHash(), tx.getHash())) {
+                        fireTxUpdate(createDroppedReceipt(replaced.getTransaction(),
+                                "Replaced by the transaction from the forked block"), DROPPED, getBestBlock());
+                    }
                 }
-                pendingTransactions.addAll(0, blockTxs);
                 rollback = blockchain.getBlockByHash(rollback.getParentHash());
             }
 
-            // rollback the state snapshot to the ancestor
-            pendingState = getOrigRepository().getSnapshotTo(commonAncestor.getStateRoot()).startTracking();
-
             // next process blocks from new fork
             Block main = newBlock;
             List<Block> mainFork = new ArrayList<>();
@@ -313,14 +373,19 @@ public class PendingStateImpl implements PendingState {
             for (int i = mainFork.size() - 1; i >= 0; i--) {
                 processBestInternal(mainFork.get(i), null);
             }
+
+            best = newBlock;
+
+            // the state is switched to another fork, thus every pending transaction is re-executed
+            replayPending(newBlock);
         } else {
             logger.debug("PendingStateImpl.processBest: " + newBlock.getShortDescr());
             processBestInternal(newBlock, receipts);
-        }
 
-        best = newBlock;
+            best = newBlock;
 
-        updateState(newBlock);
+            updateState(newBlock);
+        }
 
         listener.onPendingStateChanged(PendingStateImpl.this);
     }
@@ -333,16 +398,12 @@ public class PendingStateImpl implements PendingState {
     }
 
     private void clearOutdated(final long blockNumber) {
-        List<PendingTransaction> outdated = new ArrayList<>();
-
-        for (PendingTransaction tx : pendingTransactions) {
-            if (blockNumber - tx.getBlockNumber() > config.txOutdatedThreshold()) {
-                outdated.add(tx);
+        List<PendingTransaction> outdated = getPool().removeAddedBefore(blockNumber - config.txOutdatedThreshold());
 
-                fireTxUpdate(createDroppedReceipt(tx.getTransaction(),
-                        "Tx was not included into last " + config.txOutdatedThreshold() + " blocks"),
-                        DROPPED, getBestBlock());
-            }
+        for (PendingTransaction tx : outdated) {
+            fireTxUpdate(createDroppedReceipt(tx.getTransaction(),
+                    "Tx was not included into last " + config.txOutdatedThreshold() + " blocks"),
+                    DROPPED, getBestBlock());
         }
 
         if (outdated.isEmpty()) return;
@@ -354,16 +415,19 @@ public class PendingStateImpl implements PendingState {
                         tx.getBlockNumber(),
                         toHexString(tx.getHash())
                 );
-
-        pendingTransactions.removeAll(outdated);
     }
 
     private void clearPending(Block block, List<TransactionReceipt> receipts) {
         for (int i = 0; i < block.getTransactionsList().size(); i++) {
             Transaction tx = block.getTransactionsList().get(i);
-            PendingTransaction pend = new PendingTransaction(tx);
 
-            if (pendingTransactions.remove(pend)) {
+            // pending transaction with the same sender and nonce can't be executed anymore
+            PendingTransaction removed = getPool().remove(tx);
+            if (removed != null) {
+                if (!FastByteComparisons.equal(removed.getHash(), tx.getHash())) {
+                    fireTxUpdate(createDroppedReceipt(removed.getTransaction(),
+                            "Replaced by the transaction included into the block"), DROPPED, block);
+                }
                 try {
                     logger.trace("Clear pending transaction, hash: [{}]", toHexString(tx.getHash()));
                     TransactionReceipt receipt;
@@ -388,29 +452,62 @@ public class PendingStateImpl implements PendingState {
         return info;
     }
 
+    /**
+     * Re-executes pending transactions of the senders touched by the new best block,
+     * the rest of transactions keep the results of the previous execution and
+     * are applied to the new pending state lazily, see {@link #getSenderState(byte[])}
+     */
     private void updateState(Block block) {
 
-        pendingState = getOrigRepository().startTracking();
+        long t = System.nanoTime();
+
+        init();
+
+        int rechecked = 0;
+        for (Transaction tx : block.getTransactionsList()) {
+            if (!appliedSenders.contains(new ByteArrayWrapper(tx.getSender()))) {
+                getSenderState(tx.getSender());
+                rechecked += getPool().getBySender(tx.getSender()).size();
+            }
+        }
+
+        for (PendingTransaction tx : getPool().getAll()) {
+            fireTxUpdate(getPool().getReceipt(tx), PENDING, block);
+        }
+
+        logger.debug("Successfully processed #{}, txs: {}, rechecked: {}, time: {}s", block.getNumber(),
+                getPool().size(), rechecked, String.format("%.3f", (System.nanoTime() - t) / 1_000_000_000d));
+    }
+
+    /**
+     * Rebuilds the pending state executing all pending transactions on top of the best state
+     * and fires the PENDING update for every transaction
+     */
+    private void replayPending(Block block) {
 
         long t = System.nanoTime();
 
-        for (PendingTransaction tx : pendingTransactions) {
-            TransactionReceipt receipt = executeTx(tx.getTransaction());
-            fireTxUpdate(receipt, PENDING, block);
+        init();
+
+        for (PendingTransaction tx : getPool().getAll()) {
+            getSenderState(tx.getSender());
+        }
+        for (PendingTransaction tx : getPool().getAll()) {
+            fireTxUpdate(getPool().getReceipt(tx), PENDING, block);
         }
 
-        logger.debug("Successfully processed #{}, txs: {}, time: {}s", block.getNumber(), pendingTransactions.size(),
-                String.format("%.3f", (System.nanoTime() - t) / 1_000_000_000d));
+        logger.debug("Pending state rebuilt on #{}, txs: {}, time: {}s", getBestBlock().getNumber(),
+                getPool().size(), String.format("%.3f", (System.nanoTime() - t) / 1_000_000_000d));
     }
 
-    private TransactionReceipt executeTx(Transaction tx) {
+    private TransactionReceipt executeTx(Transaction tx, Repository repository) {
 
         logger.trace("Apply pending state tx: {}", toHexString(tx.getHash()));
 
         Block best = getBestBlock();
 
         TransactionExecutor executor = new TransactionExecutor(
-                tx, best.getCoinbase(), getRepository(),
+                tx, best.getCoinbase(), repository,
                 blockStore, programInvokeFactory, createFakePendingBlock())
                 .withCommonConfig(commonConfig);
 
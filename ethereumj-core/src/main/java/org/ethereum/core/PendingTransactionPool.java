@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.core;
+
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.util.ByteUtil;
+import org.ethereum.util.FastByteComparisons;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Pending transactions indexed by hash, by sender (nonce ordered queue per sender)
+ * and by gas price.
+ *
+ * The pool holds at most one transaction per sender and nonce. When the pool
+ * exceeds its capacity the cheapest transactions are evicted together with the
+ * transactions of the same sender having higher nonces, since those couldn't be
+ * executed anymore.
+ *
+ * The class is not thread safe, access should be synchronized by the owner
+ */
+class PendingTransactionPool {
+
+    private static final Comparator<Entry> GAS_PRICE_ORDER = (e1, e2) -> {
+        int cmp = e1.gasPrice.compareTo(e2.gasPrice);
+        if (cmp != 0) return cmp;
+        return FastByteComparisons.compareTo(e1.hash.getData(), 0, 32, e2.hash.getData(), 0, 32);
+    };
+
+    private static class Entry {
+        final PendingTransaction pendingTx;
+        final ByteArrayWrapper hash;
+        final ByteArrayWrapper sender;
+        final long nonce;
+        final BigInteger gasPrice;
+        TransactionReceipt receipt;
+
+        Entry(PendingTransaction pendingTx, TransactionReceipt receipt) {
+            Transaction tx = pendingTx.getTransaction();
+            this.pendingTx = pendingTx;
+            this.hash = new ByteArrayWrapper(tx.getHash());
+            this.sender = new ByteArrayWrapper(tx.getSender());
+            this.nonce = ByteUtil.byteArrayToLong(tx.getNonce());
+            this.gasPrice = ByteUtil.bytesToBigInteger(tx.getGasPrice());
+            this.receipt = receipt;
+        }
+    }
+
+    private final int capacity;
+
+    private final Map<ByteArrayWrapper, Entry> byHash = new HashMap<>();
+    // senders are kept in the order of their first transaction arrival
+    private final Map<ByteArrayWrapper, TreeMap<Long, Entry>> bySender = new LinkedHashMap<>();
+    private final TreeSet<Entry> byGasPrice = new TreeSet<>(GAS_PRICE_ORDER);
+
+    /**
+     * @param capacity max number of transactions in the pool
+     */
+    public PendingTransactionPool(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public int size() {
+        return byHash.size();
+    }
+
+    public boolean isFull() {
+        return byHash.size() >= capacity;
+    }
+
+    public boolean contains(byte[] txHash) {
+        return byHash.containsKey(new ByteArrayWrapper(txHash));
+    }
+
+    /**
+     * @return the lowest gas price among pending transactions or null if the pool is empty
+     */
+    public BigInteger getLowestGasPrice() {
+        return byGasPrice.isEmpty() ? null : byGasPrice.first().gasPrice;
+    }
+
+    /**
+     * Adds the transaction to the pool
+     *
+     * @param receipt the receipt of the transaction execution on the pending state, might be null
+     * @return the transaction with the same sender and nonce which was replaced or null
+     */
+    public PendingTransaction add(PendingTransaction tx, TransactionReceipt receipt) {
+        Entry entry = new Entry(tx, receipt);
+        Entry replaced = bySender.computeIfAbsent(entry.sender, k -> new TreeMap<>()).put(entry.nonce, entry);
+        if (replaced != null) {
+            byHash.remove(replaced.hash);
+            byGasPrice.remove(replaced);
+        }
+        byHash.put(entry.hash, entry);
+        byGasPrice.add(entry);
+        return replaced == null ? null : replaced.pendingTx;
+    }
+
+    /**
+     * Removes the transaction with the same sender and nonce as the specified one
+     *
+     * @return the removed transaction or null if there was no such transaction
+     */
+    public PendingTransaction remove(Transaction tx) {
+        TreeMap<Long, Entry> queue = bySender.get(new ByteArrayWrapper(tx.getSender()));
+        if (queue == null) return null;
+
+        Entry entry = queue.get(ByteUtil.byteArrayToLong(tx.getNonce()));
+        if (entry == null) return null;
+
+        removeEntry(entry);
+        return entry.pendingTx;
+    }
+
+    /**
+     * Removes transactions added at the block number lower than specified
+     *
+     * @return removed transactions
+     */
+    public List<PendingTransaction> removeAddedBefore(long blockNumber) {
+        List<Entry> outdated = new ArrayList<>();
+        for (Entry entry : byHash.values()) {
+            if (entry.pendingTx.getBlockNumber() < blockNumber) {
+                outdated.add(entry);
+            }
+        }
+        return removeEntries(outdated);
+    }
+
+    /**
+     * Evicts the cheapest transactions until the pool size fits the capacity.
+     * Transactions of the same sender with higher nonces are evicted as well
+     *
+     * @return evicted transactions
+     */
+    public List<PendingTransaction> evict() {
+        List<PendingTransaction> ret = new ArrayList<>();
+        while (byHash.size() > capacity) {
+            Entry cheapest = byGasPrice.first();
+            List<Entry> evicted = new ArrayList<>(bySender.get(cheapest.sender).tailMap(cheapest.nonce, true).values());
+            ret.addAll(removeEntries(evicted));
+        }
+        return ret;
+    }
+
+    public TransactionReceipt getReceipt(PendingTransaction tx) {
+        Entry entry = byHash.get(new ByteArrayWrapper(tx.getHash()));
+        return entry == null ? null : entry.receipt;
+    }
+
+    public void setReceipt(PendingTransaction tx, TransactionReceipt receipt) {
+        Entry entry = byHash.get(new ByteArrayWrapper(tx.getHash()));
+        if (entry != null) {
+            entry.receipt = receipt;
+        }
+    }
+
+    /**
+     * @return sender transactions ordered by nonce
+     */
+    public List<PendingTransaction> getBySender(byte[] sender) {
+        TreeMap<Long, Entry> queue = bySender.get(new ByteArrayWrapper(sender));
+        return queue == null ? new ArrayList<>() : toTransactions(queue.values());
+    }
+
+    /**
+     * @return all the transactions in the execution order: senders in the order of arrival,
+     * each sender transactions ordered by nonce
+     */
+    public List<PendingTransaction> getAll() {
+        List<PendingTransaction> ret = new ArrayList<>(byHash.size());
+        for (NavigableMap<Long, Entry> queue : bySender.values()) {
+            ret.addAll(toTransactions(queue.values()));
+        }
+        return ret;
+    }
+
+    private List<PendingTransaction> removeEntries(Iterable<Entry> entries) {
+        List<PendingTransaction> ret = new ArrayList<>();
+        for (Entry entry : entries) {
+            removeEntry(entry);
+            ret.add(entry.pendingTx);
+        }
+        return ret;
+    }
+
+    private void removeEntry(Entry entry) {
+        byHash.remove(entry.hash);
+        byGasPrice.remove(entry);
+        TreeMap<Long, Entry> queue = bySender.get(entry.sender);
+        queue.remove(entry.nonce);
+        if (queue.isEmpty()) {
+            bySender.remove(entry.sender);
+        }
+    }
+
+    private static List<PendingTransaction> toTransactions(Iterable<Entry> entries) {
+        List<PendingTransaction> ret = new ArrayList<>();
+        for (Entry entry : entries) {
+            ret.add(entry.pendingTx);
+        }
+        return ret;
+    }
+}
@@ -159,6 +159,16 @@ public interface Repository extends org.ethereum.facade.Repository{
      */
     BigInteger addBalance(byte[] addr, BigInteger value);
 
+    /**
+     * Credits the transaction fee to the block coinbase
+     *
+     * @param coinbase of the block
+     * @param fee to be added
+     * @return true if the coinbase balance is changed right away, false if the credit is deferred
+     *         and the repository takes care of the coinbase on commit
+     */
+    boolean addCoinbaseFee(byte[] coinbase, BigInteger fee);
+
     /**
      * @return Returns set of all the account addresses
      */
@@ -24,19 +24,20 @@ import static org.ethereum.util.ByteUtil.ZERO_BYTE_ARRAY;
 
 import java.math.BigInteger;
 import java.security.SignatureException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import org.ethereum.config.BlockchainNetConfig;
 import org.ethereum.crypto.ECKey;
 import org.ethereum.crypto.ECKey.ECDSASignature;
 import org.ethereum.crypto.ECKey.MissingPrivateKeyException;
 import org.ethereum.crypto.HashUtil;
+import org.ethereum.crypto.Secp256k1;
 import org.ethereum.datasource.MemSizeEstimator;
 import org.ethereum.util.ByteUtil;
-import org.ethereum.util.RLP;
-import org.ethereum.util.RLPElement;
-import org.ethereum.util.RLPItem;
-import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPReader;
+import org.ethereum.util.RLPWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.util.BigIntegers;
@@ -193,28 +194,29 @@ public class Transaction {
     public synchronized void rlpParse() {
         if (parsed) return;
         try {
-            RLPList decodedTxList = RLP.decode2(rlpEncoded);
-            RLPList transaction = (RLPList) decodedTxList.get(0);
+            RLPReader transaction = RLPReader.readList(rlpEncoded);
 
             // Basic verification
-            if (transaction.size() > 9 ) throw new RuntimeException("Too many RLP elements");
-            for (RLPElement rlpElement : transaction) {
-                if (!(rlpElement instanceof RLPItem))
+            RLPReader elements = RLPReader.readList(rlpEncoded);
+            for (int i = 0; elements.hasNext(); i++) {
+                if (i >= 9) throw new RuntimeException("Too many RLP elements");
+                if (elements.isList())
                     throw new RuntimeException("Transaction RLP elements shouldn't be lists");
+                elements.skip();
             }
 
-            this.nonce = transaction.get(0).getRLPData();
-            this.gasPrice = transaction.get(1).getRLPData();
-            this.gasLimit = transaction.get(2).getRLPData();
-            this.receiveAddress = transaction.get(3).getRLPData();
-            this.value = transaction.get(4).getRLPData();
-            this.data = transaction.get(5).getRLPData();
+            this.nonce = transaction.readItem();
+            this.gasPrice = transaction.readItem();
+            this.gasLimit = transaction.readItem();
+            this.receiveAddress = transaction.readItem();
+            this.value = transaction.readItem();
+            this.data = transaction.readItem();
             // only parse signature in case tx is signed
-            if (transaction.get(6).getRLPData() != null) {
-                byte[] vData =  transaction.get(6).getRLPData();
+            byte[] vData = transaction.readItem();
+            if (vData != null) {
                 BigInteger v = ByteUtil.bytesToBigInteger(vData);
-                byte[] r = transaction.get(7).getRLPData();
-                byte[] s = transaction.get(8).getRLPData();
+                byte[] r = transaction.readItem();
+                byte[] s = transaction.readItem();
                 this.chainId = extractChainIdFromRawSignature(v, r, s);
                 if (r != null && s != null) {
                     this.signature = ECDSASignature.fromComponents(r, s, getRealV(v));
@@ -389,6 +391,43 @@ public class Transaction {
         return null;
     }
 
+    /**
+     * Recovers and caches senders of all the transactions at once which is
+     * considerably faster than calling {@link #getSender()} for each of them.
+     * Transactions which senders can't be recovered are left untouched, so the
+     * subsequent {@link #getSender()} call reports the error as usual
+     */
+    public static void recoverBatch(List<Transaction> txs) {
+        List<Transaction> pending = new ArrayList<>(txs.size());
+        List<byte[]> hashes = new ArrayList<>(txs.size());
+        List<ECDSASignature> sigs = new ArrayList<>(txs.size());
+        for (Transaction tx : txs) {
+            try {
+                synchronized (tx) {
+                    if (tx.sendAddress != null || tx.getSignature() == null) continue;
+                }
+                byte[] hash = tx.getRawHash();
+                pending.add(tx);
+                hashes.add(hash);
+                sigs.add(tx.getSignature());
+            } catch (Exception e) {
+                // malformed transaction, leave it for getSender()
+            }
+        }
+        if (pending.isEmpty()) return;
+
+        byte[][] keys = Secp256k1.recoverBatch(hashes.toArray(new byte[0][]), sigs.toArray(new ECDSASignature[0]));
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == null) continue;
+            Transaction tx = pending.get(i);
+            synchronized (tx) {
+                if (tx.sendAddress == null) {
+                    tx.sendAddress = ECKey.computeAddress(keys[i]);
+                }
+            }
+        }
+    }
+
     public Integer getChainId() {
         rlpParse();
         return chainId == null ? null : (int) chainId;
@@ -443,81 +482,70 @@ public class Transaction {
     public byte[] getEncodedRaw() {
 
         rlpParse();
-        byte[] rlpRaw;
 
-        // parse null as 0 for nonce
-        byte[] nonce = null;
-        if (this.nonce == null || this.nonce.length == 1 && this.nonce[0] == 0) {
-            nonce = RLP.encodeElement(null);
-        } else {
-            nonce = RLP.encodeElement(this.nonce);
-        }
-        byte[] gasPrice = RLP.encodeElement(this.gasPrice);
-        byte[] gasLimit = RLP.encodeElement(this.gasLimit);
-        byte[] receiveAddress = RLP.encodeElement(this.receiveAddress);
-        byte[] value = RLP.encodeElement(this.value);
-        byte[] data = RLP.encodeElement(this.data);
-
-        // Since EIP-155 use chainId for v
-        if (chainId == null) {
-            rlpRaw = RLP.encodeList(nonce, gasPrice, gasLimit, receiveAddress,
-                    value, data);
-        } else {
-            byte[] v, r, s;
-            v = RLP.encodeInt(chainId);
-            r = RLP.encodeElement(EMPTY_BYTE_ARRAY);
-            s = RLP.encodeElement(EMPTY_BYTE_ARRAY);
-            rlpRaw = RLP.encodeList(nonce, gasPrice, gasLimit, receiveAddress,
-                    value, data, v, r, s);
-        }
-        return rlpRaw;
+        return RLPWriter.encode(w -> {
+            w.startList();
+            encodeFields(w);
+            // Since EIP-155 use chainId for v
+            if (chainId != null) {
+                w.writeInt(chainId)
+                        .writeItem(EMPTY_BYTE_ARRAY)
+                        .writeItem(EMPTY_BYTE_ARRAY);
+            }
+            w.endList();
+        });
     }
 
     public byte[] getEncoded() {
 
         if (rlpEncoded != null) return rlpEncoded;
 
-        // parse null as 0 for nonce
-        byte[] nonce = null;
-        if (this.nonce == null || this.nonce.length == 1 && this.nonce[0] == 0) {
-            nonce = RLP.encodeElement(null);
-        } else {
-            nonce = RLP.encodeElement(this.nonce);
-        }
-        byte[] gasPrice = RLP.encodeElement(this.gasPrice);
-        byte[] gasLimit = RLP.encodeElement(this.gasLimit);
-        byte[] receiveAddress = RLP.encodeElement(this.receiveAddress);
-        byte[] value = RLP.encodeElement(this.value);
-        byte[] data = RLP.encodeElement(this.data);
-
-        byte[] v, r, s;
-
-        if (signature != null) {
-            int encodeV;
-            if (chainId == null) {
-                encodeV = signature.v;
+        this.rlpEncoded = RLPWriter.encode(w -> {
+            w.startList();
+            encodeFields(w);
+            if (signature != null) {
+                int encodeV;
+                if (chainId == null) {
+                    encodeV = signature.v;
+                } else {
+                    encodeV = signature.v - LOWER_REAL_V;
+                    encodeV += chainId * 2 + CHAIN_ID_INC;
+                }
+                w.writeInt(encodeV)
+                        .writeBigInteger(signature.r)
+                        .writeBigInteger(signature.s);
             } else {
-                encodeV = signature.v - LOWER_REAL_V;
-                encodeV += chainId * 2 + CHAIN_ID_INC;
+                // Since EIP-155 use chainId for v
+                if (chainId == null) {
+                    w.writeItem(EMPTY_BYTE_ARRAY);
+                } else {
+                    w.writeInt(chainId);
+                }
+                w.writeItem(EMPTY_BYTE_ARRAY)
+                        .writeItem(EMPTY_BYTE_ARRAY);
             }
-            v = RLP.encodeInt(encodeV);
-            r = RLP.encodeElement(BigIntegers.asUnsignedByteArray(signature.r));
-            s = RLP.encodeElement(BigIntegers.asUnsignedByteArray(signature.s));
-        } else {
-            // Since EIP-155 use chainId for v
-            v = chainId == null ? RLP.encodeElement(EMPTY_BYTE_ARRAY) : RLP.encodeInt(chainId);
-            r = RLP.encodeElement(EMPTY_BYTE_ARRAY);
-            s = RLP.encodeElement(EMPTY_BYTE_ARRAY);
-        }
-
-        this.rlpEncoded = RLP.encodeList(nonce, gasPrice, gasLimit,
-                receiveAddress, value, data, v, r, s);
+            w.endList();
+        });
 
         this.hash = HashUtil.sha3(rlpEncoded);
 
         return rlpEncoded;
     }
 
+    private void encodeFields(RLPWriter writer) {
+        // parse null as 0 for nonce
+        if (this.nonce == null || this.nonce.length == 1 && this.nonce[0] == 0) {
+            writer.writeItem(EMPTY_BYTE_ARRAY);
+        } else {
+            writer.writeItem(this.nonce);
+        }
+        writer.writeItem(gasPrice)
+                .writeItem(gasLimit)
+                .writeItem(receiveAddress)
+                .writeItem(value)
+                .writeItem(data);
+    }
+
     @Override
     public int hashCode() {
 
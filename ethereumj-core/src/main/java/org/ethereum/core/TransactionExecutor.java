@@ -440,8 +440,9 @@ public class TransactionExecutor {
         logger.info("Pay total refund to sender: [{}], refund val: [{}]", toHexString(tx.getSender()), summary.getRefund());
 
         // Transfer fees to miner
-        track.addBalance(coinbase, summary.getFee());
-        touchedAccounts.add(coinbase);
+        if (track.addCoinbaseFee(coinbase, summary.getFee())) {
+            touchedAccounts.add(coinbase);
+        }
         logger.info("Pay fees to miner: [{}], feesEarned: [{}]", toHexString(coinbase), summary.getFee());
 
         if (result != null) {
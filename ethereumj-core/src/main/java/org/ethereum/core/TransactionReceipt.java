@@ -19,10 +19,10 @@ package org.ethereum.core;
 
 import org.ethereum.datasource.MemSizeEstimator;
 import org.ethereum.util.ByteUtil;
-import org.ethereum.util.RLP;
 import org.ethereum.util.RLPElement;
-import org.ethereum.util.RLPItem;
 import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPReader;
+import org.ethereum.util.RLPWriter;
 import org.ethereum.vm.LogInfo;
 import org.spongycastle.util.BigIntegers;
 
@@ -63,29 +63,22 @@ public class TransactionReceipt {
 
     public TransactionReceipt(byte[] rlp) {
 
-        RLPList params = RLP.decode2(rlp);
-        RLPList receipt = (RLPList) params.get(0);
+        RLPReader receipt = RLPReader.readList(rlp);
 
-        RLPItem postTxStateRLP = (RLPItem) receipt.get(0);
-        RLPItem cumulativeGasRLP = (RLPItem) receipt.get(1);
-        RLPItem bloomRLP = (RLPItem) receipt.get(2);
-        RLPList logs = (RLPList) receipt.get(3);
-        RLPItem gasUsedRLP = (RLPItem) receipt.get(4);
-        RLPItem result = (RLPItem) receipt.get(5);
+        postTxState = nullToEmpty(receipt.readItem());
+        cumulativeGas = receipt.readItem();
+        bloomFilter = new Bloom(receipt.readItem());
+        RLPReader logs = receipt.readList();
+        gasUsed = receipt.readItem();
+        executionResult = receipt.readItemOrEmpty();
 
-        postTxState = nullToEmpty(postTxStateRLP.getRLPData());
-        cumulativeGas = cumulativeGasRLP.getRLPData();
-        bloomFilter = new Bloom(bloomRLP.getRLPData());
-        gasUsed = gasUsedRLP.getRLPData();
-        executionResult = (executionResult = result.getRLPData()) == null ? EMPTY_BYTE_ARRAY : executionResult;
-
-        if (receipt.size() > 6) {
-            byte[] errBytes = receipt.get(6).getRLPData();
+        if (receipt.hasNext()) {
+            byte[] errBytes = receipt.readItem();
             error = errBytes != null ? new String(errBytes, StandardCharsets.UTF_8) : "";
         }
 
-        for (RLPElement log : logs) {
-            LogInfo logInfo = new LogInfo(log.getRLPData());
+        while (logs.hasNext()) {
+            LogInfo logInfo = new LogInfo(logs.readList());
             logInfoList.add(logInfo);
         }
 
@@ -178,31 +171,32 @@ public class TransactionReceipt {
     }
 
     public byte[] getEncoded(boolean receiptTrie) {
+        return RLPWriter.encode(w -> encode(w, receiptTrie));
+    }
 
-        byte[] postTxStateRLP = RLP.encodeElement(this.postTxState);
-        byte[] cumulativeGasRLP = RLP.encodeElement(this.cumulativeGas);
-        byte[] bloomRLP = RLP.encodeElement(this.bloomFilter.data);
+    /**
+     * Writes the receipt list to the writer, see {@link #getEncoded(boolean)}
+     */
+    public void encode(RLPWriter writer, boolean receiptTrie) {
+        writer.startList()
+                .writeItem(postTxState)
+                .writeItem(cumulativeGas)
+                .writeItem(bloomFilter.data);
 
-        final byte[] logInfoListRLP;
+        writer.startList();
         if (logInfoList != null) {
-            byte[][] logInfoListE = new byte[logInfoList.size()][];
-
-            int i = 0;
             for (LogInfo logInfo : logInfoList) {
-                logInfoListE[i] = logInfo.getEncoded();
-                ++i;
+                logInfo.encode(writer);
             }
-            logInfoListRLP = RLP.encodeList(logInfoListE);
-        } else {
-            logInfoListRLP = RLP.encodeList();
         }
+        writer.endList();
 
-        return receiptTrie ?
-                RLP.encodeList(postTxStateRLP, cumulativeGasRLP, bloomRLP, logInfoListRLP):
-                RLP.encodeList(postTxStateRLP, cumulativeGasRLP, bloomRLP, logInfoListRLP,
-                        RLP.encodeElement(gasUsed), RLP.encodeElement(executionResult),
-                        RLP.encodeElement(error.getBytes(StandardCharsets.UTF_8)));
-
+        if (!receiptTrie) {
+            writer.writeItem(gasUsed)
+                    .writeItem(executionResult)
+                    .writeItem(error.getBytes(StandardCharsets.UTF_8));
+        }
+        writer.endList();
     }
 
     public void setPostTxState(byte[] postTxState) {
@@ -27,6 +27,7 @@ import org.spongycastle.crypto.Digest;
 import org.spongycastle.crypto.digests.RIPEMD160Digest;
 import org.spongycastle.util.encoders.Hex;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.Provider;
@@ -51,12 +52,21 @@ public class HashUtil {
     private static final String HASH_256_ALGORITHM_NAME;
     private static final String HASH_512_ALGORITHM_NAME;
 
+    /**
+     * Digest instances are reused by the owning thread, since obtaining a new instance
+     * from the provider for every hash is much more expensive than hashing of short inputs
+     */
+    private static final ThreadLocal<MessageDigest> HASH_256_DIGEST;
+    private static final ThreadLocal<MessageDigest> HASH_512_DIGEST;
+
     static {
         SystemProperties props = SystemProperties.getDefault();
         Security.addProvider(SpongyCastleProvider.getInstance());
         CRYPTO_PROVIDER = Security.getProvider(props.getCryptoProviderName());
         HASH_256_ALGORITHM_NAME = props.getHash256AlgName();
         HASH_512_ALGORITHM_NAME = props.getHash512AlgName();
+        HASH_256_DIGEST = ThreadLocal.withInitial(() -> newDigest(HASH_256_ALGORITHM_NAME));
+        HASH_512_DIGEST = ThreadLocal.withInitial(() -> newDigest(HASH_512_ALGORITHM_NAME));
         EMPTY_DATA_HASH = sha3(EMPTY_BYTE_ARRAY);
         EMPTY_LIST_HASH = sha3(RLP.encodeList());
         EMPTY_TRIE_HASH = sha3(RLP.encodeElement(EMPTY_BYTE_ARRAY));
@@ -77,29 +87,53 @@ public class HashUtil {
         }
     }
 
-    public static byte[] sha3(byte[] input) {
-        MessageDigest digest;
+    private static MessageDigest newDigest(String algorithm) {
         try {
-            digest = MessageDigest.getInstance(HASH_256_ALGORITHM_NAME, CRYPTO_PROVIDER);
-            digest.update(input);
-            return digest.digest();
+            return MessageDigest.getInstance(algorithm, CRYPTO_PROVIDER);
         } catch (NoSuchAlgorithmException e) {
             LOG.error("Can't find such algorithm", e);
             throw new RuntimeException(e);
         }
+    }
+
+    /**
+     * Returns thread local 256-bit digest ready for use.
+     * Digest is reset by {@link MessageDigest#digest()} so it's only required
+     * to reset it when hashing was interrupted by an exception
+     */
+    private static MessageDigest sha3Digest() {
+        return HASH_256_DIGEST.get();
+    }
 
+    public static byte[] sha3(byte[] input) {
+        return sha3(input, 0, input.length);
     }
 
     public static byte[] sha3(byte[] input1, byte[] input2) {
-        MessageDigest digest;
+        MessageDigest digest = sha3Digest();
         try {
-            digest = MessageDigest.getInstance(HASH_256_ALGORITHM_NAME, CRYPTO_PROVIDER);
             digest.update(input1, 0, input1.length);
             digest.update(input2, 0, input2.length);
             return digest.digest();
-        } catch (NoSuchAlgorithmException e) {
-            LOG.error("Can't find such algorithm", e);
-            throw new RuntimeException(e);
+        } catch (RuntimeException e) {
+            digest.reset();
+            throw e;
+        }
+    }
+
+    /**
+     * Hashes concatenation of the inputs without actually concatenating them
+     */
+    public static byte[] sha3(byte[]... inputs) {
+        MessageDigest digest = sha3Digest();
+        try {
+            for (byte[] input : inputs) {
+                digest.update(input, 0, input.length);
+            }
+            return digest.digest();
+        } catch (RuntimeException e) {
+            digest.reset();
+            throw e;
         }
     }
 
@@ -115,26 +149,58 @@ public class HashUtil {
      * @return - keccak hash of the chunk
      */
     public static byte[] sha3(byte[] input, int start, int length) {
-        MessageDigest digest;
+        MessageDigest digest = sha3Digest();
         try {
-            digest = MessageDigest.getInstance(HASH_256_ALGORITHM_NAME, CRYPTO_PROVIDER);
             digest.update(input, start, length);
             return digest.digest();
-        } catch (NoSuchAlgorithmException e) {
-            LOG.error("Can't find such algorithm", e);
-            throw new RuntimeException(e);
+        } catch (RuntimeException e) {
+            digest.reset();
+            throw e;
         }
     }
 
+    /**
+     * Hashes remaining bytes of the buffer, heap buffers are hashed in place
+     * The buffer position is moved to its limit
+     */
+    public static byte[] sha3(ByteBuffer input) {
+        MessageDigest digest = sha3Digest();
+        try {
+            // not relying on update(ByteBuffer) since cryptohash digests don't implement engineUpdate()
+            if (input.hasArray()) {
+                digest.update(input.array(), input.arrayOffset() + input.position(), input.remaining());
+                input.position(input.limit());
+            } else {
+                byte[] buf = new byte[Math.min(input.remaining(), 4096)];
+                while (input.hasRemaining()) {
+                    int len = Math.min(input.remaining(), buf.length);
+                    input.get(buf, 0, len);
+                    digest.update(buf, 0, len);
+                }
+            }
+            return digest.digest();
+        } catch (RuntimeException e) {
+            digest.reset();
+            throw e;
+        }
+    }
+
+    /**
+     * @return new digest instance of the configured 512-bit hash algorithm
+     *         which may be reused for hashing in a loop
+     */
+    public static MessageDigest sha512Digest() {
+        return newDigest(HASH_512_ALGORITHM_NAME);
+    }
+
     public static byte[] sha512(byte[] input) {
-        MessageDigest digest;
+        MessageDigest digest = HASH_512_DIGEST.get();
         try {
-            digest = MessageDigest.getInstance(HASH_512_ALGORITHM_NAME, CRYPTO_PROVIDER);
             digest.update(input);
             return digest.digest();
-        } catch (NoSuchAlgorithmException e) {
-            LOG.error("Can't find such algorithm", e);
-            throw new RuntimeException(e);
+        } catch (RuntimeException e) {
+            digest.reset();
+            throw e;
         }
     }
 
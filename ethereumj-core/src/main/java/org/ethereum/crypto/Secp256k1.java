@@ -0,0 +1,785 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.crypto;
+
+import org.ethereum.util.ByteUtil;
+
+import java.math.BigInteger;
+
+/**
+ * Pure Java secp256k1 arithmetic specialized for the ECDSA public key recovery.
+ *
+ * Field elements are kept in ten 26-bit limbs (int[10]) so the multiplication is done with
+ * plain 64-bit arithmetic and the reduction uses the special form of the prime
+ * p = 2^256 - 2^32 - 977. The recovery Q = u1*G + u2*R is computed with the GLV endomorphism
+ * (lambda * (x, y) = (beta * x, y)) which splits each scalar into two ~128 bit halves, and all
+ * four resulting multiplications are interleaved in a single double-and-add loop (Shamir's trick)
+ * over wNAF digits. Odd multiples of G and lambda*G are precomputed once.
+ *
+ * {@link #recoverBatch(byte[][], ECKey.ECDSASignature[])} additionally shares the modular
+ * inversions (r^-1 mod n and the final Z^-1 mod p) across all the signatures
+ * (Montgomery's trick).
+ *
+ * The results are identical to those of {@link ECKey#recoverPubBytesFromSignature}
+ */
+public final class Secp256k1 {
+
+    static final BigInteger P = new BigInteger("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEFFFFFC2F", 16);
+    static final BigInteger N = new BigInteger("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEBAAEDCE6AF48A03BBFD25E8CD0364141", 16);
+    private static final BigInteger HALF_N = N.shiftRight(1);
+
+    private static final byte[] GX = ByteUtil.hexStringToBytes("79BE667EF9DCBBAC55A06295CE870B07029BFCDB2DCE28D959F2815B16F81798");
+    private static final byte[] GY = ByteUtil.hexStringToBytes("483ADA7726A3C4655DA4FBFC0E1108A8FD17B448A68554199C47D08FFB10D4B8");
+
+    // GLV endomorphism: lambda * (x, y) = (beta * x, y)
+    private static final byte[] BETA_BYTES = ByteUtil.hexStringToBytes("7AE96A2B657C07106E64479EAC3434E99CF0497512F58995C1396C28719501EE");
+    static final BigInteger LAMBDA = new BigInteger("5363AD4CC05C30E0A5261C028812645A122E22EA20816678DF02967C1B23BD72", 16);
+    // short basis of the lattice {(a, b): a + b * lambda = 0 mod n}
+    private static final BigInteger A1 = new BigInteger("3086D221A7D46BCDE86C90E49284EB15", 16);
+    private static final BigInteger B1 = new BigInteger("-E4437ED6010E88286F547FA90ABFE4C3", 16);
+    private static final BigInteger A2 = new BigInteger("114CA50F7A8E2F3F657C1108D9D44CFD8", 16);
+    private static final BigInteger B2 = A1;
+
+    private static final int M26 = 0x3FFFFFF;
+    private static final int M22 = 0x3FFFFF;
+    // 2p with every limb not less than the corresponding limb of a normalized element
+    private static final int[] P2 = {0x7FFF85E, 0x7FFFF7E, 0x7FFFFFE, 0x7FFFFFE, 0x7FFFFFE,
+            0x7FFFFFE, 0x7FFFFFE, 0x7FFFFFE, 0x7FFFFFE, 0x7FFFFE};
+
+    private static final int[] BETA = feFromBytes(BETA_BYTES);
+    private static final int[] SEVEN = feFromInt(7);
+
+    // wNAF window widths: precomputed table for G, runtime table for R
+    private static final int G_WINDOW = 8;
+    private static final int R_WINDOW = 5;
+
+    // odd multiples 1G, 3G, ..., (2^(G_WINDOW-1) - 1)G in affine coordinates and the same for lambda*G
+    private static final int[][] G_TABLE_X, G_TABLE_Y, LG_TABLE_X;
+
+    static {
+        int size = 1 << (G_WINDOW - 2);
+        G_TABLE_X = new int[size][];
+        G_TABLE_Y = new int[size][];
+        LG_TABLE_X = new int[size][];
+
+        Ctx ctx = new Ctx();
+        Point g = new Point();
+        g.setAffine(feFromBytes(GX), feFromBytes(GY));
+        Point g2 = new Point();
+        g2.set(g);
+        ctx.dbl(g2);
+
+        Point[] table = new Point[size];
+        table[0] = g;
+        for (int i = 1; i < size; i++) {
+            table[i] = new Point();
+            table[i].set(table[i - 1]);
+            ctx.add(table[i], g2);
+        }
+        for (int i = 0; i < size; i++) {
+            int[] x = new int[10], y = new int[10];
+            ctx.toAffine(table[i], ctx.inv(new int[10], table[i].z), x, y);
+            G_TABLE_X[i] = x;
+            G_TABLE_Y[i] = y;
+            LG_TABLE_X[i] = ctx.mul(new int[10], x, BETA);
+            normalize(LG_TABLE_X[i]);
+        }
+    }
+
+    private Secp256k1() {
+    }
+
+    /**
+     * Recovers the public key from the signature
+     *
+     * @param recId recovery id [0..3]
+     * @return 65-byte uncompressed public key or null if the key can't be recovered
+     * @throws IllegalArgumentException if R point can't be decoded from r
+     * @throws ArithmeticException if r is 0 mod n
+     */
+    public static byte[] recoverPubBytes(int recId, BigInteger r, BigInteger s, byte[] messageHash) {
+        Ctx ctx = new Ctx();
+        Point q = ctx.recoverPoint(recId, r, null, s, messageHash);
+        if (q == null || q.infinity) return null;
+
+        int[] x = new int[10], y = new int[10];
+        ctx.toAffine(q, ctx.inv(new int[10], q.z), x, y);
+        return encode(x, y);
+    }
+
+    /**
+     * Recovers public keys from a number of signatures sharing the expensive inversions
+     * between them. Signature headers are interpreted the same way as by
+     * {@link ECKey#signatureToKeyBytes(byte[], ECKey.ECDSASignature)}
+     *
+     * @return 65-byte uncompressed public keys, null items for signatures which can't be recovered
+     */
+    public static byte[][] recoverBatch(byte[][] messageHashes, ECKey.ECDSASignature[] sigs) {
+        int cnt = sigs.length;
+        byte[][] ret = new byte[cnt][];
+
+        // r^-1 mod n for all the signatures with a single inversion
+        BigInteger[] rInv = new BigInteger[cnt];
+        BigInteger acc = BigInteger.ONE;
+        for (int i = 0; i < cnt; i++) {
+            ECKey.ECDSASignature sig = sigs[i];
+            if (sig == null || messageHashes[i] == null || messageHashes[i].length != 32 ||
+                    sig.r.signum() <= 0 || sig.s.signum() < 0 || recId(sig.v) < 0) continue;
+            BigInteger r = sig.r.mod(N);
+            if (r.signum() == 0) continue;
+            rInv[i] = acc;
+            acc = acc.multiply(r).mod(N);
+        }
+        BigInteger accInv = acc.modInverse(N);
+        for (int i = cnt - 1; i >= 0; i--) {
+            if (rInv[i] == null) continue;
+            BigInteger r = sigs[i].r.mod(N);
+            rInv[i] = rInv[i].multiply(accInv).mod(N);
+            accInv = accInv.multiply(r).mod(N);
+        }
+
+        Ctx ctx = new Ctx();
+        Point[] points = new Point[cnt];
+        for (int i = 0; i < cnt; i++) {
+            if (rInv[i] == null) continue;
+            try {
+                Point q = ctx.recoverPoint(recId(sigs[i].v), sigs[i].r, rInv[i], sigs[i].s, messageHashes[i]);
+                if (q != null && !q.infinity) points[i] = q;
+            } catch (IllegalArgumentException e) {
+                // the same as not recoverable
+            }
+        }
+
+        // Z^-1 for all the resulting points with a single inversion
+        int[][] zInv = new int[cnt][];
+        int[] zAcc = feFromInt(1);
+        for (int i = 0; i < cnt; i++) {
+            if (points[i] == null) continue;
+            zInv[i] = zAcc.clone();
+            ctx.mul(zAcc, zAcc, points[i].z);
+        }
+        int[] zAccInv = ctx.inv(new int[10], zAcc);
+        for (int i = cnt - 1; i >= 0; i--) {
+            if (points[i] == null) continue;
+            ctx.mul(zInv[i], zInv[i], zAccInv);
+            ctx.mul(zAccInv, zAccInv, points[i].z);
+
+            int[] x = new int[10], y = new int[10];
+            ctx.toAffine(points[i], zInv[i], x, y);
+            ret[i] = encode(x, y);
+        }
+        return ret;
+    }
+
+    private static int recId(byte v) {
+        int header = v;
+        if (header < 27 || header > 34) return -1;
+        if (header >= 31) header -= 4;
+        return header - 27;
+    }
+
+    private static byte[] encode(int[] x, int[] y) {
+        byte[] ret = new byte[65];
+        ret[0] = 0x04;
+        feToBytes(x, ret, 1);
+        feToBytes(y, ret, 33);
+        return ret;
+    }
+
+    /**
+     * Splits k into k1 + k2 * lambda (mod n) with |k1|, |k2| ~ 128 bits
+     */
+    static BigInteger[] splitScalar(BigInteger k) {
+        BigInteger c1 = B2.multiply(k).add(HALF_N).divide(N);
+        BigInteger c2 = B1.negate().multiply(k).add(HALF_N).divide(N);
+        BigInteger k1 = k.subtract(c1.multiply(A1)).subtract(c2.multiply(A2));
+        BigInteger k2 = c1.multiply(B1).add(c2.multiply(B2)).negate();
+        return new BigInteger[] {k1, k2};
+    }
+
+    /**
+     * Computes width-w NAF of the non-negative k
+     * @return the number of digits
+     */
+    static int wnaf(BigInteger k, int w, int[] naf) {
+        int len = k.bitLength();
+        long[] words = new long[(len >>> 6) + 2];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = k.shiftRight(i * 64).longValue();
+        }
+
+        int bit = 0, carry = 0, last = 0;
+        while (bit < len) {
+            if (bit(words, bit) == carry) {
+                bit++;
+                continue;
+            }
+            int now = Math.min(w, len - bit);
+            int word = bits(words, bit, now) + carry;
+            carry = (word >> (w - 1)) & 1;
+            word -= carry << w;
+            naf[bit] = word;
+            last = bit + 1;
+            bit += now;
+        }
+        if (carry != 0) {
+            naf[bit] = carry;
+            last = bit + 1;
+        }
+        return last;
+    }
+
+    private static int bit(long[] words, int pos) {
+        return (int) (words[pos >>> 6] >>> (pos & 63)) & 1;
+    }
+
+    private static int bits(long[] words, int pos, int count) {
+        int off = pos & 63;
+        long v = words[pos >>> 6] >>> off;
+        if (off + count > 64) {
+            v |= words[(pos >>> 6) + 1] << (64 - off);
+        }
+        return (int) v & ((1 << count) - 1);
+    }
+
+    /*
+     * Field arithmetic mod p
+     *
+     * An element is int[10] of 26-bit limbs (the top one is 22-bit), value = sum(a[i] * 2^(26 * i)).
+     * All the operations return elements less than 2^256 but not necessarily less than p,
+     * normalize() does the final reduction
+     */
+
+    static int[] feFromInt(int v) {
+        int[] ret = new int[10];
+        ret[0] = v;
+        return ret;
+    }
+
+    static int[] feFromBytes(byte[] b) {
+        long[] words = new long[5];
+        for (int i = 0; i < 32; i++) {
+            int pos = (31 - i) * 8;
+            words[pos >>> 6] |= (b[i] & 0xFFL) << (pos & 63);
+        }
+        int[] ret = new int[10];
+        for (int i = 0; i < 10; i++) {
+            ret[i] = bits(words, i * 26, i == 9 ? 22 : 26);
+        }
+        return ret;
+    }
+
+    static void feToBytes(int[] a, byte[] out, int off) {
+        int[] t = a.clone();
+        normalize(t);
+        for (int i = 0; i < 32; i++) {
+            int pos = (31 - i) * 8;
+            int limb = pos / 26, sh = pos % 26;
+            long v = (t[limb] & 0xFFFFFFFFL) >>> sh;
+            if (sh > 18 && limb < 9) {
+                v |= (long) t[limb + 1] << (26 - sh);
+            }
+            out[off + i] = (byte) v;
+        }
+    }
+
+    static BigInteger feToBigInteger(int[] a) {
+        byte[] b = new byte[32];
+        feToBytes(a, b, 0);
+        return new BigInteger(1, b);
+    }
+
+    /**
+     * Reduces an element less than p * 2 to the canonical form
+     */
+    static void normalize(int[] a) {
+        boolean geP = a[9] == M22 && a[8] == M26 && a[7] == M26 && a[6] == M26 && a[5] == M26 &&
+                a[4] == M26 && a[3] == M26 && a[2] == M26 &&
+                (a[1] > 0x3FFFFBF || (a[1] == 0x3FFFFBF && a[0] >= 0x3FFFC2F));
+        if (geP) {
+            // a - p = a + 2^32 + 977 - 2^256
+            long c = a[0] + 977L;
+            a[0] = (int) c & M26;
+            c = (c >>> 26) + a[1] + (1 << 6);
+            a[1] = (int) c & M26;
+            for (int i = 2; i < 10; i++) {
+                c = (c >>> 26) + a[i];
+                a[i] = (int) c & M26;
+            }
+            a[9] &= M22;
+        }
+    }
+
+    static boolean feIsZero(int[] a) {
+        int[] t = a.clone();
+        normalize(t);
+        int ret = 0;
+        for (int v : t) ret |= v;
+        return ret == 0;
+    }
+
+    static boolean feEquals(int[] a, int[] b) {
+        int[] ta = a.clone(), tb = b.clone();
+        normalize(ta);
+        normalize(tb);
+        for (int i = 0; i < 10; i++) {
+            if (ta[i] != tb[i]) return false;
+        }
+        return true;
+    }
+
+    static boolean feIsOdd(int[] a) {
+        int[] t = a.clone();
+        normalize(t);
+        return (t[0] & 1) != 0;
+    }
+
+    /**
+     * Holds temporary values, an instance shouldn't be shared between threads
+     */
+    private static final class Ctx {
+        private final long[] c = new long[20];
+        private final long[] d = new long[11];
+
+        private final int[] t0 = new int[10], t1 = new int[10], t2 = new int[10], t3 = new int[10],
+                t4 = new int[10], t5 = new int[10], t6 = new int[10], t7 = new int[10];
+
+        private final int[] naf1 = new int[160], naf2 = new int[160], naf3 = new int[160], naf4 = new int[160];
+        private final int[] negY = new int[10];
+        private final Point neg = new Point();
+
+        /**
+         * d[0..10] (d[10] of weight 2^260) to r[0..9] < 2^256
+         */
+        private void reduce(int[] r) {
+            long[] d = this.d;
+            while (true) {
+                for (int k = 0; k < 9; k++) {
+                    d[k + 1] += d[k] >>> 26;
+                    d[k] &= M26;
+                }
+                d[10] += d[9] >>> 26;
+                d[9] &= M26;
+                if (d[10] != 0) {
+                    // 2^260 = 2^36 + 0x3D10 (mod p)
+                    long t = d[10];
+                    d[10] = 0;
+                    d[0] += t * 0x3D10;
+                    d[1] += t << 10;
+                    continue;
+                }
+                long top = d[9] >>> 22;
+                if (top != 0) {
+                    // 2^256 = 2^32 + 977 (mod p)
+                    d[9] &= M22;
+                    d[0] += top * 977;
+                    d[1] += top << 6;
+                    continue;
+                }
+                break;
+            }
+            for (int k = 0; k < 10; k++) {
+                r[k] = (int) d[k];
+            }
+        }
+
+        int[] mul(int[] r, int[] a, int[] b) {
+            long[] c = this.c;
+            for (int k = 0; k < 20; k++) c[k] = 0;
+            for (int i = 0; i < 10; i++) {
+                long ai = a[i];
+                for (int j = 0; j < 10; j++) {
+                    c[i + j] += ai * b[j];
+                }
+            }
+            for (int k = 0; k < 19; k++) {
+                c[k + 1] += c[k] >>> 26;
+                c[k] &= M26;
+            }
+            long[] d = this.d;
+            d[0] = c[0] + c[10] * 0x3D10;
+            for (int k = 1; k < 10; k++) {
+                d[k] = c[k] + c[10 + k] * 0x3D10 + (c[9 + k] << 10);
+            }
+            d[10] = c[19] << 10;
+            reduce(r);
+            return r;
+        }
+
+        int[] sqr(int[] r, int[] a) {
+            long[] c = this.c;
+            for (int k = 0; k < 20; k++) c[k] = 0;
+            for (int i = 0; i < 10; i++) {
+                long ai = a[i];
+                c[2 * i] += ai * ai;
+                long ai2 = ai << 1;
+                for (int j = i + 1; j < 10; j++) {
+                    c[i + j] += ai2 * a[j];
+                }
+            }
+            for (int k = 0; k < 19; k++) {
+                c[k + 1] += c[k] >>> 26;
+                c[k] &= M26;
+            }
+            long[] d = this.d;
+            d[0] = c[0] + c[10] * 0x3D10;
+            for (int k = 1; k < 10; k++) {
+                d[k] = c[k] + c[10 + k] * 0x3D10 + (c[9 + k] << 10);
+            }
+            d[10] = c[19] << 10;
+            reduce(r);
+            return r;
+        }
+
+        int[] add(int[] r, int[] a, int[] b) {
+            for (int k = 0; k < 10; k++) d[k] = (long) a[k] + b[k];
+            d[10] = 0;
+            reduce(r);
+            return r;
+        }
+
+        int[] sub(int[] r, int[] a, int[] b) {
+            for (int k = 0; k < 10; k++) d[k] = (long) a[k] + P2[k] - b[k];
+            d[10] = 0;
+            reduce(r);
+            return r;
+        }
+
+        int[] neg(int[] r, int[] a) {
+            for (int k = 0; k < 10; k++) d[k] = (long) P2[k] - a[k];
+            d[10] = 0;
+            reduce(r);
+            return r;
+        }
+
+        int[] mulInt(int[] r, int[] a, int m) {
+            for (int k = 0; k < 10; k++) d[k] = (long) a[k] * m;
+            d[10] = 0;
+            reduce(r);
+            return r;
+        }
+
+        private int[] sqrN(int[] r, int[] a, int n) {
+            sqr(r, a);
+            for (int i = 1; i < n; i++) sqr(r, r);
+            return r;
+        }
+
+        /**
+         * Computes a^(2^223 - 1) into x223, also returns a^(2^2 - 1) and a^(2^22 - 1)
+         */
+        private void powChain(int[] a, int[] x2, int[] x22, int[] x223) {
+            int[] x3 = new int[10], x6 = new int[10], x9 = new int[10], x11 = new int[10],
+                    x44 = new int[10], x88 = new int[10], x176 = new int[10], x220 = new int[10];
+            mul(x2, sqr(x2, a), a);
+            mul(x3, sqr(x3, x2), a);
+            mul(x6, sqrN(x6, x3, 3), x3);
+            mul(x9, sqrN(x9, x6, 3), x3);
+            mul(x11, sqrN(x11, x9, 2), x2);
+            mul(x22, sqrN(x22, x11, 11), x11);
+            mul(x44, sqrN(x44, x22, 22), x22);
+            mul(x88, sqrN(x88, x44, 44), x44);
+            mul(x176, sqrN(x176, x88, 88), x88);
+            mul(x220, sqrN(x220, x176, 44), x44);
+            mul(x223, sqrN(x223, x220, 3), x3);
+        }
+
+        /**
+         * r = a^(p - 2) = a^-1
+         */
+        int[] inv(int[] r, int[] a) {
+            int[] x2 = new int[10], x22 = new int[10], t = new int[10];
+            powChain(a, x2, x22, t);
+            mul(t, sqrN(t, t, 23), x22);
+            mul(t, sqrN(t, t, 5), a);
+            mul(t, sqrN(t, t, 3), x2);
+            mul(r, sqrN(t, t, 2), a);
+            return r;
+        }
+
+        /**
+         * r = a^((p + 1) / 4), the square root if a is a quadratic residue
+         */
+        int[] sqrt(int[] r, int[] a) {
+            int[] x2 = new int[10], x22 = new int[10], t = new int[10];
+            powChain(a, x2, x22, t);
+            mul(t, sqrN(t, t, 23), x22);
+            mul(t, sqrN(t, t, 6), x2);
+            sqrN(r, t, 2);
+            return r;
+        }
+
+        /*
+         * Point arithmetic in Jacobian coordinates (x = X / Z^2, y = Y / Z^3), curve y^2 = x^3 + 7
+         */
+
+        void dbl(Point p) {
+            if (p.infinity) return;
+            // dbl-2009-l
+            int[] a = sqr(t0, p.x);
+            int[] b = sqr(t1, p.y);
+            int[] c = sqr(t2, b);
+            int[] dd = add(t3, p.x, b);
+            sqr(dd, dd);
+            sub(dd, dd, a);
+            sub(dd, dd, c);
+            add(dd, dd, dd);
+            int[] e = mulInt(t4, a, 3);
+            int[] f = sqr(t5, e);
+
+            mul(p.z, p.y, p.z);
+            add(p.z, p.z, p.z);
+
+            sub(p.x, f, dd);
+            sub(p.x, p.x, dd);
+
+            sub(p.y, dd, p.x);
+            mul(p.y, p.y, e);
+            mulInt(c, c, 8);
+            sub(p.y, p.y, c);
+        }
+
+        /**
+         * p += (x2, y2)
+         */
+        void addAffine(Point p, int[] x2, int[] y2) {
+            if (p.infinity) {
+                p.setAffine(x2, y2);
+                return;
+            }
+            // madd-2007-bl
+            int[] z1z1 = sqr(t0, p.z);
+            int[] u2 = mul(t1, x2, z1z1);
+            int[] s2 = mul(t2, y2, p.z);
+            mul(s2, s2, z1z1);
+            int[] h = sub(t3, u2, p.x);
+            int[] rr = sub(t4, s2, p.y);
+            add(rr, rr, rr);
+            if (feIsZero(h)) {
+                if (feIsZero(rr)) {
+                    p.setAffine(x2, y2);
+                    dbl(p);
+                } else {
+                    p.infinity = true;
+                }
+                return;
+            }
+            int[] hh = sqr(t5, h);
+            int[] i = mulInt(t6, hh, 4);
+            int[] j = mul(t7, h, i);
+            int[] v = mul(t1, p.x, i);
+
+            add(p.z, p.z, h);
+            sqr(p.z, p.z);
+            sub(p.z, p.z, z1z1);
+            sub(p.z, p.z, hh);
+
+            sqr(p.x, rr);
+            sub(p.x, p.x, j);
+            sub(p.x, p.x, v);
+            sub(p.x, p.x, v);
+
+            mul(j, j, p.y);
+            add(j, j, j);
+            sub(p.y, v, p.x);
+            mul(p.y, p.y, rr);
+            sub(p.y, p.y, j);
+        }
+
+        /**
+         * p += q
+         */
+        void add(Point p, Point q) {
+            if (q.infinity) return;
+            if (p.infinity) {
+                p.set(q);
+                return;
+            }
+            // add-2007-bl
+            int[] z1z1 = sqr(t0, p.z);
+            int[] z2z2 = sqr(t1, q.z);
+            int[] u1 = mul(t2, p.x, z2z2);
+            int[] u2 = mul(t3, q.x, z1z1);
+            int[] s1 = mul(t4, p.y, q.z);
+            mul(s1, s1, z2z2);
+            int[] s2 = mul(t5, q.y, p.z);
+            mul(s2, s2, z1z1);
+            int[] h = sub(u2, u2, u1);
+            int[] rr = sub(s2, s2, s1);
+            add(rr, rr, rr);
+            if (feIsZero(h)) {
+                if (feIsZero(rr)) {
+                    p.set(q);
+                    dbl(p);
+                } else {
+                    p.infinity = true;
+                }
+                return;
+            }
+            int[] i = add(t6, h, h);
+            sqr(i, i);
+            int[] j = mul(t7, h, i);
+            int[] v = mul(u1, u1, i);
+
+            add(p.z, p.z, q.z);
+            sqr(p.z, p.z);
+            sub(p.z, p.z, z1z1);
+            sub(p.z, p.z, z2z2);
+            mul(p.z, p.z, h);
+
+            sqr(p.x, rr);
+            sub(p.x, p.x, j);
+            sub(p.x, p.x, v);
+            sub(p.x, p.x, v);
+
+            mul(s1, s1, j);
+            add(s1, s1, s1);
+            sub(p.y, v, p.x);
+            mul(p.y, p.y, rr);
+            sub(p.y, p.y, s1);
+        }
+
+        void toAffine(Point p, int[] zInv, int[] x, int[] y) {
+            int[] zInv2 = sqr(t0, zInv);
+            mul(x, p.x, zInv2);
+            mul(y, p.y, zInv2);
+            mul(y, y, zInv);
+            normalize(x);
+            normalize(y);
+        }
+
+        /**
+         * Q = (-e * r^-1) * G + (s * r^-1) * R, where R is decoded from r and recId
+         * @param rInv r^-1 mod n or null to calculate it here
+         * @return Q in Jacobian coordinates or null if r is not a valid x coordinate
+         */
+        Point recoverPoint(int recId, BigInteger r, BigInteger rInv, BigInteger s, byte[] messageHash) {
+            BigInteger x = r.add(BigInteger.valueOf(recId / 2).multiply(N));
+            if (x.compareTo(P) >= 0) return null;
+
+            // decompress R
+            int[] rx = feFromBytes(ByteUtil.bigIntegerToBytes(x, 32));
+            int[] ry = new int[10];
+            int[] rhs = new int[10];
+            sqr(rhs, rx);
+            mul(rhs, rhs, rx);
+            add(rhs, rhs, SEVEN);
+            sqrt(ry, rhs);
+            if (!feEquals(sqr(t0, ry), rhs)) {
+                throw new IllegalArgumentException("Invalid point compression");
+            }
+            normalize(ry);
+            if (((ry[0] & 1) == 1) != ((recId & 1) == 1)) {
+                neg(ry, ry);
+                normalize(ry);
+            }
+
+            if (rInv == null) rInv = r.modInverse(N);
+            BigInteger e = new BigInteger(1, messageHash);
+            BigInteger u1 = e.negate().mod(N).multiply(rInv).mod(N);
+            BigInteger u2 = s.multiply(rInv).mod(N);
+
+            BigInteger[] k1 = splitScalar(u1);
+            BigInteger[] k2 = splitScalar(u2);
+
+            // odd multiples of R and lambda*R
+            int size = 1 << (R_WINDOW - 2);
+            Point[] rTable = new Point[size];
+            Point[] lrTable = new Point[size];
+            rTable[0] = new Point();
+            rTable[0].setAffine(rx, ry);
+            Point r2 = new Point();
+            r2.set(rTable[0]);
+            dbl(r2);
+            for (int i = 1; i < size; i++) {
+                rTable[i] = new Point();
+                rTable[i].set(rTable[i - 1]);
+                add(rTable[i], r2);
+            }
+            for (int i = 0; i < size; i++) {
+                lrTable[i] = new Point();
+                lrTable[i].set(rTable[i]);
+                mul(lrTable[i].x, lrTable[i].x, BETA);
+            }
+
+            int len1 = wnaf(k1[0].abs(), G_WINDOW, clear(naf1));
+            int len2 = wnaf(k1[1].abs(), G_WINDOW, clear(naf2));
+            int len3 = wnaf(k2[0].abs(), R_WINDOW, clear(naf3));
+            int len4 = wnaf(k2[1].abs(), R_WINDOW, clear(naf4));
+            boolean neg1 = k1[0].signum() < 0, neg2 = k1[1].signum() < 0;
+            boolean neg3 = k2[0].signum() < 0, neg4 = k2[1].signum() < 0;
+
+            Point q = new Point();
+            q.infinity = true;
+            int len = Math.max(Math.max(len1, len2), Math.max(len3, len4));
+            for (int i = len - 1; i >= 0; i--) {
+                dbl(q);
+                if (naf1[i] != 0) addAffine(q, G_TABLE_X, G_TABLE_Y, naf1[i], neg1);
+                if (naf2[i] != 0) addAffine(q, LG_TABLE_X, G_TABLE_Y, naf2[i], neg2);
+                if (naf3[i] != 0) addJacobian(q, rTable, naf3[i], neg3);
+                if (naf4[i] != 0) addJacobian(q, lrTable, naf4[i], neg4);
+            }
+            return q;
+        }
+
+        private int[] clear(int[] naf) {
+            for (int i = 0; i < naf.length; i++) naf[i] = 0;
+            return naf;
+        }
+
+        private void addAffine(Point q, int[][] tableX, int[][] tableY, int digit, boolean negate) {
+            int idx = (Math.abs(digit) - 1) >> 1;
+            if ((digit < 0) != negate) {
+                addAffine(q, tableX[idx], neg(negY, tableY[idx]));
+            } else {
+                addAffine(q, tableX[idx], tableY[idx]);
+            }
+        }
+
+        private void addJacobian(Point q, Point[] table, int digit, boolean negate) {
+            Point p = table[(Math.abs(digit) - 1) >> 1];
+            if ((digit < 0) != negate) {
+                neg.set(p);
+                neg(neg.y, neg.y);
+                add(q, neg);
+            } else {
+                add(q, p);
+            }
+        }
+    }
+
+    private static final class Point {
+        final int[] x = new int[10], y = new int[10], z = new int[10];
+        boolean infinity;
+
+        void set(Point p) {
+            System.arraycopy(p.x, 0, x, 0, 10);
+            System.arraycopy(p.y, 0, y, 0, 10);
+            System.arraycopy(p.z, 0, z, 0, 10);
+            infinity = p.infinity;
+        }
+
+        void setAffine(int[] ax, int[] ay) {
+            System.arraycopy(ax, 0, x, 0, 10);
+            System.arraycopy(ay, 0, y, 0, 10);
+            for (int i = 1; i < 10; i++) z[i] = 0;
+            z[0] = 1;
+            infinity = false;
+        }
+    }
+}
@@ -92,6 +92,13 @@ public abstract class AsyncWriteCache<Key, Value> extends AbstractCachedSource<K
         }
     }
 
+    @Override
+    public Map<Key, Value> getAll(Collection<Key> keys) {
+        try (ALock l = rLock.lock()) {
+            return curCache.getAll(keys);
+        }
+    }
+
     @Override
     public synchronized boolean flush() {
         try {
@@ -119,7 +126,7 @@ public abstract class AsyncWriteCache<Key, Value> extends AbstractCachedSource<K
         }
 
         try (ALock l = wLock.lock()) {
-            flushingCache.cache = curCache.cache;
+            flushingCache.takeCache(curCache);
             curCache = createCache(flushingCache);
         }
     }
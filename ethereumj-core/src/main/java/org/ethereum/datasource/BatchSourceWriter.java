@@ -17,6 +17,7 @@
  */
 package org.ethereum.datasource;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -53,6 +54,11 @@ public class BatchSourceWriter<Key, Value> extends AbstractChainedSource<Key, Va
         return getSource().get(key);
     }
 
+    @Override
+    public Map<Key, Value> getAll(Collection<Key> keys) {
+        return getSource().getAll(keys);
+    }
+
     @Override
     public synchronized boolean flushImpl() {
         if (!buf.isEmpty()) {
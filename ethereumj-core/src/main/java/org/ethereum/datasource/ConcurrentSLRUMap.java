@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.datasource;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * Thread-safe Map with the total weight limit which is intended for use as a shared read cache.
+ *
+ * Entries are distributed by key hash across a number of independently locked segments
+ * so concurrent readers rarely contend. Each segment applies Segmented LRU eviction:
+ * new entries enter the 'probation' part and get promoted to the 'protected' part only
+ * when accessed again, so a single scan over many entries evicts from probation only
+ * and doesn't flush the frequently used entries.
+ *
+ * Entry weights are calculated by the supplied weigher when the entry is added,
+ * the eviction listener is invoked for each evicted entry while the segment lock is held.
+ */
+public class ConcurrentSLRUMap<K, V> extends AbstractMap<K, V> {
+
+    public static final int DEFAULT_CONCURRENCY = 16;
+    private static final int PROTECTED_PERCENT = 80;
+
+    private final Segment<K, V>[] segments;
+    private final int segmentMask;
+
+    public ConcurrentSLRUMap(long maxWeight, ToLongBiFunction<K, V> weigher, BiConsumer<K, V> evictionListener) {
+        this(maxWeight, DEFAULT_CONCURRENCY, weigher, evictionListener);
+    }
+
+    /**
+     * @param maxWeight total weight limit which is evenly split between segments
+     * @param concurrency expected number of concurrent threads, rounded up to the power of 2 segments count
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentSLRUMap(long maxWeight, int concurrency, ToLongBiFunction<K, V> weigher,
+                             BiConsumer<K, V> evictionListener) {
+        int cnt = 1;
+        while (cnt < concurrency) cnt <<= 1;
+        this.segments = new Segment[cnt];
+        for (int i = 0; i < cnt; i++) {
+            segments[i] = new Segment<>(maxWeight / cnt, weigher, evictionListener);
+        }
+        this.segmentMask = cnt - 1;
+    }
+
+    private Segment<K, V> segment(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & segmentMask];
+    }
+
+    @Override
+    public V get(Object key) {
+        return segment(key).get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return segment(key).containsKey(key);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return segment(key).put(key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return segment(key).put(key, value, true);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return segment(key).remove(key);
+    }
+
+    @Override
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public int size() {
+        int ret = 0;
+        for (Segment<K, V> segment : segments) {
+            ret += segment.size();
+        }
+        return ret;
+    }
+
+    /**
+     * @return the current total weight of all the entries
+     */
+    public long weight() {
+        long ret = 0;
+        for (Segment<K, V> segment : segments) {
+            ret += segment.weight();
+        }
+        return ret;
+    }
+
+    /**
+     * Returns a snapshot of the map entries
+     */
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        Map<K, V> ret = new LinkedHashMap<>();
+        for (Segment<K, V> segment : segments) {
+            segment.copyTo(ret);
+        }
+        return Collections.unmodifiableMap(ret).entrySet();
+    }
+
+    private static final class Node<V> {
+        V value;
+        long weight;
+
+        Node(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    private static final class Segment<K, V> {
+        // both maps are in access order, the eldest entry is the LRU one
+        private final LinkedHashMap<K, Node<V>> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<K, Node<V>> protect = new LinkedHashMap<>(16, 0.75f, true);
+        private final long maxWeight;
+        private final long maxProtectedWeight;
+        private final ToLongBiFunction<K, V> weigher;
+        private final BiConsumer<K, V> evictionListener;
+        private long probationWeight;
+        private long protectedWeight;
+
+        Segment(long maxWeight, ToLongBiFunction<K, V> weigher, BiConsumer<K, V> evictionListener) {
+            this.maxWeight = maxWeight;
+            this.maxProtectedWeight = maxWeight * PROTECTED_PERCENT / 100;
+            this.weigher = weigher;
+            this.evictionListener = evictionListener;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V get(Object key) {
+            Node<V> node = protect.get(key);
+            if (node != null) return node.value;
+
+            node = probation.remove(key);
+            if (node == null) return null;
+
+            // second access: promoting to protected and demoting protected LRU entries if needed
+            probationWeight -= node.weight;
+            protect.put((K) key, node);
+            protectedWeight += node.weight;
+            Iterator<Entry<K, Node<V>>> it = protect.entrySet().iterator();
+            while (protectedWeight > maxProtectedWeight && it.hasNext()) {
+                Entry<K, Node<V>> eldest = it.next();
+                if (eldest.getValue() == node) break;
+                it.remove();
+                protectedWeight -= eldest.getValue().weight;
+                probation.put(eldest.getKey(), eldest.getValue());
+                probationWeight += eldest.getValue().weight;
+            }
+            return node.value;
+        }
+
+        synchronized boolean containsKey(Object key) {
+            return protect.containsKey(key) || probation.containsKey(key);
+        }
+
+        synchronized V put(K key, V value, boolean onlyIfAbsent) {
+            Node<V> node = protect.get(key);
+            boolean prot = node != null;
+            if (node == null) node = probation.get(key);
+
+            if (node != null) {
+                V old = node.value;
+                if (onlyIfAbsent) return old;
+                long weight = weigher.applyAsLong(key, value);
+                if (prot) {
+                    protectedWeight += weight - node.weight;
+                } else {
+                    probationWeight += weight - node.weight;
+                }
+                node.value = value;
+                node.weight = weight;
+                evict();
+                return old;
+            }
+
+            node = new Node<>(value, weigher.applyAsLong(key, value));
+            probation.put(key, node);
+            probationWeight += node.weight;
+            evict();
+            return null;
+        }
+
+        private void evict() {
+            evict(probation, true);
+            evict(protect, false);
+        }
+
+        private void evict(LinkedHashMap<K, Node<V>> map, boolean isProbation) {
+            Iterator<Entry<K, Node<V>>> it = map.entrySet().iterator();
+            while (probationWeight + protectedWeight > maxWeight && it.hasNext()) {
+                Entry<K, Node<V>> eldest = it.next();
+                it.remove();
+                if (isProbation) {
+                    probationWeight -= eldest.getValue().weight;
+                } else {
+                    protectedWeight -= eldest.getValue().weight;
+                }
+                if (evictionListener != null) {
+                    evictionListener.accept(eldest.getKey(), eldest.getValue().value);
+                }
+            }
+        }
+
+        synchronized V remove(Object key) {
+            Node<V> node = protect.remove(key);
+            if (node != null) {
+                protectedWeight -= node.weight;
+                return node.value;
+            }
+            node = probation.remove(key);
+            if (node != null) {
+                probationWeight -= node.weight;
+                return node.value;
+            }
+            return null;
+        }
+
+        synchronized void clear() {
+            probation.clear();
+            protect.clear();
+            probationWeight = 0;
+            protectedWeight = 0;
+        }
+
+        synchronized int size() {
+            return probation.size() + protect.size();
+        }
+
+        synchronized long weight() {
+            return probationWeight + protectedWeight;
+        }
+
+        synchronized void copyTo(Map<K, V> map) {
+            List<Entry<K, Node<V>>> entries = new ArrayList<>(probation.entrySet());
+            entries.addAll(protect.entrySet());
+            for (Entry<K, Node<V>> entry : entries) {
+                map.put(entry.getKey(), entry.getValue().value);
+            }
+        }
+    }
+}
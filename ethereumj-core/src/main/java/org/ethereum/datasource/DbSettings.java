@@ -17,6 +17,11 @@
  */
 package org.ethereum.datasource;
 
+import org.ethereum.datasource.rocksdb.ColumnFamilySettings;
+
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Defines configurable database settings
  *
@@ -31,6 +36,7 @@ public class DbSettings {
 
     int maxOpenFiles;
     int maxThreads;
+    List<ColumnFamilySettings> columnFamilies = Collections.emptyList();
 
     private DbSettings() {
     }
@@ -59,4 +65,17 @@ public class DbSettings {
         this.maxThreads = maxThreads;
         return this;
     }
+
+    public List<ColumnFamilySettings> getColumnFamilies() {
+        return columnFamilies;
+    }
+
+    /**
+     * Column families to store logical sources in,
+     * supported by RocksDB only
+     */
+    public DbSettings withColumnFamilies(List<ColumnFamilySettings> columnFamilies) {
+        this.columnFamilies = columnFamilies;
+        return this;
+    }
 }
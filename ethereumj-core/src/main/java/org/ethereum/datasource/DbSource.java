@@ -17,6 +17,9 @@
  */
 package org.ethereum.datasource;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -78,4 +81,18 @@ public interface DbSource<V> extends BatchSource<byte[], V> {
      * @throws RuntimeException if operation is not supported
      */
     V prefixLookup(byte[] key, int prefixBytes);
+
+    /**
+     * The same as {@link #prefixLookup(byte[], int)} for a number of keys
+     * @return values found by prefix lookup keyed by the instances passed in <code>keys</code>
+     * @throws RuntimeException if operation is not supported
+     */
+    default Map<byte[], V> prefixLookupAll(Collection<byte[]> keys, int prefixBytes) {
+        Map<byte[], V> ret = new HashMap<>();
+        for (byte[] key : keys) {
+            V val = prefixLookup(key, prefixBytes);
+            if (val != null) ret.put(key, val);
+        }
+        return ret;
+    }
 }
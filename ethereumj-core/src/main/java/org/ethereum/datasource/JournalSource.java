@@ -24,7 +24,9 @@ import org.ethereum.util.RLPElement;
 import org.ethereum.util.RLPList;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The JournalSource records all the changes which were made before each commitUpdate
@@ -141,6 +143,11 @@ public class JournalSource<V> extends AbstractChainedSource<byte[], V, byte[], V
         return getSource().get(key);
     }
 
+    @Override
+    public synchronized Map<byte[], V> getAll(Collection<byte[]> keys) {
+        return getSource().getAll(keys);
+    }
+
     /**
      * Records all the changes made prior to this call to a single chunk
      * with supplied hash.
@@ -17,6 +17,10 @@
  */
 package org.ethereum.datasource;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Cache of Caches (child caches)
  * When a child cache is not found in the local cache it is looked up in the backing Source
@@ -53,6 +57,19 @@ public abstract class MultiCache<V extends CachedSource> extends ReadWriteCache.
         return ownCache;
     }
 
+    /**
+     * Child caches are created one by one, see {@link #get(byte[])}
+     */
+    @Override
+    public synchronized Map<byte[], V> getAll(Collection<byte[]> keys) {
+        Map<byte[], V> ret = new HashMap<>();
+        for (byte[] key : keys) {
+            V val = get(key);
+            if (val != null) ret.put(key, val);
+        }
+        return ret;
+    }
+
     /**
      * each child is just flushed if it has backing Source or the whole
      * child cache is put to the MultiCache backing source
@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.datasource;
+
+import org.ethereum.util.ALock;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * {@link WriteCache} for byte[] keys and values which keeps the cached entries
+ * in the off-heap memory, so large flush batches don't grow the heap and don't
+ * burden GC with millions of small objects.
+ *
+ * Entries are appended to direct ByteBuffer chunks (arena) and are looked up via an
+ * open addressing index which is just a couple of primitive arrays on the heap.
+ * Chunks are returned to the shared pool when the cache is flushed, so the off-heap memory
+ * is retained at the level of the max cache size ever reached (note the -XX:MaxDirectMemorySize limit)
+ *
+ * The behavior is identical to the on-heap {@link WriteCache} of the same {@link CacheType}
+ * including the {@link #estimateCacheSize()} accounting
+ */
+public class OffHeapWriteCache extends WriteCache<byte[], byte[]> implements CachedSource.BytesKey<byte[]> {
+
+    static final int CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final Deque<ByteBuffer> chunkPool = new ConcurrentLinkedDeque<>();
+
+    private final boolean counting;
+    private Store store = new Store();
+
+    public OffHeapWriteCache(Source<byte[], byte[]> src, CacheType cacheType) {
+        super(src, cacheType);
+        this.counting = cacheType == CacheType.COUNTING;
+    }
+
+    @Override
+    protected void takeCache(WriteCache<byte[], byte[]> other) {
+        OffHeapWriteCache otherCache = (OffHeapWriteCache) other;
+        this.store = otherCache.store;
+        otherCache.store = new Store();
+    }
+
+    @Override
+    public Collection<byte[]> getModified() {
+        try (ALock l = readLock.lock()) {
+            List<byte[]> ret = new ArrayList<>(store.size);
+            for (long addr : store.slots) {
+                if (addr != 0) ret.add(store.key(addr));
+            }
+            return ret;
+        }
+    }
+
+    @Override
+    public boolean hasModified() {
+        return store.size > 0;
+    }
+
+    @Override
+    public void put(byte[] key, byte[] val) {
+        if (val == null) {
+            delete(key);
+            return;
+        }
+
+        try (ALock l = writeLock.lock()) {
+            int slot = store.find(key);
+            if (slot < 0) {
+                slot = store.insert(-slot - 1, key, Store.VALUE, val, 0);
+                cacheAdded(key, val);
+            } else {
+                store.setValue(slot, Store.VALUE, val);
+            }
+            long addr = store.slots[slot];
+            store.setCounter(addr, counting ? store.counter(addr) + 1 : 1);
+        }
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        try (ALock l = readLock.lock()) {
+            int slot = store.find(key);
+            if (slot >= 0) {
+                long addr = store.slots[slot];
+                if (!counting && store.counter(addr) < 0) return null;
+                if (store.valueType(addr) != Store.UNKNOWN) return store.value(addr);
+            }
+            return getSource() == null ? null : getSource().get(key);
+        }
+    }
+
+    @Override
+    public Map<byte[], byte[]> getAll(Collection<byte[]> keys) {
+        Map<byte[], byte[]> ret = new HashMap<>();
+        List<byte[]> unknown = new ArrayList<>();
+        try (ALock l = readLock.lock()) {
+            for (byte[] key : keys) {
+                int slot = store.find(key);
+                if (slot >= 0) {
+                    long addr = store.slots[slot];
+                    if (!counting && store.counter(addr) < 0) continue;
+                    if (store.valueType(addr) != Store.UNKNOWN) {
+                        byte[] val = store.value(addr);
+                        if (val != null) ret.put(key, val);
+                        continue;
+                    }
+                }
+                unknown.add(key);
+            }
+            if (!unknown.isEmpty() && getSource() != null) {
+                ret.putAll(getSource().getAll(unknown));
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public void delete(byte[] key) {
+        try (ALock l = writeLock.lock()) {
+            int slot = store.find(key);
+            if (slot < 0) {
+                slot = store.insert(-slot - 1, key, getSource() == null ? Store.NULL : Store.UNKNOWN, null, 0);
+                cacheAdded(key, null);
+            }
+            long addr = store.slots[slot];
+            store.setCounter(addr, counting ? store.counter(addr) - 1 : -1);
+        }
+    }
+
+    @Override
+    public boolean flush() {
+        boolean ret = false;
+        try (ALock l = updateLock.lock()) {
+            for (long addr : store.slots) {
+                if (addr == 0) continue;
+                int counter = store.counter(addr);
+                if (counter > 0) {
+                    byte[] key = store.key(addr);
+                    byte[] value = store.value(addr);
+                    for (int i = 0; i < counter; i++) {
+                        getSource().put(key, value);
+                    }
+                    ret = true;
+                } else if (counter < 0) {
+                    byte[] key = store.key(addr);
+                    for (int i = 0; i > counter; i--) {
+                        getSource().delete(key);
+                    }
+                    ret = true;
+                }
+            }
+            if (flushSource) {
+                getSource().flush();
+            }
+            try (ALock l1 = writeLock.lock()) {
+                store.clear();
+                cacheCleared();
+            }
+            return ret;
+        }
+    }
+
+    @Override
+    public Entry<byte[]> getCached(byte[] key) {
+        try (ALock l = readLock.lock()) {
+            int slot = store.find(key);
+            if (slot < 0) return null;
+            long addr = store.slots[slot];
+            if (store.valueType(addr) == Store.UNKNOWN) return null;
+            return new SimpleEntry<>(!counting && store.counter(addr) < 0 ? null : store.value(addr));
+        }
+    }
+
+    @Override
+    public long debugCacheSize() {
+        long ret = 0;
+        for (long addr : store.slots) {
+            if (addr == 0) continue;
+            ret += keySizeEstimator.estimateSize(store.key(addr));
+            ret += valueSizeEstimator.estimateSize(!counting && store.counter(addr) < 0 ? null : store.value(addr));
+        }
+        return ret;
+    }
+
+    /**
+     * @return the number of off-heap bytes occupied by the cached entries
+     */
+    public long getOffHeapSize() {
+        return store.allocated;
+    }
+
+    /**
+     * Entries arena with the hash index
+     *
+     * Entry record: [int keyLength][int valueType][int valueLength][int counter][key][value]
+     * Entry address: (chunk index << 32) | chunk offset, the index keeps address + 1 (0 is an empty slot)
+     */
+    private static final class Store {
+        static final int VALUE = 0;
+        static final int NULL = 1;
+        static final int UNKNOWN = 2;
+
+        private static final int HEADER = 16;
+        private static final int INITIAL_CAPACITY = 1024;
+
+        final List<ByteBuffer> chunks = new ArrayList<>();
+        ByteBuffer current;
+
+        long[] slots = new long[INITIAL_CAPACITY];
+        int[] hashes = new int[INITIAL_CAPACITY];
+        int size;
+        long allocated;
+
+        private static int hash(byte[] key) {
+            int h = Arrays.hashCode(key) * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        /**
+         * @return slot index if the key is found or (-insertionSlot - 1)
+         */
+        int find(byte[] key) {
+            int hash = hash(key);
+            int mask = slots.length - 1;
+            int i = hash & mask;
+            while (true) {
+                long addr = slots[i];
+                if (addr == 0) return -i - 1;
+                if (hashes[i] == hash && keyEquals(addr, key)) return i;
+                i = (i + 1) & mask;
+            }
+        }
+
+        int insert(int slot, byte[] key, int valueType, byte[] value, int counter) {
+            if ((size + 1) * 4 > slots.length * 3) {
+                rehash();
+                slot = -find(key) - 1;
+            }
+            slots[slot] = append(key, valueType, value, counter);
+            hashes[slot] = hash(key);
+            size++;
+            return slot;
+        }
+
+        private void rehash() {
+            long[] oldSlots = slots;
+            int[] oldHashes = hashes;
+            slots = new long[oldSlots.length * 2];
+            hashes = new int[oldSlots.length * 2];
+            int mask = slots.length - 1;
+            for (int j = 0; j < oldSlots.length; j++) {
+                if (oldSlots[j] == 0) continue;
+                int i = oldHashes[j] & mask;
+                while (slots[i] != 0) i = (i + 1) & mask;
+                slots[i] = oldSlots[j];
+                hashes[i] = oldHashes[j];
+            }
+        }
+
+        void setValue(int slot, int valueType, byte[] value) {
+            long addr = slots[slot];
+            ByteBuffer chunk = chunk(addr);
+            int off = offset(addr);
+            int valueLength = value == null ? 0 : value.length;
+            if (chunk.getInt(off + 8) == valueLength) {
+                chunk.putInt(off + 4, valueType);
+                if (value != null) {
+                    ByteBuffer b = chunk.duplicate();
+                    b.position(off + HEADER + chunk.getInt(off));
+                    b.put(value);
+                }
+            } else {
+                // the old record is just abandoned till the cache is cleared
+                slots[slot] = append(key(addr), valueType, value, counter(addr));
+            }
+        }
+
+        private long append(byte[] key, int valueType, byte[] value, int counter) {
+            int recordSize = HEADER + key.length + (value == null ? 0 : value.length);
+            if (current == null || current.remaining() < recordSize) {
+                current = recordSize > CHUNK_SIZE ? ByteBuffer.allocateDirect(recordSize) : allocateChunk();
+                chunks.add(current);
+            }
+            long addr = ((long) (chunks.size() - 1) << 32) | current.position();
+            current.putInt(key.length);
+            current.putInt(valueType);
+            current.putInt(value == null ? 0 : value.length);
+            current.putInt(counter);
+            current.put(key);
+            if (value != null) current.put(value);
+            allocated += recordSize;
+            return addr + 1;
+        }
+
+        private static ByteBuffer allocateChunk() {
+            ByteBuffer ret = chunkPool.poll();
+            if (ret == null) {
+                ret = ByteBuffer.allocateDirect(CHUNK_SIZE);
+            }
+            ret.clear();
+            return ret;
+        }
+
+        private ByteBuffer chunk(long addr) {
+            return chunks.get((int) ((addr - 1) >>> 32));
+        }
+
+        private static int offset(long addr) {
+            return (int) (addr - 1);
+        }
+
+        int counter(long addr) {
+            return chunk(addr).getInt(offset(addr) + 12);
+        }
+
+        void setCounter(long addr, int counter) {
+            chunk(addr).putInt(offset(addr) + 12, counter);
+        }
+
+        int valueType(long addr) {
+            return chunk(addr).getInt(offset(addr) + 4);
+        }
+
+        byte[] key(long addr) {
+            ByteBuffer b = chunk(addr).duplicate();
+            int off = offset(addr);
+            byte[] ret = new byte[b.getInt(off)];
+            b.position(off + HEADER);
+            b.get(ret);
+            return ret;
+        }
+
+        byte[] value(long addr) {
+            ByteBuffer b = chunk(addr).duplicate();
+            int off = offset(addr);
+            if (b.getInt(off + 4) != VALUE) return null;
+            byte[] ret = new byte[b.getInt(off + 8)];
+            b.position(off + HEADER + b.getInt(off));
+            b.get(ret);
+            return ret;
+        }
+
+        private boolean keyEquals(long addr, byte[] key) {
+            ByteBuffer chunk = chunk(addr);
+            int off = offset(addr);
+            if (chunk.getInt(off) != key.length) return false;
+            off += HEADER;
+            for (int i = 0; i < key.length; i++) {
+                if (chunk.get(off + i) != key[i]) return false;
+            }
+            return true;
+        }
+
+        void clear() {
+            for (ByteBuffer chunk : chunks) {
+                if (chunk.capacity() == CHUNK_SIZE) chunkPool.add(chunk);
+            }
+            chunks.clear();
+            current = null;
+            slots = new long[INITIAL_CAPACITY];
+            hashes = new int[INITIAL_CAPACITY];
+            size = 0;
+            allocated = 0;
+        }
+    }
+}
@@ -17,6 +17,9 @@
  */
 package org.ethereum.datasource;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * A kind of source which executes {@link #get(byte[])} query as
  * a {@link DbSource#prefixLookup(byte[], int)} query of backing source.<br>
@@ -42,6 +45,11 @@ public class PrefixLookupSource<V> implements Source<byte[], V> {
         return source.prefixLookup(key, prefixBytes);
     }
 
+    @Override
+    public Map<byte[], V> getAll(Collection<byte[]> keys) {
+        return source.prefixLookupAll(keys, prefixBytes);
+    }
+
     @Override
     public void put(byte[] key, V val) {
         source.put(key, val);
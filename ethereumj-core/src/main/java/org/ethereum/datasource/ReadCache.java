@@ -21,18 +21,23 @@ import org.apache.commons.collections4.map.LRUMap;
 import org.ethereum.db.ByteArrayWrapper;
 import org.ethereum.util.ByteArrayMap;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 /**
  * Caches entries get/updated and use LRU algo to purge them if the number
  * of entries exceeds threshold.
  *
- * This implementation could extended to estimate cached data size for
- * more accurate size restriction, but if entries are more or less
- * of the same size the entries count would be good enough
+ * Alternatively the cache can be restricted by the estimated size of cached data
+ * (see {@link #withMaxSize(long)} and {@link #withConcurrentMaxSize(long)})
  *
  * Another implementation idea is heap sensitive read cache based on
  * SoftReferences, when the cache occupies all the available heap
@@ -44,9 +49,18 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
 
     private final Value NULL = (Value) new Object();
 
-    private Map<Key, Value> cache;
+    private volatile Map<Key, Value> cache;
     private boolean byteKeyMap;
 
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // size based eviction, see withMaxSize()
+    private long maxSize = -1;
+    private Map<?, Value> lruMap;
+    private Function<Object, Key> lruKeyMapper;
+
     public ReadCache(Source<Key, Value> src) {
         super(src);
         withCache(new HashMap<Key, Value>());
@@ -56,11 +70,91 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
      * Installs the specific cache Map implementation
      */
     public ReadCache<Key, Value> withCache(Map<Key, Value> cache) {
+        setCache(cache, Collections.synchronizedMap(cache));
+        return this;
+    }
+
+    private void setCache(Map<Key, Value> cache, Map<Key, Value> threadSafeCache) {
         byteKeyMap = cache instanceof ByteArrayMap;
-        this.cache = Collections.synchronizedMap(cache);
+        this.cache = threadSafeCache;
+        this.maxSize = -1;
+        cacheCleared();
+    }
+
+    /**
+     * Sets the max total size of cached entries as reported by the size estimators
+     * (see {@link #withSizeEstimators(MemSizeEstimator, MemSizeEstimator)}), if no estimators
+     * are set the size is the number of entries.
+     * Unlike {@link #withMaxSize(long)} the cache is lock striped and uses the scan
+     * resistant Segmented LRU eviction (see {@link ConcurrentSLRUMap}) which makes it
+     * suitable for the heavily shared sources
+     */
+    public ReadCache<Key, Value> withConcurrentMaxSize(long maxSize) {
+        return withConcurrentMaxSize(maxSize, ConcurrentSLRUMap.DEFAULT_CONCURRENCY);
+    }
+
+    /**
+     * The same as {@link #withConcurrentMaxSize(long)} with the specified
+     * number of concurrent threads expected
+     */
+    public ReadCache<Key, Value> withConcurrentMaxSize(long maxSize, int concurrency) {
+        Map<Key, Value> map = new ConcurrentSLRUMap<>(maxSize, concurrency, this::entryWeight, this::entryEvicted);
+        setCache(map, map);
         return this;
     }
 
+    /**
+     * Sets the thread safe cache implementation which is used as is
+     */
+    protected void withConcurrentCache(Map<Key, Value> cache) {
+        setCache(cache, cache);
+    }
+
+    protected long entryWeight(Key key, Value value) {
+        if (keySizeEstimator == null && valueSizeEstimator == null) return 1;
+        long ret = 0;
+        if (keySizeEstimator != null) ret += keySizeEstimator.estimateSize(key);
+        if (valueSizeEstimator != null && value != NULL) ret += valueSizeEstimator.estimateSize(value);
+        return ret;
+    }
+
+    protected void entryEvicted(Key key, Value value) {
+        evictions.increment();
+        cacheRemoved(key, value == NULL ? null : value);
+    }
+
+    /**
+     * Sets the max total size of cached entries as reported by the size estimators
+     * (see {@link #withSizeEstimators(MemSizeEstimator, MemSizeEstimator)}).
+     * Least recently used entries are purged when the size exceeds the limit
+     */
+    @SuppressWarnings("unchecked")
+    public ReadCache<Key, Value> withMaxSize(long maxSize) {
+        LinkedHashMap<Key, Value> lru = new LinkedHashMap<>(16, 0.75f, true);
+        withCache(lru);
+        setSizeLimit(maxSize, lru, key -> (Key) key);
+        return this;
+    }
+
+    protected void setSizeLimit(long maxSize, Map<?, Value> lruMap, Function<Object, Key> keyMapper) {
+        this.lruMap = lruMap;
+        this.lruKeyMapper = keyMapper;
+        this.maxSize = maxSize;
+    }
+
+    private void purgeOversize() {
+        if (maxSize < 0) return;
+
+        synchronized (cache) {
+            Iterator<? extends Map.Entry<?, Value>> it = lruMap.entrySet().iterator();
+            while (estimateCacheSize() > maxSize && it.hasNext()) {
+                Map.Entry<?, Value> entry = it.next();
+                entryEvicted(lruKeyMapper.apply(entry.getKey()), entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
     /**
      * Sets the max number of entries to cache
      */
@@ -68,7 +162,7 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
         return withCache(new LRUMap<Key, Value>(maxCapacity) {
             @Override
             protected boolean removeLRU(LinkEntry<Key, Value> entry) {
-                cacheRemoved(entry.getKey(), entry.getValue());
+                entryEvicted(entry.getKey(), entry.getValue());
                 return super.removeLRU(entry);
             }
         });
@@ -93,8 +187,10 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
         if (val == null) {
             delete(key);
         } else {
-            cache.put(key, val);
+            Value old = cache.put(key, val);
+            if (old != null) cacheRemoved(key, old == NULL ? null : old);
             cacheAdded(key, val);
+            purgeOversize();
             getSource().put(key, val);
         }
     }
@@ -104,12 +200,47 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
         checkByteArrKey(key);
         Value ret = cache.get(key);
         if (ret == NULL) {
+            hits.increment();
             return null;
         }
         if (ret == null) {
+            misses.increment();
             ret = getSource().get(key);
-            cache.put(key, ret == null ? NULL : ret);
-            cacheAdded(key, ret);
+            if (cache.putIfAbsent(key, ret == null ? NULL : ret) == null) {
+                cacheAdded(key, ret);
+                purgeOversize();
+            }
+        } else {
+            hits.increment();
+        }
+        return ret;
+    }
+
+    @Override
+    public Map<Key, Value> getAll(Collection<Key> keys) {
+        Map<Key, Value> ret = new HashMap<>();
+        List<Key> missed = new ArrayList<>();
+        for (Key key : keys) {
+            checkByteArrKey(key);
+            Value val = cache.get(key);
+            if (val == null) {
+                missed.add(key);
+            } else {
+                hits.increment();
+                if (val != NULL) ret.put(key, val);
+            }
+        }
+        if (!missed.isEmpty()) {
+            misses.add(missed.size());
+            Map<Key, Value> found = getSource().getAll(missed);
+            for (Key key : missed) {
+                Value val = found.get(key);
+                if (cache.putIfAbsent(key, val == null ? NULL : val) == null) {
+                    cacheAdded(key, val);
+                }
+                if (val != null) ret.put(key, val);
+            }
+            purgeOversize();
         }
         return ret;
     }
@@ -118,7 +249,7 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
     public void delete(Key key) {
         checkByteArrKey(key);
         Value value = cache.remove(key);
-        cacheRemoved(key, value);
+        if (value != null) cacheRemoved(key, value == NULL ? null : value);
         getSource().delete(key);
     }
 
@@ -137,11 +268,32 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
     }
 
     @Override
-    public synchronized Entry<Value> getCached(Key key) {
+    public Entry<Value> getCached(Key key) {
         Value value = cache.get(key);
         return value == null ? null : new SimpleEntry<>(value == NULL ? null : value);
     }
 
+    /**
+     * @return the number of {@link #get(Object)} calls served from the cache
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of {@link #get(Object)} calls passed to the underlying source
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of entries purged due to the cache capacity limit
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
     /**
      * Shortcut for ReadCache with byte[] keys. Also prevents accidental
      * usage of regular Map implementation (non byte[])
@@ -157,11 +309,29 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
             withCache(new ByteArrayMap<V>(new LRUMap<ByteArrayWrapper, V>(maxCapacity) {
                 @Override
                 protected boolean removeLRU(LinkEntry<ByteArrayWrapper, V> entry) {
-                    cacheRemoved(entry.getKey().getData(), entry.getValue());
+                    entryEvicted(entry.getKey().getData(), entry.getValue());
                     return super.removeLRU(entry);
                 }
             }));
             return this;
         }
+
+        public ReadCache.BytesKey<V> withMaxSize(long maxSize) {
+            LinkedHashMap<ByteArrayWrapper, V> lru = new LinkedHashMap<>(16, 0.75f, true);
+            withCache(new ByteArrayMap<V>(lru));
+            setSizeLimit(maxSize, lru, key -> ((ByteArrayWrapper) key).getData());
+            return this;
+        }
+
+        public ReadCache.BytesKey<V> withConcurrentMaxSize(long maxSize) {
+            return withConcurrentMaxSize(maxSize, ConcurrentSLRUMap.DEFAULT_CONCURRENCY);
+        }
+
+        public ReadCache.BytesKey<V> withConcurrentMaxSize(long maxSize, int concurrency) {
+            withConcurrentCache(new ByteArrayMap<V>(new ConcurrentSLRUMap<ByteArrayWrapper, V>(maxSize, concurrency,
+                    (key, value) -> entryWeight(key.getData(), value),
+                    (key, value) -> entryEvicted(key.getData(), value))));
+            return this;
+        }
     }
 }
@@ -17,6 +17,10 @@
  */
 package org.ethereum.datasource;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Base interface for all data source classes
  *
@@ -35,6 +39,23 @@ public interface Source<K, V> {
      */
     V get(K key);
 
+    /**
+     * Gets values of many keys at once.
+     * Sources which are able to lookup a number of keys cheaper than
+     * by separate {@link #get(Object)} calls override this method
+     * and pass the keys to the underlying source in a single call
+     * @return values of the keys found in the source, keys having no value are absent
+     * in the returned map, the map is keyed by the very instances passed in <code>keys</code>
+     */
+    default Map<K, V> getAll(Collection<K> keys) {
+        Map<K, V> ret = new HashMap<>();
+        for (K key : keys) {
+            V val = get(key);
+            if (val != null) ret.put(key, val);
+        }
+        return ret;
+    }
+
     /**
      * Deletes the key-value pair from the source
      */
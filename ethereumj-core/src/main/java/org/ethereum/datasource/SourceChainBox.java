@@ -18,7 +18,9 @@
 package org.ethereum.datasource;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Represents a chain of Sources as a single Source
@@ -58,6 +60,11 @@ public class SourceChainBox<Key, Value, SourceKey, SourceValue>
         return lastSource.get(key);
     }
 
+    @Override
+    public Map<Key, Value> getAll(Collection<Key> keys) {
+        return lastSource.getAll(keys);
+    }
+
     @Override
     public void delete(Key key) {
         lastSource.delete(key);
@@ -17,6 +17,11 @@
  */
 package org.ethereum.datasource;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 /**
  * Source for converting between different key/value types
  * Has no own state and immediately propagate all changes
@@ -53,6 +58,20 @@ public class SourceCodec<Key, Value, SourceKey, SourceValue>
         return valSerializer.deserialize(getSource().get(keySerializer.serialize(key)));
     }
 
+    @Override
+    public Map<Key, Value> getAll(Collection<Key> keys) {
+        Map<SourceKey, Key> serialized = new IdentityHashMap<>();
+        for (Key key : keys) {
+            serialized.put(keySerializer.serialize(key), key);
+        }
+        Map<Key, Value> ret = new HashMap<>();
+        for (Map.Entry<SourceKey, SourceValue> e : getSource().getAll(serialized.keySet()).entrySet()) {
+            Value val = valSerializer.deserialize(e.getValue());
+            if (val != null) ret.put(serialized.get(e.getKey()), val);
+        }
+        return ret;
+    }
+
     @Override
     public void delete(Key key) {
         getSource().delete(keySerializer.serialize(key));
@@ -22,8 +22,10 @@ import com.googlecode.concurentlocks.ReentrantReadWriteUpdateLock;
 import org.ethereum.util.ALock;
 import org.ethereum.util.ByteArrayMap;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -150,6 +152,14 @@ public class WriteCache<Key, Value> extends AbstractCachedSource<Key, Value> {
         return this;
     }
 
+    /**
+     * Takes over the cached entries of another cache of the same type.
+     * The other cache shouldn't be used after this call
+     */
+    protected void takeCache(WriteCache<Key, Value> other) {
+        this.cache = other.cache;
+    }
+
     @Override
     public Collection<Key> getModified() {
         try (ALock l = readLock.lock()){
@@ -214,6 +224,27 @@ public class WriteCache<Key, Value> extends AbstractCachedSource<Key, Value> {
         }
     }
 
+    @Override
+    public Map<Key, Value> getAll(Collection<Key> keys) {
+        Map<Key, Value> ret = new HashMap<>();
+        List<Key> unknown = new ArrayList<>();
+        try (ALock l = readLock.lock()){
+            for (Key key : keys) {
+                checkByteArrKey(key);
+                CacheEntry<Value> curVal = cache.get(key);
+                if (curVal == null || curVal.getValue() == unknownValue()) {
+                    unknown.add(key);
+                } else if (curVal.getValue() != null) {
+                    ret.put(key, curVal.getValue());
+                }
+            }
+            if (!unknown.isEmpty() && getSource() != null) {
+                ret.putAll(getSource().getAll(unknown));
+            }
+        }
+        return ret;
+    }
+
     @Override
     public void delete(Key key) {
         checkByteArrKey(key);
@@ -19,6 +19,10 @@ package org.ethereum.datasource;
 
 import org.ethereum.util.ByteUtil;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * When propagating changes to the backing Source XORs keys
  * with the specified value
@@ -47,6 +51,19 @@ public class XorDataSource<V> extends AbstractChainedSource<byte[], V, byte[], V
         return getSource().get(convertKey(key));
     }
 
+    @Override
+    public Map<byte[], V> getAll(Collection<byte[]> keys) {
+        Map<byte[], byte[]> converted = new HashMap<>();
+        for (byte[] key : keys) {
+            converted.put(convertKey(key), key);
+        }
+        Map<byte[], V> ret = new HashMap<>();
+        for (Map.Entry<byte[], V> e : getSource().getAll(converted.keySet()).entrySet()) {
+            ret.put(converted.get(e.getKey()), e.getValue());
+        }
+        return ret;
+    }
+
     @Override
     public void put(byte[] key, V value) {
         getSource().put(convertKey(key), value);
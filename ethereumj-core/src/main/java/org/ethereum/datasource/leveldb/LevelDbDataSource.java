@@ -31,6 +31,8 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -202,6 +204,31 @@ public class LevelDbDataSource implements DbSource<byte[]> {
         }
     }
 
+    @Override
+    public Map<byte[], byte[]> getAll(Collection<byte[]> keys) {
+        resetDbLock.readLock().lock();
+        try {
+            if (logger.isTraceEnabled()) logger.trace("~> LevelDbDataSource.getAll(): " + name + ", " + keys.size());
+            // LevelDB has no batch reads, a snapshot makes the reads consistent
+            // and saves taking the internal mutex for the each read
+            try (Snapshot snapshot = db.getSnapshot()) {
+                ReadOptions readOptions = new ReadOptions().snapshot(snapshot);
+                Map<byte[], byte[]> ret = new HashMap<>();
+                for (byte[] key : keys) {
+                    byte[] val = db.get(key, readOptions);
+                    if (val != null) ret.put(key, val);
+                }
+                if (logger.isTraceEnabled()) logger.trace("<~ LevelDbDataSource.getAll(): " + name + ", " + keys.size() + ", found " + ret.size());
+                return ret;
+            } catch (IOException e) {
+                logger.error("Failed to release snapshot of db '{}'", name, e);
+                throw new RuntimeException(e);
+            }
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
     @Override
     public void put(byte[] key, byte[] value) {
         resetDbLock.readLock().lock();
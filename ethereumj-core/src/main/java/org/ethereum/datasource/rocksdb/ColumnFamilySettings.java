@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.datasource.rocksdb;
+
+import org.rocksdb.CompactionStyle;
+import org.rocksdb.CompressionType;
+
+/**
+ * Defines tuning of a single column family of {@link RocksDbDataSource}.
+ *
+ * <p>
+ *     Each logical source stored in the family gets its own LSM tree,
+ *     thus compaction of one kind of data doesn't affect reads of another one
+ *
+ * @see org.ethereum.datasource.DbSettings#withColumnFamilies(java.util.List)
+ */
+public class ColumnFamilySettings {
+
+    String name;
+    CompactionStyle compaction = CompactionStyle.LEVEL;
+    CompressionType compression = CompressionType.LZ4_COMPRESSION;
+    long blockCacheSize = 32 * 1024 * 1024;
+    int bloomBits = 10;
+    boolean prefixBloom = false;
+    long fifoMaxSize = 1024L * 1024 * 1024;
+
+    private ColumnFamilySettings(String name) {
+        this.name = name;
+    }
+
+    public static ColumnFamilySettings newInstance(String name) {
+        return new ColumnFamilySettings(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public CompactionStyle getCompaction() {
+        return compaction;
+    }
+
+    public ColumnFamilySettings withCompaction(CompactionStyle compaction) {
+        this.compaction = compaction;
+        return this;
+    }
+
+    public CompressionType getCompression() {
+        return compression;
+    }
+
+    public ColumnFamilySettings withCompression(CompressionType compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    public long getBlockCacheSize() {
+        return blockCacheSize;
+    }
+
+    public ColumnFamilySettings withBlockCacheSize(long blockCacheSize) {
+        this.blockCacheSize = blockCacheSize;
+        return this;
+    }
+
+    /**
+     * @return bits per key of the bloom filter, 0 if the filter is disabled
+     */
+    public int getBloomBits() {
+        return bloomBits;
+    }
+
+    public ColumnFamilySettings withBloomBits(int bloomBits) {
+        this.bloomBits = bloomBits;
+        return this;
+    }
+
+    /**
+     * @return true if bloom filter is built over the key prefix
+     *         used by {@link RocksDbDataSource#prefixLookup(byte[], int)}
+     */
+    public boolean isPrefixBloom() {
+        return prefixBloom;
+    }
+
+    public ColumnFamilySettings withPrefixBloom(boolean prefixBloom) {
+        this.prefixBloom = prefixBloom;
+        return this;
+    }
+
+    /**
+     * @return max size of the family data when FIFO compaction is used,
+     *         oldest files are dropped once the limit is exceeded
+     */
+    public long getFifoMaxSize() {
+        return fifoMaxSize;
+    }
+
+    public ColumnFamilySettings withFifoMaxSize(long fifoMaxSize) {
+        this.fifoMaxSize = fifoMaxSize;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnFamilySettings{" +
+                "name='" + name + '\'' +
+                ", compaction=" + compaction +
+                ", compression=" + compression +
+                ", blockCacheSize=" + blockCacheSize +
+                ", bloomBits=" + bloomBits +
+                ", prefixBloom=" + prefixBloom +
+                '}';
+    }
+}
@@ -18,9 +18,11 @@
 package org.ethereum.datasource.rocksdb;
 
 import org.ethereum.config.SystemProperties;
+import org.ethereum.datasource.BatchSource;
 import org.ethereum.datasource.DbSettings;
 import org.ethereum.datasource.DbSource;
 import org.ethereum.datasource.NodeKeyCompositor;
+import org.ethereum.util.FastByteComparisons;
 import org.ethereum.util.FileUtil;
 import org.rocksdb.*;
 import org.rocksdb.CompressionType;
@@ -59,6 +61,12 @@ public class RocksDbDataSource implements DbSource<byte[]> {
 
     DbSettings settings = DbSettings.DEFAULT;
 
+    // handles of opened column families, the default family goes first;
+    // the index of a family in this list is the tag used by columnFamiliesSource()
+    List<ColumnFamilyHandle> familyHandles = new ArrayList<>();
+    Map<String, Integer> familyIndexes = new HashMap<>();
+    List<ColumnFamilyOptions> familyOptions = new ArrayList<>();
+
     // The native RocksDB insert/update/delete are normally thread-safe
     // However close operation is not thread-safe.
     // This ReadWriteLock still permits concurrent execution of insert/delete/update operations
@@ -155,7 +163,12 @@ public class RocksDbDataSource implements DbSource<byte[]> {
 
                     logger.debug("Initializing new or existing database: '{}'", name);
                     try {
-                        db = RocksDB.open(options, dbPath.toString());
+                        List<ColumnFamilySettings> families = columnFamiliesToOpen(options, dbPath);
+                        if (families.isEmpty()) {
+                            db = RocksDB.open(options, dbPath.toString());
+                        } else {
+                            openColumnFamilies(families, dbPath);
+                        }
                     } catch (RocksDBException e) {
                         logger.error(e.getMessage(), e);
                         throw new RuntimeException("Failed to initialize database", e);
@@ -175,6 +188,151 @@ public class RocksDbDataSource implements DbSource<byte[]> {
         }
     }
 
+    /**
+     * Column families are applied to a new database only,
+     * the database created without them keeps a single family layout and
+     * the database created with them is opened with families even if they are not configured anymore
+     */
+    private List<ColumnFamilySettings> columnFamiliesToOpen(Options options, Path dbPath) {
+        List<byte[]> existing;
+        try {
+            existing = RocksDB.listColumnFamilies(options, dbPath.toString());
+        } catch (RocksDBException e) {
+            existing = Collections.emptyList(); // database doesn't exist yet
+        }
+
+        if (existing.size() == 1 && !settings.getColumnFamilies().isEmpty()) {
+            logger.warn("Database '{}' was created without column families, keeping single family layout", name);
+            return Collections.emptyList();
+        }
+        if (existing.size() > 1 && settings.getColumnFamilies().isEmpty()) {
+            logger.warn("Database '{}' was created with column families, keeping column families layout", name);
+        }
+
+        Map<String, ColumnFamilySettings> ret = new LinkedHashMap<>();
+        for (ColumnFamilySettings family : settings.getColumnFamilies()) {
+            ret.put(family.getName(), family);
+        }
+        // every existing family must be opened, even if it's not configured anymore
+        for (byte[] family : existing) {
+            String familyName = new String(family);
+            if (!Arrays.equals(family, RocksDB.DEFAULT_COLUMN_FAMILY) && !ret.containsKey(familyName))
+                ret.put(familyName, ColumnFamilySettings.newInstance(familyName));
+        }
+
+        return new ArrayList<>(ret.values());
+    }
+
+    private void openColumnFamilies(List<ColumnFamilySettings> families, Path dbPath) throws RocksDBException {
+
+        List<ColumnFamilyDescriptor> descriptors = new ArrayList<>();
+
+        // default family is tuned the same way as single family database
+        ColumnFamilyOptions defaultOptions = new ColumnFamilyOptions();
+        defaultOptions.setCompressionType(CompressionType.LZ4_COMPRESSION);
+        defaultOptions.setBottommostCompressionType(CompressionType.ZSTD_COMPRESSION);
+        defaultOptions.setLevelCompactionDynamicLevelBytes(true);
+        defaultOptions.useFixedLengthPrefixExtractor(NodeKeyCompositor.PREFIX_BYTES);
+        defaultOptions.setTableFormatConfig(tableConfig(32 * 1024 * 1024, 10));
+        familyOptions.add(defaultOptions);
+        descriptors.add(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, defaultOptions));
+
+        for (ColumnFamilySettings family : families) {
+            ColumnFamilyOptions cfOptions = new ColumnFamilyOptions();
+            cfOptions.setCompactionStyle(family.getCompaction());
+            cfOptions.setCompressionType(family.getCompression());
+
+            if (family.getCompaction() == CompactionStyle.LEVEL) {
+                // cold data goes to the bottommost level, it's worth to compress it harder
+                cfOptions.setBottommostCompressionType(CompressionType.ZSTD_COMPRESSION);
+                cfOptions.setLevelCompactionDynamicLevelBytes(true);
+            } else if (family.getCompaction() == CompactionStyle.UNIVERSAL) {
+                cfOptions.setCompactionOptionsUniversal(new CompactionOptionsUniversal());
+            } else if (family.getCompaction() == CompactionStyle.FIFO) {
+                cfOptions.setCompactionOptionsFIFO(new CompactionOptionsFIFO()
+                        .setMaxTableFilesSize(family.getFifoMaxSize()));
+            }
+
+            if (family.isPrefixBloom()) {
+                cfOptions.useFixedLengthPrefixExtractor(NodeKeyCompositor.PREFIX_BYTES);
+            }
+            cfOptions.setTableFormatConfig(tableConfig(family.getBlockCacheSize(), family.getBloomBits()));
+
+            familyOptions.add(cfOptions);
+            descriptors.add(new ColumnFamilyDescriptor(family.getName().getBytes(), cfOptions));
+        }
+
+        try (DBOptions dbOptions = new DBOptions()) {
+            dbOptions.setCreateIfMissing(true);
+            dbOptions.setCreateMissingColumnFamilies(true);
+            dbOptions.setMaxOpenFiles(settings.getMaxOpenFiles());
+            dbOptions.setIncreaseParallelism(settings.getMaxThreads());
+
+            db = RocksDB.open(dbOptions, dbPath.toString(), descriptors, familyHandles);
+        }
+
+        for (int i = 0; i < families.size(); i++) {
+            familyIndexes.put(families.get(i).getName(), i + 1);
+        }
+
+        logger.info("Database '{}' opened with column families: {}", name, familyIndexes.keySet());
+    }
+
+    private BlockBasedTableConfig tableConfig(long blockCacheSize, int bloomBits) {
+        BlockBasedTableConfig tableCfg = new BlockBasedTableConfig();
+        tableCfg.setBlockSize(16 * 1024);
+        tableCfg.setBlockCacheSize(blockCacheSize);
+        tableCfg.setCacheIndexAndFilterBlocks(true);
+        tableCfg.setPinL0FilterAndIndexBlocksInCache(true);
+        if (bloomBits > 0) tableCfg.setFilter(new BloomFilter(bloomBits, false));
+        return tableCfg;
+    }
+
+    /**
+     * @return true if the database is opened with column families
+     */
+    public boolean hasColumnFamilies() {
+        return !familyIndexes.isEmpty();
+    }
+
+    /**
+     * @return true if the database is opened with column family of the given name
+     */
+    public boolean hasColumnFamily(String family) {
+        return familyIndexes.containsKey(family);
+    }
+
+    /**
+     * Returns column family as a separate source.
+     * Its lifecycle is bound to this database, thus {@link DbSource#init()} and {@link DbSource#close()}
+     * of the returned source do nothing
+     */
+    public DbSource<byte[]> getColumnFamily(String family) {
+        Integer idx = familyIndexes.get(family);
+        if (idx == null) throw new RuntimeException("No column family '" + family + "' in db '" + name + "'");
+        return new ColumnFamilySource(family, idx);
+    }
+
+    /**
+     * @return tag of the family to be prepended to keys passed to {@link #columnFamiliesSource()},
+     *         the default family tag if there is no family of the given name
+     */
+    public byte getColumnFamilyTag(String family) {
+        Integer idx = familyIndexes.get(family);
+        return idx == null ? 0 : idx.byteValue();
+    }
+
+    /**
+     * Returns a source writing to all column families of this database. <br/>
+     * The first byte of each key is a family tag, see {@link #getColumnFamilyTag(String)},
+     * the rest of the key is what is stored in the family. <br/>
+     * {@link BatchSource#updateBatch(Map)} writes all families with the single atomic batch,
+     * thus caches on top of this source are flushed consistently
+     */
+    public BatchSource<byte[], byte[]> columnFamiliesSource() {
+        return new ColumnFamiliesSource();
+    }
+
     public void backup() {
         resetDbLock.readLock().lock();
         if (logger.isTraceEnabled()) logger.trace("~> RocksDbDataSource.backup(): " + name);
@@ -211,8 +369,17 @@ public class RocksDbDataSource implements DbSource<byte[]> {
             if (!isAlive()) return;
 
             logger.debug("Close db: {}", name);
+            for (ColumnFamilyHandle handle : familyHandles) {
+                handle.close();
+            }
             db.close();
             readOpts.close();
+            for (ColumnFamilyOptions options : familyOptions) {
+                options.close();
+            }
+            familyHandles.clear();
+            familyIndexes.clear();
+            familyOptions.clear();
 
             alive = false;
 
@@ -323,6 +490,23 @@ public class RocksDbDataSource implements DbSource<byte[]> {
         }
     }
 
+    @Override
+    public Map<byte[], byte[]> getAll(Collection<byte[]> keys) {
+        resetDbLock.readLock().lock();
+        try {
+            if (logger.isTraceEnabled()) logger.trace("~> RocksDbDataSource.getAll(): " + name + ", " + keys.size());
+            Map<byte[], byte[]> ret = db.multiGet(readOpts, new ArrayList<>(keys));
+            if (logger.isTraceEnabled()) logger.trace("<~ RocksDbDataSource.getAll(): " + name + ", " + keys.size() + ", found " + ret.size());
+            return ret;
+        } catch (RocksDBException e) {
+            logger.error("Failed to get from db '{}'", name, e);
+            hintOnTooManyOpenFiles(e);
+            throw new RuntimeException(e);
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
     @Override
     public void delete(byte[] key) {
         resetDbLock.readLock().lock();
@@ -359,8 +543,7 @@ public class RocksDbDataSource implements DbSource<byte[]> {
             try (RocksIterator it = db.newIterator(readOpts)) {
 
                 it.seek(prefix);
-                if (it.isValid())
-                    ret = it.value();
+                ret = seekedValue(it, prefix);
 
             } catch (Exception e) {
                 logger.error("Failed to seek by prefix in db '{}'", name, e);
@@ -377,11 +560,332 @@ public class RocksDbDataSource implements DbSource<byte[]> {
         }
     }
 
+    @Override
+    public Map<byte[], byte[]> prefixLookupAll(Collection<byte[]> keys, int prefixBytes) {
+
+        if (prefixBytes != NodeKeyCompositor.PREFIX_BYTES)
+            throw new RuntimeException("RocksDbDataSource.prefixLookup() supports only " + prefixBytes + "-bytes prefix");
+
+        resetDbLock.readLock().lock();
+        try (RocksIterator it = db.newIterator(readOpts)) {
+            if (logger.isTraceEnabled()) logger.trace("~> RocksDbDataSource.prefixLookupAll(): " + name + ", " + keys.size());
+            Map<byte[], byte[]> ret = seekAll(it, keys);
+            if (logger.isTraceEnabled()) logger.trace("<~ RocksDbDataSource.prefixLookupAll(): " + name + ", " + keys.size() + ", found " + ret.size());
+            return ret;
+        } catch (Exception e) {
+            logger.error("Failed to seek by prefix in db '{}'", name, e);
+            hintOnTooManyOpenFiles(e);
+            throw new RuntimeException(e);
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Seeks all the keys with a single iterator, creating an iterator per key is much more expensive
+     * than a seek. Keys are seeked in ascending order to make use of already loaded blocks
+     */
+    private static Map<byte[], byte[]> seekAll(RocksIterator it, Collection<byte[]> keys) {
+        List<byte[]> sorted = new ArrayList<>(keys);
+        sorted.sort((k1, k2) -> FastByteComparisons.compareTo(k1, 0, k1.length, k2, 0, k2.length));
+
+        Map<byte[], byte[]> ret = new HashMap<>();
+        for (byte[] key : sorted) {
+            byte[] prefix = new byte[NodeKeyCompositor.PREFIX_BYTES];
+            arraycopy(key, 0, prefix, 0, NodeKeyCompositor.PREFIX_BYTES);
+            it.seek(prefix);
+            byte[] value = seekedValue(it, prefix);
+            if (value != null) ret.put(key, value);
+        }
+        return ret;
+    }
+
+    /**
+     * The iterator is bound to the seek prefix only when the column family has the prefix extractor,
+     * without it a missing node would be resolved to the value of the next key
+     */
+    private static byte[] seekedValue(RocksIterator it, byte[] prefix) {
+        if (!it.isValid()) return null;
+        byte[] key = it.key();
+        if (key.length < prefix.length ||
+                FastByteComparisons.compareTo(key, 0, prefix.length, prefix, 0, prefix.length) != 0) {
+            return null;
+        }
+        return it.value();
+    }
+
     @Override
     public boolean flush() {
         return false;
     }
 
+    private class ColumnFamilySource implements DbSource<byte[]> {
+
+        final String family;
+        final int idx;
+
+        ColumnFamilySource(String family, int idx) {
+            this.family = family;
+            this.idx = idx;
+        }
+
+        private ColumnFamilyHandle handle() {
+            return familyHandles.get(idx);
+        }
+
+        @Override
+        public void setName(String name) {
+            throw new RuntimeException("Column family can't be renamed");
+        }
+
+        @Override
+        public String getName() {
+            return name + "/" + family;
+        }
+
+        @Override
+        public void init() {}
+
+        @Override
+        public void init(DbSettings settings) {}
+
+        @Override
+        public boolean isAlive() {
+            return RocksDbDataSource.this.isAlive();
+        }
+
+        @Override
+        public void close() {}
+
+        @Override
+        public Set<byte[]> keys() throws RuntimeException {
+            resetDbLock.readLock().lock();
+            try (RocksIterator iterator = db.newIterator(handle())) {
+                Set<byte[]> result = new HashSet<>();
+                for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
+                    result.add(iterator.key());
+                }
+                return result;
+            } catch (Exception e) {
+                logger.error("Error iterating db '{}'", getName(), e);
+                hintOnTooManyOpenFiles(e);
+                throw new RuntimeException(e);
+            } finally {
+                resetDbLock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public void reset() {
+            throw new RuntimeException("Column family can't be reset separately from db '" + name + "'");
+        }
+
+        @Override
+        public byte[] prefixLookup(byte[] key, int prefixBytes) {
+
+            if (prefixBytes != NodeKeyCompositor.PREFIX_BYTES)
+                throw new RuntimeException("RocksDbDataSource.prefixLookup() supports only " + prefixBytes + "-bytes prefix");
+
+            resetDbLock.readLock().lock();
+            try {
+                byte[] prefix = new byte[NodeKeyCompositor.PREFIX_BYTES];
+                arraycopy(key, 0, prefix, 0, NodeKeyCompositor.PREFIX_BYTES);
+
+                try (RocksIterator it = db.newIterator(handle(), readOpts)) {
+                    it.seek(prefix);
+                    return seekedValue(it, prefix);
+                }
+            } catch (Exception e) {
+                logger.error("Failed to seek by prefix in db '{}'", getName(), e);
+                hintOnTooManyOpenFiles(e);
+                throw new RuntimeException(e);
+            } finally {
+                resetDbLock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public void updateBatch(Map<byte[], byte[]> rows) {
+            resetDbLock.readLock().lock();
+            try (WriteBatch batch = new WriteBatch();
+                 WriteOptions writeOptions = new WriteOptions()) {
+                for (Map.Entry<byte[], byte[]> entry : rows.entrySet()) {
+                    if (entry.getValue() == null) {
+                        batch.remove(handle(), entry.getKey());
+                    } else {
+                        batch.put(handle(), entry.getKey(), entry.getValue());
+                    }
+                }
+                db.write(writeOptions, batch);
+            } catch (RocksDBException e) {
+                logger.error("Error in batch update on db '{}'", getName(), e);
+                hintOnTooManyOpenFiles(e);
+                throw new RuntimeException(e);
+            } finally {
+                resetDbLock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public void put(byte[] key, byte[] val) {
+            resetDbLock.readLock().lock();
+            try {
+                if (val != null) {
+                    db.put(handle(), key, val);
+                } else {
+                    db.delete(handle(), key);
+                }
+            } catch (RocksDBException e) {
+                logger.error("Failed to put into db '{}'", getName(), e);
+                hintOnTooManyOpenFiles(e);
+                throw new RuntimeException(e);
+            } finally {
+                resetDbLock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public byte[] get(byte[] key) {
+            resetDbLock.readLock().lock();
+            try {
+                return db.get(handle(), readOpts, key);
+            } catch (RocksDBException e) {
+                logger.error("Failed to get from db '{}'", getName(), e);
+                hintOnTooManyOpenFiles(e);
+                throw new RuntimeException(e);
+            } finally {
+                resetDbLock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public Map<byte[], byte[]> getAll(Collection<byte[]> keys) {
+            resetDbLock.readLock().lock();
+            try {
+                return db.multiGet(readOpts, Collections.nCopies(keys.size(), handle()), new ArrayList<>(keys));
+            } catch (RocksDBException e) {
+                logger.error("Failed to get from db '{}'", getName(), e);
+                hintOnTooManyOpenFiles(e);
+                throw new RuntimeException(e);
+            } finally {
+                resetDbLock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public Map<byte[], byte[]> prefixLookupAll(Collection<byte[]> keys, int prefixBytes) {
+
+            if (prefixBytes != NodeKeyCompositor.PREFIX_BYTES)
+                throw new RuntimeException("RocksDbDataSource.prefixLookup() supports only " + prefixBytes + "-bytes prefix");
+
+            resetDbLock.readLock().lock();
+            try (RocksIterator it = db.newIterator(handle(), readOpts)) {
+                return seekAll(it, keys);
+            } catch (Exception e) {
+                logger.error("Failed to seek by prefix in db '{}'", getName(), e);
+                hintOnTooManyOpenFiles(e);
+                throw new RuntimeException(e);
+            } finally {
+                resetDbLock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public void delete(byte[] key) {
+            put(key, null);
+        }
+
+        @Override
+        public boolean flush() {
+            return false;
+        }
+    }
+
+    private class ColumnFamiliesSource implements BatchSource<byte[], byte[]> {
+
+        @Override
+        public void updateBatch(Map<byte[], byte[]> rows) {
+            resetDbLock.readLock().lock();
+            try (WriteBatch batch = new WriteBatch();
+                 WriteOptions writeOptions = new WriteOptions()) {
+                for (Map.Entry<byte[], byte[]> entry : rows.entrySet()) {
+                    ColumnFamilyHandle handle = familyHandles.get(entry.getKey()[0]);
+                    byte[] key = Arrays.copyOfRange(entry.getKey(), 1, entry.getKey().length);
+                    if (entry.getValue() == null) {
+                        batch.remove(handle, key);
+                    } else {
+                        batch.put(handle, key, entry.getValue());
+                    }
+                }
+                db.write(writeOptions, batch);
+            } catch (RocksDBException e) {
+                logger.error("Error in batch update on db '{}'", name, e);
+                hintOnTooManyOpenFiles(e);
+                throw new RuntimeException(e);
+            } finally {
+                resetDbLock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public void put(byte[] key, byte[] val) {
+            updateBatch(Collections.singletonMap(key, val));
+        }
+
+        @Override
+        public byte[] get(byte[] key) {
+            resetDbLock.readLock().lock();
+            try {
+                return db.get(familyHandles.get(key[0]), readOpts, Arrays.copyOfRange(key, 1, key.length));
+            } catch (RocksDBException e) {
+                logger.error("Failed to get from db '{}'", name, e);
+                hintOnTooManyOpenFiles(e);
+                throw new RuntimeException(e);
+            } finally {
+                resetDbLock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public Map<byte[], byte[]> getAll(Collection<byte[]> keys) {
+            List<ColumnFamilyHandle> handles = new ArrayList<>(keys.size());
+            Map<byte[], byte[]> stripped = new HashMap<>();
+            for (byte[] key : keys) {
+                byte[] familyKey = Arrays.copyOfRange(key, 1, key.length);
+                stripped.put(familyKey, key);
+            }
+            List<byte[]> familyKeys = new ArrayList<>(stripped.keySet());
+            for (byte[] familyKey : familyKeys) {
+                handles.add(familyHandles.get(stripped.get(familyKey)[0]));
+            }
+
+            resetDbLock.readLock().lock();
+            try {
+                Map<byte[], byte[]> ret = new HashMap<>();
+                for (Map.Entry<byte[], byte[]> e : db.multiGet(readOpts, handles, familyKeys).entrySet()) {
+                    ret.put(stripped.get(e.getKey()), e.getValue());
+                }
+                return ret;
+            } catch (RocksDBException e) {
+                logger.error("Failed to get from db '{}'", name, e);
+                hintOnTooManyOpenFiles(e);
+                throw new RuntimeException(e);
+            } finally {
+                resetDbLock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public void delete(byte[] key) {
+            put(key, null);
+        }
+
+        @Override
+        public boolean flush() {
+            return false;
+        }
+    }
+
     private void hintOnTooManyOpenFiles(Exception e) {
         if (e.getMessage() != null && e.getMessage().toLowerCase().contains("too many open files")) {
             logger.info("");
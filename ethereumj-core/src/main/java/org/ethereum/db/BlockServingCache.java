@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db;
+
+import org.ethereum.datasource.ConcurrentSLRUMap;
+import org.ethereum.util.ByteArrayMap;
+import org.ethereum.util.RLPReader;
+import org.ethereum.util.RLPWriter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static org.ethereum.util.Utils.sizeToStr;
+
+/**
+ * Serves block headers and bodies to the peers in their RLP form.
+ *
+ * Header and body are sliced from the stored block encoding so no block is parsed
+ * and re-encoded while answering GetBlockHeaders/GetBlockBodies requests.
+ * Recently requested bodies are kept in a size bounded LRU cache which is shared by all the
+ * channels since syncing peers normally request the same bodies one after another
+ */
+public class BlockServingCache {
+
+    private final Function<byte[], byte[]> blockSource;
+    private final Map<byte[], byte[]> bodies;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder headersServed = new LongAdder();
+    private final LongAdder headersBytesServed = new LongAdder();
+    private final LongAdder bodiesServed = new LongAdder();
+    private final LongAdder bodiesBytesServed = new LongAdder();
+
+    /**
+     * @param blockSource returns the stored block RLP by the block hash, see {@link BlockStore#getEncodedBlockByHash(byte[])}
+     * @param maxSize max total size in bytes of cached bodies
+     */
+    public BlockServingCache(Function<byte[], byte[]> blockSource, long maxSize) {
+        this.blockSource = blockSource;
+        this.bodies = new ByteArrayMap<>(new ConcurrentSLRUMap<>(maxSize,
+                (key, value) -> key.getData().length + value.length, (key, value) -> {}));
+    }
+
+    /**
+     * @return RLP encoded header of the stored block or null if the block is not found
+     */
+    public byte[] getEncodedHeader(byte[] hash) {
+        byte[] block = blockSource.apply(hash);
+        return block == null ? null : RLPReader.readList(block).readEncoded();
+    }
+
+    /**
+     * Returns RLP encoded body of the block and counts it as served
+     * @return encoded body or null if the block is not found
+     */
+    public byte[] getEncodedBody(byte[] hash) {
+        byte[] body = bodies.get(hash);
+        if (body != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            byte[] block = blockSource.apply(hash);
+            if (block == null) return null;
+            body = sliceBody(block);
+            bodies.put(hash, body);
+        }
+
+        bodiesServed.increment();
+        bodiesBytesServed.add(body.length);
+        return body;
+    }
+
+    /**
+     * Counts the headers served, they are not cached as headers are requested by number
+     * and the same header is rarely asked twice by the same peer
+     */
+    public void headersServed(List<byte[]> headers) {
+        long size = 0;
+        for (byte[] header : headers) size += header.length;
+        headersServed.add(headers.size());
+        headersBytesServed.add(size);
+    }
+
+    /**
+     * Builds [transactions, uncles] list out of the stored [header, transactions, uncles] block,
+     * the same as {@link org.ethereum.core.Block#getEncodedBody()} does
+     */
+    static byte[] sliceBody(byte[] block) {
+        RLPReader reader = RLPReader.readList(block);
+        reader.skip();
+        int offset = reader.encodedOffset();
+        int length = reader.encodedLength();
+        reader.skip();
+        length += reader.encodedLength();
+
+        final int bodyLength = length;
+        return RLPWriter.encode(w -> {
+            w.startList();
+            w.writeEncoded(block, offset, bodyLength);
+            w.endList();
+        });
+    }
+
+    /**
+     * @return the number of bodies served from the cache
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of bodies read from the block store
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getHeadersBytesServed() {
+        return headersBytesServed.sum();
+    }
+
+    public long getBodiesBytesServed() {
+        return bodiesBytesServed.sum();
+    }
+
+    public String stats() {
+        return "headers served: " + headersServed.sum() + " (" + sizeToStr(headersBytesServed.sum()) + "), " +
+                "bodies served: " + bodiesServed.sum() + " (" + sizeToStr(bodiesBytesServed.sum()) + "), " +
+                "bodies cache hits/misses: " + hits.sum() + "/" + misses.sum();
+    }
+}
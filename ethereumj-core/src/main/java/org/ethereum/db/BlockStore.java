@@ -41,6 +41,12 @@ public interface BlockStore {
     Block getChainBlockByNumber(long blockNumber);
 
     Block getBlockByHash(byte[] hash);
+
+    /**
+     * @return block RLP as it is stored, intended for serving blocks without parsing them
+     */
+    byte[] getEncodedBlockByHash(byte[] hash);
+
     boolean isBlockExist(byte[] hash);
 
     List<byte[]> getListHashesEndWith(byte[] hash, long qty);
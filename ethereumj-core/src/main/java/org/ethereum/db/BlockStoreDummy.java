@@ -53,6 +53,11 @@ public class BlockStoreDummy implements BlockStore {
         return null;
     }
 
+    @Override
+    public byte[] getEncodedBlockByHash(byte[] hash) {
+        return null;
+    }
+
     @Override
     public boolean isBlockExist(byte[] hash) {
         return false;
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db;
+
+import org.ethereum.datasource.Source;
+import org.ethereum.listener.LogFilter;
+import org.ethereum.util.ByteUtil;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Index of block log blooms (bloom bits) for historical log queries.
+ *
+ * The chain is split into sections of {@link #SECTION_SIZE} blocks, for every section
+ * each of 2048 bloom bits is stored as a bit vector with a bit per section block.
+ * Thus a {@link LogFilter} is matched against the whole section by a few vector
+ * operations instead of reading and matching the bloom of each block header.
+ *
+ * Sections are added sequentially from the genesis, see {@link BloomBitsIndexer}
+ */
+public class BloomBitsIndex {
+
+    public static final int SECTION_SIZE = 4096;
+
+    public static final int BLOOM_BITS = 2048;
+
+    private static final byte[] SECTIONS_COUNT_KEY = "sectionsCount".getBytes();
+
+    private final Source<byte[], byte[]> source;
+
+    private volatile long sectionsCount;
+
+    public BloomBitsIndex(Source<byte[], byte[]> source) {
+        this.source = source;
+        byte[] count = source.get(SECTIONS_COUNT_KEY);
+        this.sectionsCount = count == null ? 0 : ByteUtil.byteArrayToLong(count);
+    }
+
+    /**
+     * @return the number of indexed sections
+     */
+    public long getSectionsCount() {
+        return sectionsCount;
+    }
+
+    /**
+     * @return the number of indexed blocks starting from the genesis
+     */
+    public long getIndexedBlocksCount() {
+        return sectionsCount * SECTION_SIZE;
+    }
+
+    /**
+     * Adds the next section to the index
+     *
+     * @param section section number, should be equal to {@link #getSectionsCount()}
+     * @param blooms log blooms of the section blocks in the order of block numbers
+     */
+    public synchronized void addSection(long section, List<byte[]> blooms) {
+        if (section != sectionsCount) {
+            throw new IllegalArgumentException("Section " + section + " can't be added, next expected section: " + sectionsCount);
+        }
+        if (blooms.size() != SECTION_SIZE) {
+            throw new IllegalArgumentException("Section should contain " + SECTION_SIZE + " blooms: " + blooms.size());
+        }
+
+        BitSet[] vectors = new BitSet[BLOOM_BITS];
+        for (int block = 0; block < blooms.size(); block++) {
+            byte[] bloom = blooms.get(block);
+            for (int i = 0; i < bloom.length; i++) {
+                if (bloom[i] == 0) continue;
+                for (int j = 0; j < 8; j++) {
+                    if ((bloom[i] & (0x80 >>> j)) != 0) {
+                        int bit = (i << 3) + j;
+                        if (vectors[bit] == null) vectors[bit] = new BitSet(SECTION_SIZE);
+                        vectors[bit].set(block);
+                    }
+                }
+            }
+        }
+
+        // empty vectors are not stored
+        for (int bit = 0; bit < BLOOM_BITS; bit++) {
+            if (vectors[bit] != null) {
+                source.put(bitKey(section, bit), vectors[bit].toByteArray());
+            }
+        }
+
+        sectionsCount = section + 1;
+        source.put(SECTIONS_COUNT_KEY, ByteUtil.longToBytes(sectionsCount));
+    }
+
+    /**
+     * @return the vector of the bloom bit over the section blocks
+     */
+    public BitSet getBloomBits(long section, int bit) {
+        byte[] vector = source.get(bitKey(section, bit));
+        return vector == null ? new BitSet() : BitSet.valueOf(vector);
+    }
+
+    /**
+     * Finds blocks that might contain logs matching the filter, the block receipts
+     * should be checked then to get the actual logs.
+     * Blocks which are not indexed yet are always returned as candidates
+     *
+     * @return numbers of candidate blocks in ascending order
+     */
+    public List<Long> getCandidateBlocks(LogFilter filter, long fromBlock, long toBlock) {
+        List<Long> ret = new ArrayList<>();
+        long indexed = getIndexedBlocksCount();
+
+        for (long section = fromBlock / SECTION_SIZE; section * SECTION_SIZE <= toBlock && section * SECTION_SIZE < indexed; section++) {
+            final long s = section;
+            BitSet matches = filter.matchBloomBits(bit -> getBloomBits(s, bit), SECTION_SIZE);
+
+            long sectionStart = section * SECTION_SIZE;
+            for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+                long number = sectionStart + i;
+                if (number >= fromBlock && number <= toBlock) {
+                    ret.add(number);
+                }
+            }
+        }
+
+        for (long number = Math.max(fromBlock, indexed); number <= toBlock; number++) {
+            ret.add(number);
+        }
+
+        return ret;
+    }
+
+    private static byte[] bitKey(long section, int bit) {
+        byte[] key = new byte[10];
+        System.arraycopy(ByteUtil.longToBytes(section), 0, key, 0, 8);
+        key[8] = (byte) (bit >>> 8);
+        key[9] = (byte) bit;
+        return key;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.ethereum.core.BlockHeader;
+import org.ethereum.core.BlockSummary;
+import org.ethereum.listener.CompositeEthereumListener;
+import org.ethereum.listener.EthereumListenerAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.ethereum.db.BloomBitsIndex.SECTION_SIZE;
+
+/**
+ * Builds {@link BloomBitsIndex} in background.
+ *
+ * A section is indexed when the main chain has the specified number of confirmation
+ * blocks on top of it, so that the section blocks are unlikely to be rebranched.
+ * Sections missing in the index are backfilled on start, new ones are indexed as
+ * the blocks are imported
+ */
+public class BloomBitsIndexer {
+    private static final Logger logger = LoggerFactory.getLogger("db");
+
+    private final BloomBitsIndex index;
+    private final BlockStore blockStore;
+    private final int confirmations;
+
+    private ExecutorService executor;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean closed = false;
+
+    public BloomBitsIndexer(BloomBitsIndex index, BlockStore blockStore, int confirmations) {
+        this.index = index;
+        this.blockStore = blockStore;
+        this.confirmations = confirmations;
+    }
+
+    /**
+     * Starts backfilling the index and indexing new sections on block import
+     */
+    public synchronized void start(CompositeEthereumListener listener) {
+        executor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("BloomBitsIndexer").build());
+        listener.addListener(new EthereumListenerAdapter() {
+            @Override
+            public void onBlock(BlockSummary blockSummary) {
+                if (blockSummary.getBlock().getNumber() >= getNextSectionConfirmedNumber()) {
+                    schedule();
+                }
+            }
+        });
+
+        // backfill
+        schedule();
+    }
+
+    /**
+     * @return the index or null if the indexer is a dummy created with the index disabled
+     */
+    public BloomBitsIndex getIndex() {
+        return index;
+    }
+
+    private long getNextSectionConfirmedNumber() {
+        return index.getIndexedBlocksCount() + SECTION_SIZE - 1 + confirmations;
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.submit(() -> {
+                scheduled.set(false);
+                try {
+                    update();
+                } catch (Exception e) {
+                    logger.error("Bloom bits indexing failed", e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Indexes all confirmed sections
+     */
+    public void update() {
+        while (!closed && getNextSectionConfirmedNumber() <= blockStore.getMaxNumber()) {
+            long section = index.getSectionsCount();
+            long t = System.currentTimeMillis();
+
+            List<byte[]> blooms = getSectionBlooms(section);
+            if (blooms == null) {
+                // the chain has gaps, e.g. after Fast Sync, indexing is resumed when blocks are loaded
+                logger.debug("Bloom bits index: blocks of section {} are not available", section);
+                return;
+            }
+            index.addSection(section, blooms);
+
+            logger.debug("Bloom bits index: section {} indexed in {} ms", section, System.currentTimeMillis() - t);
+        }
+    }
+
+    private List<byte[]> getSectionBlooms(long section) {
+        byte[] lastHash = blockStore.getBlockHashByNumber((section + 1) * SECTION_SIZE - 1);
+        if (lastHash == null) return null;
+
+        List<BlockHeader> headers = blockStore.getListHeadersEndWith(lastHash, SECTION_SIZE);
+        if (headers.size() < SECTION_SIZE) return null;
+
+        List<byte[]> blooms = new ArrayList<>(SECTION_SIZE);
+        for (int i = headers.size() - 1; i >= 0; i--) {
+            blooms.add(headers.get(i).getLogsBloom());
+        }
+        return blooms;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        closed = true;
+        if (executor != null) executor.shutdownNow();
+    }
+}
@@ -109,6 +109,19 @@ public class DbFlushManager {
         commit();
     }
 
+    /**
+     * Applies the update atomically with respect to the commits. Unlike {@link #commit(Runnable)}
+     * the update doesn't count as a block commit, the caches are flushed only when they reach the size threshold
+     */
+    public synchronized void update(Runnable atomicUpdate) {
+        atomicUpdate.run();
+        long cacheSize = getCacheSize();
+        if (sizeThreshold >= 0 && cacheSize >= sizeThreshold) {
+            logger.info("DbFlushManager: flushing db due to write cache size (" + cacheSize + ") reached threshold (" + sizeThreshold + ")");
+            flush();
+        }
+    }
+
     public synchronized void commit() {
         long cacheSize = getCacheSize();
         if (sizeThreshold >= 0 && cacheSize >= sizeThreshold) {
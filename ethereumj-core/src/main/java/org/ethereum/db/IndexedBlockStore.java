@@ -23,6 +23,8 @@ import org.ethereum.datasource.DataSourceArray;
 import org.ethereum.datasource.ObjectDataSource;
 import org.ethereum.datasource.Serializer;
 import org.ethereum.datasource.Source;
+import org.ethereum.db.migrate.MigrateBlockIndexFormat;
+import org.ethereum.util.ALock;
 import org.ethereum.util.ByteUtil;
 import org.ethereum.util.FastByteComparisons;
 import org.ethereum.util.RLP;
@@ -30,16 +32,29 @@ import org.ethereum.util.RLPElement;
 import org.ethereum.util.RLPList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.spongycastle.util.encoders.Hex;
 
 import java.io.*;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static java.math.BigInteger.ZERO;
 import static org.ethereum.crypto.HashUtil.shortHash;
 import static org.spongycastle.util.Arrays.areEqual;
 
+/**
+ * Block store which keeps blocks by hash and the index of {@link BlockInfo} lists by block number.
+ * Main chain hashes are additionally kept in memory by number, so that chain lookups by number
+ * don't need to read and decode index levels (see {@link MainChainHashes}).
+ *
+ * Only {@link #saveBlock}, {@link #reBranch} and {@link #updateTotDifficulties} take the write lock.
+ * Index levels are copied on write and never modified once stored, so readers holding the read lock
+ * see consistent index snapshots, and lookups by hash which don't touch the index take no lock at all
+ */
 public class IndexedBlockStore extends AbstractBlockstore{
 
     private static final Logger logger = LoggerFactory.getLogger("general");
@@ -48,6 +63,11 @@ public class IndexedBlockStore extends AbstractBlockstore{
     DataSourceArray<List<BlockInfo>> index;
     Source<byte[], byte[]> blocksDS;
     ObjectDataSource<Block> blocks;
+    MainChainHashes mainChainHashes;
+
+    private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
+    private final ALock readLock = new ALock(rwLock.readLock());
+    private final ALock writeLock = new ALock(rwLock.writeLock());
 
     public IndexedBlockStore(){
     }
@@ -68,52 +88,67 @@ public class IndexedBlockStore extends AbstractBlockstore{
                 return bytes == null ? null : new Block(bytes);
             }
         }, 256);
+        this.mainChainHashes = new MainChainHashes(this::loadChainBlockHash);
     }
 
-    public synchronized Block getBestBlock(){
+    public Block getBestBlock(){
+        byte[] hash;
+        try (ALock l = readLock.lock()) {
+            hash = getBestBlockHash();
+        }
+        return hash == null ? null : blocks.get(hash);
+    }
+
+    private byte[] getBestBlockHash() {
 
         Long maxLevel = getMaxNumber();
         if (maxLevel < 0) return null;
 
-        Block bestBlock = getChainBlockByNumber(maxLevel);
-        if (bestBlock != null) return  bestBlock;
+        byte[] bestHash = getChainBlockHash(maxLevel);
+        if (bestHash != null) return bestHash;
 
         // That scenario can happen
         // if there is a fork branch that is
         // higher than main branch but has
         // less TD than the main branch TD
-        while (bestBlock == null){
+        while (bestHash == null && maxLevel > 0){
             --maxLevel;
-            bestBlock = getChainBlockByNumber(maxLevel);
+            bestHash = getChainBlockHash(maxLevel);
         }
 
-        return bestBlock;
+        return bestHash;
     }
 
-    public synchronized byte[] getBlockHashByNumber(long blockNumber){
-        Block chainBlock = getChainBlockByNumber(blockNumber);
-        return chainBlock == null ? null : chainBlock.getHash(); // FIXME: can be improved by accessing the hash directly in the index
+    public byte[] getBlockHashByNumber(long blockNumber){
+        try (ALock l = readLock.lock()) {
+            return getChainBlockHash(blockNumber);
+        }
     }
 
 
     @Override
-    public synchronized void flush(){
-        blocks.flush();
-        index.flush();
-        blocksDS.flush();
-        indexDS.flush();
+    public void flush(){
+        // doesn't change the store content, so it doesn't block readers
+        try (ALock l = readLock.lock()) {
+            blocks.flush();
+            index.flush();
+            blocksDS.flush();
+            indexDS.flush();
+        }
     }
 
 
     @Override
-    public synchronized void saveBlock(Block block, BigInteger totalDifficulty, boolean mainChain){
-        addInternalBlock(block, totalDifficulty, mainChain);
+    public void saveBlock(Block block, BigInteger totalDifficulty, boolean mainChain){
+        try (ALock l = writeLock.lock()) {
+            addInternalBlock(block, totalDifficulty, mainChain);
+        }
     }
 
     private void addInternalBlock(Block block, BigInteger totalDifficulty, boolean mainChain){
 
         List<BlockInfo> blockInfos = block.getNumber() >= index.size() ?  null : index.get((int) block.getNumber());
-        blockInfos = blockInfos == null ? new ArrayList<BlockInfo>() : blockInfos;
+        blockInfos = blockInfos == null ? new ArrayList<BlockInfo>() : new ArrayList<>(blockInfos);
 
         BlockInfo blockInfo = new BlockInfo();
         blockInfo.setTotalDifficulty(totalDifficulty);
@@ -121,9 +156,10 @@ public class IndexedBlockStore extends AbstractBlockstore{
         blockInfo.setMainChain(mainChain); // FIXME:maybe here I should force reset main chain for all uncles on that level
 
         putBlockInfo(blockInfos, blockInfo);
-        index.set((int) block.getNumber(), blockInfos);
 
+        // block is stored prior to the index so readers never find a hash without the block
         blocks.put(block.getHash(), block);
+        setBlockInfoForLevel(block.getNumber(), blockInfos);
     }
 
     private void putBlockInfo(List<BlockInfo> blockInfos, BlockInfo blockInfo) {
@@ -138,15 +174,11 @@ public class IndexedBlockStore extends AbstractBlockstore{
     }
 
 
-    public synchronized List<Block> getBlocksByNumber(long number){
+    public List<Block> getBlocksByNumber(long number){
 
         List<Block> result = new ArrayList<>();
 
-        if (number >= index.size()) {
-            return result;
-        }
-
-        List<BlockInfo> blockInfos = index.get((int) number);
+        List<BlockInfo> blockInfos = getBlockInfoForLevel(number);
 
         if (blockInfos == null) {
             return result;
@@ -163,12 +195,18 @@ public class IndexedBlockStore extends AbstractBlockstore{
     }
 
     @Override
-    public synchronized Block getChainBlockByNumber(long number){
-        if (number >= index.size()){
-            return null;
-        }
+    public Block getChainBlockByNumber(long number){
+        byte[] hash = getBlockHashByNumber(number);
+        return hash == null ? null : blocks.get(hash);
+    }
 
-        List<BlockInfo> blockInfos = index.get((int) number);
+    private byte[] getChainBlockHash(long number) {
+        if (number > getMaxNumber()) return null;
+        return mainChainHashes.get(number);
+    }
+
+    private byte[] loadChainBlockHash(long number) {
+        List<BlockInfo> blockInfos = getBlockInfoForLevel(number);
 
         if (blockInfos == null) {
             return null;
@@ -177,9 +215,7 @@ public class IndexedBlockStore extends AbstractBlockstore{
         for (BlockInfo blockInfo : blockInfos){
 
             if (blockInfo.isMainChain()){
-
-                byte[] hash = blockInfo.getHash();
-                return blocks.get(hash);
+                return blockInfo.getHash();
             }
         }
 
@@ -187,68 +223,77 @@ public class IndexedBlockStore extends AbstractBlockstore{
     }
 
     @Override
-    public synchronized Block getBlockByHash(byte[] hash) {
+    public Block getBlockByHash(byte[] hash) {
         return blocks.get(hash);
     }
 
     @Override
-    public synchronized boolean isBlockExist(byte[] hash) {
+    public byte[] getEncodedBlockByHash(byte[] hash) {
+        return blocksDS.get(hash);
+    }
+
+    @Override
+    public boolean isBlockExist(byte[] hash) {
         return blocks.get(hash) != null;
     }
 
 
     @Override
-    public synchronized BigInteger getTotalDifficultyForHash(byte[] hash){
-        Block block = this.getBlockByHash(hash);
-        if (block == null) return ZERO;
+    public BigInteger getTotalDifficultyForHash(byte[] hash){
+        try (ALock l = readLock.lock()) {
+            Block block = this.getBlockByHash(hash);
+            if (block == null) return ZERO;
 
-        Long level  =  block.getNumber();
-        List<BlockInfo> blockInfos =  index.get(level.intValue());
-        for (BlockInfo blockInfo : blockInfos)
-                 if (areEqual(blockInfo.getHash(), hash)) {
-                     return blockInfo.totalDifficulty;
-                 }
+            List<BlockInfo> blockInfos = getBlockInfoForLevel(block.getNumber());
+            if (blockInfos == null) return ZERO;
 
-        return ZERO;
+            for (BlockInfo blockInfo : blockInfos)
+                if (areEqual(blockInfo.getHash(), hash)) {
+                    return blockInfo.totalDifficulty;
+                }
+
+            return ZERO;
+        }
     }
 
 
     @Override
-    public synchronized BigInteger getTotalDifficulty(){
-        long maxNumber = getMaxNumber();
-
-        List<BlockInfo> blockInfos = index.get((int) maxNumber);
-        for (BlockInfo blockInfo : blockInfos){
-            if (blockInfo.isMainChain()){
-                return blockInfo.getTotalDifficulty();
-            }
-        }
+    public BigInteger getTotalDifficulty(){
+        try (ALock l = readLock.lock()) {
+            long maxNumber = getMaxNumber();
 
-        while (true){
-            --maxNumber;
-            List<BlockInfo> infos = getBlockInfoForLevel(maxNumber);
+            for (; maxNumber >= 0; --maxNumber) {
+                List<BlockInfo> infos = getBlockInfoForLevel(maxNumber);
+                if (infos == null) continue;
 
-            for (BlockInfo blockInfo : infos) {
-                if (blockInfo.isMainChain()) {
-                    return blockInfo.getTotalDifficulty();
+                for (BlockInfo blockInfo : infos) {
+                    if (blockInfo.isMainChain()) {
+                        return blockInfo.getTotalDifficulty();
+                    }
                 }
             }
+            return ZERO;
         }
     }
 
-    public synchronized void updateTotDifficulties(long index) {
-        List<BlockInfo> level = getBlockInfoForLevel(index);
-        for (BlockInfo blockInfo : level) {
-            Block block = getBlockByHash(blockInfo.getHash());
-            List<BlockInfo> parentInfos = getBlockInfoForLevel(index - 1);
-            BlockInfo parentInfo = getBlockInfoForHash(parentInfos, block.getParentHash());
-            blockInfo.setTotalDifficulty(parentInfo.getTotalDifficulty().add(block.getDifficultyBI()));
+    public void updateTotDifficulties(long index) {
+        try (ALock l = writeLock.lock()) {
+            List<BlockInfo> level = new ArrayList<>(getBlockInfoForLevel(index));
+            for (int i = 0; i < level.size(); i++) {
+                BlockInfo blockInfo = level.get(i);
+                Block block = getBlockByHash(blockInfo.getHash());
+                List<BlockInfo> parentInfos = getBlockInfoForLevel(index - 1);
+                BlockInfo parentInfo = getBlockInfoForHash(parentInfos, block.getParentHash());
+                BlockInfo updated = blockInfo.copy();
+                updated.setTotalDifficulty(parentInfo.getTotalDifficulty().add(block.getDifficultyBI()));
+                level.set(i, updated);
+            }
+            setBlockInfoForLevel(index, level);
         }
-        this.index.set((int) index, level);
     }
 
     @Override
-    public synchronized long getMaxNumber(){
+    public long getMaxNumber(){
 
         Long bestIndex = 0L;
 
@@ -260,7 +305,7 @@ public class IndexedBlockStore extends AbstractBlockstore{
     }
 
     @Override
-    public synchronized List<byte[]> getListHashesEndWith(byte[] hash, long number){
+    public List<byte[]> getListHashesEndWith(byte[] hash, long number){
 
         List<Block> blocks = getListBlocksEndWith(hash, number);
         List<byte[]> hashes = new ArrayList<>(blocks.size());
@@ -273,7 +318,7 @@ public class IndexedBlockStore extends AbstractBlockstore{
     }
 
     @Override
-    public synchronized List<BlockHeader> getListHeadersEndWith(byte[] hash, long qty) {
+    public List<BlockHeader> getListHeadersEndWith(byte[] hash, long qty) {
 
         List<Block> blocks = getListBlocksEndWith(hash, qty);
         List<BlockHeader> headers = new ArrayList<>(blocks.size());
@@ -286,7 +331,8 @@ public class IndexedBlockStore extends AbstractBlockstore{
     }
 
     @Override
-    public synchronized List<Block> getListBlocksEndWith(byte[] hash, long qty) {
+    public List<Block> getListBlocksEndWith(byte[] hash, long qty) {
+        // walks the blocks by parent hashes which never change, no lock is needed
         return getListBlocksEndWithInner(hash, qty);
     }
 
@@ -308,7 +354,13 @@ public class IndexedBlockStore extends AbstractBlockstore{
     }
 
     @Override
-    public synchronized void reBranch(Block forkBlock){
+    public void reBranch(Block forkBlock){
+        try (ALock l = writeLock.lock()) {
+            reBranchImpl(forkBlock);
+        }
+    }
+
+    private void reBranchImpl(Block forkBlock){
 
         Block bestBlock = getBestBlock();
 
@@ -320,12 +372,7 @@ public class IndexedBlockStore extends AbstractBlockstore{
         if (forkBlock.getNumber() > bestBlock.getNumber()){
 
             while(currentLevel > bestBlock.getNumber()){
-                List<BlockInfo> blocks =  getBlockInfoForLevel(currentLevel);
-                BlockInfo blockInfo = getBlockInfoForHash(blocks, forkLine.getHash());
-                if (blockInfo != null)  {
-                    blockInfo.setMainChain(true);
-                    setBlockInfoForLevel(currentLevel, blocks);
-                }
+                setMainChain(currentLevel, forkLine.getHash(), true);
                 forkLine = getBlockByHash(forkLine.getParentHash());
                 --currentLevel;
             }
@@ -335,13 +382,7 @@ public class IndexedBlockStore extends AbstractBlockstore{
         if (bestBlock.getNumber() > forkBlock.getNumber()){
 
             while(currentLevel > forkBlock.getNumber()){
-
-                List<BlockInfo> blocks =  getBlockInfoForLevel(currentLevel);
-                BlockInfo blockInfo = getBlockInfoForHash(blocks, bestLine.getHash());
-                if (blockInfo != null)  {
-                    blockInfo.setMainChain(false);
-                    setBlockInfoForLevel(currentLevel, blocks);
-                }
+                setMainChain(currentLevel, bestLine.getHash(), false);
                 bestLine = getBlockByHash(bestLine.getParentHash());
                 --currentLevel;
             }
@@ -351,18 +392,19 @@ public class IndexedBlockStore extends AbstractBlockstore{
         // 2. Loop back on each level until common block
         while( !bestLine.isEqual(forkLine) ) {
 
-            List<BlockInfo> levelBlocks = getBlockInfoForLevel(currentLevel);
-            BlockInfo bestInfo = getBlockInfoForHash(levelBlocks, bestLine.getHash());
-            if (bestInfo != null) {
-                bestInfo.setMainChain(false);
-                setBlockInfoForLevel(currentLevel, levelBlocks);
-            }
-
-            BlockInfo forkInfo = getBlockInfoForHash(levelBlocks, forkLine.getHash());
-            if (forkInfo != null) {
-                forkInfo.setMainChain(true);
-                setBlockInfoForLevel(currentLevel, levelBlocks);
+            List<BlockInfo> levelBlocks = new ArrayList<>(getBlockInfoForLevel(currentLevel));
+            boolean updated = false;
+            for (int i = 0; i < levelBlocks.size(); i++) {
+                BlockInfo info = levelBlocks.get(i);
+                if (areEqual(info.getHash(), bestLine.getHash())) {
+                    levelBlocks.set(i, info.copy(false));
+                    updated = true;
+                } else if (areEqual(info.getHash(), forkLine.getHash())) {
+                    levelBlocks.set(i, info.copy(true));
+                    updated = true;
+                }
             }
+            if (updated) setBlockInfoForLevel(currentLevel, levelBlocks);
 
 
             bestLine = getBlockByHash(bestLine.getParentHash());
@@ -374,25 +416,34 @@ public class IndexedBlockStore extends AbstractBlockstore{
 
     }
 
+    /**
+     * Stores the copy of the level with the main chain flag of specified block updated
+     */
+    private void setMainChain(long level, byte[] hash, boolean mainChain) {
+        List<BlockInfo> blocks = new ArrayList<>(getBlockInfoForLevel(level));
+        for (int i = 0; i < blocks.size(); i++) {
+            if (areEqual(blocks.get(i).getHash(), hash)) {
+                blocks.set(i, blocks.get(i).copy(mainChain));
+                setBlockInfoForLevel(level, blocks);
+                return;
+            }
+        }
+    }
 
-    public synchronized List<byte[]> getListHashesStartWith(long number, long maxBlocks){
 
-        List<byte[]> result = new ArrayList<>();
+    public List<byte[]> getListHashesStartWith(long number, long maxBlocks){
 
-        int i;
-        for ( i = 0; i < maxBlocks; ++i){
-            List<BlockInfo> blockInfos =  index.get((int) number);
-            if (blockInfos == null) break;
+        List<byte[]> result = new ArrayList<>();
 
-            for (BlockInfo blockInfo : blockInfos)
-               if (blockInfo.isMainChain()){
-                   result.add(blockInfo.getHash());
-                   break;
-               }
+        try (ALock l = readLock.lock()) {
+            long maxNumber = getMaxNumber();
+            for (int i = 0; i < maxBlocks && number <= maxNumber; ++i) {
+                byte[] hash = mainChainHashes.get(number);
+                if (hash != null) result.add(hash);
 
-            ++number;
+                ++number;
+            }
         }
-        maxBlocks -= i;
 
         return result;
     }
@@ -425,11 +476,86 @@ public class IndexedBlockStore extends AbstractBlockstore{
         public void setMainChain(boolean mainChain) {
             this.mainChain = mainChain;
         }
+
+        BlockInfo copy() {
+            return copy(mainChain);
+        }
+
+        BlockInfo copy(boolean mainChain) {
+            BlockInfo ret = new BlockInfo();
+            ret.hash = hash;
+            ret.totalDifficulty = totalDifficulty;
+            ret.mainChain = mainChain;
+            return ret;
+        }
     }
 
 
+    /**
+     * Current index level format version, written as the first byte of each level.
+     * Levels in the previous RLP format always start with a list prefix (0xc0 or higher)
+     */
+    public static final byte INDEX_FORMAT_VERSION = 1;
+
+    /**
+     * Index key holding the format version of the whole index, written once all the levels are migrated
+     */
+    public static final byte[] INDEX_VERSION_KEY = Hex.decode("FFFFFFFFFFFFFFFE");
+
+    private static final int BLOCK_INFO_SIZE = 32 + 32 + 1;
+
+    /**
+     * Fixed width level format: version byte followed by the [hash(32), totalDifficulty(32), mainChain(1)]
+     * entries. Levels in the legacy RLP format are decoded with {@link #LEGACY_BLOCK_INFO_SERIALIZER}
+     */
     public static final Serializer<List<BlockInfo>, byte[]> BLOCK_INFO_SERIALIZER = new Serializer<List<BlockInfo>, byte[]>(){
 
+        @Override
+        public byte[] serialize(List<BlockInfo> value) {
+            byte[] ret = new byte[1 + value.size() * BLOCK_INFO_SIZE];
+            ret[0] = INDEX_FORMAT_VERSION;
+            int pos = 1;
+            for (BlockInfo blockInfo : value) {
+                if (blockInfo.getHash() == null || blockInfo.getHash().length != 32) {
+                    throw new RuntimeException("BlockInfo hash should be 32 bytes");
+                }
+                BigInteger totalDifficulty = blockInfo.getTotalDifficulty();
+                if (totalDifficulty == null || totalDifficulty.signum() < 0 || totalDifficulty.bitLength() > 256) {
+                    throw new RuntimeException("BlockInfo totalDifficulty should be positive 256-bit BigInteger");
+                }
+                System.arraycopy(blockInfo.getHash(), 0, ret, pos, 32);
+                System.arraycopy(ByteUtil.bigIntegerToBytes(totalDifficulty, 32), 0, ret, pos + 32, 32);
+                ret[pos + 64] = (byte) (blockInfo.isMainChain() ? 1 : 0);
+                pos += BLOCK_INFO_SIZE;
+            }
+            return ret;
+        }
+
+        @Override
+        public List<BlockInfo> deserialize(byte[] bytes) {
+            if (bytes == null) return null;
+            if (bytes.length == 0 || bytes[0] != INDEX_FORMAT_VERSION) {
+                return LEGACY_BLOCK_INFO_SERIALIZER.deserialize(bytes);
+            }
+
+            List<BlockInfo> blockInfoList = new ArrayList<>((bytes.length - 1) / BLOCK_INFO_SIZE);
+            for (int pos = 1; pos + BLOCK_INFO_SIZE <= bytes.length; pos += BLOCK_INFO_SIZE) {
+                BlockInfo blockInfo = new BlockInfo();
+                blockInfo.setHash(Arrays.copyOfRange(bytes, pos, pos + 32));
+                blockInfo.setTotalDifficulty(ByteUtil.bytesToBigInteger(Arrays.copyOfRange(bytes, pos + 32, pos + 64)));
+                blockInfo.setMainChain(bytes[pos + 64] == 1);
+                blockInfoList.add(blockInfo);
+            }
+
+            return blockInfoList;
+        }
+    };
+
+    /**
+     * RLP level format used prior to {@link #INDEX_FORMAT_VERSION} 1
+     */
+    public static final Serializer<List<BlockInfo>, byte[]> LEGACY_BLOCK_INFO_SERIALIZER = new Serializer<List<BlockInfo>, byte[]>(){
+
         @Override
         public byte[] serialize(List<BlockInfo> value) {
                 List<byte[]> rlpBlockInfoList = new ArrayList<>();
@@ -470,12 +596,12 @@ public class IndexedBlockStore extends AbstractBlockstore{
     };
 
 
-    public synchronized void printChain(){
+    public void printChain(){
 
         Long number = getMaxNumber();
 
         for (int i = 0; i < number; ++i){
-            List<BlockInfo> levelInfos = index.get(i);
+            List<BlockInfo> levelInfos = getBlockInfoForLevel(i);
 
             if (levelInfos != null) {
                 System.out.print(i);
@@ -492,12 +618,25 @@ public class IndexedBlockStore extends AbstractBlockstore{
 
     }
 
-    private synchronized List<BlockInfo> getBlockInfoForLevel(long level){
+    /**
+     * @return index level or null if it doesn't exist, returned list must not be modified
+     */
+    private List<BlockInfo> getBlockInfoForLevel(long level){
+        if (level < 0 || level >= index.size()) return null;
         return index.get((int) level);
     }
 
-    private synchronized void setBlockInfoForLevel(long level, List<BlockInfo> infos){
+    private void setBlockInfoForLevel(long level, List<BlockInfo> infos){
         index.set((int) level, infos);
+
+        byte[] mainHash = null;
+        for (BlockInfo info : infos) {
+            if (info.isMainChain()) {
+                mainHash = info.getHash();
+                break;
+            }
+        }
+        mainChainHashes.set(level, mainHash);
     }
 
     private static BlockInfo getBlockInfoForHash(List<BlockInfo> blocks, byte[] hash){
@@ -509,11 +648,15 @@ public class IndexedBlockStore extends AbstractBlockstore{
     }
 
     @Override
-    public synchronized void load() {
+    public void load() {
+        try (ALock l = writeLock.lock()) {
+            new MigrateBlockIndexFormat(indexDS).run();
+            mainChainHashes.clear();
+        }
     }
 
     @Override
-    public synchronized void close() {
+    public void close() {
 //        logger.info("Closing IndexedBlockStore...");
 //        try {
 //            indexDS.close();
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongFunction;
+
+/**
+ * In-memory number -> hash array of the main chain blocks.
+ *
+ * Hashes are kept in flat chunks of {@link #CHUNK_SIZE} 32-byte entries which are
+ * loaded from the block index on the first access, an all-zero entry means there is
+ * no main chain block at that number. The array doesn't do any locking of its own:
+ * {@link #set} calls must be exclusive with {@link #get} calls, which is guaranteed by
+ * the {@link IndexedBlockStore} read/write lock
+ */
+class MainChainHashes {
+
+    static final int CHUNK_SIZE = 4096;
+    private static final int HASH_LENGTH = 32;
+
+    private final LongFunction<byte[]> loader;
+    private final Map<Long, byte[]> chunks = new ConcurrentHashMap<>();
+
+    /**
+     * @param loader reads the main chain hash for the block number from the index,
+     *               returns null if there is no main chain block
+     */
+    MainChainHashes(LongFunction<byte[]> loader) {
+        this.loader = loader;
+    }
+
+    public byte[] get(long number) {
+        if (number < 0) return null;
+        byte[] chunk = chunks.computeIfAbsent(number / CHUNK_SIZE, this::loadChunk);
+        int pos = offset(number);
+        for (int i = pos; i < pos + HASH_LENGTH; i++) {
+            if (chunk[i] != 0) return Arrays.copyOfRange(chunk, pos, pos + HASH_LENGTH);
+        }
+        return null;
+    }
+
+    /**
+     * Updates the entry if its chunk was loaded, otherwise it is read from the index on demand
+     */
+    public void set(long number, byte[] hash) {
+        byte[] chunk = chunks.get(number / CHUNK_SIZE);
+        if (chunk == null) return;
+        if (hash == null) {
+            Arrays.fill(chunk, offset(number), offset(number) + HASH_LENGTH, (byte) 0);
+        } else {
+            System.arraycopy(hash, 0, chunk, offset(number), HASH_LENGTH);
+        }
+    }
+
+    public void clear() {
+        chunks.clear();
+    }
+
+    private byte[] loadChunk(long chunkIdx) {
+        byte[] chunk = new byte[CHUNK_SIZE * HASH_LENGTH];
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            byte[] hash = loader.apply(chunkIdx * CHUNK_SIZE + i);
+            if (hash != null) System.arraycopy(hash, 0, chunk, i * HASH_LENGTH, HASH_LENGTH);
+        }
+        return chunk;
+    }
+
+    private static int offset(long number) {
+        return (int) (number % CHUNK_SIZE) * HASH_LENGTH;
+    }
+}
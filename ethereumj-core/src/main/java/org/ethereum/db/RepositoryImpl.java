@@ -177,6 +177,12 @@ public class RepositoryImpl implements Repository, org.ethereum.facade.Repositor
         return accountState.getBalance();
     }
 
+    @Override
+    public synchronized boolean addCoinbaseFee(byte[] coinbase, BigInteger fee) {
+        addBalance(coinbase, fee);
+        return true;
+    }
+
     @Override
     public synchronized RepositoryImpl startTracking() {
         Source<byte[], AccountState> trackAccountStateCache = new WriteCache.BytesKey<>(accountStateCache,
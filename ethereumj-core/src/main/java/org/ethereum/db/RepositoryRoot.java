@@ -21,8 +21,20 @@ import org.ethereum.core.AccountState;
 import org.ethereum.core.Repository;
 import org.ethereum.datasource.*;
 import org.ethereum.trie.*;
+import org.ethereum.util.ByteArrayMap;
+import org.ethereum.util.ByteArraySet;
+import org.ethereum.util.ByteUtil;
+import org.ethereum.util.FastByteComparisons;
 import org.ethereum.vm.DataWord;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.ethereum.crypto.HashUtil.EMPTY_TRIE_HASH;
+import static org.ethereum.crypto.HashUtil.sha3;
+
 /**
  * Created by Anton Nashatyrev on 07.10.2016.
  */
@@ -32,12 +44,21 @@ public class RepositoryRoot extends RepositoryImpl {
         Trie<byte[]> trie;
 
         public StorageCache(Trie<byte[]> trie) {
-            super(new SourceCodec<>(trie, Serializers.StorageKeySerializer, Serializers.StorageValueSerializer), WriteCache.CacheType.SIMPLE);
+            this(trie, trie);
+        }
+
+        public StorageCache(Trie<byte[]> trie, Source<byte[], byte[]> trieSource) {
+            super(new SourceCodec<>(trieSource, Serializers.StorageKeySerializer, Serializers.StorageValueSerializer), WriteCache.CacheType.SIMPLE);
             this.trie = trie;
         }
     }
 
     private class MultiStorageCache extends MultiCache<StorageCache> {
+        // storage tries updated by flushChild(), they are hashed concurrently at the end of flushImpl()
+        private final Map<byte[], StorageCache> flushedStorages = new ByteArrayMap<>();
+        // storages of deleted accounts, their snapshot entries are deleted on flush
+        private final Set<byte[]> deletedStorages = new ByteArraySet();
+
         public MultiStorageCache() {
             super(null);
         }
@@ -47,23 +68,55 @@ public class RepositoryRoot extends RepositoryImpl {
             Serializer<byte[], byte[]> keyCompositor = new NodeKeyCompositor(key);
             Source<byte[], byte[]> composingSrc = new SourceCodec.KeyOnly<>(trieCache, keyCompositor);
             TrieImpl storageTrie = createTrie(composingSrc, accountState == null ? null : accountState.getStateRoot());
-            return new StorageCache(storageTrie);
+            if (snapshotView == null) {
+                return new StorageCache(storageTrie);
+            }
+            return new StorageCache(storageTrie, new SnapshotTrieSource(storageTrie, snapshotView, sha3(key)));
+        }
+
+        @Override
+        public synchronized void delete(byte[] key) {
+            if (snapshotView != null) {
+                deletedStorages.add(key);
+            }
+            super.delete(key);
+        }
+
+        @Override
+        public synchronized boolean flushImpl() {
+            // prior to flushing storages as an account could be created again
+            for (byte[] address : deletedStorages) {
+                deleteStorageSnapshot(address);
+            }
+            deletedStorages.clear();
+
+            boolean ret = super.flushImpl();
+            if (!flushedStorages.isEmpty()) {
+                List<Trie<byte[]>> tries = new ArrayList<>(flushedStorages.size());
+                for (StorageCache storage : flushedStorages.values()) {
+                    tries.add(storage.trie);
+                }
+                TrieImpl.flushAll(tries);
+
+                for (Map.Entry<byte[], StorageCache> entry : flushedStorages.entrySet()) {
+                    AccountState storageOwnerAcct = accountStateCache.get(entry.getKey());
+                    // need to update account storage root
+                    byte[] rootHash = entry.getValue().trie.getRootHash();
+                    accountStateCache.put(entry.getKey(), storageOwnerAcct.withStateRoot(rootHash));
+                }
+                flushedStorages.clear();
+            }
+            return ret;
         }
 
         @Override
         protected synchronized boolean flushChild(byte[] key, StorageCache childCache) {
             if (super.flushChild(key, childCache)) {
                 if (childCache != null) {
-                    AccountState storageOwnerAcct = accountStateCache.get(key);
-                    // need to update account storage root
-                    childCache.trie.flush();
-                    byte[] rootHash = childCache.trie.getRootHash();
-                    accountStateCache.put(key, storageOwnerAcct.withStateRoot(rootHash));
-                    return true;
-                } else {
-                    // account was deleted
-                    return true;
+                    flushedStorages.put(key, childCache);
                 }
+                // otherwise account was deleted
+                return true;
             } else {
                 // no storage changes
                 return false;
@@ -74,11 +127,17 @@ public class RepositoryRoot extends RepositoryImpl {
     private Source<byte[], byte[]> stateDS;
     private CachedSource.BytesKey<byte[]> trieCache;
     private Trie<byte[]> stateTrie;
+    private StateSnapshot snapshot;
+    private StateSnapshot.View snapshotView;
 
     public RepositoryRoot(Source<byte[], byte[]> stateDS) {
         this(stateDS, null);
     }
 
+    public RepositoryRoot(final Source<byte[], byte[]> stateDS, byte[] root) {
+        this(stateDS, root, null);
+    }
+
     /**
      * Building the following structure for snapshot Repository:
      *
@@ -87,17 +146,23 @@ public class RepositoryRoot extends RepositoryImpl {
      *   \                 \-->>> storageKeyCompositor --> contractStorageTrie --> storageCodec --> storageCache
      *    \--> codeCache
      *
+     * With the state snapshot the account and storage tries are read and written through {@link SnapshotTrieSource}
      *
      * @param stateDS
      * @param root
+     * @param snapshot flat state snapshot or null
      */
-    public RepositoryRoot(final Source<byte[], byte[]> stateDS, byte[] root) {
+    public RepositoryRoot(final Source<byte[], byte[]> stateDS, byte[] root, StateSnapshot snapshot) {
         this.stateDS = stateDS;
+        this.snapshot = snapshot;
+        this.snapshotView = snapshot == null ? null : snapshot.createView(root);
 
         trieCache = new WriteCache.BytesKey<>(stateDS, WriteCache.CacheType.COUNTING);
         stateTrie = new SecureTrie(trieCache, root);
 
-        SourceCodec.BytesKey<AccountState, byte[]> accountStateCodec = new SourceCodec.BytesKey<>(stateTrie, Serializers.AccountStateSerializer);
+        Source<byte[], byte[]> stateTrieSource = snapshotView == null ? stateTrie :
+                new SnapshotTrieSource(stateTrie, snapshotView, null);
+        SourceCodec.BytesKey<AccountState, byte[]> accountStateCodec = new SourceCodec.BytesKey<>(stateTrieSource, Serializers.AccountStateSerializer);
         final ReadWriteCache.BytesKey<AccountState> accountStateCache = new ReadWriteCache.BytesKey<>(accountStateCodec, WriteCache.CacheType.SIMPLE);
 
         final MultiCache<StorageCache> storageCache = new MultiStorageCache();
@@ -114,6 +179,10 @@ public class RepositoryRoot extends RepositoryImpl {
 
         stateTrie.flush();
         trieCache.flush();
+
+        if (snapshotView != null) {
+            snapshotView.commit(stateTrie.getRootHash());
+        }
     }
 
     @Override
@@ -131,7 +200,7 @@ public class RepositoryRoot extends RepositoryImpl {
 
     @Override
     public Repository getSnapshotTo(byte[] root) {
-        return new RepositoryRoot(stateDS, root);
+        return new RepositoryRoot(stateDS, root, snapshot);
     }
 
     @Override
@@ -147,6 +216,35 @@ public class RepositoryRoot extends RepositoryImpl {
     @Override
     public synchronized void syncToRoot(byte[] root) {
         stateTrie.setRoot(root);
+        if (snapshotView != null) {
+            snapshotView.reset(root);
+        }
+    }
+
+    /**
+     * Deletes the snapshot entries of the account storage
+     * which are the storage trie values and the storage changes since the last commit
+     */
+    private void deleteStorageSnapshot(byte[] address) {
+        // the changes are not kept without the layer, no need to scan the storage
+        if (!snapshotView.hasLayer()) return;
+
+        final byte[] keyPrefix = sha3(address);
+        snapshotView.deleteChanged(keyPrefix);
+
+        AccountState accountState = Serializers.AccountStateSerializer.deserialize(stateTrie.get(address));
+        if (accountState == null || FastByteComparisons.equal(accountState.getStateRoot(), EMPTY_TRIE_HASH)) return;
+
+        Source<byte[], byte[]> composingSrc = new SourceCodec.KeyOnly<>(trieCache, new NodeKeyCompositor(address));
+        createTrie(composingSrc, accountState.getStateRoot()).scanTree(new TrieImpl.ScanAction() {
+            @Override
+            public void doOnNode(byte[] hash, TrieImpl.Node node) {}
+
+            @Override
+            public void doOnValue(byte[] nodeHash, TrieImpl.Node node, byte[] key, byte[] value) {
+                snapshotView.delete(ByteUtil.merge(keyPrefix, key));
+            }
+        });
     }
 
     protected TrieImpl createTrie(Source<byte[], byte[]> trieCache, byte[] root) {
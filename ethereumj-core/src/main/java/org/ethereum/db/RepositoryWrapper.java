@@ -126,6 +126,11 @@ public class RepositoryWrapper implements Repository {
         return blockchain.getRepository().addBalance(addr, value);
     }
 
+    @Override
+    public boolean addCoinbaseFee(byte[] coinbase, BigInteger fee) {
+        return blockchain.getRepository().addCoinbaseFee(coinbase, fee);
+    }
+
     @Override
     public Set<byte[]> getAccountsKeys() {
         return blockchain.getRepository().getAccountsKeys();
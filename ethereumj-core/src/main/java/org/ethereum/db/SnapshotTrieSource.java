@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db;
+
+import org.ethereum.datasource.AbstractChainedSource;
+import org.ethereum.datasource.Source;
+import org.ethereum.util.ByteUtil;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+
+/**
+ * Reads the trie values from the {@link StateSnapshot} first and records the trie updates
+ * to the snapshot view. Snapshot keys are sha3(key) for the state trie and
+ * sha3(address) ++ sha3(key) for the contract storage tries
+ */
+class SnapshotTrieSource extends AbstractChainedSource<byte[], byte[], byte[], byte[]> {
+
+    private final StateSnapshot.View view;
+    private final byte[] keyPrefix;
+
+    /**
+     * @param keyPrefix sha3(address) for a storage trie or null for the state trie
+     */
+    SnapshotTrieSource(Source<byte[], byte[]> trie, StateSnapshot.View view, byte[] keyPrefix) {
+        super(trie);
+        this.view = view;
+        this.keyPrefix = keyPrefix;
+        setFlushSource(true);
+    }
+
+    private byte[] snapshotKey(byte[] key) {
+        return keyPrefix == null ? sha3(key) : ByteUtil.merge(keyPrefix, sha3(key));
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        byte[] ret = view.get(snapshotKey(key));
+        if (ret != null) {
+            return ret.length == 0 ? null : ret;
+        }
+        return getSource().get(key);
+    }
+
+    @Override
+    public void put(byte[] key, byte[] val) {
+        if (val == null || val.length == 0) {
+            delete(key);
+            return;
+        }
+        view.put(snapshotKey(key), val);
+        getSource().put(key, val);
+    }
+
+    @Override
+    public void delete(byte[] key) {
+        view.delete(snapshotKey(key));
+        getSource().delete(key);
+    }
+
+    @Override
+    protected boolean flushImpl() {
+        return false;
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db;
+
+import org.ethereum.core.AccountState;
+import org.ethereum.datasource.*;
+import org.ethereum.util.ByteArrayMap;
+import org.ethereum.util.FastByteComparisons;
+import org.ethereum.vm.DataWord;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Track for the speculative execution of a block transaction concurrently with
+ * the other transactions of the same block.
+ *
+ * All the reads are served by the parent repository under the parent monitor (the parent
+ * caches are not thread safe) and every value read is recorded. Writes are kept locally
+ * until {@link #commit()}. When transactions are committed in the block order the
+ * {@link #isValid()} check ensures that the parent still has the same values for all
+ * entries the transaction has read, i.e. none of the preceding transactions has
+ * changed anything this one depends on, thus the result is the same as of the serial execution.
+ *
+ * The fee every transaction pays to the block coinbase would make all the block transactions
+ * dependent on each other. Since balance increments commute the fee credited in the transaction
+ * finalization is accumulated aside and applied to the parent on commit. All the other coinbase
+ * accesses are regular recorded reads and writes
+ */
+public class SpeculativeRepository extends RepositoryImpl {
+
+    private final RepositoryImpl base;
+    private final byte[] coinbase;
+    private final boolean deleteEmptyCoinbase;
+
+    private final Map<byte[], AccountState> accountReads = new ByteArrayMap<>();
+    private final Map<byte[], byte[]> codeReads = new ByteArrayMap<>();
+    private final Map<byte[], Map<DataWord, DataWord>> storageReads = new ByteArrayMap<>();
+
+    private BigInteger coinbaseCredit;
+    private boolean conflict;
+
+    /**
+     * @param base the block track
+     * @param coinbase the block coinbase, or null if coinbase credits shouldn't be deferred
+     *                 (e.g. the transaction is sent by the coinbase)
+     * @param deleteEmptyCoinbase whether an empty coinbase is removed after the credit (EIP-161)
+     */
+    public SpeculativeRepository(final RepositoryImpl base, byte[] coinbase, boolean deleteEmptyCoinbase) {
+        this.base = base;
+        this.parent = base;
+        this.config = base.config;
+        this.coinbase = coinbase;
+        this.deleteEmptyCoinbase = deleteEmptyCoinbase;
+
+        // the block track storage caches are the storage WriteCaches
+        @SuppressWarnings("unchecked")
+        Source<byte[], CachedSource<DataWord, DataWord>> baseStorageCache =
+                (Source<byte[], CachedSource<DataWord, DataWord>>) (Source<byte[], ?>) base.storageCache;
+        MultiCache<CachedSource<DataWord, DataWord>> trackStorageCache =
+                new MultiCache<CachedSource<DataWord, DataWord>>(baseStorageCache) {
+            @Override
+            public synchronized CachedSource<DataWord, DataWord> get(byte[] key) {
+                synchronized (base) {
+                    return super.get(key);
+                }
+            }
+
+            @Override
+            protected CachedSource<DataWord, DataWord> create(byte[] key, CachedSource<DataWord, DataWord> srcCache) {
+                return new WriteCache<>(srcCache == null ? null : new ReadRecorder<>(srcCache, readsOf(key)),
+                        WriteCache.CacheType.SIMPLE);
+            }
+        };
+
+        init(new WriteCache.BytesKey<>(new ReadRecorder<>(base.accountStateCache, accountReads), WriteCache.CacheType.SIMPLE),
+                new WriteCache.BytesKey<>(new ReadRecorder<>(base.codeCache, codeReads), WriteCache.CacheType.SIMPLE),
+                trackStorageCache);
+    }
+
+    private Map<DataWord, DataWord> readsOf(byte[] addr) {
+        Map<DataWord, DataWord> ret = storageReads.get(addr);
+        if (ret == null) {
+            ret = new HashMap<>();
+            storageReads.put(addr, ret);
+        }
+        return ret;
+    }
+
+    private boolean isCoinbase(byte[] addr) {
+        return coinbase != null && FastByteComparisons.equal(coinbase, addr);
+    }
+
+    /**
+     * Defers the transaction fee credited to the coinbase in the transaction finalization
+     * till {@link #commit()}, which also performs the EIP-161 coinbase removal check
+     */
+    @Override
+    public synchronized boolean addCoinbaseFee(byte[] coinbase, BigInteger fee) {
+        if (!isCoinbase(coinbase)) return super.addCoinbaseFee(coinbase, fee);
+        coinbaseCredit = coinbaseCredit == null ? fee : coinbaseCredit.add(fee);
+        return false;
+    }
+
+    /**
+     * The coinbase state read after the fee is deferred is the recorded parent
+     * state with the pending credit added
+     */
+    @Override
+    public synchronized AccountState getAccountState(byte[] addr) {
+        AccountState state = super.getAccountState(addr);
+        if (coinbaseCredit != null && isCoinbase(addr)) {
+            return (state == null ? new AccountState(config) : state).withBalanceIncrement(coinbaseCredit);
+        }
+        return state;
+    }
+
+    @Override
+    public synchronized void delete(byte[] addr) {
+        if (isCoinbase(addr)) {
+            // the coinbase deletion doesn't commute with the credits
+            conflict = true;
+        }
+        super.delete(addr);
+    }
+
+    /**
+     * Checks that all the values read by the transaction are still the same in the parent
+     * repository. Should be invoked right before {@link #commit()} when all the preceding
+     * transactions are committed
+     */
+    public synchronized boolean isValid() {
+        if (conflict) return false;
+
+        for (Map.Entry<byte[], AccountState> read : accountReads.entrySet()) {
+            AccountState actual = base.accountStateCache.get(read.getKey());
+            if (actual != read.getValue() && (actual == null || read.getValue() == null ||
+                    !FastByteComparisons.equal(actual.getEncoded(), read.getValue().getEncoded()))) {
+                return false;
+            }
+        }
+        for (Map.Entry<byte[], byte[]> read : codeReads.entrySet()) {
+            byte[] actual = base.codeCache.get(read.getKey());
+            if (actual != read.getValue() && (actual == null || read.getValue() == null ||
+                    !FastByteComparisons.equal(actual, read.getValue()))) {
+                return false;
+            }
+        }
+        for (Map.Entry<byte[], Map<DataWord, DataWord>> storage : storageReads.entrySet()) {
+            Source<DataWord, DataWord> actualStorage = base.storageCache.get(storage.getKey());
+            for (Map.Entry<DataWord, DataWord> read : storage.getValue().entrySet()) {
+                if (!Objects.equals(actualStorage.get(read.getKey()), read.getValue())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Flushes the transaction changes to the parent and applies the accumulated coinbase credit
+     */
+    @Override
+    public synchronized void commit() {
+        super.commit();
+
+        if (coinbaseCredit != null) {
+            base.addBalance(coinbase, coinbaseCredit);
+            if (deleteEmptyCoinbase) {
+                AccountState state = base.getAccountState(coinbase);
+                if (state != null && state.isEmpty()) {
+                    base.delete(coinbase);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the first value read from the backing Source for every key.
+     * Reads are synchronized on the block track
+     */
+    private class ReadRecorder<Key, Value> extends AbstractChainedSource<Key, Value, Key, Value> {
+        private final Map<Key, Value> reads;
+
+        ReadRecorder(Source<Key, Value> source, Map<Key, Value> reads) {
+            super(source);
+            this.reads = reads;
+        }
+
+        @Override
+        public Value get(Key key) {
+            Value ret;
+            synchronized (base) {
+                ret = getSource().get(key);
+            }
+            if (!reads.containsKey(key)) {
+                reads.put(key, ret);
+            }
+            return ret;
+        }
+
+        @Override
+        public void put(Key key, Value val) {
+            getSource().put(key, val);
+        }
+
+        @Override
+        public void delete(Key key) {
+            getSource().delete(key);
+        }
+
+        @Override
+        protected boolean flushImpl() {
+            return false;
+        }
+    }
+}
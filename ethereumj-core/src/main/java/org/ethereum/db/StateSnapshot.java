@@ -0,0 +1,418 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db;
+
+import org.ethereum.datasource.Source;
+import org.ethereum.util.ByteUtil;
+import org.ethereum.util.FastByteComparisons;
+import org.ethereum.util.RLPReader;
+import org.ethereum.util.RLPWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.ethereum.crypto.HashUtil.EMPTY_TRIE_HASH;
+import static org.ethereum.crypto.HashUtil.shortHash;
+import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
+
+/**
+ * Flat snapshot of the world state which keeps the trie leaves without the trie:
+ * encoded accounts by sha3(address) and encoded storage values by sha3(address) ++ sha3(key).
+ *
+ * The snapshot consists of the disk layer holding the state of {@link #getDiskRoot()} and
+ * the tree of in-memory diff layers on top of it, one layer per committed state root.
+ * A diff layer deeper than the configured number of layers is merged into the disk layer,
+ * and its siblings (forks from the old disk state) are dropped. Diff layers are persisted
+ * to the same source on creation and restored on startup.
+ *
+ * The disk layer starts from the empty state, so the snapshot is usable only for the
+ * states built from genesis by regular block import. For any other state root there is
+ * no layer and the repository works with the trie only.
+ *
+ * Layers are addressed by the state root, merged and dropped layers become stale and
+ * their lookups return null, which means that the value must be read from the trie
+ */
+public class StateSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger("db");
+
+    private static final byte[] DISK_ROOT_KEY = "snapshotDiskRoot".getBytes();
+    private static final byte[] LAYERS_KEY = "snapshotLayers".getBytes();
+    private static final byte[] LAYER_KEY_PREFIX = "snapshotLayer".getBytes();
+
+    /**
+     * The state view of a single state root
+     */
+    public interface Layer {
+
+        byte[] getRoot();
+
+        /**
+         * @return the value, empty array if there is no such key at this state
+         * or null if the layer is stale and the value must be read from the trie
+         */
+        byte[] get(byte[] key);
+    }
+
+    private class DiskLayer implements Layer {
+        private final byte[] root;
+        private volatile boolean stale;
+
+        DiskLayer(byte[] root) {
+            this.root = root;
+        }
+
+        @Override
+        public byte[] getRoot() {
+            return root;
+        }
+
+        @Override
+        public byte[] get(byte[] key) {
+            byte[] ret = source.get(key);
+            // the stale flag is set prior to the disk update
+            if (stale) return null;
+            return ret == null ? EMPTY_BYTE_ARRAY : ret;
+        }
+    }
+
+    private static class DiffLayer implements Layer {
+        private final byte[] root;
+        private volatile Layer parent;
+        private final Map<ByteArrayWrapper, byte[]> changes;
+        private volatile boolean stale;
+
+        DiffLayer(byte[] root, Layer parent, Map<ByteArrayWrapper, byte[]> changes) {
+            this.root = root;
+            this.parent = parent;
+            this.changes = changes;
+        }
+
+        @Override
+        public byte[] getRoot() {
+            return root;
+        }
+
+        @Override
+        public byte[] get(byte[] key) {
+            ByteArrayWrapper wrappedKey = new ByteArrayWrapper(key);
+            Layer layer = this;
+            while (layer instanceof DiffLayer) {
+                DiffLayer diff = (DiffLayer) layer;
+                if (diff.stale) return null;
+                byte[] ret = diff.changes.get(wrappedKey);
+                if (ret != null) return ret;
+                layer = diff.parent;
+            }
+            return layer.get(key);
+        }
+    }
+
+    private final Source<byte[], byte[]> source;
+    private final int maxLayers;
+
+    private volatile DiskLayer disk;
+    private final Map<ByteArrayWrapper, DiffLayer> layers = new ConcurrentHashMap<>();
+    private boolean unknownRootLogged = false;
+
+    /**
+     * @param source storage of the disk layer and the persisted diff layers
+     * @param maxLayers the number of diff layers kept in memory on top of the disk layer,
+     *                  i.e. the depth of reorgs which can be handled without the trie
+     */
+    public StateSnapshot(Source<byte[], byte[]> source, int maxLayers) {
+        this.source = source;
+        this.maxLayers = maxLayers;
+
+        byte[] diskRoot = source.get(DISK_ROOT_KEY);
+        if (diskRoot == null) {
+            diskRoot = EMPTY_TRIE_HASH;
+            source.put(DISK_ROOT_KEY, diskRoot);
+        }
+        disk = new DiskLayer(diskRoot);
+        loadLayers();
+    }
+
+    public byte[] getDiskRoot() {
+        return disk.getRoot();
+    }
+
+    public int getLayersCount() {
+        return layers.size();
+    }
+
+    /**
+     * @return the layer of the state root or null if the state is not in the snapshot
+     */
+    public Layer getLayer(byte[] root) {
+        DiskLayer disk = this.disk;
+        if (FastByteComparisons.equal(disk.getRoot(), root)) return disk;
+        return layers.get(new ByteArrayWrapper(root));
+    }
+
+    /**
+     * Adds the diff layer of the state changed from the parent root.
+     * Values of deleted keys are empty arrays
+     *
+     * @return the new layer or null if there is no parent layer in the snapshot
+     */
+    public synchronized Layer update(byte[] parentRoot, byte[] root, Map<ByteArrayWrapper, byte[]> changes) {
+        Layer existing = getLayer(root);
+        if (existing != null) return existing;
+
+        Layer parent = getLayer(parentRoot);
+        if (parent == null || isStale(parent)) {
+            if (!unknownRootLogged) {
+                logger.info("State snapshot doesn't have the state {}, the snapshot is used only " +
+                        "for the states imported from genesis", shortHash(parentRoot));
+                unknownRootLogged = true;
+            }
+            return null;
+        }
+
+        DiffLayer layer = new DiffLayer(root, parent, new HashMap<>(changes));
+        layers.put(new ByteArrayWrapper(root), layer);
+        source.put(layerKey(root), encodeLayer(parentRoot, layer.changes));
+        cap(layer);
+        saveLayersList();
+
+        return layer;
+    }
+
+    /**
+     * Merges the bottom layer into the disk layer if the layer is too deep
+     */
+    private void cap(DiffLayer top) {
+        List<DiffLayer> path = new ArrayList<>();
+        for (Layer l = top; l instanceof DiffLayer; l = ((DiffLayer) l).parent) {
+            path.add((DiffLayer) l);
+        }
+        if (path.size() <= maxLayers) return;
+
+        DiffLayer bottom = path.get(path.size() - 1);
+        DiskLayer oldDisk = disk;
+
+        oldDisk.stale = true;
+        for (Map.Entry<ByteArrayWrapper, byte[]> entry : bottom.changes.entrySet()) {
+            if (entry.getValue().length == 0) {
+                source.delete(entry.getKey().getData());
+            } else {
+                source.put(entry.getKey().getData(), entry.getValue());
+            }
+        }
+        source.put(DISK_ROOT_KEY, bottom.root);
+        disk = new DiskLayer(bottom.root);
+
+        bottom.stale = true;
+        layers.remove(new ByteArrayWrapper(bottom.root));
+        source.delete(layerKey(bottom.root));
+
+        List<DiffLayer> children = new ArrayList<>();
+        for (Iterator<DiffLayer> it = layers.values().iterator(); it.hasNext(); ) {
+            DiffLayer layer = it.next();
+            if (layer.parent == bottom) {
+                children.add(layer);
+            } else if (!descendsFrom(layer, bottom)) {
+                // forks from the old disk state can't be reached anymore
+                layer.stale = true;
+                it.remove();
+                source.delete(layerKey(layer.root));
+            }
+        }
+        for (DiffLayer child : children) {
+            child.parent = disk;
+        }
+    }
+
+    private static boolean descendsFrom(DiffLayer layer, DiffLayer ancestor) {
+        for (Layer l = layer; l instanceof DiffLayer; l = ((DiffLayer) l).parent) {
+            if (l == ancestor) return true;
+        }
+        return false;
+    }
+
+    private static boolean isStale(Layer layer) {
+        return layer instanceof DiffLayer ? ((DiffLayer) layer).stale : ((DiskLayer) layer).stale;
+    }
+
+    private void saveLayersList() {
+        byte[] roots = new byte[layers.size() * 32];
+        int pos = 0;
+        for (DiffLayer layer : layers.values()) {
+            System.arraycopy(layer.root, 0, roots, pos, 32);
+            pos += 32;
+        }
+        source.put(LAYERS_KEY, roots);
+    }
+
+    private void loadLayers() {
+        byte[] roots = source.get(LAYERS_KEY);
+        if (roots == null) return;
+
+        Map<ByteArrayWrapper, byte[]> parents = new HashMap<>();
+        Map<ByteArrayWrapper, Map<ByteArrayWrapper, byte[]>> changes = new HashMap<>();
+        for (int pos = 0; pos < roots.length; pos += 32) {
+            byte[] root = Arrays.copyOfRange(roots, pos, pos + 32);
+            byte[] encoded = source.get(layerKey(root));
+            if (encoded == null) continue;
+            Map<ByteArrayWrapper, byte[]> layerChanges = new HashMap<>();
+            parents.put(new ByteArrayWrapper(root), decodeLayer(encoded, layerChanges));
+            changes.put(new ByteArrayWrapper(root), layerChanges);
+        }
+
+        // layers are linked starting from the disk layer, unlinked ones are dropped
+        boolean linked = true;
+        while (linked) {
+            linked = false;
+            for (Iterator<Map.Entry<ByteArrayWrapper, byte[]>> it = parents.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<ByteArrayWrapper, byte[]> entry = it.next();
+                Layer parent = getLayer(entry.getValue());
+                if (parent != null) {
+                    byte[] root = entry.getKey().getData();
+                    layers.put(entry.getKey(), new DiffLayer(root, parent, changes.get(entry.getKey())));
+                    it.remove();
+                    linked = true;
+                }
+            }
+        }
+        for (ByteArrayWrapper root : parents.keySet()) {
+            source.delete(layerKey(root.getData()));
+        }
+        if (!parents.isEmpty()) saveLayersList();
+
+        logger.info("State snapshot loaded: disk state {}, {} diff layers", shortHash(disk.getRoot()), layers.size());
+    }
+
+    private static byte[] layerKey(byte[] root) {
+        return ByteUtil.merge(LAYER_KEY_PREFIX, root);
+    }
+
+    private static byte[] encodeLayer(byte[] parentRoot, Map<ByteArrayWrapper, byte[]> changes) {
+        return RLPWriter.encode(w -> {
+            w.startList();
+            w.writeItem(parentRoot);
+            w.startList();
+            for (Map.Entry<ByteArrayWrapper, byte[]> entry : changes.entrySet()) {
+                w.writeItem(entry.getKey().getData());
+                w.writeItem(entry.getValue());
+            }
+            w.endList();
+            w.endList();
+        });
+    }
+
+    /**
+     * @return the parent root, changes are added to the passed map
+     */
+    private static byte[] decodeLayer(byte[] encoded, Map<ByteArrayWrapper, byte[]> changes) {
+        RLPReader layer = RLPReader.readList(encoded);
+        byte[] parentRoot = layer.readItem();
+        RLPReader items = layer.readList();
+        while (items.hasNext()) {
+            changes.put(new ByteArrayWrapper(items.readItem()), items.readItemOrEmpty());
+        }
+        return parentRoot;
+    }
+
+    /**
+     * The snapshot state of a repository: the layer of the repository base root and
+     * the changes written to the trie since then. Changes are added as a new layer
+     * on {@link #commit(byte[])}
+     */
+    public class View {
+        private byte[] root;
+        private volatile Layer layer;
+        private final Map<ByteArrayWrapper, byte[]> changes = new ConcurrentHashMap<>();
+
+        View(byte[] root) {
+            reset(root);
+        }
+
+        /**
+         * @return the value, empty array if there is no such key
+         * or null if the value must be read from the trie
+         */
+        public byte[] get(byte[] key) {
+            byte[] ret = changes.get(new ByteArrayWrapper(key));
+            if (ret != null) return ret;
+            Layer layer = this.layer;
+            return layer == null ? null : layer.get(key);
+        }
+
+        /**
+         * @return false if the view state is not in the snapshot, the changes are dropped on commit then
+         */
+        public boolean hasLayer() {
+            return layer != null;
+        }
+
+        public void put(byte[] key, byte[] value) {
+            changes.put(new ByteArrayWrapper(key), value == null ? EMPTY_BYTE_ARRAY : value);
+        }
+
+        public void delete(byte[] key) {
+            put(key, EMPTY_BYTE_ARRAY);
+        }
+
+        /**
+         * Marks all the changed keys starting with the prefix deleted
+         */
+        public void deleteChanged(byte[] keyPrefix) {
+            for (Map.Entry<ByteArrayWrapper, byte[]> entry : changes.entrySet()) {
+                byte[] key = entry.getKey().getData();
+                if (key.length > keyPrefix.length &&
+                        FastByteComparisons.compareTo(key, 0, keyPrefix.length, keyPrefix, 0, keyPrefix.length) == 0) {
+                    entry.setValue(EMPTY_BYTE_ARRAY);
+                }
+            }
+        }
+
+        /**
+         * Moves the view to the new root, the collected changes make the state of the new root
+         */
+        public synchronized void commit(byte[] newRoot) {
+            if (FastByteComparisons.equal(root, newRoot)) return;
+            layer = layer == null ? null : update(root, newRoot, changes);
+            root = newRoot;
+            changes.clear();
+        }
+
+        /**
+         * Drops the collected changes and moves the view to the root
+         */
+        public synchronized void reset(byte[] root) {
+            this.root = root;
+            this.layer = getLayer(root);
+            changes.clear();
+        }
+    }
+
+    /**
+     * @param root repository base state root, null for the empty state
+     */
+    public View createView(byte[] root) {
+        return new View(root == null ? EMPTY_TRIE_HASH : root);
+    }
+}
@@ -38,14 +38,25 @@ public class StateSource extends SourceChainBox<byte[], byte[], byte[], byte[]>
     AbstractCachedSource<byte[], byte[]> writeCache;
 
     public StateSource(Source<byte[], byte[]> src, boolean pruningEnabled) {
+        this(src, pruningEnabled, false);
+    }
+
+    /**
+     * @param offHeapWriteCache keep the pending changes in the off-heap memory, see {@link OffHeapWriteCache}
+     */
+    public StateSource(Source<byte[], byte[]> src, boolean pruningEnabled, boolean offHeapWriteCache) {
         super(src);
         INST = this;
-        add(readCache = new ReadCache.BytesKey<>(src).withMaxCapacity(16 * 1024 * 1024 / 512)); // 512 - approx size of a node
+        ReadCache.BytesKey<byte[]> nodeCache = new ReadCache.BytesKey<>(src);
+        nodeCache.withSizeEstimators(MemSizeEstimator.ByteArrayEstimator, MemSizeEstimator.ByteArrayEstimator);
+        add(readCache = nodeCache.withConcurrentMaxSize(16 * 1024 * 1024));
         readCache.setFlushSource(true);
         writeCache = new AsyncWriteCache<byte[], byte[]>(readCache) {
             @Override
             protected WriteCache<byte[], byte[]> createCache(Source<byte[], byte[]> source) {
-                WriteCache.BytesKey<byte[]> ret = new WriteCache.BytesKey<byte[]>(source, WriteCache.CacheType.SIMPLE);
+                WriteCache<byte[], byte[]> ret = offHeapWriteCache ?
+                        new OffHeapWriteCache(source, WriteCache.CacheType.SIMPLE) :
+                        new WriteCache.BytesKey<byte[]>(source, WriteCache.CacheType.SIMPLE);
                 ret.withSizeEstimators(MemSizeEstimator.ByteArrayEstimator, MemSizeEstimator.ByteArrayEstimator);
                 ret.setFlushSource(true);
                 return ret;
@@ -64,7 +75,7 @@ public class StateSource extends SourceChainBox<byte[], byte[], byte[], byte[]>
     @Autowired
     public void setConfig(SystemProperties config) {
         int size = config.getConfig().getInt("cache.stateCacheSize");
-        readCache.withMaxCapacity(size * 1024 * 1024 / 512); // 512 - approx size of a node
+        readCache.withConcurrentMaxSize(size * 1024L * 1024);
     }
 
     @Autowired
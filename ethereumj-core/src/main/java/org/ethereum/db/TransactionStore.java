@@ -18,8 +18,12 @@
 package org.ethereum.db;
 
 import org.apache.commons.collections4.map.LRUMap;
-import org.ethereum.datasource.*;
+import org.ethereum.core.Block;
+import org.ethereum.core.Transaction;
 import org.ethereum.core.TransactionInfo;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.datasource.*;
+import org.ethereum.util.ByteUtil;
 import org.ethereum.util.FastByteComparisons;
 import org.ethereum.util.RLP;
 import org.ethereum.util.RLPList;
@@ -32,12 +36,19 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import static org.ethereum.crypto.HashUtil.sha3;
+
 /**
- * Storage (tx hash) => List of (block idx, tx idx, TransactionReceipt)
+ * Storage of transaction receipts:
+ * (block hash) => List of TransactionReceipt in the block order
+ * (tx hash) => List of (block hash, tx idx) lookup entries
  *
  * Since a transaction could be included into blocks from different forks and
  * have different receipts the class stores all of them (the same manner fork blocks are stored)
  *
+ * Entries of the legacy format (tx hash) => List of (block idx, tx idx, TransactionReceipt)
+ * are still readable, see {@link org.ethereum.db.migrate.MigrateTransactionStore}
+ *
  * NOTE: the TransactionInfo instances returned contains TransactionReceipt which
  * has no initialized Transaction object. If needed use BlockStore to retrieve and setup
  * Transaction instance
@@ -45,13 +56,12 @@ import java.util.List;
  * Created by Anton Nashatyrev on 07.04.2016.
  */
 @Component
-public class TransactionStore extends ObjectDataSource<List<TransactionInfo>> {
+public class TransactionStore {
     private static final Logger logger = LoggerFactory.getLogger("db");
 
-    private final LRUMap<ByteArrayWrapper, Object> lastSavedTxHash = new LRUMap<>(5000);
-    private final Object object = new Object();
+    private static final byte[] MIGRATED_BLOCK_KEY = "migratedBlock".getBytes();
 
-    private final static Serializer<List<TransactionInfo>, byte[]> serializer =
+    private final static Serializer<List<TransactionInfo>, byte[]> legacySerializer =
             new Serializer<List<TransactionInfo>, byte[]>() {
         @Override
         public byte[] serialize(List<TransactionInfo> object) {
@@ -79,41 +89,178 @@ public class TransactionStore extends ObjectDataSource<List<TransactionInfo>> {
         }
     };
 
+    private final static Serializer<List<TransactionReceipt>, byte[]> receiptsSerializer =
+            new Serializer<List<TransactionReceipt>, byte[]>() {
+        @Override
+        public byte[] serialize(List<TransactionReceipt> object) {
+            byte[][] receiptsRlp = new byte[object.size()][];
+            for (int i = 0; i < receiptsRlp.length; i++) {
+                receiptsRlp[i] = object.get(i).getEncoded();
+            }
+            return RLP.encodeList(receiptsRlp);
+        }
+
+        @Override
+        public List<TransactionReceipt> deserialize(byte[] stream) {
+            if (stream == null) return null;
+            RLPList receiptsList = RLP.unwrapList(stream);
+            List<TransactionReceipt> ret = new ArrayList<>(receiptsList.size());
+            for (int i = 0; i < receiptsList.size(); i++) {
+                ret.add(new TransactionReceipt(receiptsList.get(i).getRLPData()));
+            }
+            return ret;
+        }
+    };
+
     /**
-     * Adds TransactionInfo to the store.
-     * If entries for this transaction already exist the method adds new entry to the list
-     * if no entry for the same block exists
-     * @return true if TransactionInfo was added, false if already exist
+     * Encodes [[block hash, tx idx], ...]
      */
-    public boolean put(TransactionInfo tx) {
-        byte[] txHash = tx.getReceipt().getTransaction().getHash();
+    private final static Serializer<List<TxLocation>, byte[]> lookupSerializer =
+            new Serializer<List<TxLocation>, byte[]>() {
+        @Override
+        public byte[] serialize(List<TxLocation> object) {
+            byte[][] entriesRlp = new byte[object.size()][];
+            for (int i = 0; i < entriesRlp.length; i++) {
+                entriesRlp[i] = RLP.encodeList(RLP.encodeElement(object.get(i).blockHash),
+                        RLP.encodeInt(object.get(i).index));
+            }
+            return RLP.encodeList(entriesRlp);
+        }
 
-        List<TransactionInfo> existingInfos = null;
-        synchronized (lastSavedTxHash) {
-            if (lastSavedTxHash.put(new ByteArrayWrapper(txHash), object) != null || !lastSavedTxHash.isFull()) {
-                existingInfos = get(txHash);
+        @Override
+        public List<TxLocation> deserialize(byte[] stream) {
+            if (stream == null) return null;
+            RLPList entriesList = (RLPList) RLP.decode2(stream).get(0);
+            List<TxLocation> ret = new ArrayList<>(entriesList.size());
+            for (int i = 0; i < entriesList.size(); i++) {
+                RLPList entry = (RLPList) entriesList.get(i);
+                ret.add(new TxLocation(entry.get(0).getRLPData(), ByteUtil.byteArrayToInt(entry.get(1).getRLPData())));
             }
+            return ret;
+        }
+    };
+
+    private static class TxLocation {
+        final byte[] blockHash;
+        final int index;
+
+        TxLocation(byte[] blockHash, int index) {
+            this.blockHash = blockHash;
+            this.index = index;
+        }
+    }
+
+    private final Source<byte[], byte[]> src;
+    private final ObjectDataSource<List<TransactionInfo>> legacySource;
+    private final ObjectDataSource<List<TransactionReceipt>> receiptsSource;
+    private final ObjectDataSource<List<TxLocation>> lookupSource;
+
+    // a transaction may be included into several fork blocks which are imported one after another,
+    // thus the existing lookup entry is read only for the recently saved transactions
+    private final LRUMap<ByteArrayWrapper, Object> lastSavedTxHash = new LRUMap<>(5000);
+    private final Object object = new Object();
+
+    public TransactionStore(Source<byte[], byte[]> src) {
+        this.src = src;
+        this.legacySource = new ObjectDataSource<>(src, legacySerializer, 0);
+        this.receiptsSource = new ObjectDataSource<>(new XorDataSource<>(src, sha3("receipts".getBytes())),
+                receiptsSerializer, 256);
+        this.lookupSource = new ObjectDataSource<>(new XorDataSource<>(src, sha3("lookup".getBytes())),
+                lookupSerializer, 0);
+    }
+
+    /**
+     * Adds receipts of the block and lookup entries of its transactions.
+     * Lookup entries are appended to the existing ones if the transaction was
+     * included into other blocks
+     *
+     * @param receipts block receipts in the order of block transactions
+     */
+    public void put(Block block, List<TransactionReceipt> receipts) {
+        byte[] blockHash = block.getHash();
+        receiptsSource.put(blockHash, receipts);
+
+        List<Transaction> txs = block.getTransactionsList();
+        for (int i = 0; i < receipts.size(); i++) {
+            byte[] txHash = txs.get(i).getHash();
+            boolean recent;
+            synchronized (lastSavedTxHash) {
+                // the cache is empty after restart, any transaction could be saved before
+                recent = lastSavedTxHash.put(new ByteArrayWrapper(txHash), object) != null ||
+                        !lastSavedTxHash.isFull();
+            }
+            putLookup(txHash, blockHash, i, recent ? lookupSource.get(txHash) : null);
+        }
+    }
+
+    /**
+     * Adds receipts of the main chain block migrated from the legacy format,
+     * the lookup entries of its transactions can't exist yet as fork blocks are not migrated
+     */
+    public void putMigrated(Block block, List<TransactionReceipt> receipts) {
+        byte[] blockHash = block.getHash();
+        receiptsSource.put(blockHash, receipts);
+
+        List<Transaction> txs = block.getTransactionsList();
+        for (int i = 0; i < receipts.size(); i++) {
+            putLookup(txs.get(i).getHash(), blockHash, i, null);
         }
-        // else it is highly unlikely that the transaction was included into another block
-        // earlier than 5000 transactions before with regard to regular block import process
+    }
 
-        if (existingInfos == null) {
-            existingInfos = new ArrayList<>();
+    private void putLookup(byte[] txHash, byte[] blockHash, int index, List<TxLocation> locations) {
+        if (locations == null) {
+            locations = new ArrayList<>(1);
         } else {
-            for (TransactionInfo info : existingInfos) {
-                if (FastByteComparisons.equal(info.getBlockHash(), tx.getBlockHash())) {
-                    return false;
+            for (TxLocation location : locations) {
+                if (FastByteComparisons.equal(location.blockHash, blockHash)) {
+                    return;
                 }
             }
         }
-        existingInfos.add(tx);
-        put(txHash, existingInfos);
+        locations.add(new TxLocation(blockHash, index));
+        lookupSource.put(txHash, locations);
+    }
+
+    /**
+     * @return receipts of the block transactions or null if the block receipts are not stored
+     * or stored in the legacy format
+     */
+    public List<TransactionReceipt> getBlockReceipts(byte[] blockHash) {
+        return receiptsSource.get(blockHash);
+    }
+
+    /**
+     * @return infos of all blocks the transaction is included into or null if no one is found
+     */
+    public List<TransactionInfo> get(byte[] txHash) {
+        List<TxLocation> locations = lookupSource.get(txHash);
+        if (locations == null) {
+            return legacySource.get(txHash);
+        }
 
-        return true;
+        List<TransactionInfo> ret = new ArrayList<>(locations.size());
+        for (TxLocation location : locations) {
+            TransactionInfo info = getInfo(location);
+            if (info != null) ret.add(info);
+        }
+        // fork blocks entries which were not migrated
+        List<TransactionInfo> legacy = legacySource.get(txHash);
+        if (legacy != null) ret.addAll(legacy);
+        return ret;
     }
 
     public TransactionInfo get(byte[] txHash, byte[] blockHash) {
-        List<TransactionInfo> existingInfos = get(txHash);
+        List<TxLocation> locations = lookupSource.get(txHash);
+        if (locations != null) {
+            for (TxLocation location : locations) {
+                if (FastByteComparisons.equal(location.blockHash, blockHash)) {
+                    return getInfo(location);
+                }
+            }
+        }
+
+        List<TransactionInfo> existingInfos = legacySource.get(txHash);
+        if (existingInfos == null) return null;
         for (TransactionInfo info : existingInfos) {
             if (FastByteComparisons.equal(info.getBlockHash(), blockHash)) {
                 return info;
@@ -122,8 +269,48 @@ public class TransactionStore extends ObjectDataSource<List<TransactionInfo>> {
         return null;
     }
 
-    public TransactionStore(Source<byte[], byte[]> src) {
-        super(src, serializer, 256);
+    private TransactionInfo getInfo(TxLocation location) {
+        List<TransactionReceipt> receipts = receiptsSource.get(location.blockHash);
+        if (receipts == null || location.index >= receipts.size()) {
+            logger.warn("Receipts of block {} are missing", ByteUtil.toHexString(location.blockHash));
+            return null;
+        }
+        return new TransactionInfo(receipts.get(location.index), location.blockHash, location.index);
+    }
+
+    /**
+     * @return entries of the legacy storage format or null
+     */
+    public List<TransactionInfo> getLegacy(byte[] txHash) {
+        return legacySource.get(txHash);
+    }
+
+    /**
+     * Replaces the legacy entries of the transaction, removes them if the list is empty
+     */
+    public void putLegacy(byte[] txHash, List<TransactionInfo> infos) {
+        if (infos.isEmpty()) {
+            legacySource.delete(txHash);
+        } else {
+            legacySource.put(txHash, infos);
+        }
+    }
+
+    /**
+     * @return the number of the last block which receipts were migrated from the legacy format,
+     * -1 if the migration wasn't started
+     */
+    public long getMigratedBlock() {
+        byte[] number = src.get(MIGRATED_BLOCK_KEY);
+        return number == null ? -1 : ByteUtil.byteArrayToLong(number);
+    }
+
+    public void setMigratedBlock(long number) {
+        src.put(MIGRATED_BLOCK_KEY, ByteUtil.longToBytes(number));
+    }
+
+    public boolean flush() {
+        return src.flush();
     }
 
     @PreDestroy
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db.migrate;
+
+import org.ethereum.datasource.DataSourceArray;
+import org.ethereum.datasource.ObjectDataSource;
+import org.ethereum.datasource.Source;
+import org.ethereum.db.IndexedBlockStore;
+import org.ethereum.db.IndexedBlockStore.BlockInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+import static org.ethereum.db.IndexedBlockStore.BLOCK_INFO_SERIALIZER;
+import static org.ethereum.db.IndexedBlockStore.INDEX_FORMAT_VERSION;
+import static org.ethereum.db.IndexedBlockStore.INDEX_VERSION_KEY;
+
+/**
+ * Rewrites {@link IndexedBlockStore} index levels from the RLP format to the fixed width
+ * format of {@link IndexedBlockStore#INDEX_FORMAT_VERSION}.
+ *
+ * Levels of both formats are readable, so the migration may be safely interrupted and
+ * will start over on the next run. The index version key is written when all the levels
+ * are converted, after that the migration is skipped.
+ * Must not run concurrently with block store updates
+ */
+public class MigrateBlockIndexFormat implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger("general");
+
+    private static final int FLUSH_LEVELS = 10_000;
+
+    private Source<byte[], byte[]> indexSource;
+
+    public MigrateBlockIndexFormat(Source<byte[], byte[]> indexSource) {
+        this.indexSource = indexSource;
+    }
+
+    @Override
+    public void run() {
+        byte[] version = indexSource.get(INDEX_VERSION_KEY);
+        if (version != null && version[0] >= INDEX_FORMAT_VERSION) {
+            return;
+        }
+
+        DataSourceArray<List<BlockInfo>> index = new DataSourceArray<>(
+                new ObjectDataSource<>(indexSource, BLOCK_INFO_SERIALIZER, 0));
+        int size = index.size();
+        if (size > 0) {
+            logger.info("Migrating block index of {} levels to format version {}", size, INDEX_FORMAT_VERSION);
+        }
+
+        for (int i = 0; i < size; i++) {
+            List<BlockInfo> level = index.get(i);
+            if (level != null) {
+                // read by any format, written by the current one
+                index.set(i, level);
+            }
+            if (i > 0 && i % FLUSH_LEVELS == 0) {
+                logger.info("#{} of {} block index levels migrated", i, size);
+                indexSource.flush();
+            }
+        }
+
+        indexSource.put(INDEX_VERSION_KEY, new byte[] {INDEX_FORMAT_VERSION});
+        indexSource.flush();
+
+        if (size > 0) {
+            logger.info("Block index migration finished");
+        }
+    }
+}
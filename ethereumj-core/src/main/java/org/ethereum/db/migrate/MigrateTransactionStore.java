@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db.migrate;
+
+import org.ethereum.core.Block;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionInfo;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.db.BlockStore;
+import org.ethereum.db.DbFlushManager;
+import org.ethereum.db.TransactionStore;
+import org.ethereum.util.FastByteComparisons;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves receipts of the main chain blocks from the legacy {@link TransactionStore} format
+ * (tx hash => list of infos with receipts) to the per block receipts and tx lookup entries.
+ *
+ * Legacy entries are readable by {@link TransactionStore}, thus the migration may run in background
+ * and may be interrupted, it's resumed from the last committed block on the next run.
+ * Receipts of fork blocks are not migrated and stay in the legacy format
+ */
+public class MigrateTransactionStore implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger("general");
+
+    private static final int COMMIT_BLOCKS = 1_000;
+
+    private static final int LOG_BLOCKS = 100_000;
+
+    private static final long MIGRATION_DONE = Long.MAX_VALUE;
+
+    private TransactionStore transactionStore;
+
+    private BlockStore blockStore;
+
+    private DbFlushManager dbFlushManager;
+
+    private volatile boolean closed = false;
+
+    public MigrateTransactionStore(TransactionStore transactionStore, BlockStore blockStore) {
+        this(transactionStore, blockStore, null);
+    }
+
+    /**
+     * @param dbFlushManager if not null every chunk of blocks is written as an atomic update of
+     *                       the flush manager, thus the migration doesn't interfere with block import
+     */
+    public MigrateTransactionStore(TransactionStore transactionStore, BlockStore blockStore,
+                                   DbFlushManager dbFlushManager) {
+        this.transactionStore = transactionStore;
+        this.blockStore = blockStore;
+        this.dbFlushManager = dbFlushManager;
+    }
+
+    /**
+     * Stops the migration after the current chunk of blocks, it's resumed on the next run
+     */
+    public void close() {
+        closed = true;
+    }
+
+    @Override
+    public void run() {
+        long migrated = transactionStore.getMigratedBlock();
+        if (migrated == MIGRATION_DONE) {
+            return;
+        }
+
+        // blocks imported after this point are stored in the new format
+        long bestNumber = blockStore.getMaxNumber();
+        if (migrated + 1 <= bestNumber) {
+            logger.info("Migrating receipts of blocks #{} - #{} to per block storage", migrated + 1, bestNumber);
+        }
+
+        int blocksMigrated = 0;
+        for (long from = migrated + 1; from <= bestNumber; from += COMMIT_BLOCKS) {
+            if (closed) {
+                logger.info("Receipts migration stopped at #{}, is resumed on the next run", from - 1);
+                return;
+            }
+
+            long chunkTo = Math.min(from + COMMIT_BLOCKS - 1, bestNumber);
+
+            // reads are done aside, only the writes are applied atomically
+            List<Runnable> writes = new ArrayList<>();
+            for (long number = from; number <= chunkTo; number++) {
+                Block block = blockStore.getChainBlockByNumber(number);
+                // blocks might be missing after Fast Sync
+                Runnable write = block == null ? null : migrateBlock(block);
+                if (write != null) {
+                    writes.add(write);
+                }
+            }
+            update(() -> {
+                writes.forEach(Runnable::run);
+                transactionStore.setMigratedBlock(chunkTo);
+            });
+            blocksMigrated += writes.size();
+
+            if (chunkTo / LOG_BLOCKS != (from - 1) / LOG_BLOCKS) {
+                logger.info("#{} of {} blocks receipts migrated", chunkTo, bestNumber);
+            }
+        }
+
+        update(() -> transactionStore.setMigratedBlock(MIGRATION_DONE));
+
+        if (blocksMigrated > 0) {
+            logger.info("Receipts migration finished, blocks migrated: {}", blocksMigrated);
+        }
+    }
+
+    private void update(Runnable update) {
+        if (dbFlushManager != null) {
+            dbFlushManager.update(update);
+        } else {
+            update.run();
+            transactionStore.flush();
+        }
+    }
+
+    /**
+     * @return the writes migrating the block receipts or null if there is nothing to migrate
+     */
+    private Runnable migrateBlock(Block block) {
+        List<Transaction> txs = block.getTransactionsList();
+        if (txs.isEmpty() || transactionStore.getBlockReceipts(block.getHash()) != null) {
+            return null;
+        }
+
+        List<TransactionReceipt> receipts = new ArrayList<>(txs.size());
+        // the transaction could be included into fork blocks as well, their entries are kept
+        List<List<TransactionInfo>> restInfos = new ArrayList<>(txs.size());
+        for (Transaction tx : txs) {
+            TransactionReceipt receipt = null;
+            List<TransactionInfo> rest = new ArrayList<>();
+            List<TransactionInfo> infos = transactionStore.getLegacy(tx.getHash());
+            if (infos != null) {
+                for (TransactionInfo info : infos) {
+                    if (receipt == null && FastByteComparisons.equal(info.getBlockHash(), block.getHash())) {
+                        receipt = info.getReceipt();
+                    } else {
+                        rest.add(info);
+                    }
+                }
+            }
+            if (receipt == null) {
+                // receipts of this block were never stored
+                return null;
+            }
+            receipts.add(receipt);
+            restInfos.add(rest);
+        }
+
+        return () -> {
+            transactionStore.putMigrated(block, receipts);
+            for (int i = 0; i < txs.size(); i++) {
+                transactionStore.putLegacy(txs.get(i).getHash(), restInfos.get(i));
+            }
+        };
+    }
+}
@@ -112,12 +112,19 @@ public class BlockReplay extends EthereumListenerAdapter {
     private void replayBlock(long num) {
         Block block = blockStore.getChainBlockByNumber(num);
         lastReplayedBlock = block;
-        List<TransactionReceipt> receipts = new ArrayList<>();
-        for (Transaction tx : block.getTransactionsList()) {
-            TransactionInfo info = transactionStore.get(tx.getHash(), block.getHash());
-            TransactionReceipt receipt = info.getReceipt();
-            receipt.setTransaction(tx);
-            receipts.add(receipt);
+        List<TransactionReceipt> receipts = transactionStore.getBlockReceipts(block.getHash());
+        if (receipts != null) {
+            for (int i = 0; i < receipts.size(); i++) {
+                receipts.get(i).setTransaction(block.getTransactionsList().get(i));
+            }
+        } else {
+            receipts = new ArrayList<>();
+            for (Transaction tx : block.getTransactionsList()) {
+                TransactionInfo info = transactionStore.get(tx.getHash(), block.getHash());
+                TransactionReceipt receipt = info.getReceipt();
+                receipt.setTransaction(tx);
+                receipts.add(receipt);
+            }
         }
         BlockSummary blockSummary = new BlockSummary(block, null, receipts, null);
         blockSummary.setTotalDifficulty(BigInteger.valueOf(num));
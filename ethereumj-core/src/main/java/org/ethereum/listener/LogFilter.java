@@ -23,7 +23,9 @@ import org.ethereum.vm.LogInfo;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.function.IntFunction;
 
 import static org.ethereum.crypto.HashUtil.sha3;
 
@@ -81,6 +83,34 @@ public class LogFilter {
         return true;
     }
 
+    /**
+     * Matches a range of blocks at once against the bloom bit vectors
+     * @param bloomBits returns the vector of specified bloom bit over the range,
+     *                  the vector bit is set if the bloom bit of the corresponding block is set,
+     *                  see {@link Bloom#getSetBits()} for the bloom bits order
+     * @param size the number of blocks in the range
+     * @return vector of blocks which blooms are matching the filter
+     */
+    public BitSet matchBloomBits(IntFunction<BitSet> bloomBits, int size) {
+        initBlooms();
+        BitSet ret = new BitSet(size);
+        ret.set(0, size);
+        for (Bloom[] andBloom : filterBlooms) {
+            BitSet orMatches = new BitSet(size);
+            for (Bloom orBloom : andBloom) {
+                BitSet matches = new BitSet(size);
+                matches.set(0, size);
+                for (int bit : orBloom.getSetBits()) {
+                    matches.and(bloomBits.apply(bit));
+                }
+                orMatches.or(matches);
+            }
+            ret.and(orMatches);
+            if (ret.isEmpty()) break;
+        }
+        return ret;
+    }
+
     public boolean matchesContractAddress(byte[] toAddr) {
         initBlooms();
         for (byte[] address : contractAddresses) {
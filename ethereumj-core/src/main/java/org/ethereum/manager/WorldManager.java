@@ -22,7 +22,9 @@ import org.ethereum.core.*;
 import org.ethereum.db.BlockStore;
 import org.ethereum.db.DbFlushManager;
 import org.ethereum.db.HeaderStore;
+import org.ethereum.db.TransactionStore;
 import org.ethereum.db.migrate.MigrateHeaderSourceTotalDiff;
+import org.ethereum.db.migrate.MigrateTransactionStore;
 import org.ethereum.listener.CompositeEthereumListener;
 import org.ethereum.listener.EthereumListener;
 import org.ethereum.net.client.PeerClient;
@@ -103,6 +105,10 @@ public class WorldManager {
 
     private BlockStore blockStore;
 
+    private MigrateTransactionStore txStoreMigration;
+
+    private Thread txStoreMigrationThread;
+
     @Autowired
     public WorldManager(final SystemProperties config, final Repository repository,
                         final EthereumListener listener, final Blockchain blockchain,
@@ -118,9 +124,22 @@ public class WorldManager {
     @PostConstruct
     private void init() {
         fastSyncDbJobs();
+        startTransactionStoreMigration();
         syncManager.init(channelManager, pool);
     }
 
+    /**
+     * Migration of the legacy receipts takes hours on the main net,
+     * the legacy entries are readable meanwhile, thus it runs in background
+     */
+    private void startTransactionStoreMigration() {
+        txStoreMigration = new MigrateTransactionStore(ctx.getBean(TransactionStore.class),
+                blockStore, dbFlushManager);
+        txStoreMigrationThread = new Thread(txStoreMigration, "TxStoreMigration");
+        txStoreMigrationThread.setDaemon(true);
+        txStoreMigrationThread.start();
+    }
+
     public void addListener(EthereumListener listener) {
         logger.info("Ethereum listener added");
         ((CompositeEthereumListener) this.listener).addListener(listener);
@@ -282,6 +301,13 @@ public class WorldManager {
         activePeer.close();
         logger.info("close: shutting down event dispatch thread used by EventBus ...");
         eventDispatchThread.shutdown();
+        logger.info("close: stopping receipts migration ...");
+        txStoreMigration.close();
+        try {
+            txStoreMigrationThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         logger.info("close: closing Blockchain instance ...");
         blockchain.close();
         logger.info("close: closing main repository ...");
@@ -35,12 +35,14 @@ import java.util.Collection;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.ethereum.crypto.HashUtil.sha3;
 import static org.ethereum.mine.EthashListener.DatasetStatus.DATASET_READY;
 import static org.ethereum.mine.EthashListener.DatasetStatus.DATASET_PREPARE;
 import static org.ethereum.mine.EthashListener.DatasetStatus.FULL_DATASET_GENERATED;
+import static org.ethereum.mine.EthashListener.DatasetStatus.FULL_DATASET_GENERATE_PROGRESS;
 import static org.ethereum.mine.EthashListener.DatasetStatus.FULL_DATASET_GENERATE_START;
 import static org.ethereum.mine.EthashListener.DatasetStatus.FULL_DATASET_LOADED;
 import static org.ethereum.mine.EthashListener.DatasetStatus.FULL_DATASET_LOAD_START;
@@ -69,6 +71,19 @@ public class Ethash {
 
     public static boolean fileCacheEnabled = true;
 
+    private static ForkJoinPool datasetPool;
+
+    private static synchronized ForkJoinPool getDatasetPool() {
+        if (datasetPool == null) {
+            datasetPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("ethash-dataset-thread-" + thread.getPoolIndex());
+                return thread;
+            }, null, false);
+        }
+        return datasetPool;
+    }
+
     private Set<EthashListener> listeners = new CopyOnWriteArraySet <>();
 
     /**
@@ -98,8 +113,8 @@ public class Ethash {
     private EthashAlgo ethashAlgo = new EthashAlgo(ethashParams);
 
     private long blockNumber;
-    private int[] cacheLight = null;
-    private int[] fullData = null;
+    private EthashDataset cacheLight = null;
+    private EthashDataset fullData = null;
     private SystemProperties config;
     private long startNonce = -1;
 
@@ -112,7 +127,7 @@ public class Ethash {
         }
     }
 
-    public synchronized int[] getCacheLight() {
+    public synchronized EthashDataset getCacheLight() {
         if (cacheLight == null) {
             fireDatatasetStatusUpdate(DATASET_PREPARE);
             getCacheLightImpl();
@@ -123,46 +138,45 @@ public class Ethash {
     }
 
     /**
-     * Checks whether light DAG is already generated and loads it
-     * from cache, otherwise generates it
+     * Checks whether light DAG is already generated and maps it
+     * from file, otherwise generates it
      * @return  Light DAG
      */
-    private synchronized int[] getCacheLightImpl() {
+    private synchronized EthashDataset getCacheLightImpl() {
         if (cacheLight == null) {
             File file = new File(config.ethashDir(), "mine-dag-light.dat");
+            long cacheSize = getEthashAlgo().getParams().getCacheSize(blockNumber);
             if (fileCacheEnabled && file.canRead()) {
                 fireDatatasetStatusUpdate(LIGHT_DATASET_LOAD_START);
-                try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-                    logger.info("Loading light dataset from " + file.getAbsolutePath());
-                    long bNum = ois.readLong();
-                    if (bNum == blockNumber) {
-                        cacheLight = (int[]) ois.readObject();
-                        fireDatatasetStatusUpdate(LIGHT_DATASET_LOADED);
-                        logger.info("Dataset loaded.");
-                    } else {
-                        logger.info("Dataset block number miss: " + bNum + " != " + blockNumber);
-                    }
-                } catch (IOException | ClassNotFoundException e) {
-                    throw new RuntimeException(e);
+                logger.info("Loading light dataset from " + file.getAbsolutePath());
+                cacheLight = openDataset(file, cacheSize);
+                if (cacheLight != null) {
+                    fireDatatasetStatusUpdate(LIGHT_DATASET_LOADED);
+                    logger.info("Dataset loaded.");
+                } else {
+                    logger.info("Dataset is outdated or incompatible, regenerating: " + file.getAbsolutePath());
                 }
             }
 
             if (cacheLight == null) {
                 logger.info("Calculating light dataset...");
                 fireDatatasetStatusUpdate(LIGHT_DATASET_GENERATE_START);
-                cacheLight = getEthashAlgo().makeCache(getEthashAlgo().getParams().getCacheSize(blockNumber),
-                        getEthashAlgo().getSeedHash(blockNumber));
+                int[] cache = getEthashAlgo().makeCache(cacheSize, getEthashAlgo().getSeedHash(blockNumber));
                 logger.info("Light dataset calculated.");
 
-                if (fileCacheEnabled) {
-                    file.getParentFile().mkdirs();
-                    try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))){
+                try {
+                    EthashDataset dataset;
+                    if (fileCacheEnabled) {
                         logger.info("Writing light dataset to " + file.getAbsolutePath());
-                        oos.writeLong(blockNumber);
-                        oos.writeObject(cacheLight);
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
+                        dataset = EthashDataset.create(file, blockNumber, cacheSize);
+                    } else {
+                        dataset = EthashDataset.allocate(cacheSize);
                     }
+                    dataset.put(0, cache);
+                    dataset.commit();
+                    cacheLight = dataset;
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
                 }
                 fireDatatasetStatusUpdate(LIGHT_DATASET_GENERATED);
             }
@@ -170,24 +184,19 @@ public class Ethash {
         return cacheLight;
     }
 
-    public synchronized int[] getFullDataset() {
+    public synchronized EthashDataset getFullDataset() {
         if (fullData == null) {
             fireDatatasetStatusUpdate(DATASET_PREPARE);
             File file = new File(config.ethashDir(), "mine-dag.dat");
             if (fileCacheEnabled && file.canRead()) {
                 fireDatatasetStatusUpdate(FULL_DATASET_LOAD_START);
-                try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-                    logger.info("Loading dataset from " + file.getAbsolutePath());
-                    long bNum = ois.readLong();
-                    if (bNum == blockNumber) {
-                        fullData = (int[]) ois.readObject();
-                        logger.info("Dataset loaded.");
-                        fireDatatasetStatusUpdate(FULL_DATASET_LOADED);
-                    } else {
-                        logger.info("Dataset block number miss: " + bNum + " != " + blockNumber);
-                    }
-                } catch (IOException | ClassNotFoundException e) {
-                    throw new RuntimeException(e);
+                logger.info("Loading dataset from " + file.getAbsolutePath());
+                fullData = openDataset(file, getFullSize());
+                if (fullData != null) {
+                    logger.info("Dataset loaded.");
+                    fireDatatasetStatusUpdate(FULL_DATASET_LOADED);
+                } else {
+                    logger.info("Dataset is outdated or incompatible, regenerating: " + file.getAbsolutePath());
                 }
             }
 
@@ -195,20 +204,30 @@ public class Ethash {
 
                 logger.info("Calculating full dataset...");
                 fireDatatasetStatusUpdate(FULL_DATASET_GENERATE_START);
-                int[] cacheLight = getCacheLightImpl();
-                fullData = getEthashAlgo().calcDataset(getFullSize(), cacheLight);
-                logger.info("Full dataset calculated.");
-
-                if (fileCacheEnabled) {
-                    file.getParentFile().mkdirs();
-                    try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
+                int[] cache = getCacheLightImpl().toIntArray();
+                try {
+                    EthashDataset dataset;
+                    if (fileCacheEnabled) {
                         logger.info("Writing dataset to " + file.getAbsolutePath());
-                        oos.writeLong(blockNumber);
-                        oos.writeObject(fullData);
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
+                        dataset = EthashDataset.create(file, blockNumber, getFullSize());
+                    } else {
+                        dataset = EthashDataset.allocate(getFullSize());
                     }
+                    long itemsCount = dataset.getItemsCount();
+                    AtomicInteger lastPercent = new AtomicInteger();
+                    getEthashAlgo().calcDataset(cache, dataset, getDatasetPool(), done -> {
+                        int percent = (int) (done * 100 / itemsCount);
+                        int last = lastPercent.get();
+                        if (percent > last && lastPercent.compareAndSet(last, percent)) {
+                            fireDatasetProgress(FULL_DATASET_GENERATE_PROGRESS, percent);
+                        }
+                    });
+                    dataset.commit();
+                    fullData = dataset;
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
                 }
+                logger.info("Full dataset calculated.");
                 fireDatatasetStatusUpdate(FULL_DATASET_GENERATED);
             }
             fireDatatasetStatusUpdate(DATASET_READY);
@@ -216,7 +235,15 @@ public class Ethash {
         return fullData;
     }
 
-    int[] getFullData() {
+    private EthashDataset openDataset(File file, long size) {
+        try {
+            return EthashDataset.open(file, blockNumber, size);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    EthashDataset getFullData() {
         return fullData;
     }
 
@@ -318,6 +345,12 @@ public class Ethash {
         return FastByteComparisons.compareTo(hash, 0, 32, boundary, 0, 32) < 0;
     }
 
+    private void fireDatasetProgress(EthashListener.DatasetStatus status, int percent) {
+        for (EthashListener l : listeners) {
+            l.onDatasetProgress(status, percent);
+        }
+    }
+
     private void fireDatatasetStatusUpdate(EthashListener.DatasetStatus status) {
         for (EthashListener l : listeners) {
             l.onDatasetUpdate(status);
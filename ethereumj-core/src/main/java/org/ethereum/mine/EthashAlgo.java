@@ -19,12 +19,18 @@ package org.ethereum.mine;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.ethereum.crypto.HashUtil;
-import org.spongycastle.util.Arrays;
 
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.security.DigestException;
+import java.security.MessageDigest;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
 
 import static java.lang.System.arraycopy;
 import static java.math.BigInteger.valueOf;
@@ -81,54 +87,86 @@ public class EthashAlgo {
     }
 
 
-    private byte[][] makeCacheBytes(long cacheSize, byte[] seed) {
-        int n = (int) (cacheSize / params.getHASH_BYTES());
-        byte[][] o = new byte[n][];
-        o[0] = HashUtil.sha512(seed);
-        for (int i = 1; i < n; i++) {
-            o[i] = HashUtil.sha512(o[i - 1]);
-        }
+    /**
+     * Reusable buffers for the allocation free dataset item calculation, not thread safe
+     * so every thread should use its own instance
+     */
+    final class ItemContext {
+        final int[] mix = new int[params.getHASH_BYTES() / 4];
+        final int[] parent = new int[params.getHASH_BYTES() / 4];
+        final byte[] bytes = new byte[params.getHASH_BYTES()];
+        final MessageDigest digest = HashUtil.sha512Digest();
 
-        for (int cacheRound = 0; cacheRound < params.getCACHE_ROUNDS(); cacheRound++) {
-            for (int i = 0; i < n; i++) {
-                int v = remainderUnsigned(getWord(o[i], 0), n);
-                o[i] = HashUtil.sha512(xor(o[(i - 1 + n) % n], o[v]));
+        void sha512(int[] arr) {
+            intsToBytes(arr, bytes, false);
+            digest.update(bytes);
+            try {
+                digest.digest(bytes, 0, bytes.length);
+            } catch (DigestException e) {
+                throw new RuntimeException(e);
             }
+            bytesToInts(bytes, arr, false);
         }
-        return o;
     }
 
+    /**
+     * Cache rounds are inherently sequential (each item depends on the previous one)
+     * so the cache is calculated in place without per item allocations
+     */
     public int[] makeCache(long cacheSize, byte[] seed) {
-        byte[][] bytes = makeCacheBytes(cacheSize, seed);
-        int[] ret = new int[bytes.length * bytes[0].length / 4];
-        int[] ints = new int[bytes[0].length / 4];
-        for (int i = 0; i < bytes.length; i++) {
-            bytesToInts(bytes[i], ints, false);
-            arraycopy(ints, 0, ret, i * ints.length, ints.length);
+        final int r = params.getHASH_BYTES() / 4;
+        final int n = (int) (cacheSize / params.getHASH_BYTES());
+        int[] ret = new int[n * r];
+        ItemContext ctx = new ItemContext();
+        int[] item = ctx.mix;
+
+        bytesToInts(HashUtil.sha512(seed), item, false);
+        arraycopy(item, 0, ret, 0, r);
+        for (int i = 1; i < n; i++) {
+            ctx.sha512(item);
+            arraycopy(item, 0, ret, i * r, r);
+        }
+
+        for (int cacheRound = 0; cacheRound < params.getCACHE_ROUNDS(); cacheRound++) {
+            for (int i = 0; i < n; i++) {
+                int v = remainderUnsigned(ret[i * r], n);
+                int prevOff = ((i - 1 + n) % n) * r;
+                int vOff = v * r;
+                for (int k = 0; k < r; k++) {
+                    item[k] = ret[prevOff + k] ^ ret[vOff + k];
+                }
+                ctx.sha512(item);
+                arraycopy(item, 0, ret, i * r, r);
+            }
         }
         return ret;
     }
 
+    private static final int DATASET_CHUNK_ITEMS = 1 << 12;
+
     private static final int FNV_PRIME = 0x01000193;
     private static int fnv(int v1, int v2) {
         return (v1 * FNV_PRIME) ^ v2;
     }
 
-    int[] sha512(int[] arr, boolean bigEndian) {
-        byte[] bytesTmp = new byte[arr.length << 2];
-        intsToBytes(arr, bytesTmp, bigEndian);
-        bytesTmp = HashUtil.sha512(bytesTmp);
-        bytesToInts(bytesTmp, arr, bigEndian);
-        return arr;
+    public final int[] calcDatasetItem(final int[] cache, final int i) {
+        ItemContext ctx = new ItemContext();
+        calcDatasetItem(cache, i, ctx);
+        return ctx.mix;
     }
 
-    public final int[] calcDatasetItem(final int[] cache, final int i) {
+    /**
+     * Allocation free version of {@link #calcDatasetItem(int[], int)}
+     * The resulting item is stored to the {@link ItemContext#mix}
+     */
+    final void calcDatasetItem(final int[] cache, final int i, final ItemContext ctx) {
         final int r = params.getHASH_BYTES() / params.getWORD_BYTES();
         final int n = cache.length / r;
-        int[] mix = Arrays.copyOfRange(cache, i % n * r, (i % n + 1) * r);
+        final int[] mix = ctx.mix;
+        arraycopy(cache, i % n * r, mix, 0, r);
 
         mix[0] = i ^ mix[0];
-        mix = sha512(mix, false);
+        ctx.sha512(mix);
         final int dsParents = (int) params.getDATASET_PARENTS();
         final int mixLen = mix.length;
         for (int j = 0; j < dsParents; j++) {
@@ -139,21 +177,131 @@ public class EthashAlgo {
                 mix[k] = fnv(mix[k], cache[off + k]);
             }
         }
-        return sha512(mix, false);
+        ctx.sha512(mix);
+    }
+
+    public final int[] calcDatasetItem(final EthashDataset cache, final int i) {
+        ItemContext ctx = new ItemContext();
+        calcDatasetItem(cache, i, ctx);
+        return ctx.mix;
+    }
+
+    final void calcDatasetItem(final EthashDataset cache, final int i, final ItemContext ctx) {
+        final int r = params.getHASH_BYTES() / params.getWORD_BYTES();
+        final int n = cache.getItemsCount();
+        final int[] mix = ctx.mix;
+        final int[] parent = ctx.parent;
+        cache.getItem(i % n, mix, 0);
+
+        mix[0] = i ^ mix[0];
+        ctx.sha512(mix);
+        final int dsParents = (int) params.getDATASET_PARENTS();
+        final int mixLen = mix.length;
+        for (int j = 0; j < dsParents; j++) {
+            int cacheIdx = fnv(i ^ j, mix[j % r]);
+            cacheIdx = remainderUnsigned(cacheIdx, n);
+            cache.getItem(cacheIdx, parent, 0);
+            for (int k = 0; k < mixLen; k++) {
+                mix[k] = fnv(mix[k], parent[k]);
+            }
+        }
+        ctx.sha512(mix);
     }
 
     public int[] calcDataset(long fullSize, int[] cache) {
         int hashesCount = (int) (fullSize / params.getHASH_BYTES());
         int[] ret = new int[hashesCount * (params.getHASH_BYTES() / 4)];
+        ItemContext ctx = new ItemContext();
         for (int i = 0; i < hashesCount; i++) {
-            int[] item = calcDatasetItem(cache, i);
-            arraycopy(item, 0, ret, i * (params.getHASH_BYTES() / 4), item.length);
+            calcDatasetItem(cache, i, ctx);
+            arraycopy(ctx.mix, 0, ret, i * (params.getHASH_BYTES() / 4), ctx.mix.length);
         }
         return ret;
     }
 
+    /**
+     * Calculates full dataset straight into the destination dataset (which is normally file mapped).
+     * The items range is recursively split into chunks which are calculated on the specified pool
+     *
+     * @param progress receives the total number of calculated items each time a chunk is done,
+     *                 may be called concurrently from pool threads
+     */
+    public void calcDataset(int[] cache, EthashDataset dataset, ForkJoinPool pool, LongConsumer progress) {
+        pool.invoke(new DatasetChunk(cache, dataset, 0, dataset.getItemsCount(), new AtomicLong(), progress));
+    }
+
+    private class DatasetChunk extends RecursiveAction {
+        final int[] cache;
+        final EthashDataset dataset;
+        final int from, to;
+        final AtomicLong done;
+        final LongConsumer progress;
+
+        DatasetChunk(int[] cache, EthashDataset dataset, int from, int to, AtomicLong done, LongConsumer progress) {
+            this.cache = cache;
+            this.dataset = dataset;
+            this.from = from;
+            this.to = to;
+            this.done = done;
+            this.progress = progress;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > DATASET_CHUNK_ITEMS) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new DatasetChunk(cache, dataset, from, mid, done, progress),
+                        new DatasetChunk(cache, dataset, mid, to, done, progress));
+            } else {
+                ItemContext ctx = new ItemContext();
+                for (int i = from; i < to; i++) {
+                    calcDatasetItem(cache, i, ctx);
+                    dataset.putItem(i, ctx.mix, 0);
+                }
+                progress.accept(done.addAndGet(to - from));
+            }
+        }
+    }
+
     public Pair<byte[], byte[]> hashimoto(byte[] blockHeaderTruncHash, byte[] nonce, long fullSize,
                                           int[] cacheOrDataset, boolean full) {
+        int hashWords = params.getHASH_BYTES() / 4;
+        if (full) {
+            return hashimoto(blockHeaderTruncHash, nonce, fullSize, (itemIdx, dest, destOff) ->
+                    arraycopy(cacheOrDataset, itemIdx * hashWords, dest, destOff, hashWords));
+        } else {
+            ItemContext ctx = new ItemContext();
+            return hashimoto(blockHeaderTruncHash, nonce, fullSize, (itemIdx, dest, destOff) -> {
+                calcDatasetItem(cacheOrDataset, itemIdx, ctx);
+                arraycopy(ctx.mix, 0, dest, destOff, hashWords);
+            });
+        }
+    }
+
+    public Pair<byte[], byte[]> hashimoto(byte[] blockHeaderTruncHash, byte[] nonce, long fullSize,
+                                          EthashDataset cacheOrDataset, boolean full) {
+        int hashWords = params.getHASH_BYTES() / 4;
+        if (full) {
+            return hashimoto(blockHeaderTruncHash, nonce, fullSize, cacheOrDataset::getItem);
+        } else {
+            ItemContext ctx = new ItemContext();
+            return hashimoto(blockHeaderTruncHash, nonce, fullSize, (itemIdx, dest, destOff) -> {
+                calcDatasetItem(cacheOrDataset, itemIdx, ctx);
+                arraycopy(ctx.mix, 0, dest, destOff, hashWords);
+            });
+        }
+    }
+
+    /**
+     * Source of the dataset items for {@link #hashimoto}, either full dataset lookup
+     * or item calculation from the light cache
+     */
+    private interface ItemLookup {
+        void get(int itemIdx, int[] dest, int destOff);
+    }
+
+    private Pair<byte[], byte[]> hashimoto(byte[] blockHeaderTruncHash, byte[] nonce, long fullSize,
+                                           ItemLookup lookup) {
         if (nonce.length != 8) throw new RuntimeException("nonce.length != 8");
 
         int hashWords = params.getHASH_BYTES() / 4;
@@ -171,13 +319,7 @@ public class EthashAlgo {
             int[] newData = new int[mix.length];
             int off = p * mixhashes;
             for (int j = 0; j < mixhashes; j++) {
-                int itemIdx = off + j;
-                if (!full) {
-                    int[] lookup1 = calcDatasetItem(cacheOrDataset, itemIdx);
-                    arraycopy(lookup1, 0, newData, j * lookup1.length, lookup1.length);
-                } else {
-                    arraycopy(cacheOrDataset, itemIdx * hashWords, newData, j * hashWords, hashWords);
-                }
+                lookup.get(off + j, newData, j * hashWords);
             }
             for (int i1 = 0; i1 < mix.length; i1++) {
                 mix[i1] = fnv(mix[i1], newData[i1]);
@@ -192,7 +334,7 @@ public class EthashAlgo {
             cmix[i >> 2] = fnv3;
         }
 
-        return Pair.of(intsToBytes(cmix, false), sha3(merge(intsToBytes(s, false), intsToBytes(cmix, false))));
+        return Pair.of(intsToBytes(cmix, false), sha3(intsToBytes(s, false), intsToBytes(cmix, false)));
     }
 
     public Pair<byte[], byte[]> hashimotoLight(long fullSize, final int[] cache, byte[] blockHeaderTruncHash,
@@ -205,20 +347,26 @@ public class EthashAlgo {
         return hashimoto(blockHeaderTruncHash, nonce, fullSize, dataset, true);
     }
 
+    public Pair<byte[], byte[]> hashimotoLight(long fullSize, final EthashDataset cache, byte[] blockHeaderTruncHash,
+                                               byte[]  nonce) {
+        return hashimoto(blockHeaderTruncHash, nonce, fullSize, cache, false);
+    }
+
+    public Pair<byte[], byte[]> hashimotoFull(long fullSize, final EthashDataset dataset, byte[] blockHeaderTruncHash,
+                                              byte[]  nonce) {
+        return hashimoto(blockHeaderTruncHash, nonce, fullSize, dataset, true);
+    }
+
     public long mine(long fullSize, int[] dataset, byte[] blockHeaderTruncHash, long difficulty) {
         return mine(fullSize, dataset, blockHeaderTruncHash, difficulty, new Random().nextLong());
     }
 
     public long mine(long fullSize, int[] dataset, byte[] blockHeaderTruncHash, long difficulty, long startNonce) {
-        long nonce = startNonce;
-        BigInteger target = valueOf(2).pow(256).divide(valueOf(difficulty));
-        while (!Thread.currentThread().isInterrupted()) {
-            nonce++;
-            Pair<byte[], byte[]> pair = hashimotoFull(fullSize, dataset, blockHeaderTruncHash, longToBytes(nonce));
-            BigInteger h = new BigInteger(1, pair.getRight() /* ?? */);
-            if (h.compareTo(target) < 0) break;
-        }
-        return nonce;
+        return mine(difficulty, startNonce, nonce -> hashimotoFull(fullSize, dataset, blockHeaderTruncHash, nonce));
+    }
+
+    public long mine(long fullSize, EthashDataset dataset, byte[] blockHeaderTruncHash, long difficulty, long startNonce) {
+        return mine(difficulty, startNonce, nonce -> hashimotoFull(fullSize, dataset, blockHeaderTruncHash, nonce));
     }
 
     /**
@@ -230,12 +378,24 @@ public class EthashAlgo {
     }
 
     public long mineLight(long fullSize, final int[] cache, byte[] blockHeaderTruncHash, long difficulty, long startNonce) {
+        return mine(difficulty, startNonce, nonce -> hashimotoLight(fullSize, cache, blockHeaderTruncHash, nonce));
+    }
+
+    public long mineLight(long fullSize, final EthashDataset cache, byte[] blockHeaderTruncHash, long difficulty, long startNonce) {
+        return mine(difficulty, startNonce, nonce -> hashimotoLight(fullSize, cache, blockHeaderTruncHash, nonce));
+    }
+
+    /**
+     * Iterates nonces starting from the next after {@code startNonce} until the hashimoto result
+     * satisfies the difficulty or the thread is interrupted
+     */
+    private long mine(long difficulty, long startNonce, Function<byte[], Pair<byte[], byte[]>> hashimoto) {
         long nonce = startNonce;
         BigInteger target = valueOf(2).pow(256).divide(valueOf(difficulty));
-        while(!Thread.currentThread().isInterrupted()) {
+        while (!Thread.currentThread().isInterrupted()) {
             nonce++;
-            Pair<byte[], byte[]> pair = hashimotoLight(fullSize, cache, blockHeaderTruncHash, longToBytes(nonce));
-            BigInteger h = new BigInteger(1, pair.getRight() /* ?? */);
+            Pair<byte[], byte[]> pair = hashimoto.apply(longToBytes(nonce));
+            BigInteger h = new BigInteger(1, pair.getRight());
             if (h.compareTo(target) < 0) break;
         }
         return nonce;
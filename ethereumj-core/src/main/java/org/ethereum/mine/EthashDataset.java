@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.mine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Flat little-endian storage of Ethash cache or full dataset words.
+ *
+ * The data is either kept on heap or memory mapped from a file consisting of
+ * a small header followed by the raw dataset, so once the file is generated it
+ * may be opened instantly without deserialization and without pinning
+ * the whole dataset on the heap.
+ *
+ * Since a single buffer can't address more than 2Gb the data is split into 1Gb segments,
+ * the segment size is a multiple of the item size so items never straddle segments
+ */
+public class EthashDataset {
+
+    private static final long MAGIC = 0x45544841534844L; // "ETHASHD"
+    private static final int HEADER_SIZE = 64;
+
+    private static final int SEGMENT_WORDS_BITS = 28;
+    private static final int SEGMENT_WORDS = 1 << SEGMENT_WORDS_BITS;
+    private static final int SEGMENT_MASK = SEGMENT_WORDS - 1;
+
+    private static final int ITEM_WORDS = 16;
+
+    private final long size;
+    private final IntBuffer[] segments;
+    private final MappedByteBuffer[] mapped;
+
+    private File file;
+    private File tmpFile;
+
+    private EthashDataset(long size, IntBuffer[] segments, MappedByteBuffer[] mapped) {
+        this.size = size;
+        this.segments = segments;
+        this.mapped = mapped;
+    }
+
+    /**
+     * Allocates dataset of the specified size (in bytes) on heap
+     */
+    public static EthashDataset allocate(long size) {
+        IntBuffer[] segments = new IntBuffer[segmentsCount(size)];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = IntBuffer.allocate(segmentWords(size, i));
+        }
+        return new EthashDataset(size, segments, null);
+    }
+
+    /**
+     * Maps previously generated dataset file
+     * @return the dataset or null if the file is absent or it was generated for another
+     * epoch or in another format
+     */
+    public static EthashDataset open(File file, long blockNumber, long size) throws IOException {
+        if (!file.canRead() || file.length() != HEADER_SIZE + size) return null;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0);
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getLong() != MAGIC ||
+                    header.getLong() != blockNumber || header.getLong() != size) {
+                return null;
+            }
+            return map(channel, FileChannel.MapMode.READ_ONLY, size);
+        }
+    }
+
+    /**
+     * Creates a new file backed dataset of the specified size.
+     * The data is written to a temporary file which replaces the target
+     * file only when {@link #commit()} is called so the file readers never observe
+     * partially generated dataset
+     */
+    public static EthashDataset create(File file, long blockNumber, long size) throws IOException {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw")) {
+            raf.setLength(0);
+            raf.setLength(HEADER_SIZE + size);
+            raf.writeLong(MAGIC);
+            raf.writeLong(blockNumber);
+            raf.writeLong(size);
+
+            EthashDataset ret = map(raf.getChannel(), FileChannel.MapMode.READ_WRITE, size);
+            ret.file = file;
+            ret.tmpFile = tmpFile;
+            return ret;
+        }
+    }
+
+    private static EthashDataset map(FileChannel channel, FileChannel.MapMode mode, long size) throws IOException {
+        IntBuffer[] segments = new IntBuffer[segmentsCount(size)];
+        MappedByteBuffer[] mapped = new MappedByteBuffer[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            mapped[i] = channel.map(mode, HEADER_SIZE + ((long) i << SEGMENT_WORDS_BITS) * 4, segmentWords(size, i) * 4L);
+            segments[i] = mapped[i].order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        }
+        return new EthashDataset(size, segments, mapped);
+    }
+
+    private static int segmentsCount(long size) {
+        return (int) ((size / 4 + SEGMENT_WORDS - 1) >>> SEGMENT_WORDS_BITS);
+    }
+
+    private static int segmentWords(long size, int segment) {
+        return (int) Math.min(SEGMENT_WORDS, size / 4 - ((long) segment << SEGMENT_WORDS_BITS));
+    }
+
+    /**
+     * Flushes the generated data to disk and moves the file to its target location.
+     * Does nothing for heap datasets
+     */
+    public void commit() throws IOException {
+        if (tmpFile == null) return;
+
+        for (MappedByteBuffer buf : mapped) {
+            buf.force();
+        }
+        try {
+            Files.move(tmpFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        tmpFile = null;
+    }
+
+    /**
+     * @return dataset size in bytes
+     */
+    public long size() {
+        return size;
+    }
+
+    public int getItemsCount() {
+        return (int) (size / (ITEM_WORDS * 4));
+    }
+
+    public int getWord(long wordIdx) {
+        return segments[(int) (wordIdx >>> SEGMENT_WORDS_BITS)].get((int) (wordIdx & SEGMENT_MASK));
+    }
+
+    public void putWord(long wordIdx, int val) {
+        segments[(int) (wordIdx >>> SEGMENT_WORDS_BITS)].put((int) (wordIdx & SEGMENT_MASK), val);
+    }
+
+    /**
+     * Copies 64-byte item words to the destination array
+     */
+    public void getItem(int itemIdx, int[] dest, int destOff) {
+        long wordIdx = (long) itemIdx * ITEM_WORDS;
+        IntBuffer seg = segments[(int) (wordIdx >>> SEGMENT_WORDS_BITS)];
+        int off = (int) (wordIdx & SEGMENT_MASK);
+        for (int i = 0; i < ITEM_WORDS; i++) {
+            dest[destOff + i] = seg.get(off + i);
+        }
+    }
+
+    public void putItem(int itemIdx, int[] src, int srcOff) {
+        long wordIdx = (long) itemIdx * ITEM_WORDS;
+        IntBuffer seg = segments[(int) (wordIdx >>> SEGMENT_WORDS_BITS)];
+        int off = (int) (wordIdx & SEGMENT_MASK);
+        for (int i = 0; i < ITEM_WORDS; i++) {
+            seg.put(off + i, src[srcOff + i]);
+        }
+    }
+
+    /**
+     * Bulk writes words starting from the specified word index
+     */
+    public void put(long wordIdx, int[] src) {
+        int srcOff = 0;
+        while (srcOff < src.length) {
+            IntBuffer seg = segments[(int) (wordIdx >>> SEGMENT_WORDS_BITS)].duplicate();
+            seg.position((int) (wordIdx & SEGMENT_MASK));
+            int len = Math.min(seg.remaining(), src.length - srcOff);
+            seg.put(src, srcOff, len);
+            srcOff += len;
+            wordIdx += len;
+        }
+    }
+
+    /**
+     * Copies the whole dataset to an array, applicable to datasets
+     * smaller than 8Gb only (i.e. to light caches)
+     */
+    public int[] toIntArray() {
+        int[] ret = new int[(int) (size / 4)];
+        int off = 0;
+        for (IntBuffer segment : segments) {
+            IntBuffer seg = segment.duplicate();
+            seg.rewind();
+            int len = seg.remaining();
+            seg.get(ret, off, len);
+            off += len;
+        }
+        return ret;
+    }
+}
@@ -56,6 +56,11 @@ public interface EthashListener extends MinerListener {
          * disk as part of this job
          */
         FULL_DATASET_GENERATE_START,
+        /**
+         * Fires periodically while full dataset is being generated,
+         * see {@link #onDatasetProgress} for the progress value
+         */
+        FULL_DATASET_GENERATE_PROGRESS,
         /**
          * Indicates that full dataset is already generated
          * and will be loaded from disk though it could be outdated
@@ -77,4 +82,14 @@ public interface EthashListener extends MinerListener {
     }
 
     void onDatasetUpdate(DatasetStatus datasetStatus);
+
+    /**
+     * Reports dataset generation progress
+     * By default just passes the status to {@link #onDatasetUpdate}
+     *
+     * @param percent percentage of the dataset generated so far
+     */
+    default void onDatasetProgress(DatasetStatus datasetStatus, int percent) {
+        onDatasetUpdate(datasetStatus);
+    }
 }
@@ -19,6 +19,7 @@ package org.ethereum.net;
 
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.ReferenceCountUtil;
 import org.ethereum.listener.EthereumListener;
 import org.ethereum.net.eth.message.EthMessage;
 import org.ethereum.net.message.Message;
@@ -99,6 +100,7 @@ public class MessageQueue {
     public void sendMessage(Message msg) {
         if (channel.isDisconnected()) {
             logger.warn("{}: attempt to send [{}] message after disconnect", channel, msg.getCommand().name());
+            ReferenceCountUtil.release(msg);
             return;
         }
 
@@ -182,5 +184,11 @@ public class MessageQueue {
         if (timerTask != null) {
             timerTask.cancel(false);
         }
+
+        // release shared messages which are not going to be sent
+        MessageRoundtrip messageRoundtrip;
+        while ((messageRoundtrip = respondQueue.poll()) != null) {
+            ReferenceCountUtil.release(messageRoundtrip.getMsg());
+        }
     }
 }
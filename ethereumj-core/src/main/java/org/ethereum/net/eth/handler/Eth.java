@@ -20,6 +20,7 @@ package org.ethereum.net.eth.handler;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.ethereum.core.*;
 import org.ethereum.net.eth.EthVersion;
+import org.ethereum.net.eth.message.BroadcastMessage;
 import org.ethereum.net.eth.message.EthMessageCodes;
 import org.ethereum.sync.PeerState;
 import org.ethereum.sync.SyncStatistics;
@@ -121,6 +122,13 @@ public interface Eth {
      */
     void sendNewBlockHashes(Block block);
 
+    /**
+     * Sends the message shared with other peers to the wire
+     *
+     * @see BroadcastMessage
+     */
+    void sendBroadcast(BroadcastMessage msg);
+
     /**
      * @return protocol version
      */
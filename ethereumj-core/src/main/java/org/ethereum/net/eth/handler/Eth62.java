@@ -219,6 +219,11 @@ public class Eth62 extends EthHandler {
         sendMessage(msg);
     }
 
+    @Override
+    public synchronized void sendBroadcast(BroadcastMessage msg) {
+        sendMessage(msg.retain());
+    }
+
     @Override
     public synchronized ListenableFuture<List<BlockHeader>> sendGetBlockHeaders(long blockNumber, int maxBlocksAsk, boolean reverse) {
 
@@ -410,18 +415,17 @@ public class Eth62 extends EthHandler {
         }
     }
 
-    protected synchronized void processGetBlockHeaders(GetBlockHeadersMessage msg) {
-        Iterator<BlockHeader> headersIterator = blockchain.getIteratorOfHeadersStartFrom(
+    // serving handlers don't touch the handler state and are not synchronized
+    // so they don't block the sync threads talking to the same peer
+    protected void processGetBlockHeaders(GetBlockHeadersMessage msg) {
+        // stored header encodings are served as is
+        List<byte[]> blockHeaders = blockchain.getListOfEncodedHeadersStartFrom(
                 msg.getBlockIdentifier(),
                 msg.getSkipBlocks(),
                 min(msg.getMaxHeaders(), MAX_HASHES_TO_SEND),
                 msg.isReverse()
         );
-        List<BlockHeader> blockHeaders = new ArrayList<>();
-        while (headersIterator.hasNext()) {
-            blockHeaders.add(headersIterator.next());
-        }
-        BlockHeadersMessage response = new BlockHeadersMessage(blockHeaders);
+        BlockHeadersMessage response = BlockHeadersMessage.fromEncodedHeaders(blockHeaders);
         sendMessage(response);
     }
 
@@ -456,7 +460,7 @@ public class Eth62 extends EthHandler {
         peerState = IDLE;
     }
 
-    protected synchronized void processGetBlockBodies(GetBlockBodiesMessage msg) {
+    protected void processGetBlockBodies(GetBlockBodiesMessage msg) {
         Iterator<byte[]> bodiesIterator = blockchain.getIteratorOfBodiesByHashes(msg.getBlockHashes());
         List<byte[]> bodies = new ArrayList<>();
         int sizeSum = 0;
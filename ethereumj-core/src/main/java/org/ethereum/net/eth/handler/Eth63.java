@@ -25,6 +25,7 @@ import org.ethereum.config.SystemProperties;
 import org.ethereum.core.*;
 import org.ethereum.datasource.Source;
 import org.ethereum.db.BlockStore;
+import org.ethereum.db.TransactionStore;
 import org.ethereum.listener.CompositeEthereumListener;
 import org.ethereum.net.eth.EthVersion;
 import org.ethereum.net.eth.message.EthMessage;
@@ -44,6 +45,7 @@ import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static org.ethereum.crypto.HashUtil.sha3;
@@ -62,6 +64,9 @@ public class Eth63 extends Eth62 {
     @Autowired @Qualifier("trieNodeSource")
     private Source<byte[], byte[]> trieNodeSource;
 
+    @Autowired
+    private TransactionStore transactionStore;
+
     private List<byte[]> requestedReceipts;
     private SettableFuture<List<List<TransactionReceipt>>> requestReceiptsFuture;
     private Set<byte[]> requestedNodes;
@@ -110,13 +115,19 @@ public class Eth63 extends Eth62 {
         );
 
         List<Value> nodeValues = new ArrayList<>();
-        for (byte[] nodeKey : msg.getNodeKeys()) {
-            byte[] rawNode = trieNodeSource.get(nodeKey);
-            if (rawNode != null) {
-                Value value = new Value(rawNode);
-                nodeValues.add(value);
-                if (nodeValues.size() >= MAX_HASHES_TO_SEND) break;
-                logger.trace("Eth63: " + toHexString(nodeKey).substring(0, 8) + " -> " + value);
+        List<byte[]> nodeKeys = msg.getNodeKeys();
+        // nodes are read by chunks with a single batch read per chunk
+        for (int i = 0; i < nodeKeys.size() && nodeValues.size() < MAX_HASHES_TO_SEND; i += MAX_HASHES_TO_SEND) {
+            List<byte[]> chunk = nodeKeys.subList(i, Math.min(nodeKeys.size(), i + MAX_HASHES_TO_SEND));
+            Map<byte[], byte[]> rawNodes = trieNodeSource.getAll(chunk);
+            for (byte[] nodeKey : chunk) {
+                byte[] rawNode = rawNodes.get(nodeKey);
+                if (rawNode != null) {
+                    Value value = new Value(rawNode);
+                    nodeValues.add(value);
+                    if (nodeValues.size() >= MAX_HASHES_TO_SEND) break;
+                    logger.trace("Eth63: " + toHexString(nodeKey).substring(0, 8) + " -> " + value);
+                }
             }
         }
 
@@ -134,15 +145,14 @@ public class Eth63 extends Eth62 {
         List<List<TransactionReceipt>> receipts = new ArrayList<>();
         int sizeSum = 0;
         for (byte[] blockHash : msg.getBlockHashes()) {
-            Block block = blockchain.getBlockByHash(blockHash);
-            if (block == null) continue;
-
-            List<TransactionReceipt> blockReceipts = new ArrayList<>();
-            for (Transaction transaction : block.getTransactionsList()) {
-                TransactionInfo transactionInfo = blockchain.getTransactionInfo(transaction.getHash());
-                if (transactionInfo == null) break;
-                blockReceipts.add(transactionInfo.getReceipt());
-                sizeSum += TransactionReceipt.MemEstimator.estimateSize(transactionInfo.getReceipt());
+            List<TransactionReceipt> blockReceipts = transactionStore.getBlockReceipts(blockHash);
+            if (blockReceipts == null) {
+                blockReceipts = getLegacyBlockReceipts(blockHash);
+                if (blockReceipts == null) continue;
+            }
+
+            for (TransactionReceipt receipt : blockReceipts) {
+                sizeSum += TransactionReceipt.MemEstimator.estimateSize(receipt);
             }
             receipts.add(blockReceipts);
             if (sizeSum >= MAX_MESSAGE_SIZE) break;
@@ -151,6 +161,22 @@ public class Eth63 extends Eth62 {
         sendMessage(new ReceiptsMessage(receipts));
     }
 
+    /**
+     * Collects block receipts stored per transaction by the legacy {@link TransactionStore} format
+     */
+    private List<TransactionReceipt> getLegacyBlockReceipts(byte[] blockHash) {
+        Block block = blockchain.getBlockByHash(blockHash);
+        if (block == null) return null;
+
+        List<TransactionReceipt> blockReceipts = new ArrayList<>();
+        for (Transaction transaction : block.getTransactionsList()) {
+            TransactionInfo transactionInfo = blockchain.getTransactionInfo(transaction.getHash());
+            if (transactionInfo == null) break;
+            blockReceipts.add(transactionInfo.getReceipt());
+        }
+        return blockReceipts;
+    }
+
     public synchronized ListenableFuture<List<Pair<byte[], byte[]>>> requestTrieNodes(List<byte[]> hashes) {
         if (peerState != PeerState.IDLE) return null;
 
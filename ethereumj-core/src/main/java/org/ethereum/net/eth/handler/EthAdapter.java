@@ -20,6 +20,7 @@ package org.ethereum.net.eth.handler;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.ethereum.core.*;
 import org.ethereum.net.eth.EthVersion;
+import org.ethereum.net.eth.message.BroadcastMessage;
 import org.ethereum.sync.SyncStatistics;
 
 import java.math.BigInteger;
@@ -117,6 +118,10 @@ public class EthAdapter implements Eth {
 
     }
 
+    @Override
+    public void sendBroadcast(BroadcastMessage msg) {
+    }
+
     @Override
     public EthVersion getVersion() {
         return fromCode(UPPER);
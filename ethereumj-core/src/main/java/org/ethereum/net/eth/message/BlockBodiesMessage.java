@@ -20,6 +20,7 @@ package org.ethereum.net.eth.message;
 import org.ethereum.util.RLP;
 import org.ethereum.util.RLPElement;
 import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPWriter;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -60,11 +61,12 @@ public class BlockBodiesMessage extends EthMessage {
     }
 
     private void encode() {
-
-        byte[][] encodedElementArray = blockBodies
-                .toArray(new byte[blockBodies.size()][]);
-
-        this.encoded = RLP.encodeList(encodedElementArray);
+        this.encoded = RLPWriter.encode(w -> {
+            w.startList();
+            for (byte[] body : blockBodies)
+                w.writeEncoded(body);
+            w.endList();
+        });
     }
 
 
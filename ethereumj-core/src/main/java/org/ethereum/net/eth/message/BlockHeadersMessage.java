@@ -20,6 +20,8 @@ package org.ethereum.net.eth.message;
 import org.ethereum.core.BlockHeader;
 import org.ethereum.util.RLP;
 import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPReader;
+import org.ethereum.util.RLPWriter;
 
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -51,6 +53,18 @@ public class BlockHeadersMessage extends EthMessage {
         parsed = true;
     }
 
+    /**
+     * Creates message out of already encoded headers, the headers are decoded on demand only
+     */
+    public static BlockHeadersMessage fromEncodedHeaders(List<byte[]> encodedHeaders) {
+        return new BlockHeadersMessage(RLPWriter.encode(w -> {
+            w.startList();
+            for (byte[] header : encodedHeaders)
+                w.writeEncoded(header);
+            w.endList();
+        }));
+    }
+
     private synchronized void parse() {
         if (parsed) return;
         RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
@@ -64,11 +78,12 @@ public class BlockHeadersMessage extends EthMessage {
     }
 
     private void encode() {
-        List<byte[]> encodedElements = new ArrayList<>();
-        for (BlockHeader blockHeader : blockHeaders)
-            encodedElements.add(blockHeader.getEncoded());
-        byte[][] encodedElementArray = encodedElements.toArray(new byte[encodedElements.size()][]);
-        this.encoded = RLP.encodeList(encodedElementArray);
+        this.encoded = RLPWriter.encode(w -> {
+            w.startList();
+            for (BlockHeader blockHeader : blockHeaders)
+                blockHeader.encode(w, true);
+            w.endList();
+        });
     }
 
 
@@ -95,6 +110,10 @@ public class BlockHeadersMessage extends EthMessage {
 
     @Override
     public String toString() {
+        if (!parsed && !logger.isTraceEnabled()) {
+            // outgoing message built from encoded headers, avoid decoding it just for logging
+            return "[" + getCommand().name() + " count( " + RLPReader.readList(encoded).count() + " )]";
+        }
         parse();
 
         StringBuilder payload = new StringBuilder();
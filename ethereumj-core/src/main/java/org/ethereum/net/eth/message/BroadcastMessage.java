@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.net.eth.message;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCounted;
+import org.ethereum.net.server.WireTrafficStats;
+import org.xerial.snappy.Snappy;
+
+import java.io.IOException;
+
+/**
+ * Eth message prepared once for sending to a number of peers. <br>
+ *
+ * The message is RLP encoded once into a reference counted buffer, its Snappy compressed form
+ * is created on the first demand and shared as well, thus only frame encryption is left
+ * to be done per channel. <br>
+ *
+ * Each channel the message is passed to should hold its own reference,
+ * the reference is released by the Netty pipeline once the frame is written to the wire
+ */
+public class BroadcastMessage extends EthMessage implements ReferenceCounted {
+
+    private final EthMessage message;
+    private final WireTrafficStats.BroadcastStats stats;
+
+    private final ByteBuf encodedBuf;
+    private ByteBuf compressedBuf;
+
+    public BroadcastMessage(EthMessage message, WireTrafficStats.BroadcastStats stats) {
+        this.message = message;
+        this.stats = stats;
+        this.encoded = message.getEncoded();
+        this.encodedBuf = Unpooled.wrappedBuffer(encoded);
+        this.parsed = true;
+
+        if (stats != null) stats.encoded(encoded.length);
+    }
+
+    public EthMessage getMessage() {
+        return message;
+    }
+
+    /**
+     * @return duplicate of the encoded message buffer, it shares the content and reference count
+     * with this message and must not be modified. It isn't wrapped as read only buffer since
+     * frames are encoded straight from the backing array
+     */
+    public ByteBuf getEncodedBuf() {
+        return encodedBuf.duplicate();
+    }
+
+    /**
+     * @return duplicate of the Snappy compressed message buffer, it shares the content and
+     * reference count with this message and must not be modified
+     */
+    public synchronized ByteBuf getCompressedBuf() throws IOException {
+        if (compressedBuf == null) {
+            byte[] compressed = Snappy.rawCompress(encoded, encoded.length);
+            compressedBuf = Unpooled.wrappedBuffer(compressed);
+            if (stats != null) stats.encoded(compressed.length);
+        }
+        return compressedBuf.duplicate();
+    }
+
+    /**
+     * Accounts payload sent to a single peer
+     */
+    public void onSent(int size) {
+        if (stats != null) stats.sent(size);
+    }
+
+    @Override
+    public byte[] getEncoded() {
+        return encoded;
+    }
+
+    @Override
+    public EthMessageCodes getCommand() {
+        return message.getCommand();
+    }
+
+    @Override
+    public Class<?> getAnswerMessage() {
+        return null;
+    }
+
+    @Override
+    public int refCnt() {
+        return encodedBuf.refCnt();
+    }
+
+    @Override
+    public BroadcastMessage retain() {
+        encodedBuf.retain();
+        return this;
+    }
+
+    @Override
+    public BroadcastMessage retain(int increment) {
+        encodedBuf.retain(increment);
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        return release(1);
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        boolean deallocated = encodedBuf.release(decrement);
+        if (deallocated) {
+            synchronized (this) {
+                if (compressedBuf != null) compressedBuf.release();
+            }
+        }
+        return deallocated;
+    }
+
+    @Override
+    public String toString() {
+        return message.toString();
+    }
+}
@@ -21,8 +21,7 @@ import org.ethereum.core.BlockIdentifier;
 import org.ethereum.util.ByteUtil;
 import org.ethereum.util.RLP;
 import org.ethereum.util.RLPList;
-
-import java.math.BigInteger;
+import org.ethereum.util.RLPWriter;
 
 import static org.ethereum.util.ByteUtil.byteArrayToInt;
 import static org.ethereum.util.ByteUtil.byteArrayToLong;
@@ -88,17 +87,18 @@ public class GetBlockHeadersMessage extends EthMessage {
     }
 
     private void encode() {
-        byte[] maxHeaders  = RLP.encodeInt(this.maxHeaders);
-        byte[] skipBlocks = RLP.encodeInt(this.skipBlocks);
-        byte[] reverse  = RLP.encodeByte((byte) (this.reverse ? 1 : 0));
-
-        if (this.blockHash != null) {
-            byte[] hash = RLP.encodeElement(this.blockHash);
-            this.encoded = RLP.encodeList(hash, maxHeaders, skipBlocks, reverse);
-        } else {
-            byte[] number = RLP.encodeBigInteger(BigInteger.valueOf(this.blockNumber));
-            this.encoded = RLP.encodeList(number, maxHeaders, skipBlocks, reverse);
-        }
+        this.encoded = RLPWriter.encode(w -> {
+            w.startList();
+            if (this.blockHash != null) {
+                w.writeItem(this.blockHash);
+            } else {
+                w.writeLong(this.blockNumber);
+            }
+            w.writeInt(this.maxHeaders)
+                    .writeInt(this.skipBlocks)
+                    .writeInt(this.reverse ? 1 : 0)
+                    .endList();
+        });
     }
 
     private synchronized void parse() {
@@ -19,6 +19,7 @@ package org.ethereum.net.eth.message;
 
 import org.ethereum.util.RLP;
 import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPWriter;
 import org.ethereum.util.Utils;
 
 import java.util.ArrayList;
@@ -60,13 +61,12 @@ public class GetReceiptsMessage extends EthMessage {
     }
 
     private void encode() {
-        List<byte[]> encodedElements = new ArrayList<>();
-
-        for (byte[] hash : blockHashes)
-            encodedElements.add(RLP.encodeElement(hash));
-        byte[][] encodedElementArray = encodedElements.toArray(new byte[encodedElements.size()][]);
-
-        this.encoded = RLP.encodeList(encodedElementArray);
+        this.encoded = RLPWriter.encode(w -> {
+            w.startList();
+            for (byte[] hash : blockHashes)
+                w.writeItem(hash);
+            w.endList();
+        });
     }
 
     @Override
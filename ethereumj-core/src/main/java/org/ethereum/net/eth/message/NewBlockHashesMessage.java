@@ -20,6 +20,7 @@ package org.ethereum.net.eth.message;
 import org.ethereum.core.BlockIdentifier;
 import org.ethereum.util.RLP;
 import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPWriter;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -61,11 +62,12 @@ public class NewBlockHashesMessage extends EthMessage {
     }
 
     private void encode() {
-        List<byte[]> encodedElements = new ArrayList<>();
-        for (BlockIdentifier identifier : blockIdentifiers)
-            encodedElements.add(identifier.getEncoded());
-        byte[][] encodedElementArray = encodedElements.toArray(new byte[encodedElements.size()][]);
-        this.encoded = RLP.encodeList(encodedElementArray);
+        this.encoded = RLPWriter.encode(w -> {
+            w.startList();
+            for (BlockIdentifier identifier : blockIdentifiers)
+                identifier.encode(w);
+            w.endList();
+        });
     }
 
 
@@ -20,6 +20,7 @@ package org.ethereum.net.eth.message;
 import org.ethereum.core.Block;
 import org.ethereum.util.RLP;
 import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPWriter;
 
 import java.math.BigInteger;
 
@@ -48,9 +49,10 @@ public class NewBlockMessage extends EthMessage {
 
     private void encode() {
         byte[] block = this.block.getEncoded();
-        byte[] diff = RLP.encodeElement(this.difficulty);
-
-        this.encoded = RLP.encodeList(block, diff);
+        this.encoded = RLPWriter.encode(w -> w.startList()
+                .writeEncoded(block)
+                .writeItem(this.difficulty)
+                .endList());
     }
 
     private synchronized void parse() {
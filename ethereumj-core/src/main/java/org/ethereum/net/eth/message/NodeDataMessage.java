@@ -19,6 +19,7 @@ package org.ethereum.net.eth.message;
 
 import org.ethereum.util.RLP;
 import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPWriter;
 import org.ethereum.util.Value;
 
 import java.util.ArrayList;
@@ -55,13 +56,14 @@ public class NodeDataMessage extends EthMessage {
     }
 
     private void encode() {
-        List<byte[]> dataListRLP = new ArrayList<>();
-        for (Value value: dataList) {
-            if (value == null) continue; // Bad sign
-            dataListRLP.add(RLP.encodeElement(value.asBytes()));
-        }
-        byte[][] encodedElementArray = dataListRLP.toArray(new byte[dataListRLP.size()][]);
-        this.encoded = RLP.encodeList(encodedElementArray);
+        this.encoded = RLPWriter.encode(w -> {
+            w.startList();
+            for (Value value: dataList) {
+                if (value == null) continue; // Bad sign
+                w.writeItem(value.asBytes());
+            }
+            w.endList();
+        });
     }
 
 
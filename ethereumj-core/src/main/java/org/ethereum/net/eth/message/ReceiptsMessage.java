@@ -24,6 +24,7 @@ import org.ethereum.util.RLP;
 import org.ethereum.util.RLPElement;
 import org.ethereum.util.RLPItem;
 import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPWriter;
 import org.ethereum.vm.LogInfo;
 
 import java.util.ArrayList;
@@ -71,22 +72,17 @@ public class ReceiptsMessage extends EthMessage {
     }
 
     private void encode() {
-        List<byte[]> blocks = new ArrayList<>();
-
-        for (List<TransactionReceipt> blockReceipts : receipts) {
-
-            List<byte[]> encodedBlockReceipts = new ArrayList<>();
-            for (TransactionReceipt txReceipt : blockReceipts) {
-                encodedBlockReceipts.add(txReceipt.getEncoded(true));
+        this.encoded = RLPWriter.encode(w -> {
+            w.startList();
+            for (List<TransactionReceipt> blockReceipts : receipts) {
+                w.startList();
+                for (TransactionReceipt txReceipt : blockReceipts) {
+                    txReceipt.encode(w, true);
+                }
+                w.endList();
             }
-            byte[][] encodedElementArray = encodedBlockReceipts.toArray(new byte[encodedBlockReceipts.size()][]);
-            byte[] blockReceiptsEncoded = RLP.encodeList(encodedElementArray);
-
-            blocks.add(blockReceiptsEncoded);
-        }
-
-        byte[][] encodedElementArray = blocks.toArray(new byte[blocks.size()][]);
-        this.encoded = RLP.encodeList(encodedElementArray);
+            w.endList();
+        });
     }
 
     @Override
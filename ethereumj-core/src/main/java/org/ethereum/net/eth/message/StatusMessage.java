@@ -20,6 +20,7 @@ package org.ethereum.net.eth.message;
 import org.ethereum.util.ByteUtil;
 import org.ethereum.util.RLP;
 import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPWriter;
 
 import java.math.BigInteger;
 
@@ -79,14 +80,13 @@ public class StatusMessage extends EthMessage {
     }
 
     protected void encode() {
-        byte[] protocolVersion = RLP.encodeByte(this.protocolVersion);
-        byte[] networkId = RLP.encodeInt(this.networkId);
-        byte[] totalDifficulty = RLP.encodeElement(this.totalDifficulty);
-        byte[] bestHash = RLP.encodeElement(this.bestHash);
-        byte[] genesisHash = RLP.encodeElement(this.genesisHash);
-
-        this.encoded = RLP.encodeList( protocolVersion, networkId,
-                totalDifficulty, bestHash, genesisHash);
+        this.encoded = RLPWriter.encode(w -> w.startList()
+                .writeInt(this.protocolVersion & 0xFF)
+                .writeInt(this.networkId)
+                .writeItem(this.totalDifficulty)
+                .writeItem(this.bestHash)
+                .writeItem(this.genesisHash)
+                .endList());
     }
 
     @Override
@@ -21,6 +21,7 @@ import org.ethereum.core.Transaction;
 import org.ethereum.util.RLP;
 import org.ethereum.util.RLPElement;
 import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPWriter;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -64,11 +65,12 @@ public class TransactionsMessage extends EthMessage {
     }
 
     private void encode() {
-        List<byte[]> encodedElements = new ArrayList<>();
-        for (Transaction tx : transactions)
-            encodedElements.add(tx.getEncoded());
-        byte[][] encodedElementArray = encodedElements.toArray(new byte[encodedElements.size()][]);
-        this.encoded = RLP.encodeList(encodedElementArray);
+        this.encoded = RLPWriter.encode(w -> {
+            w.startList();
+            for (Transaction tx : transactions)
+                w.writeEncoded(tx.getEncoded());
+            w.endList();
+        });
     }
 
     @Override
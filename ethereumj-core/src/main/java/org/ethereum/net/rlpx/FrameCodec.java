@@ -17,9 +17,12 @@
  */
 package org.ethereum.net.rlpx;
 
+import com.google.common.io.ByteStreams;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufInputStream;
-import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCounted;
+import org.ethereum.net.eth.message.BroadcastMessage;
 import org.ethereum.net.swarm.Util;
 import org.ethereum.util.RLP;
 import org.ethereum.util.RLPList;
@@ -32,7 +35,7 @@ import org.spongycastle.crypto.params.KeyParameter;
 import org.spongycastle.crypto.params.ParametersWithIV;
 
 import java.io.*;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -42,17 +45,31 @@ import static org.ethereum.util.RLP.decode2OneItem;
  * Created by devrandom on 2015-04-11.
  */
 public class FrameCodec {
+    private static final int HEADER_SIZE = 32;
+    private static final int MAC_SIZE = 16;
+    private static final int OFFSET_SHORT_ITEM = 0x80;
+    private static final int OFFSET_SHORT_LIST = 0xc0;
+
     private final StreamCipher enc;
     private final StreamCipher dec;
     private final KeccakDigest egressMac;
     private final KeccakDigest ingressMac;
     private final byte[] mac;
+    private final AESEngine egressMacCipher;
+    private final AESEngine ingressMacCipher;
     boolean isHeadRead;
     private int totalBodySize;
     private int contextId = -1;
     private int totalFrameSize = -1;
     private int protocol;
 
+    // scratch buffers, a codec is driven by a single channel thread
+    private final byte[] headBuffer = new byte[HEADER_SIZE];
+    private final byte[] egressMacBuffer = new byte[32];
+    private final byte[] egressMacBlock = new byte[32];
+    private final byte[] ingressMacBuffer = new byte[32];
+    private final byte[] ingressMacBlock = new byte[32];
+
     public FrameCodec(EncryptionHandshake.Secrets secrets) {
         this.mac = secrets.mac;
         BlockCipher cipher;
@@ -62,6 +79,8 @@ public class FrameCodec {
         dec.init(false, new ParametersWithIV(new KeyParameter(secrets.aes), new byte[cipher.getBlockSize()]));
         egressMac = secrets.egressMac;
         ingressMac = secrets.ingressMac;
+        egressMacCipher = makeMacCipher();
+        ingressMacCipher = makeMacCipher();
     }
 
     private AESEngine makeMacCipher() {
@@ -75,6 +94,7 @@ public class FrameCodec {
         long type;
         int size;
         InputStream payload;
+        ByteBuf payloadBuf;
 
         int totalFrameSize = -1;
         int contextId = -1;
@@ -85,10 +105,24 @@ public class FrameCodec {
             this.payload = payload;
         }
 
-        public Frame(int type, byte[] payload) {
+        /**
+         * Creates frame backed by a buffer, payload is taken from buffer readable bytes
+         * and is never copied unless buffer has no backing array
+         */
+        public Frame(long type, ByteBuf payload) {
+            if (!payload.hasArray()) {
+                byte[] bytes = new byte[payload.readableBytes()];
+                payload.getBytes(payload.readerIndex(), bytes);
+                payload = Unpooled.wrappedBuffer(bytes);
+            }
             this.type = type;
-            this.size = payload.length;
-            this.payload = new ByteArrayInputStream(payload);
+            this.size = payload.readableBytes();
+            this.payloadBuf = payload;
+            this.payload = new ByteBufInputStream(payload.duplicate());
+        }
+
+        public Frame(int type, byte[] payload) {
+            this(type, Unpooled.wrappedBuffer(payload));
         }
 
         public int getSize() {
@@ -100,143 +134,268 @@ public class FrameCodec {
         public InputStream getStream() {
             return payload;
         }
+
+        /**
+         * @return array backed payload buffer,
+         *         frames created from a stream get their payload read upon the first call
+         */
+        public ByteBuf getPayload() throws IOException {
+            if (payloadBuf == null) {
+                byte[] bytes = new byte[size];
+                ByteStreams.readFully(payload, bytes);
+                payloadBuf = Unpooled.wrappedBuffer(bytes);
+            }
+            return payloadBuf;
+        }
+
+        /**
+         * @return payload bytes, backing array is returned as is when it holds exactly the payload
+         */
+        public byte[] getPayloadBytes() throws IOException {
+            ByteBuf buf = getPayload();
+            if (buf.arrayOffset() == 0 && buf.readerIndex() == 0 && buf.array().length == size) {
+                return buf.array();
+            }
+            byte[] bytes = new byte[size];
+            buf.getBytes(buf.readerIndex(), bytes);
+            return bytes;
+        }
+
         public boolean isChunked() {
             return contextId >= 0;
         }
 
     }
 
-    public void writeFrame(Frame frame, ByteBuf buf) throws IOException {
-        writeFrame(frame, new ByteBufOutputStream(buf));
-    }
+    /**
+     * Frame which payload is shared with other channels, see {@link BroadcastMessage}.
+     * The frame holds its own reference to the message which is released
+     * by the pipeline handler consuming the frame
+     */
+    public static class SharedFrame extends Frame implements ReferenceCounted {
+        private final BroadcastMessage message;
+
+        private SharedFrame(int type, BroadcastMessage message, ByteBuf payload) {
+            super(type, payload);
+            this.message = message.retain();
+        }
 
-    public void writeFrame(Frame frame, OutputStream out) throws IOException {
-        byte[] headBuffer = new byte[32];
-        byte[] ptype = RLP.encodeInt((int) frame.type); // FIXME encodeLong
-        int totalSize = frame.size + ptype.length;
-        headBuffer[0] = (byte)(totalSize >> 16);
-        headBuffer[1] = (byte)(totalSize >> 8);
-        headBuffer[2] = (byte)(totalSize);
+        public static SharedFrame encoded(int type, BroadcastMessage message) {
+            return new SharedFrame(type, message, message.getEncodedBuf());
+        }
+
+        public static SharedFrame compressed(int type, BroadcastMessage message) throws IOException {
+            return new SharedFrame(type, message, message.getCompressedBuf());
+        }
+
+        public BroadcastMessage getMessage() {
+            return message;
+        }
 
-        List<byte[]> headerDataElems = new ArrayList<>();
-        headerDataElems.add(RLP.encodeInt(0));
-        if (frame.contextId >= 0) headerDataElems.add(RLP.encodeInt(frame.contextId));
-        if (frame.totalFrameSize >= 0) headerDataElems.add(RLP.encodeInt(frame.totalFrameSize));
+        @Override
+        public int refCnt() {
+            return message.refCnt();
+        }
 
-        byte[] headerData = RLP.encodeList(headerDataElems.toArray(new byte[0][]));
-        System.arraycopy(headerData, 0, headBuffer, 3, headerData.length);
+        @Override
+        public SharedFrame retain() {
+            message.retain();
+            return this;
+        }
 
-        enc.processBytes(headBuffer, 0, 16, headBuffer, 0);
+        @Override
+        public SharedFrame retain(int increment) {
+            message.retain(increment);
+            return this;
+        }
 
-        // Header MAC
-        updateMac(egressMac, headBuffer, 0, headBuffer, 16, true);
-
-        byte[] buff = new byte[256];
-        out.write(headBuffer);
-        enc.processBytes(ptype, 0, ptype.length, buff, 0);
-        out.write(buff, 0, ptype.length);
-        egressMac.update(buff, 0, ptype.length);
-        while (true) {
-            int n = frame.payload.read(buff);
-            if (n <= 0) break;
-            enc.processBytes(buff, 0, n, buff, 0);
-            egressMac.update(buff, 0, n);
-            out.write(buff, 0, n);
+        @Override
+        public boolean release() {
+            return message.release();
         }
+
+        @Override
+        public boolean release(int decrement) {
+            return message.release(decrement);
+        }
+    }
+
+    /**
+     * Writes the frame straight into the buffer:
+     * header and body are assembled in the buffer backing array and encrypted there in place
+     */
+    public void writeFrame(Frame frame, ByteBuf out) throws IOException {
+        if (!out.hasArray()) {
+            ByteBuf heap = Unpooled.buffer();
+            try {
+                writeFrame(frame, heap);
+                out.writeBytes(heap);
+            } finally {
+                heap.release();
+            }
+            return;
+        }
+
+        int ptype = (int) frame.type; // FIXME encodeLong
+        int totalSize = frame.size + rlpIntSize(ptype);
         int padding = 16 - (totalSize % 16);
-        byte[] pad = new byte[16];
-        if (padding < 16) {
-            enc.processBytes(pad, 0, padding, buff, 0);
-            egressMac.update(buff, 0, padding);
-            out.write(buff, 0, padding);
+        if (padding == 16) padding = 0;
+        int frameLength = HEADER_SIZE + totalSize + padding + MAC_SIZE;
+
+        out.ensureWritable(frameLength);
+        byte[] buf = out.array();
+        int start = out.arrayOffset() + out.writerIndex();
+
+        // Header, pooled buffers may carry garbage so padding has to be zeroed explicitly
+        Arrays.fill(buf, start, start + HEADER_SIZE, (byte) 0);
+        buf[start] = (byte)(totalSize >> 16);
+        buf[start + 1] = (byte)(totalSize >> 8);
+        buf[start + 2] = (byte)(totalSize);
+
+        int headerListSize = rlpIntSize(0);
+        if (frame.contextId >= 0) headerListSize += rlpIntSize(frame.contextId);
+        if (frame.totalFrameSize >= 0) headerListSize += rlpIntSize(frame.totalFrameSize);
+        int pos = start + 3;
+        buf[pos++] = (byte) (OFFSET_SHORT_LIST + headerListSize);
+        pos = writeRlpInt(buf, pos, 0);
+        if (frame.contextId >= 0) pos = writeRlpInt(buf, pos, frame.contextId);
+        if (frame.totalFrameSize >= 0) writeRlpInt(buf, pos, frame.totalFrameSize);
+
+        enc.processBytes(buf, start, 16, buf, start);
+
+        // Header MAC
+        updateMac(egressMac, egressMacCipher, buf, start, buf, start + 16, true);
+
+        // Body
+        int bodyStart = start + HEADER_SIZE;
+        pos = writeRlpInt(buf, bodyStart, ptype);
+        if (frame.payloadBuf != null) {
+            frame.payloadBuf.getBytes(frame.payloadBuf.readerIndex(), buf, pos, frame.size);
+        } else {
+            ByteStreams.readFully(frame.payload, buf, pos, frame.size);
         }
+        pos += frame.size;
+        Arrays.fill(buf, pos, pos + padding, (byte) 0);
+
+        int bodySize = totalSize + padding;
+        enc.processBytes(buf, bodyStart, bodySize, buf, bodyStart);
+        egressMac.update(buf, bodyStart, bodySize);
 
         // Frame MAC
-        byte[] macBuffer = new byte[egressMac.getDigestSize()];
-        doSum(egressMac, macBuffer); // fmacseed
-        updateMac(egressMac, macBuffer, 0, macBuffer, 0, true);
-        out.write(macBuffer, 0, 16);
+        doSum(egressMac, egressMacBuffer); // fmacseed
+        updateMac(egressMac, egressMacCipher, egressMacBuffer, 0, buf, bodyStart + bodySize, true);
+
+        out.writerIndex(out.writerIndex() + frameLength);
     }
 
+    public void writeFrame(Frame frame, OutputStream out) throws IOException {
+        ByteBuf buf = Unpooled.buffer();
+        try {
+            writeFrame(frame, buf);
+            buf.readBytes(out, buf.readableBytes());
+        } finally {
+            buf.release();
+        }
+    }
+
+    /**
+     * Reads a frame from the buffer, returns {@code null} without consuming
+     * the incomplete part if header or body is not available yet
+     */
     public List<Frame> readFrames(ByteBuf buf) throws IOException {
-        try (ByteBufInputStream bufInputStream = new ByteBufInputStream(buf)) {
-            return readFrames(bufInputStream);
+        if (!isHeadRead) {
+            if (buf.readableBytes() < HEADER_SIZE) return null;
+            buf.readBytes(headBuffer);
+            processHeader();
         }
+
+        if (buf.readableBytes() < bodyBufferSize()) return null;
+        byte[] buffer = new byte[bodyBufferSize()];
+        buf.readBytes(buffer);
+        return processBody(buffer);
     }
 
     public List<Frame> readFrames(DataInput inp) throws IOException {
         if (!isHeadRead) {
-            byte[] headBuffer = new byte[32];
             try {
                 inp.readFully(headBuffer);
             } catch (EOFException e) {
                 return null;
             }
-
-            // Header MAC
-            updateMac(ingressMac, headBuffer, 0, headBuffer, 16, false);
-
-            dec.processBytes(headBuffer, 0, 16, headBuffer, 0);
-            totalBodySize = headBuffer[0] & 0xFF;
-            totalBodySize = (totalBodySize << 8) + (headBuffer[1] & 0xFF);
-            totalBodySize = (totalBodySize << 8) + (headBuffer[2] & 0xFF);
-
-            RLPList rlpList = (RLPList) decode2OneItem(headBuffer, 3);
-
-            protocol = Util.rlpDecodeInt(rlpList.get(0));
-            contextId = -1;
-            totalFrameSize = -1;
-            if (rlpList.size() > 1) {
-                contextId = Util.rlpDecodeInt(rlpList.get(1));
-                if (rlpList.size() > 2) {
-                    totalFrameSize = Util.rlpDecodeInt(rlpList.get(2));
-                }
-            }
-
-            isHeadRead = true;
+            processHeader();
         }
 
-        int padding = 16 - (totalBodySize % 16);
-        if (padding == 16) padding = 0;
-        int macSize = 16;
-        byte[] buffer = new byte[totalBodySize + padding + macSize];
+        byte[] buffer = new byte[bodyBufferSize()];
         try {
             inp.readFully(buffer);
         } catch (EOFException e) {
             return null;
         }
-        int frameSize = buffer.length - macSize;
+        return processBody(buffer);
+    }
+
+    private void processHeader() throws IOException {
+        // Header MAC
+        updateMac(ingressMac, ingressMacCipher, headBuffer, 0, headBuffer, 16, false);
+
+        dec.processBytes(headBuffer, 0, 16, headBuffer, 0);
+        totalBodySize = headBuffer[0] & 0xFF;
+        totalBodySize = (totalBodySize << 8) + (headBuffer[1] & 0xFF);
+        totalBodySize = (totalBodySize << 8) + (headBuffer[2] & 0xFF);
+
+        RLPList rlpList = (RLPList) decode2OneItem(headBuffer, 3);
+
+        protocol = Util.rlpDecodeInt(rlpList.get(0));
+        contextId = -1;
+        totalFrameSize = -1;
+        if (rlpList.size() > 1) {
+            contextId = Util.rlpDecodeInt(rlpList.get(1));
+            if (rlpList.size() > 2) {
+                totalFrameSize = Util.rlpDecodeInt(rlpList.get(2));
+            }
+        }
+
+        isHeadRead = true;
+    }
+
+    private int bodyBufferSize() {
+        int padding = 16 - (totalBodySize % 16);
+        if (padding == 16) padding = 0;
+        return totalBodySize + padding + MAC_SIZE;
+    }
+
+    private List<Frame> processBody(byte[] buffer) throws IOException {
+        int frameSize = buffer.length - MAC_SIZE;
         ingressMac.update(buffer, 0, frameSize);
+
+        // Frame MAC
+        doSum(ingressMac, ingressMacBuffer); // fmacseed
+        updateMac(ingressMac, ingressMacCipher, ingressMacBuffer, 0, buffer, frameSize, false);
+
         dec.processBytes(buffer, 0, frameSize, buffer, 0);
         int pos = 0;
         long type = RLP.decodeLong(buffer, pos);
         pos = RLP.getNextElementIndex(buffer, pos);
-        InputStream payload = new ByteArrayInputStream(buffer, pos, totalBodySize - pos);
-        int size = totalBodySize - pos;
-        byte[] macBuffer = new byte[ingressMac.getDigestSize()];
-
-        // Frame MAC
-        doSum(ingressMac, macBuffer); // fmacseed
-        updateMac(ingressMac, macBuffer, 0, buffer, frameSize, false);
 
         isHeadRead = false;
-        Frame frame = new Frame(type, size, payload);
+        Frame frame = new Frame(type, Unpooled.wrappedBuffer(buffer, pos, totalBodySize - pos));
         frame.contextId = contextId;
         frame.totalFrameSize = totalFrameSize;
         return Collections.singletonList(frame);
     }
 
-    private byte[] updateMac(KeccakDigest mac, byte[] seed, int offset, byte[] out, int outOffset, boolean egress) throws IOException {
-        byte[] aesBlock = new byte[mac.getDigestSize()];
+    private void updateMac(KeccakDigest mac, AESEngine macCipher, byte[] seed, int offset,
+                           byte[] out, int outOffset, boolean egress) throws IOException {
+        byte[] aesBlock = egress ? egressMacBlock : ingressMacBlock;
         doSum(mac, aesBlock);
-        makeMacCipher().processBlock(aesBlock, 0, aesBlock, 0);
+        macCipher.processBlock(aesBlock, 0, aesBlock, 0);
         // Note that although the mac digest size is 32 bytes, we only use 16 bytes in the computation
         int length = 16;
         for (int i = 0; i < length; i++) {
             aesBlock[i] ^= seed[i + offset];
         }
         mac.update(aesBlock, 0, length);
-        byte[] result = new byte[mac.getDigestSize()];
+        byte[] result = aesBlock;
         doSum(mac, result);
         if (egress) {
             System.arraycopy(result, 0, out, outOffset, length);
@@ -247,7 +406,6 @@ public class FrameCodec {
                 }
             }
         }
-        return result;
     }
 
     private void doSum(KeccakDigest mac, byte[] out) {
@@ -255,4 +413,24 @@ public class FrameCodec {
         new KeccakDigest(mac).doFinal(out, 0);
     }
 
+    private static int rlpIntSize(int val) {
+        if (val > 0 && val < OFFSET_SHORT_ITEM) return 1;
+        return 1 + (32 - Integer.numberOfLeadingZeros(val) + 7) / 8;
+    }
+
+    /**
+     * Writes the same bytes as {@link RLP#encodeInt(int)} does
+     */
+    private static int writeRlpInt(byte[] buf, int pos, int val) {
+        int size = rlpIntSize(val);
+        if (size == 1) {
+            buf[pos] = val == 0 ? (byte) OFFSET_SHORT_ITEM : (byte) val;
+            return pos + 1;
+        }
+        buf[pos++] = (byte) (OFFSET_SHORT_ITEM + size - 1);
+        for (int i = size - 2; i >= 0; i--) {
+            buf[pos++] = (byte) (val >>> (i * 8));
+        }
+        return pos;
+    }
 }
@@ -40,6 +40,8 @@ public class FrameCodecHandler extends NettyByteToMessageCodec<FrameCodec.Frame>
     public Channel channel;
 
     public FrameCodecHandler(FrameCodec frameCodec, Channel channel) {
+        // frames are encrypted in place which requires array backed buffers
+        super(false);
         this.frameCodec = frameCodec;
         this.channel = channel;
     }
@@ -71,6 +73,10 @@ public class FrameCodecHandler extends NettyByteToMessageCodec<FrameCodec.Frame>
 
         frameCodec.writeFrame(frame, out);
 
+        if (frame instanceof FrameCodec.SharedFrame) {
+            ((FrameCodec.SharedFrame) frame).getMessage().onSent(frame.getSize());
+        }
+
         channel.getNodeStatistics().rlpxOutMessages.add();
     }
 
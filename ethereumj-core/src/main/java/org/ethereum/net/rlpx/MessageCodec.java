@@ -17,7 +17,8 @@
  */
 package org.ethereum.net.rlpx;
 
-import com.google.common.io.ByteStreams;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageCodec;
 import org.apache.commons.collections4.map.LRUMap;
@@ -26,6 +27,7 @@ import org.ethereum.config.SystemProperties;
 import org.ethereum.listener.EthereumListener;
 import org.ethereum.net.client.Capability;
 import org.ethereum.net.eth.EthVersion;
+import org.ethereum.net.eth.message.BroadcastMessage;
 import org.ethereum.net.eth.message.EthMessageCodes;
 import org.ethereum.net.message.Message;
 import org.ethereum.net.message.MessageFactory;
@@ -145,10 +147,18 @@ public class MessageCodec extends MessageToMessageCodec<Frame, Message> {
     private Message decodeMessage(ChannelHandlerContext ctx, List<Frame> frames) throws IOException {
         long frameType = frames.get(0).getType();
 
-        byte[] payload = new byte[frames.size() == 1 ? frames.get(0).getSize() : frames.get(0).totalFrameSize];
-        int pos = 0;
-        for (Frame frame : frames) {
-            pos += ByteStreams.read(frame.getStream(), payload, pos, frame.getSize());
+        byte[] payload;
+        if (frames.size() == 1) {
+            payload = frames.get(0).getPayloadBytes();
+        } else {
+            payload = new byte[frames.get(0).totalFrameSize];
+            int pos = 0;
+            for (Frame frame : frames) {
+                ByteBuf buf = frame.getPayload();
+                // throws if the chunks don't fit the total size
+                buf.getBytes(buf.readerIndex(), payload, pos, frame.getSize());
+                pos += frame.getSize();
+            }
         }
 
         if (loggerWire.isDebugEnabled())
@@ -185,9 +195,14 @@ public class MessageCodec extends MessageToMessageCodec<Frame, Message> {
         if (loggerWire.isDebugEnabled())
             loggerWire.debug("Send: Encoded: {} [{}]", getCode(msg.getCommand()), toHexString(encoded));
 
-        List<Frame> frames = splitMessageToFrames(msg);
+        if (msg instanceof BroadcastMessage && encoded.length <= maxFramePayloadSize) {
+            // payload is shared with other channels
+            out.add(FrameCodec.SharedFrame.encoded(getCode(msg.getCommand()), (BroadcastMessage) msg));
+        } else {
+            List<Frame> frames = splitMessageToFrames(msg);
 
-        out.addAll(frames);
+            out.addAll(frames);
+        }
 
         channel.getNodeStatistics().rlpxOutMessages.add();
     }
@@ -199,9 +214,8 @@ public class MessageCodec extends MessageToMessageCodec<Frame, Message> {
         int curPos = 0;
         while(curPos < bytes.length) {
             int newPos = min(curPos + maxFramePayloadSize, bytes.length);
-            byte[] frameBytes = curPos == 0 && newPos == bytes.length ? bytes :
-                    Arrays.copyOfRange(bytes, curPos, newPos);
-            ret.add(new Frame(code, frameBytes));
+            // chunks share the encoded message array
+            ret.add(new Frame(code, Unpooled.wrappedBuffer(bytes, curPos, newPos - curPos)));
             curPos = newPos;
         }
 
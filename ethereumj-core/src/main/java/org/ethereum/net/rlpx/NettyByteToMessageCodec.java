@@ -47,6 +47,14 @@ public abstract class NettyByteToMessageCodec<I> extends ByteToMessageCodec<I> {
         }
     };
 
+    protected NettyByteToMessageCodec() {
+        super();
+    }
+
+    protected NettyByteToMessageCodec(boolean preferDirect) {
+        super(preferDirect);
+    }
+
     @Override
     public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
         decoder.channelReadComplete(ctx);
@@ -17,6 +17,8 @@
  */
 package org.ethereum.net.rlpx;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageCodec;
 import org.ethereum.net.message.ReasonCode;
@@ -63,21 +65,27 @@ public class SnappyCodec extends MessageToMessageCodec<FrameCodec.Frame, FrameCo
             return;
         }
 
-        byte[] in = new byte[msg.size];
-        msg.payload.read(in);
+        if (msg instanceof FrameCodec.SharedFrame) {
+            // compressed once for all the channels
+            out.add(FrameCodec.SharedFrame.compressed((int) msg.type, ((FrameCodec.SharedFrame) msg).getMessage()));
+            return;
+        }
 
-        byte[] compressed = Snappy.rawCompress(in, in.length);
+        // compress straight from the frame buffer
+        ByteBuf in = msg.getPayload();
+        byte[] compressed = new byte[Snappy.maxCompressedLength(msg.size)];
+        int compressedLength = Snappy.compress(in.array(), in.arrayOffset() + in.readerIndex(), msg.size, compressed, 0);
 
-        out.add(new FrameCodec.Frame((int) msg.type, compressed));
+        out.add(new FrameCodec.Frame(msg.type, Unpooled.wrappedBuffer(compressed, 0, compressedLength)));
     }
 
     @Override
     protected void decode(ChannelHandlerContext ctx, FrameCodec.Frame msg, List<Object> out) throws Exception {
 
-        byte[] in = new byte[msg.size];
-        msg.payload.read(in);
+        ByteBuf in = msg.getPayload();
+        int offset = in.arrayOffset() + in.readerIndex();
 
-        long uncompressedLength = Snappy.uncompressedLength(in) & 0xFFFFFFFFL;
+        long uncompressedLength = Snappy.uncompressedLength(in.array(), offset, msg.size) & 0xFFFFFFFFL;
         if (uncompressedLength > MAX_SIZE) {
             logger.info("{}: uncompressed frame size exceeds the limit ({} bytes), drop the peer", channel, uncompressedLength);
             channel.disconnect(ReasonCode.BAD_PROTOCOL);
@@ -86,7 +94,7 @@ public class SnappyCodec extends MessageToMessageCodec<FrameCodec.Frame, FrameCo
 
         byte[] uncompressed = new byte[(int) uncompressedLength];
         try {
-            Snappy.rawUncompress(in, 0, in.length, uncompressed, 0);
+            Snappy.rawUncompress(in.array(), offset, msg.size, uncompressed, 0);
         } catch (IOException e) {
             String detailMessage = e.getMessage();
             // 5 - error code for framed snappy
@@ -33,6 +33,7 @@ import org.ethereum.net.eth.handler.EthAdapter;
 import org.ethereum.net.eth.handler.EthHandler;
 import org.ethereum.net.eth.handler.EthHandlerFactory;
 import org.ethereum.net.eth.EthVersion;
+import org.ethereum.net.eth.message.BroadcastMessage;
 import org.ethereum.net.eth.message.Eth62MessageFactory;
 import org.ethereum.net.eth.message.Eth63MessageFactory;
 import org.ethereum.net.message.ReasonCode;
@@ -188,7 +189,7 @@ public class Channel {
 
         final HelloMessage helloMessage = staticMessages.createHelloMessage(nodeId);
 
-        ByteBuf byteBufMsg = ctx.alloc().buffer();
+        ByteBuf byteBufMsg = ctx.alloc().heapBuffer();
         frameCodec.writeFrame(new FrameCodec.Frame(helloMessage.getCode(), helloMessage.getEncoded()), byteBufMsg);
         ctx.writeAndFlush(byteBufMsg).sync();
 
@@ -408,6 +409,14 @@ public class Channel {
         eth.sendNewBlockHashes(block);
     }
 
+    /**
+     * Sends message shared with other channels,
+     * the channel takes its own reference to the message
+     */
+    public void sendBroadcast(BroadcastMessage msg) {
+        eth.sendBroadcast(msg);
+    }
+
     public EthVersion getEthVersion() {
         return eth.getVersion();
     }
@@ -21,24 +21,33 @@ import org.apache.commons.collections4.map.LRUMap;
 import org.ethereum.config.NodeFilter;
 import org.ethereum.config.SystemProperties;
 import org.ethereum.core.Block;
+import org.ethereum.core.BlockIdentifier;
 import org.ethereum.core.BlockWrapper;
 import org.ethereum.core.PendingState;
 import org.ethereum.core.Transaction;
+import org.ethereum.db.BlockStore;
 import org.ethereum.db.ByteArrayWrapper;
 import org.ethereum.facade.Ethereum;
+import org.ethereum.net.eth.message.BroadcastMessage;
+import org.ethereum.net.eth.message.NewBlockHashesMessage;
+import org.ethereum.net.eth.message.NewBlockMessage;
+import org.ethereum.net.eth.message.TransactionsMessage;
 import org.ethereum.net.message.ReasonCode;
 import org.ethereum.net.rlpx.Node;
 import org.ethereum.sync.SyncManager;
 import org.ethereum.sync.SyncPool;
+import org.ethereum.util.ByteUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.math.BigInteger;
 import java.net.InetAddress;
 import java.util.*;
 import java.util.concurrent.*;
 
+import static java.util.Collections.singletonList;
 import static org.ethereum.net.message.ReasonCode.DUPLICATE_PEER;
 import static org.ethereum.net.message.ReasonCode.TOO_MANY_PEERS;
 
@@ -90,6 +99,12 @@ public class ChannelManager {
     @Autowired
     private PendingState pendingState;
 
+    @Autowired
+    private BlockStore blockStore;
+
+    @Autowired
+    private WireTrafficStats trafficStats;
+
     private SystemProperties config;
 
     private SyncManager syncManager;
@@ -252,10 +267,25 @@ public class ChannelManager {
      *                     the transactions were originated by this peer
      */
     public void sendTransaction(List<Transaction> txs, Channel receivedFrom) {
-        for (Channel channel : activePeers.values()) {
-            if (channel != receivedFrom) {
-                channel.sendTransactionsCapped(txs);
+        if (txs.size() > Channel.MAX_SAFE_TXS) {
+            // each peer gets its own random slice
+            for (Channel channel : activePeers.values()) {
+                if (channel != receivedFrom) {
+                    channel.sendTransactionsCapped(txs);
+                }
             }
+            return;
+        }
+
+        BroadcastMessage msg = new BroadcastMessage(new TransactionsMessage(txs), trafficStats.broadcast);
+        try {
+            for (Channel channel : activePeers.values()) {
+                if (channel != receivedFrom) {
+                    channel.sendBroadcast(msg);
+                }
+            }
+        } finally {
+            msg.release();
         }
     }
 
@@ -266,8 +296,13 @@ public class ChannelManager {
      * @param block  new Block to be sent
      */
     public void sendNewBlock(Block block) {
-        for (Channel channel : activePeers.values()) {
-            channel.sendNewBlock(block);
+        BroadcastMessage msg = newBlockMessage(block);
+        try {
+            for (Channel channel : activePeers.values()) {
+                channel.sendBroadcast(msg);
+            }
+        } finally {
+            msg.release();
         }
     }
 
@@ -334,16 +369,36 @@ public class ChannelManager {
      * @param receivedFrom the peer which sent original message
      */
     private void sendNewBlock(Block block, Channel receivedFrom) {
-        for (Channel channel : activePeers.values()) {
-            if (channel == receivedFrom) continue;
-            if (rnd.nextInt(10) < 3) {  // 30%
-                channel.sendNewBlock(block);
-            } else {                    // 70%
-                channel.sendNewBlockHashes(block);
+        BroadcastMessage blockMsg = null;
+        BroadcastMessage hashesMsg = null;
+        try {
+            for (Channel channel : activePeers.values()) {
+                if (channel == receivedFrom) continue;
+                if (rnd.nextInt(10) < 3) {  // 30%
+                    if (blockMsg == null) blockMsg = newBlockMessage(block);
+                    channel.sendBroadcast(blockMsg);
+                } else {                    // 70%
+                    if (hashesMsg == null) hashesMsg = newBlockHashesMessage(block);
+                    channel.sendBroadcast(hashesMsg);
+                }
             }
+        } finally {
+            if (blockMsg != null) blockMsg.release();
+            if (hashesMsg != null) hashesMsg.release();
         }
     }
 
+    private BroadcastMessage newBlockMessage(Block block) {
+        BigInteger parentTD = blockStore.getTotalDifficultyForHash(block.getParentHash());
+        byte[] td = ByteUtil.bigIntegerToBytes(parentTD.add(new BigInteger(1, block.getDifficulty())));
+        return new BroadcastMessage(new NewBlockMessage(block, td), trafficStats.broadcast);
+    }
+
+    private BroadcastMessage newBlockHashesMessage(Block block) {
+        BlockIdentifier identifier = new BlockIdentifier(block.getHash(), block.getNumber());
+        return new BroadcastMessage(new NewBlockHashesMessage(singletonList(identifier)), trafficStats.broadcast);
+    }
+
     public synchronized void add(Channel peer) {
         logger.debug("New peer in ChannelManager {}", peer);
         newPeers.add(peer);
@@ -17,6 +17,7 @@
  */
 package org.ethereum.net.server;
 
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.*;
 import io.netty.channel.socket.nio.NioSocketChannel;
 import org.ethereum.net.rlpx.discover.NodeManager;
@@ -76,6 +77,8 @@ public class EthereumChannelInitializer extends ChannelInitializer<NioSocketChan
 
             // limit the size of receiving buffer to 1024
             ch.config().setRecvByteBufAllocator(new FixedRecvByteBufAllocator(256 * 1024));
+            // frame buffers are reused instead of being allocated per message
+            ch.config().setAllocator(PooledByteBufAllocator.DEFAULT);
             ch.config().setOption(ChannelOption.SO_RCVBUF, 256 * 1024);
             ch.config().setOption(ChannelOption.SO_BACKLOG, 1024);
 
@@ -24,9 +24,11 @@ import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
 import io.netty.channel.socket.DatagramPacket;
+import org.ethereum.core.BlockchainImpl;
 import org.ethereum.util.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PreDestroy;
@@ -47,6 +49,10 @@ public class WireTrafficStats  implements Runnable  {
     private ScheduledExecutorService executor;
     public final TrafficStatHandler tcp = new TrafficStatHandler();
     public final TrafficStatHandler udp = new TrafficStatHandler();
+    public final BroadcastStats broadcast = new BroadcastStats();
+
+    @Autowired(required = false)
+    private BlockchainImpl blockchain;
 
     public WireTrafficStats() {
         executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("WireTrafficStats-%d").build());
@@ -57,6 +63,10 @@ public class WireTrafficStats  implements Runnable  {
     public void run() {
         logger.info("TCP: " + tcp.stats());
         logger.info("UDP: " + udp.stats());
+        logger.info("Broadcast: " + broadcast.stats());
+        if (blockchain != null) {
+            logger.info("Blocks serving: " + blockchain.getServingCache().stats());
+        }
     }
 
     @PreDestroy
@@ -64,6 +74,30 @@ public class WireTrafficStats  implements Runnable  {
         executor.shutdownNow();
     }
 
+    /**
+     * Tracks messages shared across channels: bytes encoded once versus bytes sent to all the peers
+     */
+    public static class BroadcastStats {
+        long encodedSizeTot;
+        long sentSizeTot;
+        AtomicLong encodedSize = new AtomicLong();
+        AtomicLong sentSize = new AtomicLong();
+
+        public void encoded(int size) {
+            encodedSize.addAndGet(size);
+        }
+
+        public void sent(int size) {
+            sentSize.addAndGet(size);
+        }
+
+        public String stats() {
+            encodedSizeTot += encodedSize.getAndSet(0);
+            sentSizeTot += sentSize.getAndSet(0);
+            return "encoded/sent total: " + sizeToStr(encodedSizeTot) + " / " + sizeToStr(sentSizeTot);
+        }
+    }
+
     @ChannelHandler.Sharable
     static class TrafficStatHandler extends ChannelDuplexHandler {
         long outSizeTot;
@@ -366,7 +366,10 @@ public class FastSyncManager {
 
     synchronized void processResponse(TrieNodeRequest req) {
         dbWriteQueue.add(req);
-        for (TrieNodeRequest childRequest : req.createChildRequests()) {
+        List<TrieNodeRequest> childRequests = req.createChildRequests();
+        Set<TrieNodeRequest> stored = storedNodes(childRequests);
+        for (TrieNodeRequest childRequest : childRequests) {
+            if (stored.contains(childRequest)) continue;
             if (nodesQueue.size() > NODE_QUEUE_BEST_SIZE) {
                 // reducing queue by traversing tree depth-first
                 nodesQueue.addFirst(childRequest);
@@ -377,6 +380,32 @@ public class FastSyncManager {
         }
     }
 
+    /**
+     * Checks child nodes existence with a single batch read. <br/>
+     * A node is stored only after it's been received during the current state sync
+     * and its children have been already queued, or along with the whole subtree like genesis state is,
+     * thus the subtree of the stored node doesn't need to be requested
+     */
+    private Set<TrieNodeRequest> storedNodes(List<TrieNodeRequest> requests) {
+        if (requests.isEmpty()) return Collections.emptySet();
+
+        Map<TrieNodeRequest, List<byte[]>> requestKeys = new HashMap<>();
+        List<byte[]> keys = new ArrayList<>();
+        for (TrieNodeRequest request : requests) {
+            List<byte[]> storageHashes = request.storageHashes();
+            requestKeys.put(request, storageHashes);
+            keys.addAll(storageHashes);
+        }
+        Map<byte[], byte[]> found = stateSource.getNoJournalSource().getAll(keys);
+        if (found.isEmpty()) return Collections.emptySet();
+
+        Set<TrieNodeRequest> ret = new HashSet<>();
+        for (Map.Entry<TrieNodeRequest, List<byte[]>> e : requestKeys.entrySet()) {
+            if (found.keySet().containsAll(e.getValue())) ret.add(e.getKey());
+        }
+        return ret;
+    }
+
     boolean requestNextNodes(int cnt) {
         final Channel idle = pool.getAnyIdle();
 
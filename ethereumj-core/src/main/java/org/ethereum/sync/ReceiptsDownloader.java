@@ -118,12 +118,7 @@ public class ReceiptsDownloader {
             if (receipts != null) {
                 Block block = blockStore.getBlockByHash(queuedBlock.hash);
                 if (validate(block, receipts)) {
-                    for (int i = 0; i < queuedBlock.receipts.size(); i++) {
-                        TransactionReceipt receipt = receipts.get(i);
-                        TransactionInfo txInfo = new TransactionInfo(receipt, block.getHash(), i);
-                        txInfo.setTransaction(block.getTransactionsList().get(i));
-                        txStore.put(txInfo);
-                    }
+                    txStore.put(block, receipts);
 
                     estimateBlockSize(receipts, block.getNumber());
 
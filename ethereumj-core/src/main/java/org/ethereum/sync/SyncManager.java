@@ -63,9 +63,7 @@ public class SyncManager extends BlockDownloader {
     // to unload the main block importing cycle
     private ExecutorPipeline<BlockWrapper,BlockWrapper> exec1 = new ExecutorPipeline<>
             (4, 1000, true, blockWrapper -> {
-                for (Transaction tx : blockWrapper.getBlock().getTransactionsList()) {
-                    tx.getSender();
-                }
+                Transaction.recoverBatch(blockWrapper.getBlock().getTransactionsList());
                 return blockWrapper;
             }, throwable -> logger.error("Unexpected exception: ", throwable));
 
@@ -17,12 +17,10 @@
  */
 package org.ethereum.trie;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.lang3.text.StrBuilder;
 import org.ethereum.crypto.HashUtil;
 import org.ethereum.datasource.Source;
 import org.ethereum.datasource.inmem.HashMapDB;
-import org.ethereum.datasource.inmem.HashMapDBSimple;
 import org.ethereum.net.swarm.Key;
 import org.ethereum.util.FastByteComparisons;
 import org.ethereum.util.RLP;
@@ -32,10 +30,11 @@ import org.slf4j.LoggerFactory;
 import org.spongycastle.util.encoders.Hex;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
 
-import static org.apache.commons.lang3.concurrent.ConcurrentUtils.constantFuture;
 import static org.ethereum.crypto.HashUtil.EMPTY_TRIE_HASH;
 import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
 import static org.ethereum.util.RLP.EMPTY_ELEMENT_RLP;
@@ -48,17 +47,39 @@ import static org.ethereum.util.ByteUtil.toHexString;
  */
 public class TrieImpl implements Trie<byte[]> {
     private final static Object NULL_NODE = new Object();
-    private final static int MIN_BRANCHES_CONCURRENTLY = 3;
-    private static ExecutorService executor;
+    // subtrees with at least this number of dirty nodes are encoded and hashed in separate tasks
+    private final static int MIN_DIRTY_NODES_CONCURRENTLY = 64;
+    private static ForkJoinPool hashPool;
 
     private static final Logger logger = LoggerFactory.getLogger("state");
 
-    public static ExecutorService getExecutor() {
-        if (executor == null) {
-            executor = Executors.newFixedThreadPool(4,
-                    new ThreadFactoryBuilder().setNameFormat("trie-calc-thread-%d").build());
+    public static synchronized ForkJoinPool getHashPool() {
+        if (hashPool == null) {
+            hashPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("trie-hash-thread-" + thread.getPoolIndex());
+                return thread;
+            }, null, false);
+        }
+        return hashPool;
+    }
+
+    /**
+     * Flushes the tries concurrently (see {@link #flush()}), large tries
+     * are additionally encoded and hashed in parallel
+     */
+    public static void flushAll(Collection<? extends Trie<?>> tries) {
+        if (tries.size() < 2) {
+            for (Trie<?> trie : tries) {
+                trie.flush();
+            }
+            return;
+        }
+        List<ForkJoinTask<Boolean>> tasks = new ArrayList<>(tries.size());
+        for (Trie<?> trie : tries) {
+            tasks.add(ForkJoinTask.adapt(trie::flush));
         }
-        return executor;
+        getHashPool().invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
     }
 
     public enum NodeType {
@@ -119,59 +140,47 @@ public class TrieImpl implements Trie<byte[]> {
         }
 
         public byte[] encode() {
-            return encode(1, true);
+            return encode(1, true, false);
         }
-        private byte[] encode(final int depth, boolean forceHash) {
+
+        /**
+         * @param parallel whether dirty subtrees large enough should be encoded in separate
+         *                 tasks, true only when called from within the {@link #getHashPool()}
+         */
+        private byte[] encode(final int depth, boolean forceHash, boolean parallel) {
             if (!dirty) {
                 return hash != null ? encodeElement(hash) : rlp;
             } else {
                 NodeType type = getType();
                 byte[] ret;
                 if (type == NodeType.BranchNode) {
-                    if (depth == 1 && async) {
-                        // parallelize encode() on the first trie level only and if there are at least
-                        // MIN_BRANCHES_CONCURRENTLY branches are modified
-                        final Object[] encoded = new Object[17];
-                        int encodeCnt = 0;
+                    byte[][] encoded = new byte[17][];
+                    ForkJoinTask<byte[]>[] tasks = null;
+                    if (parallel) {
                         for (int i = 0; i < 16; i++) {
                             final Node child = branchNodeGetChild(i);
-                            if (child == null) {
-                                encoded[i] = EMPTY_ELEMENT_RLP;
-                            } else if (!child.dirty) {
-                                encoded[i] = child.encode(depth + 1, false);
-                            } else {
-                                encodeCnt++;
+                            if (child != null && child.dirtyCount(MIN_DIRTY_NODES_CONCURRENTLY) >= MIN_DIRTY_NODES_CONCURRENTLY) {
+                                if (tasks == null) tasks = new ForkJoinTask[16];
+                                tasks[i] = ForkJoinTask.adapt(() -> child.encode(depth + 1, false, true)).fork();
                             }
                         }
-                        for (int i = 0; i < 16; i++) {
-                            if (encoded[i] == null) {
-                                final Node child = branchNodeGetChild(i);
-                                if (encodeCnt >= MIN_BRANCHES_CONCURRENTLY) {
-                                    encoded[i] = getExecutor().submit(() -> child.encode(depth + 1, false));
-                                } else {
-                                    encoded[i] = child.encode(depth + 1, false);
-                                }
-                            }
-                        }
-                        byte[] value = branchNodeGetValue();
-                        encoded[16] = constantFuture(encodeElement(value));
-                        try {
-                            ret = encodeRlpListFutures(encoded);
-                        } catch (Exception e) {
-                            throw new RuntimeException(e);
-                        }
-                    } else {
-                        byte[][] encoded = new byte[17][];
-                        for (int i = 0; i < 16; i++) {
-                            Node child = branchNodeGetChild(i);
-                            encoded[i] = child == null ? EMPTY_ELEMENT_RLP : child.encode(depth + 1, false);
+                    }
+                    for (int i = 0; i < 16; i++) {
+                        if (tasks != null && tasks[i] != null) continue;
+                        Node child = branchNodeGetChild(i);
+                        encoded[i] = child == null ? EMPTY_ELEMENT_RLP : child.encode(depth + 1, false, false);
+                    }
+                    if (tasks != null) {
+                        for (int i = 15; i >= 0; i--) {
+                            if (tasks[i] != null) encoded[i] = tasks[i].join();
                         }
-                        byte[] value = branchNodeGetValue();
-                        encoded[16] = encodeElement(value);
-                        ret = encodeList(encoded);
                     }
+                    byte[] value = branchNodeGetValue();
+                    encoded[16] = encodeElement(value);
+                    ret = encodeList(encoded);
                 } else if (type == NodeType.KVNodeNode) {
-                    ret = encodeList(encodeElement(kvNodeGetKey().toPacked()), kvNodeGetChildNode().encode(depth + 1, false));
+                    ret = encodeList(encodeElement(kvNodeGetKey().toPacked()),
+                            kvNodeGetChildNode().encode(depth + 1, false, parallel));
                 } else {
                     byte[] value = kvNodeGetValue();
                     ret = encodeList(encodeElement(kvNodeGetKey().toPacked()),
@@ -192,17 +201,20 @@ public class TrieImpl implements Trie<byte[]> {
             }
         }
 
-        @SafeVarargs
-        private final byte[] encodeRlpListFutures(Object... list) throws ExecutionException, InterruptedException {
-            byte[][] vals = new byte[list.length][];
-            for (int i = 0; i < list.length; i++) {
-                if (list[i] instanceof Future) {
-                    vals[i] = ((Future<byte[]>) list[i]).get();
-                } else {
-                    vals[i] = (byte[]) list[i];
+        /**
+         * Counts dirty nodes of this subtree (dirty nodes may have only dirty parents),
+         * stops counting when the limit is reached
+         */
+        private int dirtyCount(int limit) {
+            if (!dirty) return 0;
+            int ret = 1;
+            if (children != null) {
+                for (Object child : children) {
+                    if (ret >= limit) break;
+                    if (child instanceof Node) ret += ((Node) child).dirtyCount(limit - ret);
                 }
             }
-            return encodeList(vals);
+            return ret;
         }
 
         private void parse() {
@@ -246,6 +258,27 @@ public class TrieImpl implements Trie<byte[]> {
             return n == NULL_NODE ? null : (Node) n;
         }
 
+        /**
+         * Loads the children which are not resolved yet with a single batch read
+         */
+        private void branchNodePrefetchChildren() {
+            List<Node> unresolved = new ArrayList<>();
+            List<byte[]> hashes = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                Node child = branchNodeGetChild(i);
+                if (child != null && child.rlp == null && child.parsedRlp == null && child.hash != null) {
+                    unresolved.add(child);
+                    hashes.add(child.hash);
+                }
+            }
+            if (unresolved.size() < 2) return;
+
+            Map<byte[], byte[]> rlps = cache.getAll(hashes);
+            for (Node child : unresolved) {
+                child.rlp = rlps.get(child.hash);
+            }
+        }
+
         public Node branchNodeSetChild(int hex, Node node) {
             parse();
             assert getType() == NodeType.BranchNode;
@@ -461,7 +494,17 @@ public class TrieImpl implements Trie<byte[]> {
 
     private void encode() {
         if (root != null) {
-            root.encode();
+            final Node node = root;
+            if (async && node.dirtyCount(MIN_DIRTY_NODES_CONCURRENTLY) >= MIN_DIRTY_NODES_CONCURRENTLY) {
+                if (ForkJoinTask.getPool() == getHashPool()) {
+                    // already within a hashing task
+                    node.encode(1, true, true);
+                } else {
+                    getHashPool().invoke(ForkJoinTask.adapt(() -> node.encode(1, true, true)));
+                }
+            } else {
+                node.encode();
+            }
         }
     }
 
@@ -714,6 +757,7 @@ public class TrieImpl implements Trie<byte[]> {
         if (node.getType() == NodeType.BranchNode) {
             if (node.branchNodeGetValue() != null)
                 scanAction.doOnValue(node.hash, node, k.toNormal(), node.branchNodeGetValue());
+            node.branchNodePrefetchChildren();
             for (int i = 0; i < 16; i++) {
                 scanTree(node.branchNodeGetChild(i), k.concat(TrieKey.singleHex(i)), scanAction);
             }
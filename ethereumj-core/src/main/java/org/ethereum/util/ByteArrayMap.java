@@ -65,6 +65,11 @@ public class ByteArrayMap<V> implements Map<byte[], V> {
         return delegate.put(new ByteArrayWrapper(key), value);
     }
 
+    @Override
+    public V putIfAbsent(byte[] key, V value) {
+        return delegate.putIfAbsent(new ByteArrayWrapper(key), value);
+    }
+
     @Override
     public V remove(Object key) {
         return delegate.remove(new ByteArrayWrapper((byte[]) key));
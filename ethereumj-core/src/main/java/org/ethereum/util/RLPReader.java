@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.util;
+
+import io.netty.buffer.ByteBuf;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+
+import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
+
+/**
+ * Forward only RLP reader which works on top of the encoded data without building
+ * {@link RLPList}/{@link RLPItem} tree and without copying elements unless
+ * they are explicitly requested as arrays.
+ *
+ * The reader walks the elements of a single RLP sequence (normally the payload of a list),
+ * nested lists are read with child readers sharing the same underlying array.
+ * Element payload and encoding positions are available via {@link #payloadOffset()},
+ * {@link #payloadLength()}, {@link #encodedOffset()}, {@link #encodedLength()}
+ * so they may be hashed or compared in place.
+ *
+ * The same encoding constraints as in {@link RLP#decode2(byte[])} are validated
+ */
+public final class RLPReader {
+
+    private static final int SIZE_THRESHOLD = 56;
+    private static final int OFFSET_SHORT_ITEM = 0x80;
+    private static final int OFFSET_LONG_ITEM = 0xb7;
+    private static final int OFFSET_SHORT_LIST = 0xc0;
+    private static final int OFFSET_LONG_LIST = 0xf7;
+
+    private final byte[] data;
+    private final int end;
+    private int pos;
+
+    // header of the element at pos, valid when headerPos == pos
+    private int headerPos = -1;
+    private int headerLength;
+    private int payloadLength;
+    private boolean list;
+
+    /**
+     * Creates reader over the whole array
+     */
+    public RLPReader(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    /**
+     * Creates reader over the sequence of RLP elements located in the specified array range
+     */
+    public RLPReader(byte[] data, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + (offset + length) +
+                    ") is out of array bounds: " + data.length);
+        }
+        this.data = data;
+        this.pos = offset;
+        this.end = offset + length;
+    }
+
+    /**
+     * Creates reader over readable bytes of the buffer, the buffer backing array is used
+     * when available, otherwise readable bytes are copied once.
+     * The buffer reader index is not changed
+     */
+    public static RLPReader of(ByteBuf buf) {
+        if (buf.hasArray()) {
+            return new RLPReader(buf.array(), buf.arrayOffset() + buf.readerIndex(), buf.readableBytes());
+        } else {
+            byte[] bytes = new byte[buf.readableBytes()];
+            buf.getBytes(buf.readerIndex(), bytes);
+            return new RLPReader(bytes);
+        }
+    }
+
+    /**
+     * Shortcut for reading the encoded list, an analogue of
+     * {@code (RLPList) RLP.decode2(encoded).get(0)}
+     */
+    public static RLPReader readList(byte[] encoded) {
+        return new RLPReader(encoded).readList();
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public boolean hasNext() {
+        return pos < end;
+    }
+
+    /**
+     * @return true if the next element is a list
+     */
+    public boolean isList() {
+        parseHeader();
+        return list;
+    }
+
+    /**
+     * @return offset of the next element encoding (including its prefix) in the {@link #getData()} array
+     */
+    public int encodedOffset() {
+        parseHeader();
+        return pos;
+    }
+
+    public int encodedLength() {
+        parseHeader();
+        return headerLength + payloadLength;
+    }
+
+    /**
+     * @return offset of the next element payload (i.e. item bytes or encoded list elements)
+     * in the {@link #getData()} array
+     */
+    public int payloadOffset() {
+        parseHeader();
+        return pos + headerLength;
+    }
+
+    public int payloadLength() {
+        parseHeader();
+        return payloadLength;
+    }
+
+    /**
+     * Returns reader over the elements of the next list and moves to the following element
+     */
+    public RLPReader readList() {
+        parseHeader();
+        if (!list) throw new RuntimeException("RLP list expected at " + pos);
+        RLPReader ret = new RLPReader(data, pos + headerLength, payloadLength);
+        skip();
+        return ret;
+    }
+
+    /**
+     * Copies the next item bytes and moves to the following element
+     * @return item bytes or null if the item is empty,
+     *         the same way as {@link RLPItem#getRLPData()} does
+     */
+    public byte[] readItem() {
+        parseHeader();
+        if (list) throw new RuntimeException("RLP item expected at " + pos);
+        byte[] ret = payloadLength == 0 ? null : copyPayload();
+        skip();
+        return ret;
+    }
+
+    /**
+     * The same as {@link #readItem()} but returns empty array for empty item
+     */
+    public byte[] readItemOrEmpty() {
+        byte[] ret = readItem();
+        return ret == null ? EMPTY_BYTE_ARRAY : ret;
+    }
+
+    /**
+     * Decodes the next item as unsigned long without copying.
+     * Just as {@link ByteUtil#byteArrayToLong(byte[])} returns lowest 64 bits of longer values
+     */
+    public long readLong() {
+        parseHeader();
+        if (list) throw new RuntimeException("RLP item expected at " + pos);
+        long ret = 0;
+        for (int i = pos + headerLength; i < pos + headerLength + payloadLength; i++) {
+            ret = (ret << 8) | (data[i] & 0xFF);
+        }
+        skip();
+        return ret;
+    }
+
+    public BigInteger readBigInteger() {
+        byte[] bytes = readItem();
+        return bytes == null ? BigInteger.ZERO : new BigInteger(1, bytes);
+    }
+
+    /**
+     * Copies the next element encoding (including the prefix) and moves to the following element,
+     * the same as {@link RLPElement#getRLPData()} does for lists
+     */
+    public byte[] readEncoded() {
+        parseHeader();
+        byte[] ret = new byte[headerLength + payloadLength];
+        System.arraycopy(data, pos, ret, 0, ret.length);
+        skip();
+        return ret;
+    }
+
+    /**
+     * Moves to the next element
+     */
+    public void skip() {
+        parseHeader();
+        pos += headerLength + payloadLength;
+    }
+
+    /**
+     * Counts remaining elements without moving the reader
+     */
+    public int count() {
+        int savedPos = pos;
+        int cnt = 0;
+        while (hasNext()) {
+            skip();
+            cnt++;
+        }
+        pos = savedPos;
+        headerPos = -1;
+        return cnt;
+    }
+
+    private byte[] copyPayload() {
+        byte[] ret = new byte[payloadLength];
+        System.arraycopy(data, pos + headerLength, ret, 0, payloadLength);
+        return ret;
+    }
+
+    private void parseHeader() {
+        if (headerPos == pos) return;
+        if (pos >= end) throw new RuntimeException("No more RLP elements");
+
+        int prefix = data[pos] & 0xFF;
+        if (prefix < OFFSET_SHORT_ITEM) {
+            // single byte item
+            headerLength = 0;
+            payloadLength = 1;
+            list = false;
+        } else if (prefix <= OFFSET_LONG_ITEM) {
+            headerLength = 1;
+            payloadLength = prefix - OFFSET_SHORT_ITEM;
+            list = false;
+            verifyLength();
+            if (payloadLength == 1 && (data[pos + 1] & 0xFF) < OFFSET_SHORT_ITEM) {
+                throw new RuntimeException("Single byte has been encoded as byte string");
+            }
+        } else if (prefix < OFFSET_SHORT_LIST) {
+            headerLength = 1 + prefix - OFFSET_LONG_ITEM;
+            payloadLength = readLength(prefix - OFFSET_LONG_ITEM);
+            list = false;
+            if (payloadLength < SIZE_THRESHOLD) {
+                throw new RuntimeException("Short item has been encoded as long item");
+            }
+            verifyLength();
+        } else if (prefix <= OFFSET_LONG_LIST) {
+            headerLength = 1;
+            payloadLength = prefix - OFFSET_SHORT_LIST;
+            list = true;
+            verifyLength();
+        } else {
+            headerLength = 1 + prefix - OFFSET_LONG_LIST;
+            payloadLength = readLength(prefix - OFFSET_LONG_LIST);
+            list = true;
+            if (payloadLength < SIZE_THRESHOLD) {
+                throw new RuntimeException("Short list has been encoded as long list");
+            }
+            verifyLength();
+        }
+        headerPos = pos;
+    }
+
+    private int readLength(int lengthOfLength) {
+        if (pos + 1 + lengthOfLength > end) {
+            throw new RuntimeException("RLP length is out of data bounds at " + pos);
+        }
+        // no leading zeros are acceptable
+        if ((data[pos + 1] & 0xFF) == 0) {
+            throw new RuntimeException("RLP length contains leading zeros");
+        }
+        if (lengthOfLength > 4) {
+            throw new RuntimeException("RLP length is too big at " + pos);
+        }
+        long length = 0;
+        for (int i = 0; i < lengthOfLength; i++) {
+            length = (length << 8) | (data[pos + 1 + i] & 0xFF);
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new RuntimeException("RLP length is too big: " + length);
+        }
+        return (int) length;
+    }
+
+    private void verifyLength() {
+        if ((long) pos + headerLength + payloadLength > end) {
+            throw new RuntimeException(String.format("Length parsed from RLP (%s bytes) is greater " +
+                    "than possible size of data (%s bytes): %s", payloadLength, end - pos - headerLength,
+                    Hex.toHexString(data, pos, Math.min(end - pos, 64))));
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.util;
+
+import io.netty.buffer.ByteBuf;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * RLP writer which serializes the whole structure into a single pre-sized array
+ * without building intermediate encoded elements.
+ *
+ * The encoding is done in two passes over the same encoder function: the first one only
+ * calculates item sizes and payload lengths of all the lists, the second one writes
+ * the output. Thus the encoder passed to {@link #encode(Consumer)} should write exactly
+ * the same sequence of elements on each invocation and should avoid heavy computations
+ * (e.g. pre-calculate the values it needs outside of the function).
+ *
+ * Items are encoded the same way as by {@link RLP#encodeElement(byte[])},
+ * {@link RLP#encodeBigInteger(BigInteger)} and {@link RLP#encodeInt(int)}
+ */
+public final class RLPWriter {
+
+    private static final int SIZE_THRESHOLD = 56;
+    private static final int OFFSET_SHORT_ITEM = 0x80;
+    private static final int OFFSET_LONG_ITEM = 0xb7;
+    private static final int OFFSET_SHORT_LIST = 0xc0;
+    private static final int OFFSET_LONG_LIST = 0xf7;
+
+    private final boolean sizing;
+
+    // payload lengths of the lists in the order of their starts
+    private int[] listLengths;
+    private int listCount;
+
+    // sizing pass: positions of not yet ended lists
+    private int[] openLists = new int[8];
+    private int depth;
+
+    // writing pass
+    private final byte[] out;
+    private int listIdx;
+
+    private int pos;
+
+    private RLPWriter() {
+        this.sizing = true;
+        this.listLengths = new int[16];
+        this.out = null;
+    }
+
+    private RLPWriter(RLPWriter sizes, byte[] out, int offset) {
+        this.sizing = false;
+        this.listLengths = sizes.listLengths;
+        this.listCount = sizes.listCount;
+        this.out = out;
+        this.pos = offset;
+    }
+
+    /**
+     * Encodes the elements written by the encoder into a new array of exactly the encoded size
+     */
+    public static byte[] encode(Consumer<RLPWriter> encoder) {
+        RLPWriter sizes = measure(encoder);
+        byte[] ret = new byte[sizes.pos];
+        sizes.writeTo(encoder, ret, 0);
+        return ret;
+    }
+
+    /**
+     * Appends the elements written by the encoder to the buffer,
+     * the buffer backing array is written directly when available
+     */
+    public static void encode(Consumer<RLPWriter> encoder, ByteBuf out) {
+        RLPWriter sizes = measure(encoder);
+        int size = sizes.pos;
+        out.ensureWritable(size);
+        if (out.hasArray()) {
+            sizes.writeTo(encoder, out.array(), out.arrayOffset() + out.writerIndex());
+            out.writerIndex(out.writerIndex() + size);
+        } else {
+            byte[] bytes = new byte[size];
+            sizes.writeTo(encoder, bytes, 0);
+            out.writeBytes(bytes);
+        }
+    }
+
+    /**
+     * @return the size of encoding produced by the encoder
+     */
+    public static int sizeOf(Consumer<RLPWriter> encoder) {
+        return measure(encoder).pos;
+    }
+
+    private static RLPWriter measure(Consumer<RLPWriter> encoder) {
+        RLPWriter sizes = new RLPWriter();
+        encoder.accept(sizes);
+        if (sizes.depth != 0) {
+            throw new IllegalStateException("Not all the lists are ended: " + sizes.depth);
+        }
+        return sizes;
+    }
+
+    private void writeTo(Consumer<RLPWriter> encoder, byte[] out, int offset) {
+        RLPWriter writer = new RLPWriter(this, out, offset);
+        encoder.accept(writer);
+        if (writer.listIdx != listCount || writer.pos != offset + pos) {
+            throw new IllegalStateException("Encoder has written different data on the second pass");
+        }
+    }
+
+    /**
+     * Starts a list, all the elements written until the matching {@link #endList()}
+     * are the list elements
+     */
+    public RLPWriter startList() {
+        if (sizing) {
+            if (listCount == listLengths.length) {
+                listLengths = Arrays.copyOf(listLengths, listCount * 2);
+            }
+            if (depth == openLists.length) {
+                openLists = Arrays.copyOf(openLists, depth * 2);
+            }
+            // remember the list index and the payload start
+            openLists[depth++] = listCount;
+            listLengths[listCount++] = pos;
+        } else {
+            if (listIdx >= listCount) {
+                throw new IllegalStateException("Encoder has written different data on the second pass");
+            }
+            writeHeader(listLengths[listIdx++], OFFSET_SHORT_LIST, OFFSET_LONG_LIST);
+        }
+        return this;
+    }
+
+    public RLPWriter endList() {
+        if (sizing) {
+            if (depth == 0) {
+                throw new IllegalStateException("No list to end");
+            }
+            int idx = openLists[--depth];
+            int length = pos - listLengths[idx];
+            listLengths[idx] = length;
+            pos += headerSize(length);
+        }
+        return this;
+    }
+
+    /**
+     * Shortcut for writing the list of already encoded elements
+     */
+    public RLPWriter writeList(byte[]... encodedElements) {
+        startList();
+        for (byte[] element : encodedElements) {
+            writeEncoded(element);
+        }
+        return endList();
+    }
+
+    /**
+     * Writes byte array item, null is written as an empty item
+     */
+    public RLPWriter writeItem(byte[] data) {
+        return data == null ? writeItem(data, 0, 0) : writeItem(data, 0, data.length);
+    }
+
+    public RLPWriter writeItem(byte[] data, int offset, int length) {
+        if (length == 1 && (data[offset] & 0xFF) < OFFSET_SHORT_ITEM) {
+            if (!sizing) {
+                out[pos] = data[offset];
+            }
+            pos++;
+        } else {
+            writeHeader(length, OFFSET_SHORT_ITEM, OFFSET_LONG_ITEM);
+            if (!sizing && length > 0) {
+                System.arraycopy(data, offset, out, pos, length);
+            }
+            pos += length;
+        }
+        return this;
+    }
+
+    /**
+     * Writes the value as an unsigned integer, i.e. negative values take 4 bytes
+     * like in {@link RLP#encodeInt(int)}
+     */
+    public RLPWriter writeInt(int value) {
+        return writeLong(value & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Writes non negative integer with leading zeroes stripped, zero is written as an empty item
+     */
+    public RLPWriter writeLong(long value) {
+        if (value < 0) throw new IllegalArgumentException("negative numbers are not allowed");
+
+        if (value > 0 && value < OFFSET_SHORT_ITEM) {
+            if (!sizing) {
+                out[pos] = (byte) value;
+            }
+            pos++;
+        } else {
+            int length = (64 - Long.numberOfLeadingZeros(value) + 7) >> 3;
+            writeHeader(length, OFFSET_SHORT_ITEM, OFFSET_LONG_ITEM);
+            if (!sizing) {
+                for (int i = length - 1; i >= 0; i--) {
+                    out[pos + i] = (byte) value;
+                    value >>>= 8;
+                }
+            }
+            pos += length;
+        }
+        return this;
+    }
+
+    /**
+     * Writes non negative integer with leading zeroes stripped, zero is written as an empty item
+     */
+    public RLPWriter writeBigInteger(BigInteger value) {
+        if (value.signum() < 0) throw new IllegalArgumentException("negative numbers are not allowed");
+
+        if (value.bitLength() < 64) {
+            return writeLong(value.longValue());
+        }
+
+        int length = (value.bitLength() + 7) >> 3;
+        writeHeader(length, OFFSET_SHORT_ITEM, OFFSET_LONG_ITEM);
+        if (!sizing) {
+            byte[] bytes = value.toByteArray();
+            System.arraycopy(bytes, bytes.length - length, out, pos, length);
+        }
+        pos += length;
+        return this;
+    }
+
+    /**
+     * Writes already RLP encoded element as is
+     */
+    public RLPWriter writeEncoded(byte[] encoded) {
+        return writeEncoded(encoded, 0, encoded.length);
+    }
+
+    public RLPWriter writeEncoded(byte[] encoded, int offset, int length) {
+        if (!sizing) {
+            System.arraycopy(encoded, offset, out, pos, length);
+        }
+        pos += length;
+        return this;
+    }
+
+    private static int headerSize(int length) {
+        return length < SIZE_THRESHOLD ? 1 : 1 + lengthOfLength(length);
+    }
+
+    private static int lengthOfLength(int length) {
+        return (32 - Integer.numberOfLeadingZeros(length) + 7) >> 3;
+    }
+
+    private void writeHeader(int length, int shortOffset, int longOffset) {
+        if (length < SIZE_THRESHOLD) {
+            if (!sizing) {
+                out[pos] = (byte) (shortOffset + length);
+            }
+            pos++;
+        } else {
+            int lengthOfLength = lengthOfLength(length);
+            if (!sizing) {
+                out[pos] = (byte) (longOffset + lengthOfLength);
+                for (int i = lengthOfLength; i > 0; i--) {
+                    out[pos + i] = (byte) length;
+                    length >>>= 8;
+                }
+            }
+            pos += 1 + lengthOfLength;
+        }
+    }
+}
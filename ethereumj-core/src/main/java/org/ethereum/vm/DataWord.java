@@ -92,6 +92,14 @@ public final class DataWord implements Comparable<DataWord> {
         }
     }
 
+    /**
+     * Creates a word from the 32 bytes of the array starting at the specified offset.
+     * The bytes are copied
+     */
+    public static DataWord of(byte[] data, int offset) {
+        return new DataWord(Arrays.copyOfRange(data, offset, offset + 32));
+    }
+
     public static DataWord of(ByteArrayWrapper wrappedData) {
         return of(wrappedData.getData());
     }
@@ -255,10 +263,11 @@ public final class DataWord implements Comparable<DataWord> {
     }
 
     public DataWord bnot() {
-        if (this.isZero()) {
-            return new DataWord(ByteUtil.copyToArray(MAX_VALUE));
+        byte[] newData = this.copyData();
+        for (int i = 0; i < newData.length; ++i) {
+            newData[i] = (byte) ~newData[i];
         }
-        return new DataWord(ByteUtil.copyToArray(MAX_VALUE.subtract(this.value())));
+        return new DataWord(newData);
     }
 
     // By   : Holger
@@ -279,57 +288,63 @@ public final class DataWord implements Comparable<DataWord> {
         return new DataWord(ByteUtil.copyToArray(result.and(MAX_VALUE)));
     }
 
-    // TODO: mul can be done in more efficient way
-    // TODO:     with shift left shift right trick
-    // TODO      without BigInteger quick hack
     public DataWord mul(DataWord word) {
-        BigInteger result = value().multiply(word.value());
-        return new DataWord(ByteUtil.copyToArray(result.and(MAX_VALUE)));
+        if (this.isZero() || word.isZero()) {
+            return ZERO;
+        }
+
+        long[] result = UInt256Math.mul(limbs(), word.limbs());
+        return new DataWord(UInt256Math.toBytes(result));
     }
 
-    // TODO: improve with no BigInteger
     public DataWord div(DataWord word) {
 
         if (word.isZero()) {
             return ZERO;
         }
 
-        BigInteger result = value().divide(word.value());
-        return new DataWord(ByteUtil.copyToArray(result.and(MAX_VALUE)));
+        long[] result = UInt256Math.divide(limbs(), word.limbs());
+        return new DataWord(UInt256Math.toBytes(result));
     }
 
-    // TODO: improve with no BigInteger
     public DataWord sDiv(DataWord word) {
 
         if (word.isZero()) {
             return ZERO;
         }
 
-        BigInteger result = sValue().divide(word.sValue());
-        return new DataWord(ByteUtil.copyToArray(result.and(MAX_VALUE)));
+        long[] dividend = limbs();
+        long[] divisor = word.limbs();
+        boolean negDividend = UInt256Math.isNegative(dividend);
+        boolean negDivisor = UInt256Math.isNegative(divisor);
+
+        long[] result = UInt256Math.divide(
+                negDividend ? UInt256Math.negate(dividend) : dividend,
+                negDivisor ? UInt256Math.negate(divisor) : divisor);
+        if (negDividend != negDivisor) {
+            result = UInt256Math.negate(result);
+        }
+        return new DataWord(UInt256Math.toBytes(result));
     }
 
-    // TODO: improve with no BigInteger
     public DataWord sub(DataWord word) {
-        BigInteger result = value().subtract(word.value());
-        return new DataWord(ByteUtil.copyToArray(result.and(MAX_VALUE)));
+        long[] result = UInt256Math.sub(limbs(), word.limbs());
+        return new DataWord(UInt256Math.toBytes(result));
     }
 
-    // TODO: improve with no BigInteger
     public DataWord exp(DataWord word) {
-        BigInteger newData = value().modPow(word.value(), _2_256);
-        return new DataWord(ByteUtil.copyToArray(newData));
+        long[] result = UInt256Math.exp(limbs(), word.limbs());
+        return new DataWord(UInt256Math.toBytes(result));
     }
 
-    // TODO: improve with no BigInteger
     public DataWord mod(DataWord word) {
 
         if (word.isZero()) {
             return ZERO;
         }
 
-        BigInteger result = value().mod(word.value());
-        return new DataWord(ByteUtil.copyToArray(result.and(MAX_VALUE)));
+        long[] result = UInt256Math.mod(limbs(), word.limbs());
+        return new DataWord(UInt256Math.toBytes(result));
     }
 
     public DataWord sMod(DataWord word) {
@@ -338,10 +353,17 @@ public final class DataWord implements Comparable<DataWord> {
             return ZERO;
         }
 
-        BigInteger result = sValue().abs().mod(word.sValue().abs());
-        result = (sValue().signum() == -1) ? result.negate() : result;
+        long[] dividend = limbs();
+        long[] divisor = word.limbs();
+        boolean negDividend = UInt256Math.isNegative(dividend);
 
-        return new DataWord(ByteUtil.copyToArray(result.and(MAX_VALUE)));
+        long[] result = UInt256Math.mod(
+                negDividend ? UInt256Math.negate(dividend) : dividend,
+                UInt256Math.isNegative(divisor) ? UInt256Math.negate(divisor) : divisor);
+        if (negDividend) {
+            result = UInt256Math.negate(result);
+        }
+        return new DataWord(UInt256Math.toBytes(result));
     }
 
     public DataWord addmod(DataWord word1, DataWord word2) {
@@ -349,8 +371,8 @@ public final class DataWord implements Comparable<DataWord> {
             return ZERO;
         }
 
-        BigInteger result = value().add(word1.value()).mod(word2.value());
-        return new DataWord(ByteUtil.copyToArray(result.and(MAX_VALUE)));
+        long[] result = UInt256Math.addMod(limbs(), word1.limbs(), word2.limbs());
+        return new DataWord(UInt256Math.toBytes(result));
     }
 
     public DataWord mulmod(DataWord word1, DataWord word2) {
@@ -359,8 +381,8 @@ public final class DataWord implements Comparable<DataWord> {
             return ZERO;
         }
 
-        BigInteger result = value().multiply(word1.value()).mod(word2.value());
-        return new DataWord(ByteUtil.copyToArray(result.and(MAX_VALUE)));
+        long[] result = UInt256Math.mulMod(limbs(), word1.limbs(), word2.limbs());
+        return new DataWord(UInt256Math.toBytes(result));
     }
 
     /**
@@ -369,12 +391,13 @@ public final class DataWord implements Comparable<DataWord> {
      * @return this << arg
      */
     public DataWord shiftLeft(DataWord arg) {
-        if (arg.value().compareTo(BigInteger.valueOf(MAX_POW)) >= 0) {
+        int shift = arg.shiftValue();
+        if (shift >= MAX_POW) {
             return DataWord.ZERO;
         }
-        
-        BigInteger result = value().shiftLeft(arg.intValueSafe());
-        return new DataWord(ByteUtil.copyToArray(result.and(MAX_VALUE)));
+
+        long[] result = UInt256Math.shiftLeft(limbs(), shift);
+        return new DataWord(UInt256Math.toBytes(result));
     }
 
     /**
@@ -383,12 +406,13 @@ public final class DataWord implements Comparable<DataWord> {
      * @return this >> arg
      */
     public DataWord shiftRight(DataWord arg) {
-        if (arg.value().compareTo(BigInteger.valueOf(MAX_POW)) >= 0) {
+        int shift = arg.shiftValue();
+        if (shift >= MAX_POW) {
             return DataWord.ZERO;
         }
 
-        BigInteger result = value().shiftRight(arg.intValueSafe());
-        return new DataWord(ByteUtil.copyToArray(result.and(MAX_VALUE)));
+        long[] result = UInt256Math.shiftRight(limbs(), shift, 0);
+        return new DataWord(UInt256Math.toBytes(result));
     }
 
     /**
@@ -397,7 +421,8 @@ public final class DataWord implements Comparable<DataWord> {
      * @return this >> arg
      */
     public DataWord shiftRightSigned(DataWord arg) {
-        if (arg.value().compareTo(BigInteger.valueOf(MAX_POW)) >= 0) {
+        int shift = arg.shiftValue();
+        if (shift >= MAX_POW) {
             if (this.isNegative()) {
                 return DataWord.ONE.negate();
             } else {
@@ -405,8 +430,25 @@ public final class DataWord implements Comparable<DataWord> {
             }
         }
 
-        BigInteger result = sValue().shiftRight(arg.intValueSafe());
-        return new DataWord(ByteUtil.copyToArray(result.and(MAX_VALUE)));
+        long[] result = UInt256Math.shiftRight(limbs(), shift, this.isNegative() ? -1L : 0);
+        return new DataWord(UInt256Math.toBytes(result));
+    }
+
+    /**
+     * @return shift amount encoded by this word, any value above 255 is reported as {@link #MAX_POW}
+     */
+    private int shiftValue() {
+        for (int i = 0; i < 31; i++) {
+            if (data[i] != 0) return MAX_POW;
+        }
+        return data[31] & 0xff;
+    }
+
+    /**
+     * @return four 64-bit limbs of this word, most significant first
+     */
+    private long[] limbs() {
+        return UInt256Math.fromBytes(data);
     }
 
     @JsonValue
@@ -456,10 +498,22 @@ public final class DataWord implements Comparable<DataWord> {
         return (int) Math.signum(result);
     }
 
+    /**
+     * Compares words treating both as two's complement signed numbers
+     * @return -1, 0 or 1 as this word is less than, equal to or greater than the argument
+     */
+    public int sCompareTo(DataWord o) {
+        boolean negative = this.isNegative();
+        if (negative != o.isNegative()) {
+            return negative ? -1 : 1;
+        }
+        return compareTo(o);
+    }
+
     public DataWord signExtend(byte k) {
         if (0 > k || k > 31)
             throw new IndexOutOfBoundsException();
-        byte mask = this.sValue().testBit((k * 8) + 7) ? (byte) 0xff : 0;
+        byte mask = (data[31 - k] & 0x80) != 0 ? (byte) 0xff : 0;
         byte[] newData = this.copyData();
         for (int i = 31; i > k; i--) {
             newData[31 - i] = mask;
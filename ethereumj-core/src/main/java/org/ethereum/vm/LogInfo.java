@@ -20,10 +20,8 @@ package org.ethereum.vm;
 import org.ethereum.core.Bloom;
 import org.ethereum.crypto.HashUtil;
 import org.ethereum.datasource.MemSizeEstimator;
-import org.ethereum.util.RLP;
-import org.ethereum.util.RLPElement;
-import org.ethereum.util.RLPItem;
-import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPReader;
+import org.ethereum.util.RLPWriter;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -42,19 +40,17 @@ public class LogInfo {
     byte[] data = new byte[]{};
 
     public LogInfo(byte[] rlp) {
+        this(RLPReader.readList(rlp));
+    }
 
-        RLPList params = RLP.decode2(rlp);
-        RLPList logInfo = (RLPList) params.get(0);
-
-        RLPItem address = (RLPItem) logInfo.get(0);
-        RLPList topics = (RLPList) logInfo.get(1);
-        RLPItem data = (RLPItem) logInfo.get(2);
+    public LogInfo(RLPReader logInfo) {
 
-        this.address = address.getRLPData() != null ? address.getRLPData() : new byte[]{};
-        this.data = data.getRLPData() != null ? data.getRLPData() : new byte[]{};
+        this.address = logInfo.readItemOrEmpty();
+        RLPReader topics = logInfo.readList();
+        this.data = logInfo.readItemOrEmpty();
 
-        for (RLPElement topic1 : topics) {
-            byte[] topic = topic1.getRLPData();
+        while (topics.hasNext()) {
+            byte[] topic = topics.readItem();
             this.topics.add(DataWord.of(topic));
         }
     }
@@ -79,22 +75,23 @@ public class LogInfo {
 
     /*  [address, [topic, topic ...] data] */
     public byte[] getEncoded() {
+        return RLPWriter.encode(this::encode);
+    }
 
-        byte[] addressEncoded = RLP.encodeElement(this.address);
+    public void encode(RLPWriter writer) {
+        writer.startList()
+                .writeItem(address);
 
-        byte[][] topicsEncoded = null;
+        writer.startList();
         if (topics != null) {
-            topicsEncoded = new byte[topics.size()][];
-            int i = 0;
             for (DataWord topic : topics) {
-                byte[] topicData = topic.getData();
-                topicsEncoded[i] = RLP.encodeElement(topicData);
-                ++i;
+                writer.writeItem(topic.getData());
             }
         }
+        writer.endList();
 
-        byte[] dataEncoded = RLP.encodeElement(data);
-        return RLP.encodeList(addressEncoded, RLP.encodeList(topicsEncoded), dataEncoded);
+        writer.writeItem(data)
+                .endList();
     }
 
     public Bloom getBloom() {
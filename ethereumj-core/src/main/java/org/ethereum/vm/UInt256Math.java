@@ -0,0 +1,465 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm;
+
+import java.util.Arrays;
+
+/**
+ * Fixed width 256-bit arithmetic backing {@link DataWord} operations.
+ *
+ * Numbers are represented as four 64-bit limbs in big-endian order
+ * (limb 0 holds the most significant bits) which matches the layout of
+ * DataWord's 32-byte array. All operations are modulo 2^256 and treat
+ * limbs as unsigned, signed variants are implemented in DataWord on top of them.
+ *
+ * Multiplication and division work on 32-bit digits internally since Java 8
+ * lacks unsigned 64 by 64 bit multiply-high and 128 by 64 bit division primitives,
+ * division is Knuth's algorithm D.
+ */
+final class UInt256Math {
+
+    static final int LIMBS = 4;
+
+    private static final long INT_MASK = 0xFFFFFFFFL;
+
+    private UInt256Math() {
+    }
+
+    static long[] fromBytes(byte[] data) {
+        long[] limbs = new long[LIMBS];
+        for (int i = 0; i < LIMBS; i++) {
+            long limb = 0;
+            for (int j = i * 8; j < i * 8 + 8; j++) {
+                limb = (limb << 8) | (data[j] & 0xFF);
+            }
+            limbs[i] = limb;
+        }
+        return limbs;
+    }
+
+    static byte[] toBytes(long[] limbs) {
+        byte[] data = new byte[32];
+        for (int i = 0; i < LIMBS; i++) {
+            long limb = limbs[i];
+            for (int j = i * 8 + 7; j >= i * 8; j--) {
+                data[j] = (byte) limb;
+                limb >>>= 8;
+            }
+        }
+        return data;
+    }
+
+    static boolean isZero(long[] a) {
+        return (a[0] | a[1] | a[2] | a[3]) == 0;
+    }
+
+    static boolean isNegative(long[] a) {
+        return a[0] < 0;
+    }
+
+    static int compareUnsigned(long[] a, long[] b) {
+        for (int i = 0; i < LIMBS; i++) {
+            if (a[i] != b[i]) return Long.compareUnsigned(a[i], b[i]);
+        }
+        return 0;
+    }
+
+    static long[] sub(long[] a, long[] b) {
+        long[] r = new long[LIMBS];
+        long borrow = 0;
+        for (int i = LIMBS - 1; i >= 0; i--) {
+            long d = a[i] - b[i];
+            long br = Long.compareUnsigned(a[i], b[i]) < 0 ? 1 : 0;
+            r[i] = d - borrow;
+            borrow = br | (Long.compareUnsigned(d, borrow) < 0 ? 1 : 0);
+        }
+        return r;
+    }
+
+    static long[] negate(long[] a) {
+        return sub(new long[LIMBS], a);
+    }
+
+    /**
+     * @return a * b mod 2^256
+     */
+    static long[] mul(long[] a, long[] b) {
+        return fromDigits(mulDigits(toDigits(a, 8), toDigits(b, 8), 8), LIMBS);
+    }
+
+    /**
+     * @return a / b, b must be non zero
+     */
+    static long[] divide(long[] a, long[] b) {
+        int cmp = compareUnsigned(a, b);
+        if (cmp < 0) return new long[LIMBS];
+        if (cmp == 0) return one();
+        if (fitsInLong(a)) {
+            long[] r = new long[LIMBS];
+            r[LIMBS - 1] = divideUnsigned(a[LIMBS - 1], b[LIMBS - 1]);
+            return r;
+        }
+        int[] q = divmod(trim(toDigits(a, 8)), trim(toDigits(b, 8)), false);
+        return fromDigits(q, LIMBS);
+    }
+
+    /**
+     * @return a mod b, b must be non zero
+     */
+    static long[] mod(long[] a, long[] b) {
+        int cmp = compareUnsigned(a, b);
+        if (cmp < 0) return a.clone();
+        if (cmp == 0) return new long[LIMBS];
+        if (fitsInLong(a)) {
+            long[] r = new long[LIMBS];
+            long d = b[LIMBS - 1];
+            r[LIMBS - 1] = a[LIMBS - 1] - divideUnsigned(a[LIMBS - 1], d) * d;
+            return r;
+        }
+        int[] r = divmod(trim(toDigits(a, 8)), trim(toDigits(b, 8)), true);
+        return fromDigits(r, LIMBS);
+    }
+
+    /**
+     * @return (a + b) mod m evaluated without 2^256 truncation of the sum, m must be non zero
+     */
+    static long[] addMod(long[] a, long[] b, long[] m) {
+        long[] sum = new long[LIMBS + 1];
+        long carry = 0;
+        for (int i = LIMBS - 1; i >= 0; i--) {
+            long s = a[i] + b[i];
+            long c = Long.compareUnsigned(s, a[i]) < 0 ? 1 : 0;
+            sum[i + 1] = s + carry;
+            carry = c | (Long.compareUnsigned(sum[i + 1], s) < 0 ? 1 : 0);
+        }
+        sum[0] = carry;
+        return reduce(sum, m);
+    }
+
+    /**
+     * @return (a * b) mod m evaluated without 2^256 truncation of the product, m must be non zero
+     */
+    static long[] mulMod(long[] a, long[] b, long[] m) {
+        int[] product = mulDigits(toDigits(a, 8), toDigits(b, 8), 16);
+        return fromDigits(divmod(trim(product), trim(toDigits(m, 8)), true), LIMBS);
+    }
+
+    /**
+     * @return base ^ exponent mod 2^256
+     */
+    static long[] exp(long[] base, long[] exponent) {
+        if (isZero(exponent)) return one();
+        if (isZero(base)) return new long[LIMBS];
+
+        int powerOfTwo = powerOfTwo(base);
+        if (powerOfTwo == 0) return one();
+        if (powerOfTwo > 0) {
+            // (2^k)^e = 2^(k*e), which is either a single bit or vanishes modulo 2^256
+            if (!fitsInLong(exponent) || exponent[LIMBS - 1] < 0) return new long[LIMBS];
+            long shift = powerOfTwo * exponent[LIMBS - 1];
+            if (exponent[LIMBS - 1] > 256 || shift >= 256) return new long[LIMBS];
+            return shiftLeft(one(), (int) shift);
+        }
+
+        // fixed 4-bit window: precalculate base^1 .. base^15
+        int[][] powers = new int[16][];
+        powers[1] = toDigits(base, 8);
+        for (int i = 2; i < 16; i++) {
+            powers[i] = (i & 1) == 0 ? sqrDigits(powers[i / 2]) : mulDigits(powers[i - 1], powers[1], 8);
+        }
+
+        int[] result = null;
+        for (int i = 0; i < LIMBS; i++) {
+            long limb = exponent[i];
+            for (int shift = 60; shift >= 0; shift -= 4) {
+                if (result != null) {
+                    for (int j = 0; j < 4; j++) result = sqrDigits(result);
+                }
+                int window = (int) ((limb >>> shift) & 0xF);
+                if (window != 0) {
+                    result = result == null ? powers[window] : mulDigits(result, powers[window], 8);
+                }
+            }
+        }
+        return fromDigits(result, LIMBS);
+    }
+
+    /**
+     * @return k if a == 2^k, -1 otherwise
+     */
+    private static int powerOfTwo(long[] a) {
+        int bit = -1;
+        for (int i = 0; i < LIMBS; i++) {
+            if (a[i] == 0) continue;
+            if (bit >= 0 || Long.bitCount(a[i]) != 1) return -1;
+            bit = (LIMBS - 1 - i) * 64 + Long.numberOfTrailingZeros(a[i]);
+        }
+        return bit;
+    }
+
+    /**
+     * @param n shift, 0 <= n < 256
+     */
+    static long[] shiftLeft(long[] a, int n) {
+        long[] r = new long[LIMBS];
+        int limbShift = n >>> 6;
+        int bitShift = n & 63;
+        for (int i = 0; i < LIMBS - limbShift; i++) {
+            long v = a[i + limbShift] << bitShift;
+            if (bitShift != 0 && i + limbShift + 1 < LIMBS) {
+                v |= a[i + limbShift + 1] >>> (64 - bitShift);
+            }
+            r[i] = v;
+        }
+        return r;
+    }
+
+    /**
+     * @param n shift, 0 <= n < 256
+     * @param fill limb value shifted in from the left,
+     *             0 for logical shift and -1 for arithmetic shift of negative number
+     */
+    static long[] shiftRight(long[] a, int n, long fill) {
+        long[] r = new long[LIMBS];
+        int limbShift = n >>> 6;
+        int bitShift = n & 63;
+        for (int i = 0; i < LIMBS; i++) {
+            int src = i - limbShift;
+            long v = src >= 0 ? a[src] : fill;
+            if (bitShift != 0) {
+                long prev = src - 1 >= 0 ? a[src - 1] : fill;
+                v = (v >>> bitShift) | (prev << (64 - bitShift));
+            }
+            r[i] = v;
+        }
+        return r;
+    }
+
+    private static long[] one() {
+        long[] r = new long[LIMBS];
+        r[LIMBS - 1] = 1;
+        return r;
+    }
+
+    private static boolean fitsInLong(long[] a) {
+        return (a[0] | a[1] | a[2]) == 0;
+    }
+
+    /**
+     * Reduces arbitrary length big-endian number modulo 256-bit m
+     */
+    private static long[] reduce(long[] a, long[] m) {
+        int[] r = divmod(trim(toDigits(a, a.length * 2)), trim(toDigits(m, 8)), true);
+        return fromDigits(r, LIMBS);
+    }
+
+    /**
+     * Converts big-endian limbs to little-endian 32-bit digits
+     */
+    private static int[] toDigits(long[] a, int len) {
+        int[] digits = new int[len];
+        for (int i = 0; i < a.length; i++) {
+            long limb = a[a.length - 1 - i];
+            digits[2 * i] = (int) limb;
+            digits[2 * i + 1] = (int) (limb >>> 32);
+        }
+        return digits;
+    }
+
+    private static int significantDigits(int[] digits) {
+        int len = digits.length;
+        while (len > 0 && digits[len - 1] == 0) len--;
+        return len;
+    }
+
+    private static int[] trim(int[] digits) {
+        int len = significantDigits(digits);
+        return len == digits.length ? digits : Arrays.copyOf(digits, len);
+    }
+
+    /**
+     * Column-wise (Comba) multiplication of little-endian digits truncated to resultLen digits.
+     * Low and high halves of partial products are accumulated separately
+     * so column sums never overflow 64 bits
+     */
+    private static int[] mulDigits(int[] x, int[] y, int resultLen) {
+        int nx = significantDigits(x);
+        int ny = significantDigits(y);
+        int[] r = new int[resultLen];
+        long carry = 0;
+        for (int k = 0; k < resultLen; k++) {
+            long lo = carry;
+            long hi = 0;
+            for (int i = Math.max(0, k - ny + 1); i <= k && i < nx; i++) {
+                long p = (x[i] & INT_MASK) * (y[k - i] & INT_MASK);
+                lo += p & INT_MASK;
+                hi += p >>> 32;
+            }
+            r[k] = (int) lo;
+            carry = hi + (lo >>> 32);
+        }
+        return r;
+    }
+
+    /**
+     * Squaring counterpart of {@link #mulDigits(int[], int[], int)} truncated to 256 bits,
+     * every cross product is computed once and doubled
+     */
+    private static int[] sqrDigits(int[] x) {
+        int n = significantDigits(x);
+        int[] r = new int[8];
+        long carry = 0;
+        for (int k = 0; k < 8; k++) {
+            long lo = 0;
+            long hi = 0;
+            for (int i = Math.max(0, k - n + 1), j = k - i; i < j; i++, j--) {
+                long p = (x[i] & INT_MASK) * (x[j] & INT_MASK);
+                lo += p & INT_MASK;
+                hi += p >>> 32;
+            }
+            lo = (lo << 1) + carry;
+            hi <<= 1;
+            if ((k & 1) == 0 && k / 2 < n) {
+                long p = (x[k / 2] & INT_MASK) * (x[k / 2] & INT_MASK);
+                lo += p & INT_MASK;
+                hi += p >>> 32;
+            }
+            r[k] = (int) lo;
+            carry = hi + (lo >>> 32);
+        }
+        return r;
+    }
+
+    /**
+     * Unsigned 64-bit division, unlike {@link Long#divideUnsigned(long, long)}
+     * in Java 8 it doesn't resort to BigInteger for dividends above 2^63
+     */
+    static long divideUnsigned(long n, long d) {
+        if (d < 0) {
+            return Long.compareUnsigned(n, d) < 0 ? 0 : 1;
+        }
+        if (n >= 0) {
+            return n / d;
+        }
+        long q = ((n >>> 1) / d) << 1;
+        long r = n - q * d;
+        return q + (Long.compareUnsigned(r, d) >= 0 ? 1 : 0);
+    }
+
+    private static long[] fromDigits(int[] digits, int limbs) {
+        long[] r = new long[limbs];
+        for (int i = 0; i < limbs && 2 * i < digits.length; i++) {
+            long limb = digits[2 * i] & INT_MASK;
+            if (2 * i + 1 < digits.length) limb |= (digits[2 * i + 1] & INT_MASK) << 32;
+            r[limbs - 1 - i] = limb;
+        }
+        return r;
+    }
+
+    /**
+     * Knuth's algorithm D (The Art of Computer Programming, vol. 2, 4.3.1)
+     * as presented in Hacker's Delight, 9-2
+     *
+     * @param u dividend, little-endian digits
+     * @param v divisor, little-endian digits without leading zero digit
+     * @param remainder whether remainder should be returned instead of quotient
+     */
+    private static int[] divmod(int[] u, int[] v, boolean remainder) {
+        int m = u.length;
+        int n = v.length;
+
+        if (m < n) return remainder ? u : new int[0];
+
+        int[] q = new int[m - n + 1];
+
+        if (n == 1) {
+            long d = v[0] & INT_MASK;
+            long k = 0;
+            for (int j = m - 1; j >= 0; j--) {
+                long cur = (k << 32) | (u[j] & INT_MASK);
+                long qj = divideUnsigned(cur, d);
+                q[j] = (int) qj;
+                k = cur - qj * d;
+            }
+            return remainder ? new int[] {(int) k} : q;
+        }
+
+        // normalize so the highest divisor digit has its top bit set
+        int s = Integer.numberOfLeadingZeros(v[n - 1]);
+        int[] vn = new int[n];
+        for (int i = n - 1; i > 0; i--) {
+            vn[i] = (int) (((v[i] & INT_MASK) << s) | ((v[i - 1] & INT_MASK) >>> (32 - s)));
+        }
+        vn[0] = v[0] << s;
+
+        int[] un = new int[m + 1];
+        un[m] = (int) ((u[m - 1] & INT_MASK) >>> (32 - s));
+        for (int i = m - 1; i > 0; i--) {
+            un[i] = (int) (((u[i] & INT_MASK) << s) | ((u[i - 1] & INT_MASK) >>> (32 - s)));
+        }
+        un[0] = u[0] << s;
+
+        long vTop = vn[n - 1] & INT_MASK;
+        long vNext = vn[n - 2] & INT_MASK;
+        for (int j = m - n; j >= 0; j--) {
+            long num = ((un[j + n] & INT_MASK) << 32) | (un[j + n - 1] & INT_MASK);
+            long qhat = divideUnsigned(num, vTop);
+            long rhat = num - qhat * vTop;
+            while (qhat > INT_MASK ||
+                    Long.compareUnsigned(qhat * vNext, (rhat << 32) | (un[j + n - 2] & INT_MASK)) > 0) {
+                qhat--;
+                rhat += vTop;
+                if (rhat > INT_MASK) break;
+            }
+
+            // multiply and subtract
+            long k = 0;
+            long t;
+            for (int i = 0; i < n; i++) {
+                long p = qhat * (vn[i] & INT_MASK);
+                t = (un[i + j] & INT_MASK) - k - (p & INT_MASK);
+                un[i + j] = (int) t;
+                k = (p >>> 32) - (t >> 32);
+            }
+            t = (un[j + n] & INT_MASK) - k;
+            un[j + n] = (int) t;
+
+            q[j] = (int) qhat;
+            if (t < 0) {
+                // qhat was one too large, add back
+                q[j]--;
+                k = 0;
+                for (int i = 0; i < n; i++) {
+                    t = (un[i + j] & INT_MASK) + (vn[i] & INT_MASK) + k;
+                    un[i + j] = (int) t;
+                    k = t >>> 32;
+                }
+                un[j + n] += (int) k;
+            }
+        }
+
+        if (!remainder) return q;
+
+        // unnormalize remainder
+        int[] r = new int[n];
+        for (int i = 0; i < n; i++) {
+            r[i] = (int) (((un[i] & INT_MASK) >>> s) | ((un[i + 1] & INT_MASK) << (32 - s)));
+        }
+        return r;
+    }
+}
@@ -28,6 +28,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -84,7 +85,6 @@ public class VM {
 
     private static final Logger logger = LoggerFactory.getLogger("VM");
     private static final Logger dumpLogger = LoggerFactory.getLogger("dump");
-    private static BigInteger _32_ = BigInteger.valueOf(32);
     private static final String logString = "{}    Op: [{}]  Gas: [{}] Deep: [{}]  Hint: [{}]";
 
     // max mem size which couldn't be paid for ever
@@ -116,6 +116,8 @@ public class VM {
     // deprecated field that holds VM hook. Will be removed in the future releases.
     private static VMHook deprecatedHook = VMHook.EMPTY;
     private final boolean hasHooks;
+    // charge static gas per basic block rather than per instruction, see ProgramPrecompile
+    private final boolean blockGasMetering;
     private final VMHook[] hooks;
 
     public VM() {
@@ -131,6 +133,8 @@ public class VM {
                 .filter(h -> !h.isEmpty())
                 .toArray(VMHook[]::new);
         this.hasHooks = this.hooks.length > 0;
+        // per instruction gas is observed by the tracing and hooks
+        this.blockGasMetering = !vmTrace && dumpBlock < 0 && !hasHooks;
     }
 
     private void onHookEvent(Consumer<VMHook> consumer) {
@@ -185,6 +189,10 @@ public class VM {
     }
 
     public void step(Program program) {
+        step(program, false);
+    }
+
+    private void step(Program program, boolean blockGasMetering) {
 
         if (vmTrace) {
             program.saveOpTrace();
@@ -430,7 +438,9 @@ public class VM {
             }
 
             //DEBUG System.out.println(" OP IS " + op.name() + " GASCOST IS " + gasCost + " NUM IS " + op.asInt());
-            program.spendGas(gasCost, op.name());
+            if (!(blockGasMetering && program.spendBlockGas(op))) {
+                program.spendGas(gasCost, op.name());
+            }
 
             // Log debugging line for VM
             if (program.getNumber().intValue() == dumpBlock) {
@@ -550,13 +560,13 @@ public class VM {
                 break;
                 case SIGNEXTEND: {
                     DataWord word1 = program.stackPop();
-                    BigInteger k = word1.value();
+                    int k = word1.intValueSafe();
 
-                    if (k.compareTo(_32_) < 0) {
+                    if (k < 32) {
                         DataWord word2 = program.stackPop();
                         if (logger.isInfoEnabled())
                             hint = word1 + "  " + word2.value();
-                        DataWord extendResult = word2.signExtend(k.byteValue());
+                        DataWord extendResult = word2.signExtend((byte) k);
                         program.stackPush(extendResult);
                     }
                     program.step();
@@ -574,14 +584,13 @@ public class VM {
                 }
                 break;
                 case LT: {
-                    // TODO: can be improved by not using BigInteger
                     DataWord word1 = program.stackPop();
                     DataWord word2 = program.stackPop();
 
                     if (logger.isInfoEnabled())
                         hint = word1.value() + " < " + word2.value();
 
-                    if (word1.value().compareTo(word2.value()) == -1) {
+                    if (word1.compareTo(word2) == -1) {
                         program.stackPush(DataWord.ONE);
                     } else {
                         program.stackPush(DataWord.ZERO);
@@ -590,14 +599,13 @@ public class VM {
                 }
                 break;
                 case SLT: {
-                    // TODO: can be improved by not using BigInteger
                     DataWord word1 = program.stackPop();
                     DataWord word2 = program.stackPop();
 
                     if (logger.isInfoEnabled())
                         hint = word1.sValue() + " < " + word2.sValue();
 
-                    if (word1.sValue().compareTo(word2.sValue()) == -1) {
+                    if (word1.sCompareTo(word2) == -1) {
                         program.stackPush(DataWord.ONE);
                     } else {
                         program.stackPush(DataWord.ZERO);
@@ -606,14 +614,13 @@ public class VM {
                 }
                 break;
                 case SGT: {
-                    // TODO: can be improved by not using BigInteger
                     DataWord word1 = program.stackPop();
                     DataWord word2 = program.stackPop();
 
                     if (logger.isInfoEnabled())
                         hint = word1.sValue() + " > " + word2.sValue();
 
-                    if (word1.sValue().compareTo(word2.sValue()) == 1) {
+                    if (word1.sCompareTo(word2) == 1) {
                         program.stackPush(DataWord.ONE);
                     } else {
                         program.stackPush(DataWord.ZERO);
@@ -622,14 +629,13 @@ public class VM {
                 }
                 break;
                 case GT: {
-                    // TODO: can be improved by not using BigInteger
                     DataWord word1 = program.stackPop();
                     DataWord word2 = program.stackPop();
 
                     if (logger.isInfoEnabled())
                         hint = word1.value() + " > " + word2.value();
 
-                    if (word1.value().compareTo(word2.value()) == 1) {
+                    if (word1.compareTo(word2) == 1) {
                         program.stackPush(DataWord.ONE);
                     } else {
                         program.stackPush(DataWord.ZERO);
@@ -711,7 +717,7 @@ public class VM {
                     DataWord word1 = program.stackPop();
                     DataWord word2 = program.stackPop();
                     final DataWord result;
-                    if (word1.value().compareTo(_32_) == -1) {
+                    if (word1.intValueSafe() < 32) {
                         byte tmp = word2.getData()[word1.intValue()];
                         result = DataWord.of(tmp);
                     } else {
@@ -786,7 +792,7 @@ public class VM {
                 case SHA3: {
                     DataWord memOffsetData = program.stackPop();
                     DataWord lengthData = program.stackPop();
-                    byte[] buffer = program.memoryChunk(memOffsetData.intValueSafe(), lengthData.intValueSafe());
+                    ByteBuffer buffer = program.memoryBuffer(memOffsetData.intValueSafe(), lengthData.intValueSafe());
 
                     byte[] encoded = sha3(buffer);
                     DataWord word = DataWord.of(encoded);
@@ -1064,8 +1070,7 @@ public class VM {
                 case DUP13: case DUP14: case DUP15: case DUP16:{
 
                     int n = op.val() - OpCode.DUP1.val() + 1;
-                    DataWord word_1 = stack.get(stack.size() - n);
-                    program.stackPush(word_1);
+                    stack.dup(n);
                     program.step();
 
                 }   break;
@@ -1264,10 +1269,10 @@ public class VM {
                     program.step();
                     int nPush = op.val() - PUSH1.val() + 1;
 
-                    byte[] data = program.sweep(nPush);
+                    DataWord data = program.sweepWord(nPush);
 
                     if (logger.isInfoEnabled())
-                        hint = "" + toHexString(data);
+                        hint = "" + data.shortHex();
 
                     program.stackPush(data);
                 }
@@ -1435,7 +1440,7 @@ public class VM {
             }
 
             while (!program.isStopped()) {
-                this.step(program);
+                this.step(program, blockGasMetering);
             }
 
         } catch (RuntimeException e) {
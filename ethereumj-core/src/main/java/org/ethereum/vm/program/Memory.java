@@ -21,7 +21,9 @@ import org.ethereum.vm.DataWord;
 import org.ethereum.vm.program.listener.ProgramListener;
 import org.ethereum.vm.program.listener.ProgramListenerAware;
 
-import java.util.LinkedList;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static java.lang.Math.ceil;
@@ -30,12 +32,17 @@ import static java.lang.String.format;
 import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
 import static org.ethereum.util.ByteUtil.oneByteToHexString;
 
+/**
+ * EVM memory backed by a single contiguous array which capacity is doubled on demand,
+ * so reads and writes are just array copies regardless of the memory size
+ */
 public class Memory implements ProgramListenerAware {
 
     private static final int CHUNK_SIZE = 1024;
     private static final int WORD_SIZE = 32;
 
-    private List<byte[]> chunks = new LinkedList<>();
+    private byte[] data = EMPTY_BYTE_ARRAY;
+    private int internalSize;
     private int softSize;
     private ProgramListener programListener;
 
@@ -48,27 +55,19 @@ public class Memory implements ProgramListenerAware {
         if (size <= 0) return EMPTY_BYTE_ARRAY;
 
         extend(address, size);
-        byte[] data = new byte[size];
-
-        int chunkIndex = address / CHUNK_SIZE;
-        int chunkOffset = address % CHUNK_SIZE;
-
-        int toGrab = data.length;
-        int start = 0;
-
-        while (toGrab > 0) {
-            int copied = grabMax(chunkIndex, chunkOffset, toGrab, data, start);
-
-            // read next chunk from the start
-            ++chunkIndex;
-            chunkOffset = 0;
+        return Arrays.copyOfRange(data, address, address + size);
+    }
 
-            // mark remind
-            toGrab -= copied;
-            start += copied;
-        }
+    /**
+     * Returns zero-copy view of the memory region extending the memory if needed.
+     * The view reflects subsequent memory writes and is valid only until the memory is extended,
+     * callers must not modify it
+     */
+    public ByteBuffer readBuffer(int address, int size) {
+        if (size <= 0) return ByteBuffer.wrap(EMPTY_BYTE_ARRAY);
 
-        return data;
+        extend(address, size);
+        return ByteBuffer.wrap(data, address, size).slice();
     }
 
     public void write(int address, byte[] data, int dataSize, boolean limited) {
@@ -80,26 +79,14 @@ public class Memory implements ProgramListenerAware {
         if (!limited)
             extend(address, dataSize);
 
-        int chunkIndex = address / CHUNK_SIZE;
-        int chunkOffset = address % CHUNK_SIZE;
-
         int toCapture = 0;
         if (limited)
             toCapture = (address + dataSize > softSize) ? softSize - address : dataSize;
         else
             toCapture = dataSize;
 
-        int start = 0;
-        while (toCapture > 0) {
-            int captured = captureMax(chunkIndex, chunkOffset, toCapture, data, start);
-
-            // capture next chunk
-            ++chunkIndex;
-            chunkOffset = 0;
-
-            // mark remind
-            toCapture -= captured;
-            start += captured;
+        if (toCapture > 0) {
+            System.arraycopy(data, 0, this.data, address, toCapture);
         }
 
         if (programListener != null) programListener.onMemoryWrite(address, data, dataSize);
@@ -116,12 +103,15 @@ public class Memory implements ProgramListenerAware {
 
         final int newSize = address + size;
 
-        int toAllocate = newSize - internalSize();
-        if (toAllocate > 0) {
-            addChunks((int) ceil((double) toAllocate / CHUNK_SIZE));
+        if (newSize > internalSize) {
+            internalSize = (int) ceil((double) newSize / CHUNK_SIZE) * CHUNK_SIZE;
+            if (internalSize > data.length) {
+                int capacity = (int) min(2L * data.length, Integer.MAX_VALUE - CHUNK_SIZE);
+                data = Arrays.copyOf(data, Math.max(internalSize, capacity));
+            }
         }
 
-        toAllocate = newSize - softSize;
+        int toAllocate = newSize - softSize;
         if (toAllocate > 0) {
             toAllocate = (int) ceil((double) toAllocate / WORD_SIZE) * WORD_SIZE;
             softSize += toAllocate;
@@ -131,20 +121,14 @@ public class Memory implements ProgramListenerAware {
     }
 
     public DataWord readWord(int address) {
-        return DataWord.of(read(address, 32));
+        extend(address, WORD_SIZE);
+        return DataWord.of(data, address);
     }
 
     // just access expecting all data valid
     public byte readByte(int address) {
-
-        int chunkIndex = address / CHUNK_SIZE;
-        int chunkOffset = address % CHUNK_SIZE;
-
-        byte[] chunk = chunks.get(chunkIndex);
-
-        return chunk[chunkOffset];
+        return data[address];
     }
-
     @Override
     public String toString() {
 
@@ -180,35 +164,18 @@ public class Memory implements ProgramListenerAware {
     }
 
     public int internalSize() {
-        return chunks.size() * CHUNK_SIZE;
+        return internalSize;
     }
 
+    /**
+     * Returns copy of the allocated memory split into chunks
+     * of {@link #CHUNK_SIZE}, intended for debugging and tests only
+     */
     public List<byte[]> getChunks() {
-        return new LinkedList<>(chunks);
-    }
-
-    private int captureMax(int chunkIndex, int chunkOffset, int size, byte[] src, int srcPos) {
-
-        byte[] chunk = chunks.get(chunkIndex);
-        int toCapture = min(size, chunk.length - chunkOffset);
-
-        System.arraycopy(src, srcPos, chunk, chunkOffset, toCapture);
-        return toCapture;
-    }
-
-    private int grabMax(int chunkIndex, int chunkOffset, int size, byte[] dest, int destPos) {
-
-        byte[] chunk = chunks.get(chunkIndex);
-        int toGrab = min(size, chunk.length - chunkOffset);
-
-        System.arraycopy(chunk, chunkOffset, dest, destPos, toGrab);
-
-        return toGrab;
-    }
-
-    private void addChunks(int num) {
-        for (int i = 0; i < num; ++i) {
-            chunks.add(new byte[CHUNK_SIZE]);
+        List<byte[]> ret = new ArrayList<>();
+        for (int i = 0; i < internalSize; i += CHUNK_SIZE) {
+            ret.add(Arrays.copyOfRange(data, i, i + CHUNK_SIZE));
         }
+        return ret;
     }
 }
@@ -47,6 +47,7 @@ import org.spongycastle.util.encoders.Hex;
 
 import java.io.ByteArrayOutputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 import static java.lang.StrictMath.min;
@@ -74,7 +75,7 @@ public class Program {
     private static final int MAX_DEPTH = 1024;
 
     //Max size for stack checks
-    private static final int MAX_STACKSIZE = 1024;
+    private static final int MAX_STACKSIZE = Stack.MAX_SIZE;
 
     private Transaction transaction;
 
@@ -101,6 +102,7 @@ public class Program {
     private byte lastOp;
     private byte previouslyExecutedOp;
     private boolean stopped;
+    private boolean blockGasPaid;
     private ByteArraySet touchedAccounts = new ByteArraySet();
 
     private ProgramPrecompile programPrecompile;
@@ -296,6 +298,22 @@ public class Program {
         return data;
     }
 
+    /**
+     * Works like {@link #sweep(int)} but returns the PUSH immediate value
+     * memoized by the {@link ProgramPrecompile}
+     */
+    public DataWord sweepWord(int n) {
+
+        if (pc + n > ops.length)
+            stop();
+
+        DataWord word = getProgramPrecompile().getPushWord(ops, pc, n);
+        pc += n;
+        if (pc >= ops.length) stop();
+
+        return word;
+    }
+
     public DataWord stackPop() {
         return stack.pop();
     }
@@ -365,6 +383,14 @@ public class Program {
         return memory.read(offset, size);
     }
 
+    /**
+     * Zero-copy variant of {@link #memoryChunk(int, int)},
+     * see {@link Memory#readBuffer(int, int)}
+     */
+    public ByteBuffer memoryBuffer(int offset, int size) {
+        return memory.readBuffer(offset, size);
+    }
+
     /**
      * Allocates extra memory in the program for
      * a specified size, calculated from a given offset
@@ -728,6 +754,25 @@ public class Program {
         }
     }
 
+    /**
+     * Charges static gas of the whole basic block when the execution enters it,
+     * subsequent instructions of the block are not charged separately.
+     * See {@link ProgramPrecompile} for the basic block definition
+     *
+     * @param op current instruction
+     * @return true if gas for the current instruction is already paid
+     */
+    public boolean spendBlockGas(OpCode op) {
+        int blockGas = getProgramPrecompile().getBlockGas(pc);
+        if (blockGas > 0) {
+            spendGas(blockGas, op.name());
+            blockGasPaid = true;
+        } else if (!ProgramPrecompile.isStaticGasOp(op)) {
+            blockGasPaid = false;
+        }
+        return blockGasPaid;
+    }
+
     public void spendGas(long gasValue, String cause) {
         if (logger.isDebugEnabled()) {
             logger.debug("[{}] Spent for cause: [{}], gas: [{}]", invoke.hashCode(), cause, gasValue);
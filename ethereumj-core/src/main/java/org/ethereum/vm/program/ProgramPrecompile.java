@@ -17,33 +17,76 @@
  */
 package org.ethereum.vm.program;
 
-import org.ethereum.datasource.Source;
+import org.ethereum.datasource.MemSizeEstimator;
 import org.ethereum.util.ByteUtil;
 import org.ethereum.util.RLP;
-import org.ethereum.util.RLPElement;
 import org.ethereum.util.RLPList;
+import org.ethereum.vm.DataWord;
 import org.ethereum.vm.OpCode;
 
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumSet;
 import java.util.Set;
 
+import static org.ethereum.vm.OpCode.*;
+
 /**
+ * Results of the contract code analysis which are reused across executions
+ * of the same code: valid JUMPDEST positions, static gas of basic blocks and
+ * PUSH immediates decoded to {@link DataWord}s.
+ *
+ * Basic block here is a run of consecutive instructions with fixed
+ * (independent of the stack, memory, state and blockchain config) gas cost.
+ * A block starts at the code beginning, at each JUMPDEST and right after
+ * any instruction which ends the previous block; it ends with JUMP/JUMPI or before
+ * an instruction which gas is calculated dynamically by the VM.
+ * The sum of the block instruction costs is charged at once when the execution
+ * enters the block, see {@link Program#spendBlockGas(OpCode)}.
+ * Since none of the block instructions has side effects the outcome of
+ * an out of gas in the middle of block remains the same.
+ *
  * Created by Anton Nashatyrev on 06.02.2017.
  */
 public class ProgramPrecompile {
-    private static final int version = 1;
+    private static final int version = 2;
+
+    /**
+     * Instructions which gas is either calculated by the VM dynamically
+     * (see gas calculation switch in VM.step()) or which observe the remaining gas
+     */
+    private static final Set<OpCode> DYNAMIC_GAS_OPS = EnumSet.of(
+            STOP, SUICIDE, SSTORE, SLOAD, BALANCE, MSTORE, MSTORE8, MLOAD, RETURN, REVERT, SHA3,
+            CALLDATACOPY, RETURNDATACOPY, CODECOPY, EXTCODESIZE, EXTCODECOPY, EXTCODEHASH,
+            CALL, CALLCODE, DELEGATECALL, STATICCALL, CREATE, CREATE2,
+            LOG0, LOG1, LOG2, LOG3, LOG4, EXP, GAS);
+
+    private int codeSize;
+    private BitSet jumpdest = new BitSet();
+    // static gas of the basic block starting at the pc or 0
+    private int[] blockGas;
 
-    private Set<Integer> jumpdest = new HashSet<>();
+    // lazily decoded PUSH immediates indexed by the PUSH instruction pc
+    private volatile DataWord[] pushWords;
+    private int pushCount;
 
     public byte[] serialize() {
-        byte[][] jdBytes = new byte[jumpdest.size() + 1][];
+        byte[][] blocks = new byte[countBlocks() * 2][];
         int cnt = 0;
-        jdBytes[cnt++] = RLP.encodeInt(version);
-        for (Integer dst : jumpdest) {
-            jdBytes[cnt++] = RLP.encodeInt(dst);
+        for (int pc = 0; pc < codeSize; pc++) {
+            if (blockGas[pc] > 0) {
+                blocks[cnt++] = RLP.encodeInt(pc);
+                blocks[cnt++] = RLP.encodeInt(blockGas[pc]);
+            }
         }
 
-        return RLP.encodeList(jdBytes);
+        return RLP.encodeList(
+                RLP.encodeInt(version),
+                RLP.encodeInt(codeSize),
+                RLP.encodeInt(pushCount),
+                RLP.encodeElement(jumpdest.toByteArray()),
+                RLP.encodeList(blocks)
+        );
     }
 
     public static ProgramPrecompile deserialize(byte[] stream) {
@@ -51,39 +94,107 @@ public class ProgramPrecompile {
         int ver = ByteUtil.byteArrayToInt(l.get(0).getRLPData());
         if (ver != version) return null;
         ProgramPrecompile ret = new ProgramPrecompile();
-        for (int i = 1; i < l.size(); i++) {
-            ret.jumpdest.add(ByteUtil.byteArrayToInt(l.get(i).getRLPData()));
+        ret.codeSize = ByteUtil.byteArrayToInt(l.get(1).getRLPData());
+        ret.pushCount = ByteUtil.byteArrayToInt(l.get(2).getRLPData());
+        byte[] jumpdestBytes = l.get(3).getRLPData();
+        ret.jumpdest = BitSet.valueOf(jumpdestBytes == null ? ByteUtil.EMPTY_BYTE_ARRAY : jumpdestBytes);
+        ret.blockGas = new int[ret.codeSize];
+        RLPList blocks = (RLPList) l.get(4);
+        for (int i = 0; i < blocks.size(); i += 2) {
+            int pc = ByteUtil.byteArrayToInt(blocks.get(i).getRLPData());
+            ret.blockGas[pc] = ByteUtil.byteArrayToInt(blocks.get(i + 1).getRLPData());
         }
         return ret;
     }
 
     public static ProgramPrecompile compile(byte[] ops) {
         ProgramPrecompile ret = new ProgramPrecompile();
+        ret.codeSize = ops.length;
+        ret.blockGas = new int[ops.length];
+
+        int blockStart = 0;
+        boolean inBlock = false;
         for (int i = 0; i < ops.length; ++i) {
 
             OpCode op = OpCode.code(ops[i]);
-            if (op == null) continue;
 
-            if (op.equals(OpCode.JUMPDEST)) ret.jumpdest.add(i);
+            if (op == JUMPDEST) {
+                ret.jumpdest.set(i);
+                inBlock = false;
+            }
+
+            if (op != null && !DYNAMIC_GAS_OPS.contains(op)) {
+                if (!inBlock) {
+                    blockStart = i;
+                    inBlock = true;
+                }
+                ret.blockGas[blockStart] += op.getTier().asInt();
+                if (op == JUMP || op == JUMPI) inBlock = false;
+            } else {
+                inBlock = false;
+            }
 
-            if (op.asInt() >= OpCode.PUSH1.asInt() && op.asInt() <= OpCode.PUSH32.asInt()) {
-                i += op.asInt() - OpCode.PUSH1.asInt() + 1;
+            if (op != null && op.asInt() >= PUSH1.asInt() && op.asInt() <= PUSH32.asInt()) {
+                i += op.asInt() - PUSH1.asInt() + 1;
+                ret.pushCount++;
             }
         }
         return ret;
     }
 
     public boolean hasJumpDest(int pc) {
-        return jumpdest.contains(pc);
+        return pc >= 0 && jumpdest.get(pc);
     }
 
-    public static void main(String[] args) throws Exception {
-        ProgramPrecompile pp = new ProgramPrecompile();
-        pp.jumpdest.add(100);
-        pp.jumpdest.add(200);
-        byte[] bytes = pp.serialize();
+    /**
+     * @return total static gas of the basic block starting at pc,
+     *         or 0 if no block starts there
+     */
+    public int getBlockGas(int pc) {
+        return pc < blockGas.length ? blockGas[pc] : 0;
+    }
+
+    /**
+     * @return true if the gas of instruction doesn't depend on the execution context
+     */
+    public static boolean isStaticGasOp(OpCode op) {
+        return !DYNAMIC_GAS_OPS.contains(op);
+    }
+
+    /**
+     * Returns immediate value of PUSH instruction, decoded values are memoized
+     * so hot contracts don't allocate new words on every PUSH.
+     * Memoization is a benign race: the same immutable word may be decoded twice
+     *
+     * @param ops program code
+     * @param pc position of the PUSH data, i.e. next to the PUSH instruction
+     * @param n number of bytes to push
+     */
+    public DataWord getPushWord(byte[] ops, int pc, int n) {
+        DataWord[] words = pushWords;
+        if (words == null) {
+            pushWords = words = new DataWord[codeSize];
+        }
+        DataWord word = words[pc - 1];
+        if (word == null) {
+            // code shorter than push data is padded with zeroes on the right
+            word = DataWord.of(Arrays.copyOfRange(ops, pc, pc + n));
+            words[pc - 1] = word;
+        }
+        return word;
+    }
 
-        ProgramPrecompile pp1 = ProgramPrecompile.deserialize(bytes);
-        System.out.println(pp1.jumpdest);
+    private int countBlocks() {
+        int cnt = 0;
+        for (int gas : blockGas) {
+            if (gas > 0) cnt++;
+        }
+        return cnt;
     }
+
+    public static final MemSizeEstimator<ProgramPrecompile> MemEstimator = precompile ->
+            precompile == null ? 0 :
+            16 + precompile.jumpdest.size() / 8 +
+            precompile.codeSize * 8L + // blockGas and pushWords arrays
+            precompile.pushCount * DataWord.MEM_SIZE;
 }
@@ -21,7 +21,25 @@ import org.ethereum.vm.DataWord;
 import org.ethereum.vm.program.listener.ProgramListener;
 import org.ethereum.vm.program.listener.ProgramListenerAware;
 
-public class Stack extends java.util.Stack<DataWord> implements ProgramListenerAware {
+import java.util.Arrays;
+import java.util.EmptyStackException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * EVM operand stack
+ *
+ * Backed by a plain array of fixed {@link #MAX_SIZE} capacity, the stack is owned by
+ * a single {@link Program} and is never accessed concurrently, hence no synchronization.
+ * Elements are addressed from the bottom like in {@link java.util.Stack}:
+ * index 0 is the oldest element, index {@code size() - 1} is the top
+ */
+public class Stack implements ProgramListenerAware, Iterable<DataWord> {
+
+    public static final int MAX_SIZE = 1024;
+
+    private final DataWord[] items = new DataWord[MAX_SIZE];
+    private int size;
 
     private ProgramListener programListener;
 
@@ -30,27 +48,81 @@ public class Stack extends java.util.Stack<DataWord> implements ProgramListenerA
         this.programListener = listener;
     }
 
-    @Override
-    public synchronized DataWord pop() {
+    public DataWord pop() {
+        if (size == 0) throw new EmptyStackException();
         if (programListener != null) programListener.onStackPop();
-        return super.pop();
+        DataWord item = items[--size];
+        items[size] = null;
+        return item;
     }
 
-    @Override
     public DataWord push(DataWord item) {
+        if (size == MAX_SIZE) throw new IndexOutOfBoundsException("Stack overflow, max size: " + MAX_SIZE);
         if (programListener != null) programListener.onStackPush(item);
-        return super.push(item);
+        items[size++] = item;
+        return item;
+    }
+
+    /**
+     * Pushes n-th element counting from the top (1 is the top) onto the stack
+     */
+    public void dup(int n) {
+        push(items[size - n]);
+    }
+
+    public DataWord peek() {
+        if (size == 0) throw new EmptyStackException();
+        return items[size - 1];
+    }
+
+    public DataWord get(int index) {
+        if (index < 0 || index >= size) throw new ArrayIndexOutOfBoundsException(index);
+        return items[index];
     }
 
     public void swap(int from, int to) {
         if (isAccessible(from) && isAccessible(to) && (from != to)) {
             if (programListener != null) programListener.onStackSwap(from, to);
-            DataWord tmp = get(from);
-            set(from, set(to, tmp));
+            DataWord tmp = items[from];
+            items[from] = items[to];
+            items[to] = tmp;
         }
     }
 
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public DataWord[] toArray() {
+        return Arrays.copyOf(items, size);
+    }
+
+    /**
+     * Iterates from the bottom to the top of the stack
+     */
+    @Override
+    public Iterator<DataWord> iterator() {
+        return new Iterator<DataWord>() {
+            int idx = 0;
+
+            @Override
+            public boolean hasNext() {
+                return idx < size;
+            }
+
+            @Override
+            public DataWord next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return items[idx++];
+            }
+        };
+    }
+
     private boolean isAccessible(int from) {
-        return from >= 0 && from < size();
+        return from >= 0 && from < size;
     }
 }
@@ -141,6 +141,11 @@ public class Storage implements Repository, ProgramListenerAware {
         return repository.addBalance(addr, value);
     }
 
+    @Override
+    public boolean addCoinbaseFee(byte[] coinbase, BigInteger fee) {
+        return repository.addCoinbaseFee(coinbase, fee);
+    }
+
     @Override
     public Set<byte[]> getAccountsKeys() {
         return repository.getAccountsKeys();
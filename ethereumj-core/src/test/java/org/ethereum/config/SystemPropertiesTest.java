@@ -25,11 +25,13 @@ import org.ethereum.config.blockchain.OlympicConfig;
 import org.ethereum.config.net.*;
 import org.ethereum.core.AccountState;
 import org.ethereum.core.Genesis;
+import org.ethereum.datasource.rocksdb.ColumnFamilySettings;
 import org.ethereum.db.ByteArrayWrapper;
 import org.ethereum.net.rlpx.Node;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.rocksdb.CompressionType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.util.encoders.Hex;
@@ -95,6 +97,26 @@ public class SystemPropertiesTest {
         assertEquals("no_validation_rules_on_this_value", props.externalIp());
     }
 
+    @Test
+    public void testColumnFamiliesCompression() {
+        SystemProperties props = new SystemProperties();
+        props.overrideParams("database.columnFamilies.enabled", "true",
+                "database.columnFamilies.families.state.compression", "none");
+        for (ColumnFamilySettings family : props.databaseColumnFamilies()) {
+            if (family.getName().equals("state")) {
+                assertEquals(CompressionType.NO_COMPRESSION, family.getCompression());
+            }
+        }
+
+        try {
+            props.overrideParams("database.columnFamilies.families.state.compression", "gzip");
+            fail("Unknown compression should be rejected");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause().getCause().getMessage()
+                    .contains("database.columnFamilies.families.state.compression"));
+        }
+    }
+
     @Test
     public void testBlockchainNetConfig() {
         assertConfigNameResolvesToType("main", MainNetConfig.class);
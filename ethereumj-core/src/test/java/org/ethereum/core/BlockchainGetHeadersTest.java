@@ -19,13 +19,19 @@ package org.ethereum.core;
 
 import org.ethereum.datasource.inmem.HashMapDB;
 import org.ethereum.db.RepositoryRoot;
+import org.ethereum.db.BlockServingCache;
 import org.ethereum.db.BlockStoreDummy;
 import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
 /**
  * Testing {@link BlockchainImpl#getListOfHeadersStartFrom(BlockIdentifier, int, int, boolean)}
  */
@@ -59,6 +65,18 @@ public class BlockchainGetHeadersTest {
             return null;
         }
 
+        @Override
+        public byte[] getEncodedBlockByHash(byte[] hash) {
+            Block block = getBlockByHash(hash);
+            return block == null ? null : block.getEncoded();
+        }
+
+        @Override
+        public byte[] getBlockHashByNumber(long blockNumber) {
+            Block block = getChainBlockByNumber(blockNumber);
+            return block == null ? null : block.getHash();
+        }
+
         @Override
         public Block getChainBlockByNumber(long blockNumber) {
             return blockNumber < dummyBlocks.size() ? dummyBlocks.get((int) blockNumber) : null;
@@ -218,4 +236,62 @@ public class BlockchainGetHeadersTest {
         assert headers5.get(0).getNumber() == blockchain.getBestBlock().getNumber() - 1;
         assert headers5.get(1).getNumber() == blockchain.getBestBlock().getNumber();
     }
+
+    @Test
+    public void encodedHeaders() {
+        long best = blockchain.getBestBlock().getNumber();
+        List<BlockIdentifier> identifiers = Arrays.asList(
+                new BlockIdentifier(null, 0L),
+                new BlockIdentifier(null, 2L),
+                new BlockIdentifier(null, 8L),
+                new BlockIdentifier(null, best),
+                new BlockIdentifier(null, best + 1),
+                new BlockIdentifier(blockchain.getBestBlock().getHash(), 0L),
+                new BlockIdentifier(blockchain.getBlockByNumber(3).getHash(), 0L),
+                new BlockIdentifier(new byte[32], 0L)
+        );
+
+        for (BlockIdentifier identifier : identifiers) {
+            for (int skip : new int[] {0, 1, 2, 15}) {
+                for (int limit : new int[] {0, 1, 3, 100}) {
+                    for (boolean reverse : new boolean[] {false, true}) {
+                        List<BlockHeader> headers = blockchain.getListOfHeadersStartFrom(identifier, skip, limit, reverse);
+                        List<byte[]> encoded = blockchain.getListOfEncodedHeadersStartFrom(identifier, skip, limit, reverse);
+
+                        assertEquals(headers.size(), encoded.size());
+                        for (int i = 0; i < headers.size(); i++) {
+                            assertArrayEquals(headers.get(i).getEncoded(), encoded.get(i));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void encodedBodies() {
+        List<byte[]> hashes = Arrays.asList(
+                blockchain.getBlockByNumber(1).getHash(),
+                blockchain.getBlockByNumber(2).getHash(),
+                new byte[32],
+                blockchain.getBlockByNumber(3).getHash()
+        );
+
+        List<byte[]> bodies = blockchain.getListOfBodiesByHashes(hashes);
+        assertEquals(2, bodies.size());
+        assertArrayEquals(blockchain.getBlockByNumber(1).getEncodedBody(), bodies.get(0));
+        assertArrayEquals(blockchain.getBlockByNumber(2).getEncodedBody(), bodies.get(1));
+
+        BlockServingCache cache = blockchain.getServingCache();
+        assertEquals(0, cache.getHitCount());
+
+        // served from the cache the second time, stops on unknown hash as well
+        Iterator<byte[]> iterator = blockchain.getIteratorOfBodiesByHashes(hashes);
+        assertArrayEquals(bodies.get(0), iterator.next());
+        assertArrayEquals(bodies.get(1), iterator.next());
+        assertFalse(iterator.hasNext());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(4, cache.getMissCount());
+        assertEquals(2 * (bodies.get(0).length + bodies.get(1).length), cache.getBodiesBytesServed());
+    }
 }
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.core;
+
+import org.ethereum.config.BlockchainNetConfig;
+import org.ethereum.config.SystemProperties;
+import org.ethereum.config.blockchain.HomesteadConfig;
+import org.ethereum.crypto.ECKey;
+import org.ethereum.util.blockchain.StandaloneBlockchain;
+import org.ethereum.vm.DataWord;
+import org.junit.AfterClass;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.*;
+
+/**
+ * Imports the same blocks with the serial and speculative parallel transaction
+ * execution, block import checks state, receipts and bloom against the block header
+ */
+public class ParallelTransactionExecutorTest {
+
+    // storage[0] += 1
+    static final byte[] COUNTER = Hex.decode("600a600c600039600a6000f3" + "60005460010160005500");
+    // storage[caller] = balance(caller)
+    static final byte[] PER_CALLER = Hex.decode("6005600c60003960056000f3" + "3331335500");
+    // storage[0] = balance(coinbase)
+    static final byte[] COINBASE_READER = Hex.decode("6006600c60003960066000f3" + "413160005500");
+    // 1024 iterations of an empty loop
+    static final byte[] LOOP = Hex.decode("600d600c600039600d6000f3" + "6104005b600190038060035700");
+
+    @AfterClass
+    public static void cleanup() {
+        SystemProperties.resetToDefault();
+    }
+
+    private static ECKey key(int i) {
+        return ECKey.fromPrivate(sha3(("parallel-" + i).getBytes()));
+    }
+
+    private static StandaloneBlockchain createChain(BlockchainNetConfig netConfig, int accounts) {
+        StandaloneBlockchain sb = new StandaloneBlockchain()
+                .withNetConfig(netConfig)
+                .withGasLimit(500_000)
+                .withMinerCoinbase(key(0).getAddress());
+        for (int i = 0; i < accounts; i++) {
+            sb.withAccountBalance(key(i).getAddress(), BigInteger.TEN.pow(24));
+        }
+        return sb;
+    }
+
+    private static void send(StandaloneBlockchain sb, int from, byte[] to, long value) {
+        sb.setSender(key(from));
+        sb.sendEther(to, BigInteger.valueOf(value));
+    }
+
+    private static List<Block> generateBlocks(StandaloneBlockchain sb) {
+        List<Block> ret = new ArrayList<>();
+
+        // the coinbase is the sender
+        Transaction[] creates = {
+                sb.createTransaction(key(0), 0, new byte[0], BigInteger.ZERO, COUNTER),
+                sb.createTransaction(key(0), 1, new byte[0], BigInteger.ZERO, PER_CALLER),
+                sb.createTransaction(key(0), 2, new byte[0], BigInteger.ZERO, COINBASE_READER)
+        };
+        for (Transaction tx : creates) sb.submitTransaction(tx);
+        ret.add(sb.createBlock());
+
+        byte[] counter = creates[0].getContractAddress();
+        byte[] perCaller = creates[1].getContractAddress();
+        byte[] coinbaseReader = creates[2].getContractAddress();
+
+        // independent calls
+        for (int i = 12; i < 20; i++) send(sb, i, perCaller, 0);
+        // the same sender
+        send(sb, 1, counter, 0);
+        send(sb, 1, counter, 0);
+        // the same storage slot
+        send(sb, 2, counter, 0);
+        send(sb, 3, counter, 0);
+        // reading the coinbase and paying to it
+        send(sb, 4, coinbaseReader, 0);
+        send(sb, 5, key(0).getAddress(), 1000);
+        // the recipient spends received ether
+        send(sb, 6, key(9).getAddress(), 1000);
+        send(sb, 9, key(10).getAddress(), 1000);
+        // creating a new account and a call to a non-existent one
+        send(sb, 7, new byte[20], 0);
+        send(sb, 8, key(11).getAddress(), 0);
+        ret.add(sb.createBlock());
+
+        send(sb, 1, perCaller, 1);
+        send(sb, 0, perCaller, 1);
+        send(sb, 2, coinbaseReader, 0);
+        send(sb, 0, key(3).getAddress(), 1000);
+        // paying to the coinbase and reading it in a row
+        send(sb, 12, key(0).getAddress(), 1000);
+        send(sb, 13, key(0).getAddress(), 1000);
+        send(sb, 14, coinbaseReader, 0);
+        send(sb, 15, key(0).getAddress(), 1000);
+        send(sb, 16, coinbaseReader, 0);
+        ret.add(sb.createBlock());
+
+        return ret;
+    }
+
+    private void checkImport(BlockchainNetConfig netConfig) {
+        StandaloneBlockchain serial = createChain(netConfig, 20);
+        List<Block> blocks = generateBlocks(serial);
+
+        StandaloneBlockchain parallel = createChain(netConfig, 20);
+        parallel.getBlockchain().withParallelExecution(4);
+
+        for (Block block : blocks) {
+            assertEquals(ImportResult.IMPORTED_BEST, parallel.getBlockchain().tryToConnect(block));
+        }
+        assertArrayEquals(serial.getBlockchain().getBestBlock().getStateRoot(),
+                parallel.getBlockchain().getRepository().getRoot());
+
+        byte[] counter = blocks.get(0).getTransactionsList().get(0).getContractAddress();
+        assertEquals(DataWord.of(4), parallel.getBlockchain().getRepository()
+                .getStorageValue(counter, DataWord.ZERO));
+    }
+
+    @Test
+    public void testByzantium() {
+        checkImport(StandaloneBlockchain.getEasyMiningConfig());
+    }
+
+    @Test
+    public void testHomestead() {
+        // per transaction receipt state roots and no empty accounts cleanup
+        checkImport(new HomesteadConfig(new HomesteadConfig.HomesteadConstants() {
+            @Override
+            public BigInteger getMINIMUM_DIFFICULTY() {
+                return BigInteger.ONE;
+            }
+        }));
+    }
+
+    @Ignore
+    @Test
+    public void testPerformance() {
+        // mainnet-like blocks: mostly plain transfers, some contract calls
+        // and a share of transactions depending on each other
+        int accounts = 400, blocksCount = 20, txPerBlock = 150;
+        StandaloneBlockchain generator = createChain(StandaloneBlockchain.getEasyMiningConfig(), accounts);
+
+        generator.submitTransaction(generator.createTransaction(key(0), 0, new byte[0], BigInteger.ZERO, LOOP));
+        generator.submitTransaction(generator.createTransaction(key(0), 1, new byte[0], BigInteger.ZERO, COUNTER));
+        List<Block> blocks = new ArrayList<>();
+        blocks.add(generator.createBlock());
+        byte[] loop = blocks.get(0).getTransactionsList().get(0).getContractAddress();
+        byte[] counter = blocks.get(0).getTransactionsList().get(1).getContractAddress();
+
+        Random rnd = new Random(0);
+        for (int b = 0; b < blocksCount; b++) {
+            for (int t = 0; t < txPerBlock; t++) {
+                int sender = 1 + (b * txPerBlock + t) % (accounts - 1);
+                int kind = rnd.nextInt(100);
+                if (kind < 60) {
+                    send(generator, sender, key(rnd.nextInt(accounts)).getAddress(), 1000);
+                } else if (kind < 90) {
+                    send(generator, sender, loop, 0);
+                } else {
+                    send(generator, sender, counter, 0);
+                }
+            }
+            blocks.add(generator.createBlock());
+        }
+
+        for (int round = 0; round < 3; round++) {
+            for (int threads : new int[] {0, 2, 4, 8}) {
+                StandaloneBlockchain sb = createChain(StandaloneBlockchain.getEasyMiningConfig(), accounts);
+                if (threads > 0) {
+                    sb.getBlockchain().withParallelExecution(threads);
+                }
+                long s = System.nanoTime();
+                for (Block block : blocks) {
+                    assertEquals(ImportResult.IMPORTED_BEST, sb.getBlockchain().tryToConnect(block));
+                }
+                System.out.printf("Import %d blocks x %d txs, threads: %d: %d ms%n", blocksCount, txPerBlock,
+                        threads, (System.nanoTime() - s) / 1_000_000);
+            }
+        }
+    }
+}
@@ -177,6 +177,33 @@ public class PendingStateTest {
                 compareTo(BigInteger.valueOf(2000000 - 100000)) > 0);
     }
 
+    @Test
+    public void testUntouchedSender() throws InterruptedException {
+        ECKey bob = new ECKey();
+        StandaloneBlockchain bc = new StandaloneBlockchain()
+                .withAccountBalance(bob.getAddress(), BigInteger.TEN.pow(20));
+        PendingListener l = new PendingListener();
+        bc.addEthereumListener(l);
+        PendingStateImpl pendingState = (PendingStateImpl) bc.getBlockchain().getPendingState();
+
+        bc.createBlock();
+        l.onBlock.poll(5, SECONDS);
+
+        Transaction tx1 = bc.createTransaction(bob, 0, new byte[20], BigInteger.valueOf(1000), new byte[0]);
+        pendingState.addPendingTransaction(tx1);
+        Assert.assertEquals(l.pollTxUpdateState(tx1), NEW_PENDING);
+
+        // the block doesn't touch bob, his pending transaction is applied to the new state lazily
+        bc.sendEther(new byte[20], BigInteger.valueOf(1000));
+        bc.createBlock();
+        Assert.assertEquals(l.pollTxUpdateState(tx1), PENDING);
+
+        Transaction tx2 = bc.createTransaction(bob, 1, new byte[20], BigInteger.valueOf(1000), new byte[0]);
+        pendingState.addPendingTransaction(tx2);
+        Assert.assertEquals(l.pollTxUpdateState(tx2), NEW_PENDING);
+        Assert.assertEquals(BigInteger.valueOf(2), pendingState.getRepository().getNonce(bob.getAddress()));
+    }
+
     @Test
     public void testRebranch1() throws InterruptedException {
         StandaloneBlockchain bc = new StandaloneBlockchain();
@@ -646,4 +673,31 @@ public class PendingStateTest {
 
         assert txHandle.await(3, TimeUnit.SECONDS);
     }
+
+    @Test
+    public void testReplacedByIncluded() throws InterruptedException {
+        StandaloneBlockchain bc = new StandaloneBlockchain();
+        PendingListener l = new PendingListener();
+        bc.addEthereumListener(l);
+        PendingStateImpl pendingState = (PendingStateImpl) bc.getBlockchain().getPendingState();
+
+        ECKey alice = new ECKey();
+        ECKey bob = new ECKey();
+
+        bc.sendEther(bob.getAddress(), convert(100, ETHER));
+        bc.createBlock();
+
+        Transaction tx1 = bc.createTransaction(bob, 0, alice.getAddress(), BigInteger.valueOf(1000000), new byte[0]);
+        pendingState.addPendingTransaction(tx1);
+        Assert.assertEquals(l.pollTxUpdateState(tx1), NEW_PENDING);
+
+        Transaction tx2 = bc.createTransaction(bob, 0, alice.getAddress(), BigInteger.valueOf(2000000), new byte[0]);
+        bc.submitTransaction(tx2);
+        Block b2 = bc.createBlock();
+
+        Triple<TransactionReceipt, EthereumListener.PendingTransactionState, Block> txUpd = l.pollTxUpdate(tx1);
+        Assert.assertEquals(txUpd.getMiddle(), DROPPED);
+        Assert.assertArrayEquals(txUpd.getRight().getHash(), b2.getHash());
+        Assert.assertTrue(pendingState.getPendingTransactions().isEmpty());
+    }
 }
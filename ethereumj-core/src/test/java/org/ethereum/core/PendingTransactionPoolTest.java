@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.core;
+
+import org.ethereum.crypto.ECKey;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PendingTransactionPoolTest {
+
+    private static final String RECEIVER = "cd2a3d9f938e13cd947ec05abc7fe734df8dd826";
+
+    private static PendingTransaction createTx(ECKey sender, long nonce, long gasPrice, long blockNumber) {
+        Transaction tx = Transaction.create(RECEIVER, BigInteger.valueOf(nonce + 1), BigInteger.valueOf(nonce),
+                BigInteger.valueOf(gasPrice), BigInteger.valueOf(21000));
+        tx.sign(sender);
+        return new PendingTransaction(tx, blockNumber);
+    }
+
+    @Test
+    public void testSenderQueues() {
+        ECKey alice = new ECKey();
+        ECKey bob = new ECKey();
+        PendingTransactionPool pool = new PendingTransactionPool(100);
+
+        PendingTransaction a1 = createTx(alice, 1, 10, 0);
+        PendingTransaction b0 = createTx(bob, 0, 10, 0);
+        PendingTransaction a0 = createTx(alice, 0, 10, 0);
+        assertNull(pool.add(a1, null));
+        assertNull(pool.add(b0, null));
+        assertNull(pool.add(a0, null));
+
+        assertEquals(3, pool.size());
+        assertTrue(pool.contains(a0.getHash()));
+        assertEquals(Arrays.asList(a0, a1), pool.getBySender(alice.getAddress()));
+        assertEquals(Arrays.asList(a0, a1, b0), pool.getAll());
+
+        // another transaction with the same sender and nonce
+        PendingTransaction a1_ = createTx(alice, 1, 20, 0);
+        assertSame(a1, pool.add(a1_, null));
+        assertEquals(3, pool.size());
+        assertFalse(pool.contains(a1.getHash()));
+        assertEquals(Arrays.asList(a0, a1_), pool.getBySender(alice.getAddress()));
+
+        // removed by sender and nonce regardless of the hash
+        assertSame(a1_, pool.remove(a1.getTransaction()));
+        assertNull(pool.remove(a1.getTransaction()));
+        assertSame(b0, pool.remove(b0.getTransaction()));
+        assertEquals(Arrays.asList(a0), pool.getAll());
+        assertTrue(pool.getBySender(bob.getAddress()).isEmpty());
+    }
+
+    @Test
+    public void testReceipts() {
+        ECKey alice = new ECKey();
+        PendingTransactionPool pool = new PendingTransactionPool(100);
+
+        PendingTransaction tx = createTx(alice, 0, 10, 0);
+        TransactionReceipt receipt = new TransactionReceipt();
+        pool.add(tx, receipt);
+        assertSame(receipt, pool.getReceipt(tx));
+
+        TransactionReceipt newReceipt = new TransactionReceipt();
+        pool.setReceipt(tx, newReceipt);
+        assertSame(newReceipt, pool.getReceipt(tx));
+
+        pool.remove(tx.getTransaction());
+        pool.setReceipt(tx, receipt);
+        assertNull(pool.getReceipt(tx));
+    }
+
+    @Test
+    public void testEviction() {
+        ECKey alice = new ECKey();
+        ECKey bob = new ECKey();
+        ECKey charlie = new ECKey();
+        PendingTransactionPool pool = new PendingTransactionPool(4);
+
+        PendingTransaction a0 = createTx(alice, 0, 30, 0);
+        PendingTransaction a1 = createTx(alice, 1, 10, 0);
+        PendingTransaction a2 = createTx(alice, 2, 50, 0);
+        PendingTransaction b0 = createTx(bob, 0, 20, 0);
+        pool.add(a0, null);
+        pool.add(a1, null);
+        pool.add(a2, null);
+        pool.add(b0, null);
+
+        assertTrue(pool.isFull());
+        assertEquals(BigInteger.valueOf(10), pool.getLowestGasPrice());
+        assertTrue(pool.evict().isEmpty());
+
+        pool.add(createTx(charlie, 0, 40, 0), null);
+
+        // the cheapest one is evicted along with the next nonce of the same sender
+        List<PendingTransaction> evicted = pool.evict();
+        assertEquals(Arrays.asList(a1, a2), evicted);
+        assertEquals(3, pool.size());
+        assertEquals(Arrays.asList(a0), pool.getBySender(alice.getAddress()));
+        assertEquals(BigInteger.valueOf(20), pool.getLowestGasPrice());
+        assertFalse(pool.isFull());
+    }
+
+    @Test
+    public void testRemoveOutdated() {
+        ECKey alice = new ECKey();
+        ECKey bob = new ECKey();
+        PendingTransactionPool pool = new PendingTransactionPool(100);
+
+        PendingTransaction a0 = createTx(alice, 0, 10, 1);
+        PendingTransaction a1 = createTx(alice, 1, 10, 5);
+        PendingTransaction b0 = createTx(bob, 0, 10, 3);
+        pool.add(a0, null);
+        pool.add(a1, null);
+        pool.add(b0, null);
+
+        assertTrue(pool.removeAddedBefore(1).isEmpty());
+
+        List<PendingTransaction> outdated = pool.removeAddedBefore(4);
+        assertEquals(2, outdated.size());
+        assertTrue(outdated.containsAll(Arrays.asList(a0, b0)));
+        assertEquals(Arrays.asList(a1), pool.getAll());
+        assertSame(a1, pool.remove(a1.getTransaction()));
+        assertEquals(0, pool.size());
+        assertNull(pool.getLowestGasPrice());
+    }
+}
@@ -17,8 +17,11 @@
  */
 package org.ethereum.crypto;
 
+import org.ethereum.crypto.cryptohash.Keccak256;
+import org.ethereum.crypto.jce.SpongyCastleProvider;
 import org.ethereum.util.Utils;
 
+import org.junit.Ignore;
 import org.junit.Test;
 
 import org.slf4j.Logger;
@@ -42,11 +45,22 @@ import org.spongycastle.math.ec.ECPoint;
 import org.spongycastle.util.encoders.Hex;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.ethereum.crypto.HashUtil.sha3;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class CryptoTest {
 
@@ -106,6 +120,85 @@ public class CryptoTest {
         // 1) result: ~52 address calculation every second
     }
 
+    @Test
+    public void sha3Overloads() {
+        byte[] data = new byte[1000];
+        new Random(0).nextBytes(data);
+        byte[] expected = new Keccak256().digest(data);
+
+        assertArrayEquals(expected, HashUtil.sha3(data));
+        assertArrayEquals(expected, HashUtil.sha3(Arrays.copyOfRange(data, 0, 300), Arrays.copyOfRange(data, 300, 1000)));
+        assertArrayEquals(expected, HashUtil.sha3(Arrays.copyOfRange(data, 0, 10),
+                Arrays.copyOfRange(data, 10, 500), new byte[0], Arrays.copyOfRange(data, 500, 1000)));
+
+        byte[] padded = new byte[1200];
+        System.arraycopy(data, 0, padded, 100, data.length);
+        assertArrayEquals(expected, HashUtil.sha3(padded, 100, data.length));
+        assertArrayEquals(expected, HashUtil.sha3(ByteBuffer.wrap(padded, 100, data.length)));
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data).flip();
+        assertArrayEquals(expected, HashUtil.sha3(direct));
+
+        // failed hashing doesn't affect subsequent ones
+        try {
+            HashUtil.sha3(data, 500, 1000);
+            fail();
+        } catch (RuntimeException e) {
+        }
+        assertArrayEquals(expected, HashUtil.sha3(data));
+    }
+
+    @Test
+    public void sha3Concurrent() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int seed = t;
+            results.add(executor.submit(() -> {
+                Random rnd = new Random(seed);
+                for (int i = 0; i < 1000; i++) {
+                    byte[] data = new byte[rnd.nextInt(300)];
+                    rnd.nextBytes(data);
+                    if (!Arrays.equals(new Keccak256().digest(data), HashUtil.sha3(data))) return false;
+                }
+                return true;
+            }));
+        }
+        for (Future<Boolean> result : results) {
+            assertTrue(result.get());
+        }
+        executor.shutdown();
+    }
+
+    @Ignore
+    @Test
+    public void sha3Performance() throws Exception {
+        for (int size : new int[] {32, 128, 512, 1024, 4096}) {
+            byte[] data = new byte[size];
+            new Random(size).nextBytes(data);
+            int count = 4 * 1024 * 1024 / size * 16;
+
+            for (int round = 0; round < 3; round++) {
+                long s = System.nanoTime();
+                for (int i = 0; i < count; i++) {
+                    MessageDigest digest = MessageDigest.getInstance("ETH-KECCAK-256", SpongyCastleProvider.getInstance());
+                    digest.update(data);
+                    digest.digest();
+                }
+                long tProvider = System.nanoTime() - s;
+
+                s = System.nanoTime();
+                for (int i = 0; i < count; i++) {
+                    HashUtil.sha3(data);
+                }
+                long tLocal = System.nanoTime() - s;
+
+                System.out.printf("%5d bytes: per call instance %8.0f hashes/sec, thread local %8.0f hashes/sec%n",
+                        size, count / (tProvider / 1e9), count / (tLocal / 1e9));
+            }
+        }
+    }
+
     @Test /* real tx hash calc */
     public void test7() {
 
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.crypto;
+
+import org.ethereum.core.Transaction;
+import org.ethereum.crypto.ECKey.ECDSASignature;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.spongycastle.asn1.x9.X9IntegerConverter;
+import org.spongycastle.math.ec.ECAlgorithms;
+import org.spongycastle.math.ec.ECPoint;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.ethereum.util.ByteUtil.bigIntegerToBytes;
+import static org.junit.Assert.*;
+
+public class Secp256k1Test {
+
+    private static final BigInteger N = ECKey.CURVE.getN();
+
+    /**
+     * Plain SpongyCastle recovery which is replaced by {@link Secp256k1}
+     */
+    private static byte[] referenceRecover(int recId, BigInteger r, BigInteger s, byte[] messageHash) {
+        BigInteger x = r.add(BigInteger.valueOf(recId / 2).multiply(N));
+        if (x.compareTo(Secp256k1.P) >= 0) return null;
+
+        X9IntegerConverter x9 = new X9IntegerConverter();
+        byte[] compEnc = x9.integerToBytes(x, 1 + x9.getByteLength(ECKey.CURVE.getCurve()));
+        compEnc[0] = (byte) ((recId & 1) == 1 ? 0x03 : 0x02);
+        ECPoint R = ECKey.CURVE.getCurve().decodePoint(compEnc);
+
+        BigInteger e = new BigInteger(1, messageHash);
+        BigInteger eInv = BigInteger.ZERO.subtract(e).mod(N);
+        BigInteger rInv = r.modInverse(N);
+        ECPoint q = ECAlgorithms.sumOfTwoMultiplies(ECKey.CURVE.getG(), rInv.multiply(eInv).mod(N),
+                R, rInv.multiply(s).mod(N));
+        return q.isInfinity() ? null : q.getEncoded(false);
+    }
+
+    private static byte[] recoverOrError(int recId, BigInteger r, BigInteger s, byte[] hash, boolean reference) {
+        try {
+            byte[] ret = reference ? referenceRecover(recId, r, s, hash) : Secp256k1.recoverPubBytes(recId, r, s, hash);
+            return ret == null ? new byte[0] : ret;
+        } catch (IllegalArgumentException e) {
+            return new byte[] {1};
+        } catch (ArithmeticException e) {
+            return new byte[] {2};
+        }
+    }
+
+    @Test
+    public void testFieldArithmetic() {
+        Random rnd = new Random(0);
+        for (int i = 0; i < 1000; i++) {
+            BigInteger a = new BigInteger(256, rnd).mod(Secp256k1.P);
+            int[] fe = Secp256k1.feFromBytes(bigIntegerToBytes(a, 32));
+            assertEquals(a, Secp256k1.feToBigInteger(fe));
+        }
+        BigInteger pm1 = Secp256k1.P.subtract(BigInteger.ONE);
+        assertEquals(pm1, Secp256k1.feToBigInteger(Secp256k1.feFromBytes(bigIntegerToBytes(pm1, 32))));
+        assertTrue(Secp256k1.feIsZero(Secp256k1.feFromInt(0)));
+    }
+
+    @Test
+    public void testSplitScalar() {
+        Random rnd = new Random(1);
+        List<BigInteger> ks = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) ks.add(new BigInteger(256, rnd).mod(N));
+        ks.add(BigInteger.ZERO);
+        ks.add(BigInteger.ONE);
+        ks.add(N.subtract(BigInteger.ONE));
+        ks.add(Secp256k1.LAMBDA);
+
+        for (BigInteger k : ks) {
+            BigInteger[] split = Secp256k1.splitScalar(k);
+            assertEquals(k, split[0].add(split[1].multiply(Secp256k1.LAMBDA)).mod(N));
+            assertTrue(split[0].bitLength() <= 129);
+            assertTrue(split[1].bitLength() <= 129);
+        }
+    }
+
+    @Test
+    public void testWnaf() {
+        Random rnd = new Random(2);
+        for (int w = 2; w <= 8; w++) {
+            for (int i = 0; i < 200; i++) {
+                BigInteger k = new BigInteger(1 + rnd.nextInt(130), rnd);
+                int[] naf = new int[160];
+                int len = Secp256k1.wnaf(k, w, naf);
+                BigInteger sum = BigInteger.ZERO;
+                for (int j = len - 1; j >= 0; j--) {
+                    assertTrue(naf[j] == 0 || (naf[j] & 1) == 1);
+                    assertTrue(Math.abs(naf[j]) < (1 << (w - 1)));
+                    sum = sum.shiftLeft(1).add(BigInteger.valueOf(naf[j]));
+                }
+                assertEquals(k, sum);
+            }
+        }
+    }
+
+    @Test
+    public void testRecoverSigned() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            ECKey key = ECKey.fromPrivate(sha3(("secp256k1-" + i).getBytes()));
+            byte[] hash = sha3(("message-" + i).getBytes());
+            ECDSASignature sig = key.sign(hash);
+
+            assertArrayEquals(key.getPubKey(), ECKey.signatureToKeyBytes(hash, sig));
+            assertArrayEquals(key.getAddress(), ECKey.signatureToAddress(hash, sig));
+        }
+    }
+
+    @Test
+    public void testRecoverRandom() {
+        Random rnd = new Random(3);
+        for (int i = 0; i < 300; i++) {
+            byte[] hash = new byte[32];
+            rnd.nextBytes(hash);
+            BigInteger r = new BigInteger(256, rnd).mod(N);
+            BigInteger s = new BigInteger(256, rnd).mod(N);
+            if (i % 50 == 0) s = BigInteger.ZERO;
+            if (i % 70 == 0) r = BigInteger.valueOf(i);
+            if (i % 90 == 0) r = N.subtract(BigInteger.valueOf(i));
+            for (int recId = 0; recId < 4; recId++) {
+                assertArrayEquals("r: " + r + ", s: " + s + ", recId: " + recId,
+                        recoverOrError(recId, r, s, hash, true), recoverOrError(recId, r, s, hash, false));
+            }
+        }
+    }
+
+    @Test
+    public void testRecoverBatch() {
+        Random rnd = new Random(4);
+        int cnt = 64;
+        byte[][] hashes = new byte[cnt][];
+        ECDSASignature[] sigs = new ECDSASignature[cnt];
+        for (int i = 0; i < cnt; i++) {
+            ECKey key = ECKey.fromPrivate(sha3(("batch-" + i).getBytes()));
+            hashes[i] = sha3(("message-" + i).getBytes());
+            if (i % 4 == 3) {
+                // random signature, may be not recoverable
+                sigs[i] = ECDSASignature.fromComponents(bigIntegerToBytes(new BigInteger(256, rnd).mod(N), 32),
+                        bigIntegerToBytes(new BigInteger(256, rnd).mod(N), 32), (byte) (27 + rnd.nextInt(2)));
+            } else {
+                sigs[i] = key.sign(hashes[i]);
+            }
+        }
+        sigs[5] = ECDSASignature.fromComponents(new byte[32], new byte[] {1}, (byte) 27);
+        sigs[6] = ECDSASignature.fromComponents(new byte[] {1}, new byte[] {1}, (byte) 40);
+
+        byte[][] keys = Secp256k1.recoverBatch(hashes, sigs);
+        for (int i = 0; i < cnt; i++) {
+            byte[] expected;
+            try {
+                expected = ECKey.signatureToKeyBytes(hashes[i], sigs[i]);
+            } catch (Exception e) {
+                expected = null;
+            }
+            assertArrayEquals("Item " + i, expected, keys[i]);
+        }
+        assertNull(keys[5]);
+        assertNull(keys[6]);
+    }
+
+    @Test
+    public void testTransactionRecoverBatch() {
+        List<Transaction> txs = new ArrayList<>();
+        List<byte[]> senders = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ECKey key = ECKey.fromPrivate(sha3(("tx-" + i).getBytes()));
+            Transaction tx = new Transaction(bigIntegerToBytes(BigInteger.valueOf(i)), new byte[] {1},
+                    new byte[] {0x52, 0x08}, new byte[20], new byte[] {1}, null);
+            tx.sign(key);
+            txs.add(new Transaction(tx.getEncoded()));
+            senders.add(key.getAddress());
+        }
+
+        Transaction.recoverBatch(txs);
+        for (int i = 0; i < txs.size(); i++) {
+            assertArrayEquals(senders.get(i), txs.get(i).getSender());
+        }
+    }
+
+    @Ignore
+    @Test
+    public void testPerformance() {
+        int cnt = 1000;
+        byte[][] hashes = new byte[cnt][];
+        ECDSASignature[] sigs = new ECDSASignature[cnt];
+        for (int i = 0; i < cnt; i++) {
+            ECKey key = ECKey.fromPrivate(sha3(("perf-" + i).getBytes()));
+            hashes[i] = sha3(("message-" + i).getBytes());
+            sigs[i] = key.sign(hashes[i]);
+        }
+
+        for (int round = 0; round < 5; round++) {
+            long s = System.nanoTime();
+            for (int i = 0; i < cnt; i++) {
+                referenceRecover(sigs[i].v - 27, sigs[i].r, sigs[i].s, hashes[i]);
+            }
+            long t1 = System.nanoTime() - s;
+
+            s = System.nanoTime();
+            for (int i = 0; i < cnt; i++) {
+                Secp256k1.recoverPubBytes(sigs[i].v - 27, sigs[i].r, sigs[i].s, hashes[i]);
+            }
+            long t2 = System.nanoTime() - s;
+
+            s = System.nanoTime();
+            Secp256k1.recoverBatch(hashes, sigs);
+            long t3 = System.nanoTime() - s;
+
+            System.out.printf("Recoveries/sec: spongycastle %d, single %d, batch %d%n",
+                    cnt * 1_000_000_000L / t1, cnt * 1_000_000_000L / t2, cnt * 1_000_000_000L / t3);
+        }
+    }
+}
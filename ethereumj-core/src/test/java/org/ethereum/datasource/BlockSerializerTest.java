@@ -26,25 +26,32 @@ import org.junit.Test;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
 import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 
 /**
- * Test for {@link IndexedBlockStore.BLOCK_INFO_SERIALIZER}
+ * Test for {@link IndexedBlockStore#BLOCK_INFO_SERIALIZER} and {@link IndexedBlockStore#LEGACY_BLOCK_INFO_SERIALIZER}
  */
 public class BlockSerializerTest {
 
     private static final Random rnd = new Random();
 
     private List<BlockInfo> generateBlockInfos(int count) {
+        return generateBlockInfos(count, 512);
+    }
+
+    private List<BlockInfo> generateBlockInfos(int count, int tdBits) {
         List<BlockInfo> blockInfos = new ArrayList<>();
         for (int i = 0; i < count; i++) {
             BlockInfo blockInfo = new BlockInfo();
             blockInfo.setHash(sha3(ByteUtil.intToBytes(i)));
-            blockInfo.setTotalDifficulty(BigInteger.probablePrime(512, rnd));
+            blockInfo.setTotalDifficulty(BigInteger.probablePrime(tdBits, rnd));
             blockInfo.setMainChain(rnd.nextBoolean());
             blockInfos.add(blockInfo);
         }
@@ -55,9 +62,9 @@ public class BlockSerializerTest {
     @Test
     public void testTest() {
         List<BlockInfo> blockInfoList = generateBlockInfos(100);
-        byte[] data = IndexedBlockStore.BLOCK_INFO_SERIALIZER.serialize(blockInfoList);
+        byte[] data = IndexedBlockStore.LEGACY_BLOCK_INFO_SERIALIZER.serialize(blockInfoList);
         System.out.printf("Blocks total byte size: %s%n", data.length);
-        List<BlockInfo> blockInfoList2  = IndexedBlockStore.BLOCK_INFO_SERIALIZER.deserialize(data);
+        List<BlockInfo> blockInfoList2  = IndexedBlockStore.LEGACY_BLOCK_INFO_SERIALIZER.deserialize(data);
 
         assert blockInfoList.size() == blockInfoList2.size();
         for (int i = 0; i < blockInfoList2.size(); i++) {
@@ -72,16 +79,19 @@ public class BlockSerializerTest {
     public void testTime() {
         int BLOCKS = 100;
         int PASSES = 10_000;
-        List<BlockInfo> blockInfoList = generateBlockInfos(BLOCKS);
+        List<BlockInfo> blockInfoList = generateBlockInfos(BLOCKS, 256);
 
-        long s = System.currentTimeMillis();
-        for (int i = 0; i < PASSES; i++) {
-            byte[] data = IndexedBlockStore.BLOCK_INFO_SERIALIZER.serialize(blockInfoList);
-            List<BlockInfo> blockInfoList2 = IndexedBlockStore.BLOCK_INFO_SERIALIZER.deserialize(data);
-        }
-        long e = System.currentTimeMillis();
+        for (Serializer<List<BlockInfo>, byte[]> serializer : Arrays.asList(
+                IndexedBlockStore.LEGACY_BLOCK_INFO_SERIALIZER, IndexedBlockStore.BLOCK_INFO_SERIALIZER)) {
+            long s = System.currentTimeMillis();
+            for (int i = 0; i < PASSES; i++) {
+                byte[] data = serializer.serialize(blockInfoList);
+                List<BlockInfo> blockInfoList2 = serializer.deserialize(data);
+            }
+            long e = System.currentTimeMillis();
 
-        System.out.printf("Serialize/deserialize blocks per 1 ms: %s%n", PASSES * BLOCKS / (e - s));
+            System.out.printf("Serialize/deserialize blocks per 1 ms: %s%n", PASSES * BLOCKS / (e - s));
+        }
     }
 
     @Test(expected = RuntimeException.class)
@@ -90,8 +100,8 @@ public class BlockSerializerTest {
         blockInfo.setMainChain(true);
         blockInfo.setTotalDifficulty(null);
         blockInfo.setHash(new byte[0]);
-        byte[] data = IndexedBlockStore.BLOCK_INFO_SERIALIZER.serialize(Collections.singletonList(blockInfo));
-        List<BlockInfo> blockInfos = IndexedBlockStore.BLOCK_INFO_SERIALIZER.deserialize(data);
+        byte[] data = IndexedBlockStore.LEGACY_BLOCK_INFO_SERIALIZER.serialize(Collections.singletonList(blockInfo));
+        List<BlockInfo> blockInfos = IndexedBlockStore.LEGACY_BLOCK_INFO_SERIALIZER.deserialize(data);
     }
 
     @Test(expected = RuntimeException.class)
@@ -100,8 +110,8 @@ public class BlockSerializerTest {
         blockInfo.setMainChain(true);
         blockInfo.setTotalDifficulty(BigInteger.valueOf(-1));
         blockInfo.setHash(new byte[0]);
-        byte[] data = IndexedBlockStore.BLOCK_INFO_SERIALIZER.serialize(Collections.singletonList(blockInfo));
-        List<BlockInfo> blockInfos = IndexedBlockStore.BLOCK_INFO_SERIALIZER.deserialize(data);
+        byte[] data = IndexedBlockStore.LEGACY_BLOCK_INFO_SERIALIZER.serialize(Collections.singletonList(blockInfo));
+        List<BlockInfo> blockInfos = IndexedBlockStore.LEGACY_BLOCK_INFO_SERIALIZER.deserialize(data);
     }
 
     @Test
@@ -110,12 +120,57 @@ public class BlockSerializerTest {
         blockInfo.setMainChain(true);
         blockInfo.setTotalDifficulty(BigInteger.ZERO);
         blockInfo.setHash(new byte[0]);
-        byte[] data = IndexedBlockStore.BLOCK_INFO_SERIALIZER.serialize(Collections.singletonList(blockInfo));
-        List<BlockInfo> blockInfos = IndexedBlockStore.BLOCK_INFO_SERIALIZER.deserialize(data);
+        byte[] data = IndexedBlockStore.LEGACY_BLOCK_INFO_SERIALIZER.serialize(Collections.singletonList(blockInfo));
+        List<BlockInfo> blockInfos = IndexedBlockStore.LEGACY_BLOCK_INFO_SERIALIZER.deserialize(data);
         assert blockInfos.size() == 1;
         BlockInfo actualBlockInfo = blockInfos.get(0);
         assert actualBlockInfo.isMainChain();
         assert actualBlockInfo.getTotalDifficulty().compareTo(BigInteger.ZERO) == 0;
         assert actualBlockInfo.getHash().length == 0;
     }
+
+    @Test
+    public void testFixedWidth() {
+        List<BlockInfo> blockInfoList = generateBlockInfos(100, 256);
+        byte[] data = IndexedBlockStore.BLOCK_INFO_SERIALIZER.serialize(blockInfoList);
+        assertEquals(1 + 100 * (32 + 32 + 1), data.length);
+        assertEquals(IndexedBlockStore.INDEX_FORMAT_VERSION, data[0]);
+
+        assertBlockInfosEqual(blockInfoList, IndexedBlockStore.BLOCK_INFO_SERIALIZER.deserialize(data));
+        assertEquals(0, IndexedBlockStore.BLOCK_INFO_SERIALIZER.deserialize(
+                IndexedBlockStore.BLOCK_INFO_SERIALIZER.serialize(Collections.emptyList())).size());
+    }
+
+    @Test
+    public void testReadLegacyFormat() {
+        List<BlockInfo> blockInfoList = generateBlockInfos(10, 256);
+        byte[] legacy = IndexedBlockStore.LEGACY_BLOCK_INFO_SERIALIZER.serialize(blockInfoList);
+
+        assertBlockInfosEqual(blockInfoList, IndexedBlockStore.BLOCK_INFO_SERIALIZER.deserialize(legacy));
+        assertEquals(0, IndexedBlockStore.BLOCK_INFO_SERIALIZER.deserialize(
+                IndexedBlockStore.LEGACY_BLOCK_INFO_SERIALIZER.serialize(Collections.emptyList())).size());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testFixedWidthTotalDifficultyOverflow() {
+        IndexedBlockStore.BLOCK_INFO_SERIALIZER.serialize(generateBlockInfos(1, 257));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testFixedWidthEmptyHash() {
+        BlockInfo blockInfo = new BlockInfo();
+        blockInfo.setMainChain(true);
+        blockInfo.setTotalDifficulty(BigInteger.ZERO);
+        blockInfo.setHash(new byte[0]);
+        IndexedBlockStore.BLOCK_INFO_SERIALIZER.serialize(Collections.singletonList(blockInfo));
+    }
+
+    private void assertBlockInfosEqual(List<BlockInfo> expected, List<BlockInfo> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i).getHash(), actual.get(i).getHash());
+            assertEquals(expected.get(i).getTotalDifficulty(), actual.get(i).getTotalDifficulty());
+            assertEquals(expected.get(i).isMainChain(), actual.get(i).isMainChain());
+        }
+    }
 }
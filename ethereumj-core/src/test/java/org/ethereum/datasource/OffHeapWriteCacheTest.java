@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.datasource;
+
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link WriteCacheTest} against {@link OffHeapWriteCache} and compares it to the on-heap cache
+ */
+public class OffHeapWriteCacheTest extends WriteCacheTest {
+
+    @Override
+    protected WriteCache<byte[], byte[]> createCache(Source<byte[], byte[]> src, WriteCache.CacheType cacheType) {
+        return new OffHeapWriteCache(src, cacheType);
+    }
+
+    private static byte[] randomBytes(Random rnd, int maxLen) {
+        byte[] ret = new byte[rnd.nextInt(maxLen)];
+        rnd.nextBytes(ret);
+        return ret;
+    }
+
+    private void compare(WriteCache.CacheType cacheType) {
+        Random rnd = new Random(cacheType.ordinal());
+        HashMapDB<byte[]> src1 = new HashMapDB<>();
+        HashMapDB<byte[]> src2 = new HashMapDB<>();
+        WriteCache<byte[], byte[]> heap = new WriteCache.BytesKey<>(src1, cacheType);
+        WriteCache<byte[], byte[]> offHeap = new OffHeapWriteCache(src2, cacheType);
+        heap.withSizeEstimators(MemSizeEstimator.ByteArrayEstimator, MemSizeEstimator.ByteArrayEstimator);
+        offHeap.withSizeEstimators(MemSizeEstimator.ByteArrayEstimator, MemSizeEstimator.ByteArrayEstimator);
+
+        byte[][] keys = new byte[3000][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = randomBytes(rnd, 40);
+        }
+
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 20_000; i++) {
+                byte[] key = keys[rnd.nextInt(keys.length)];
+                int op = rnd.nextInt(10);
+                if (op < 5) {
+                    // counting cache requires the same value for the key
+                    byte[] value = cacheType == WriteCache.CacheType.COUNTING ?
+                            sha3(key) : randomBytes(rnd, rnd.nextInt(100) == 0 ? 10_000 : 100);
+                    heap.put(key, value);
+                    offHeap.put(key, value);
+                } else if (op < 7) {
+                    heap.delete(key);
+                    offHeap.delete(key);
+                } else {
+                    assertArrayEquals(heap.get(key), offHeap.get(key));
+                    AbstractCachedSource.Entry<byte[]> e1 = heap.getCached(key);
+                    AbstractCachedSource.Entry<byte[]> e2 = offHeap.getCached(key);
+                    assertEquals(e1 == null, e2 == null);
+                    if (e1 != null) assertArrayEquals(e1.value(), e2.value());
+                }
+            }
+            assertEquals(heap.estimateCacheSize(), offHeap.estimateCacheSize());
+            assertEquals(heap.getModified().size(), offHeap.getModified().size());
+            assertEquals(heap.debugCacheSize(), offHeap.debugCacheSize());
+
+            heap.flush();
+            offHeap.flush();
+            assertFalse(offHeap.hasModified());
+            assertEquals(0, ((OffHeapWriteCache) offHeap).getOffHeapSize());
+            assertEquals(src1.keys().size(), src2.keys().size());
+            for (byte[] key : src1.keys()) {
+                assertArrayEquals(src1.get(key), src2.get(key));
+            }
+        }
+    }
+
+    @Test
+    public void testCompareSimple() {
+        compare(WriteCache.CacheType.SIMPLE);
+    }
+
+    @Test
+    public void testCompareCounting() {
+        compare(WriteCache.CacheType.COUNTING);
+    }
+
+    @Test
+    public void testAsyncFlip() throws Exception {
+        HashMapDB<byte[]> src = new HashMapDB<>();
+        AsyncWriteCache<byte[], byte[]> cache = new AsyncWriteCache<byte[], byte[]>(src) {
+            @Override
+            protected WriteCache<byte[], byte[]> createCache(Source<byte[], byte[]> source) {
+                OffHeapWriteCache ret = new OffHeapWriteCache(source, WriteCache.CacheType.SIMPLE);
+                ret.withSizeEstimators(MemSizeEstimator.ByteArrayEstimator, MemSizeEstimator.ByteArrayEstimator);
+                ret.setFlushSource(true);
+                return ret;
+            }
+        };
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put(new byte[] {(byte) i, (byte) (i >> 8)}, new byte[] {(byte) i});
+        }
+        assertTrue(cache.estimateCacheSize() > 0);
+        cache.flipStorage();
+        assertEquals(0, cache.estimateCacheSize());
+        // flipped data is still visible through the flushing cache
+        assertArrayEquals(new byte[] {5}, cache.get(new byte[] {5, 0}));
+        cache.put(new byte[] {5, 0}, new byte[] {55});
+        assertArrayEquals(new byte[] {55}, cache.get(new byte[] {5, 0}));
+
+        cache.flushAsync().get();
+        assertEquals(1000, src.keys().size());
+        assertArrayEquals(new byte[] {5}, src.get(new byte[] {5, 0}));
+
+        cache.flush();
+        cache.flushAsync().get();
+        assertArrayEquals(new byte[] {55}, src.get(new byte[] {5, 0}));
+    }
+}
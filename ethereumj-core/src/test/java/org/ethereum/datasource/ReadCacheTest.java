@@ -22,6 +22,11 @@ import org.ethereum.vm.DataWord;
 import org.junit.Test;
 import org.spongycastle.util.encoders.Hex;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
 import static org.ethereum.crypto.HashUtil.sha3;
 import static org.ethereum.util.ByteUtil.longToBytes;
 import static org.junit.Assert.*;
@@ -88,4 +93,128 @@ public class ReadCacheTest {
         assertEquals(str(intToValue(9_901)), str(readCache.getCached(intToKey(9_901)).value()));
         assertNull(readCache.getCached(intToKey(9_900)));
     }
+
+    @Test
+    public void testConcurrentMaxSize() {
+        Source<byte[], byte[]> src = new HashMapDB<>();
+        ReadCache.BytesKey<byte[]> readCache = new ReadCache.BytesKey<>(src);
+        readCache.withSizeEstimators(MemSizeEstimator.ByteArrayEstimator, MemSizeEstimator.ByteArrayEstimator);
+        // (32 + 16) * 2 = 96 bytes per entry, single segment for predictable eviction
+        readCache.withConcurrentMaxSize(96 * 100, 1);
+
+        for (int i = 0; i < 10_000; ++i) {
+            src.put(intToKey(i), intToValue(i));
+            readCache.get(intToKey(i));
+        }
+        assertEquals(96 * 100, readCache.estimateCacheSize());
+        assertEquals(10_000, readCache.getMissCount());
+        assertEquals(0, readCache.getHitCount());
+        assertEquals(9_900, readCache.getEvictionCount());
+        assertNull(readCache.getCached(intToKey(9_899)));
+        assertEquals(str(intToValue(9_900)), str(readCache.getCached(intToKey(9_900)).value()));
+
+        // absent entries are cached as well
+        assertNull(readCache.get(intToKey(-1)));
+        assertNull(readCache.get(intToKey(-1)));
+        assertEquals(1, readCache.getHitCount());
+        assertNotNull(readCache.getCached(intToKey(-1)));
+        assertNull(readCache.getCached(intToKey(-1)).value());
+    }
+
+    @Test
+    public void testScanResistance() {
+        Source<byte[], byte[]> src = new HashMapDB<>();
+        ReadCache.BytesKey<byte[]> readCache = new ReadCache.BytesKey<>(src);
+        // no size estimators: the size is entries count
+        readCache.withConcurrentMaxSize(100, 1);
+        for (int i = 0; i < 10_000; ++i) {
+            src.put(intToKey(i), intToValue(i));
+        }
+
+        // hot entries are accessed twice and thus protected
+        for (int i = 0; i < 50; ++i) {
+            readCache.get(intToKey(i));
+            readCache.get(intToKey(i));
+        }
+        // a single scan through many entries
+        for (int i = 1000; i < 10_000; ++i) {
+            readCache.get(intToKey(i));
+        }
+
+        for (int i = 0; i < 50; ++i) {
+            assertNotNull(readCache.getCached(intToKey(i)));
+        }
+        assertEquals(str(intToValue(9_999)), str(readCache.getCached(intToKey(9_999)).value()));
+        assertNull(readCache.getCached(intToKey(1000)));
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        Source<byte[], byte[]> src = new HashMapDB<>();
+        ReadCache.BytesKey<byte[]> readCache = new ReadCache.BytesKey<>(src);
+        readCache.withSizeEstimators(MemSizeEstimator.ByteArrayEstimator, MemSizeEstimator.ByteArrayEstimator);
+        readCache.withConcurrentMaxSize(96 * 1000);
+        for (int i = 0; i < 5_000; ++i) {
+            src.put(intToKey(i), intToValue(i));
+        }
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final int seed = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 20_000; i++) {
+                        int k = (i * 31 + seed * 7) % (i % 3 == 0 ? 5_000 : 500);
+                        assertEquals(str(intToValue(k)), str(readCache.get(intToKey(k))));
+                    }
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        if (error.get() != null) throw new RuntimeException(error.get());
+        assertEquals(8 * 20_000, readCache.getHitCount() + readCache.getMissCount());
+        assertTrue(readCache.estimateCacheSize() <= 96 * 1000);
+        assertTrue(readCache.getHitCount() > readCache.getMissCount());
+    }
+
+    @Test
+    public void testGetAll() {
+        Source<byte[], byte[]> src = new HashMapDB<>();
+        ReadCache<byte[], byte[]> readCache = new ReadCache.BytesKey<>(src);
+        for (int i = 0; i < 100; ++i) {
+            src.put(intToKey(i), intToValue(i));
+        }
+        readCache.get(intToKey(0));
+
+        List<byte[]> keys = new ArrayList<>();
+        for (int i = 0; i < 200; ++i) {
+            keys.add(intToKey(i));
+        }
+        Map<byte[], byte[]> ret = readCache.getAll(keys);
+
+        // Only existing keys are returned
+        assertEquals(100, ret.size());
+        for (int i = 0; i < 100; ++i) {
+            assertEquals(str(intToValue(i)), str(ret.get(keys.get(i))));
+        }
+        assertEquals(1, readCache.getHitCount());
+        assertEquals(200, readCache.getMissCount());
+
+        // Both existing and absent keys are cached
+        assertEquals(str(intToValue(99)), str(readCache.getCached(intToKey(99)).value()));
+        assertNull(readCache.getCached(intToKey(199)).value());
+
+        // Cached values are not read from the source
+        src.delete(intToKey(5));
+        assertEquals(str(intToValue(5)), str(readCache.getAll(keys.subList(5, 6)).get(keys.get(5))));
+        assertEquals(2, readCache.getHitCount());
+    }
 }
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.datasource;
+
+import org.ethereum.datasource.rocksdb.ColumnFamilySettings;
+import org.ethereum.datasource.rocksdb.RocksDbDataSource;
+import org.junit.Test;
+import org.rocksdb.CompactionStyle;
+import org.spongycastle.util.encoders.Hex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.ethereum.TestUtils.randomBytes;
+import static org.ethereum.util.ByteUtil.merge;
+import static org.junit.Assert.*;
+
+public class RocksDbColumnFamiliesTest {
+
+    @Test
+    public void testColumnFamilies() {
+        DbSettings settings = DbSettings.newInstance().withColumnFamilies(asList(
+                ColumnFamilySettings.newInstance("state").withPrefixBloom(true),
+                ColumnFamilySettings.newInstance("journal").withCompaction(CompactionStyle.UNIVERSAL)));
+
+        RocksDbDataSource dataSource = new RocksDbDataSource("test-families");
+        dataSource.init(settings);
+        dataSource.reset();
+
+        assertTrue(dataSource.hasColumnFamilies());
+        assertTrue(dataSource.hasColumnFamily("state"));
+        assertFalse(dataSource.hasColumnFamily("block"));
+        assertEquals(0, dataSource.getColumnFamilyTag("block"));
+
+        byte[] key = randomBytes(32);
+        byte[] v1 = randomBytes(32), v2 = randomBytes(32), v3 = randomBytes(32);
+
+        // single batch writes to all the families
+        BatchSource<byte[], byte[]> families = dataSource.columnFamiliesSource();
+        Map<byte[], byte[]> batch = new HashMap<>();
+        batch.put(merge(new byte[] {dataSource.getColumnFamilyTag("state")}, key), v1);
+        batch.put(merge(new byte[] {dataSource.getColumnFamilyTag("journal")}, key), v2);
+        batch.put(merge(new byte[] {dataSource.getColumnFamilyTag("block")}, key), v3);
+        families.updateBatch(batch);
+
+        DbSource<byte[]> state = dataSource.getColumnFamily("state");
+        DbSource<byte[]> journal = dataSource.getColumnFamily("journal");
+        assertArrayEquals(v1, state.get(key));
+        assertArrayEquals(v1, state.prefixLookup(key, NodeKeyCompositor.PREFIX_BYTES));
+        assertArrayEquals(v2, journal.get(key));
+        assertArrayEquals(v3, dataSource.get(key));
+        assertArrayEquals(v1, families.get(merge(new byte[] {dataSource.getColumnFamilyTag("state")}, key)));
+        assertEquals(1, state.keys().size());
+        assertEquals(1, dataSource.keys().size());
+
+        journal.delete(key);
+        assertNull(journal.get(key));
+        assertArrayEquals(v1, state.get(key));
+
+        // families survive reopening
+        dataSource.close();
+        dataSource.init(settings);
+        assertArrayEquals(v1, dataSource.getColumnFamily("state").get(key));
+        assertArrayEquals(v3, dataSource.get(key));
+
+        dataSource.close();
+    }
+
+    @Test
+    public void testSingleFamilyLayoutKept() {
+        RocksDbDataSource dataSource = new RocksDbDataSource("test-families");
+        dataSource.reset();
+
+        byte[] key = randomBytes(32);
+        dataSource.put(key, key);
+        dataSource.close();
+
+        dataSource.init(DbSettings.newInstance().withColumnFamilies(
+                singletonList(ColumnFamilySettings.newInstance("state"))));
+
+        assertFalse(dataSource.hasColumnFamilies());
+        assertArrayEquals(key, dataSource.get(key));
+
+        dataSource.close();
+    }
+
+    @Test
+    public void testFamiliesLayoutKept() {
+        DbSettings settings = DbSettings.newInstance().withColumnFamilies(
+                singletonList(ColumnFamilySettings.newInstance("state")));
+
+        RocksDbDataSource dataSource = new RocksDbDataSource("test-families");
+        dataSource.init(settings);
+        dataSource.reset();
+
+        byte[] key = randomBytes(32);
+        dataSource.getColumnFamily("state").put(key, key);
+        dataSource.close();
+
+        // column families option is disabled
+        dataSource.init(DbSettings.DEFAULT);
+
+        assertTrue(dataSource.hasColumnFamilies());
+        assertArrayEquals(key, dataSource.getColumnFamily("state").get(key));
+
+        dataSource.close();
+    }
+
+    @Test
+    public void testGetAll() {
+        DbSettings settings = DbSettings.newInstance().withColumnFamilies(
+                singletonList(ColumnFamilySettings.newInstance("state").withPrefixBloom(true)));
+
+        RocksDbDataSource dataSource = new RocksDbDataSource("test-families");
+        dataSource.init(settings);
+        dataSource.reset();
+
+        Map<byte[], byte[]> batch = createBatch(100);
+        dataSource.updateBatch(batch);
+        dataSource.getColumnFamily("state").updateBatch(batch);
+
+        List<byte[]> keys = new ArrayList<>(batch.keySet());
+        keys.add(randomBytes(32));
+
+        for (Map<byte[], byte[]> ret : asList(
+                dataSource.getAll(keys),
+                dataSource.prefixLookupAll(keys, NodeKeyCompositor.PREFIX_BYTES),
+                dataSource.getColumnFamily("state").getAll(keys),
+                dataSource.getColumnFamily("state").prefixLookupAll(keys, NodeKeyCompositor.PREFIX_BYTES))) {
+
+            assertEquals(batch.size(), ret.size());
+            for (byte[] key : batch.keySet()) {
+                assertArrayEquals(batch.get(key), ret.get(key));
+            }
+        }
+
+        byte tag = dataSource.getColumnFamilyTag("state");
+        Map<byte[], byte[]> tagged = new HashMap<>();
+        for (byte[] key : keys) {
+            tagged.put(merge(new byte[] {tag}, key), key);
+        }
+        Map<byte[], byte[]> ret = dataSource.columnFamiliesSource().getAll(tagged.keySet());
+        assertEquals(batch.size(), ret.size());
+        for (Map.Entry<byte[], byte[]> e : ret.entrySet()) {
+            assertArrayEquals(batch.get(tagged.get(e.getKey())), e.getValue());
+        }
+
+        dataSource.close();
+    }
+
+    @Test
+    public void testPrefixLookupWithoutPrefixBloom() {
+        DbSettings settings = DbSettings.newInstance().withColumnFamilies(
+                singletonList(ColumnFamilySettings.newInstance("state").withPrefixBloom(false)));
+
+        RocksDbDataSource dataSource = new RocksDbDataSource("test-families");
+        dataSource.init(settings);
+        dataSource.reset();
+
+        byte[] k1 = Hex.decode("a9539c810cc2e8fa20785bdd78ec36cc1dab4b41f0d531e80a5e5fd25c3037ee");
+        byte[] k2 = Hex.decode("b25e1b5be78dbadf6c4e817c6d170bbb47e9916f8f6cc4607c5f3819ce98497b");
+        byte[] missing = Hex.decode("a9539c810cc2e8fa20785bdd78ec36c000000000000000000000000000000000");
+
+        DbSource<byte[]> state = dataSource.getColumnFamily("state");
+        state.put(k1, k1);
+        state.put(k2, k2);
+
+        assertArrayEquals(k1, state.prefixLookup(k1, NodeKeyCompositor.PREFIX_BYTES));
+        assertNull(state.prefixLookup(missing, NodeKeyCompositor.PREFIX_BYTES));
+
+        Map<byte[], byte[]> ret = state.prefixLookupAll(asList(k1, missing), NodeKeyCompositor.PREFIX_BYTES);
+        assertEquals(1, ret.size());
+        assertArrayEquals(k1, ret.get(k1));
+
+        dataSource.close();
+    }
+
+    private static Map<byte[], byte[]> createBatch(int batchSize) {
+        HashMap<byte[], byte[]> result = new HashMap<>();
+        for (int i = 0; i < batchSize; i++) {
+            result.put(randomBytes(32), randomBytes(32));
+        }
+        return result;
+    }
+}
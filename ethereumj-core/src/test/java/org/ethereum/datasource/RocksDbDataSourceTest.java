@@ -18,14 +18,20 @@
 package org.ethereum.datasource;
 
 import org.ethereum.datasource.rocksdb.RocksDbDataSource;
+import org.ethereum.util.ByteUtil;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.spongycastle.util.encoders.Hex;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import static org.ethereum.TestUtils.randomBytes;
+import static org.ethereum.crypto.HashUtil.sha3;
 import static org.junit.Assert.*;
 
 @Ignore
@@ -131,6 +137,62 @@ public class RocksDbDataSourceTest {
         dataSource.close();
     }
 
+    @Ignore
+    @Test
+    public void testNodeDataBatchReadPerformance() {
+        RocksDbDataSource dataSource = new RocksDbDataSource("test");
+        dataSource.reset();
+
+        // the same chain as CommonConfig.trieNodeSource() has
+        Source<byte[], byte[]> nodeSource = new XorDataSource<>(
+                new PrefixLookupSource<>(dataSource, NodeKeyCompositor.PREFIX_BYTES), sha3("state".getBytes()));
+
+        final int nodesCount = 1_000_000;
+        List<byte[]> nodeKeys = new ArrayList<>(nodesCount);
+        for (int i = 0; i < nodesCount; i += 10_000) {
+            Map<byte[], byte[]> batch = new HashMap<>();
+            for (int j = 0; j < 10_000; j++) {
+                byte[] key = randomBytes(32);
+                nodeKeys.add(key);
+                batch.put(ByteUtil.xorAlignRight(key, sha3("state".getBytes())), randomBytes(100));
+            }
+            dataSource.updateBatch(batch);
+        }
+        // drops memtable, thus nodes are read from the tables
+        dataSource.close();
+        dataSource.init();
+
+        // a batch of nodes requested by a peer with single GetNodeData message
+        final int requestSize = 384;
+        final int requests = 2_000;
+        Random rnd = new Random();
+        List<List<byte[]>> requestKeys = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            List<byte[]> keys = new ArrayList<>(requestSize);
+            for (int j = 0; j < requestSize; j++) keys.add(nodeKeys.get(rnd.nextInt(nodesCount)));
+            requestKeys.add(keys);
+        }
+
+        for (int round = 0; round < 3; round++) {
+            long s = System.nanoTime();
+            for (List<byte[]> keys : requestKeys) {
+                for (byte[] key : keys) assertNotNull(nodeSource.get(key));
+            }
+            long singleTime = System.nanoTime() - s;
+
+            s = System.nanoTime();
+            for (List<byte[]> keys : requestKeys) {
+                assertEquals(new HashSet<>(keys).size(), nodeSource.getAll(keys).size());
+            }
+            long batchTime = System.nanoTime() - s;
+
+            System.out.printf("%d requests of %d nodes: single gets %d ms, batch reads %d ms%n",
+                    requests, requestSize, singleTime / 1_000_000, batchTime / 1_000_000);
+        }
+
+        dataSource.close();
+    }
+
     private static Map<byte[], byte[]> createBatch(int batchSize) {
         HashMap<byte[], byte[]> result = new HashMap<>();
         for (int i = 0; i < batchSize; i++) {
@@ -22,6 +22,10 @@ import org.ethereum.vm.DataWord;
 import org.junit.Test;
 import org.spongycastle.util.encoders.Hex;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import static org.ethereum.crypto.HashUtil.sha3;
 import static org.ethereum.util.ByteUtil.longToBytes;
 import static org.junit.Assert.assertEquals;
@@ -105,4 +109,25 @@ public class SourceCodecTest {
         src.put(intToDataWordKey(0), intToDataWord(12345));
         assertEquals(str(intToDataWord(12345)), str(src.get(intToDataWordKey(0))));
     }
+
+    @Test
+    public void testGetAll() {
+        Source<byte[], byte[]> parentSrc = new HashMapDB<>();
+        Source<byte[], byte[]> xorSrc = new XorDataSource<>(parentSrc, sha3("xor".getBytes()));
+        SourceCodec<DataWord, DataWord, byte[], byte[]> src = new SourceCodec<>(xorSrc,
+                Serializers.StorageKeySerializer, Serializers.StorageValueSerializer);
+
+        List<DataWord> keys = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            DataWord key = intToDataWordKey(i);
+            if (i % 2 == 0) src.put(key, intToDataWord(i));
+            keys.add(key);
+        }
+
+        Map<DataWord, DataWord> ret = src.getAll(keys);
+        assertEquals(50, ret.size());
+        for (int i = 0; i < 100; ++i) {
+            assertEquals(i % 2 == 0 ? str(intToDataWord(i)) : null, str(ret.get(keys.get(i))));
+        }
+    }
 }
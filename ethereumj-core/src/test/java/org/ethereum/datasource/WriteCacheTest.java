@@ -22,6 +22,11 @@ import org.ethereum.vm.DataWord;
 import org.junit.Test;
 import org.spongycastle.util.encoders.Hex;
 
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+
 import static org.ethereum.crypto.HashUtil.sha3;
 import static org.ethereum.util.ByteUtil.longToBytes;
 import static org.junit.Assert.*;
@@ -44,10 +49,14 @@ public class WriteCacheTest {
         return Hex.toHexString((byte[]) obj);
     }
 
+    protected WriteCache<byte[], byte[]> createCache(Source<byte[], byte[]> src, WriteCache.CacheType cacheType) {
+        return new WriteCache.BytesKey<>(src, cacheType);
+    }
+
     @Test
     public void testSimple() {
         Source<byte[], byte[]> src = new HashMapDB<>();
-        WriteCache<byte[], byte[]> writeCache = new WriteCache.BytesKey<>(src, WriteCache.CacheType.SIMPLE);
+        WriteCache<byte[], byte[]> writeCache = createCache(src, WriteCache.CacheType.SIMPLE);
         for (int i = 0; i < 10_000; ++i) {
             writeCache.put(intToKey(i), intToValue(i));
         }
@@ -87,7 +96,7 @@ public class WriteCacheTest {
     public void testCounting() {
         Source<byte[], byte[]> parentSrc = new HashMapDB<>();
         Source<byte[], byte[]> src = new CountingBytesSource(parentSrc);
-        WriteCache<byte[], byte[]> writeCache = new WriteCache.BytesKey<>(src, WriteCache.CacheType.COUNTING);
+        WriteCache<byte[], byte[]> writeCache = createCache(src, WriteCache.CacheType.COUNTING);
         for (int i = 0; i < 100; ++i) {
             for (int j = 0; j <= i; ++j) {
                 writeCache.put(intToKey(i), intToValue(i));
@@ -134,7 +143,7 @@ public class WriteCacheTest {
     @Test
     public void testWithSizeEstimator() {
         Source<byte[], byte[]> src = new HashMapDB<>();
-        WriteCache<byte[], byte[]> writeCache = new WriteCache.BytesKey<>(src, WriteCache.CacheType.SIMPLE);
+        WriteCache<byte[], byte[]> writeCache = createCache(src, WriteCache.CacheType.SIMPLE);
         writeCache.withSizeEstimators(MemSizeEstimator.ByteArrayEstimator, MemSizeEstimator.ByteArrayEstimator);
         assertEquals(0, writeCache.estimateCacheSize());
 
@@ -152,4 +161,22 @@ public class WriteCacheTest {
         writeCache.flush();
         assertEquals(0, writeCache.estimateCacheSize());
     }
+
+    @Test
+    public void testGetAll() {
+        Source<byte[], byte[]> src = new HashMapDB<>();
+        WriteCache<byte[], byte[]> writeCache = createCache(src, WriteCache.CacheType.SIMPLE);
+        src.put(intToKey(0), intToValue(0));
+        src.put(intToKey(1), intToValue(1));
+        writeCache.put(intToKey(2), intToValue(2));
+        writeCache.delete(intToKey(1));
+
+        List<byte[]> keys = asList(intToKey(0), intToKey(1), intToKey(2), intToKey(3));
+        Map<byte[], byte[]> ret = writeCache.getAll(keys);
+
+        // Not cached value is read from the source, deleted and absent values are not returned
+        assertEquals(2, ret.size());
+        assertEquals(str(intToValue(0)), str(ret.get(keys.get(0))));
+        assertEquals(str(intToValue(2)), str(ret.get(keys.get(2))));
+    }
 }
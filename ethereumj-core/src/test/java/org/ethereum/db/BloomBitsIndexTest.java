@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db;
+
+import org.ethereum.core.Block;
+import org.ethereum.core.BlockHeader;
+import org.ethereum.core.Bloom;
+import org.ethereum.core.Transaction;
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.ethereum.listener.LogFilter;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.ethereum.db.BloomBitsIndex.SECTION_SIZE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BloomBitsIndexTest {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private static final byte[] ADDRESS_A = HashUtil.calcNewAddr(new byte[20], new byte[] {1});
+    private static final byte[] ADDRESS_B = HashUtil.calcNewAddr(new byte[20], new byte[] {2});
+    private static final byte[] TOPIC = sha3("Transfer(address,address,uint256)".getBytes());
+
+    private static byte[] createBloom(long number, Random rnd) {
+        Bloom bloom = new Bloom();
+        if (number % 7 == 0) bloom.or(Bloom.create(sha3(ADDRESS_A)));
+        if (number % 11 == 0) bloom.or(Bloom.create(sha3(ADDRESS_B)));
+        if (number % 13 == 0) bloom.or(Bloom.create(sha3(TOPIC)));
+        // unrelated logs
+        for (int i = 0; i < rnd.nextInt(4); i++) {
+            byte[] rndAddress = new byte[20];
+            rnd.nextBytes(rndAddress);
+            bloom.or(Bloom.create(sha3(rndAddress)));
+        }
+        return bloom.getData();
+    }
+
+    private static List<Long> matchBlooms(LogFilter filter, List<byte[]> blooms, long from, long to) {
+        List<Long> ret = new ArrayList<>();
+        for (long i = from; i <= to; i++) {
+            if (i >= blooms.size() || filter.matchBloom(new Bloom(blooms.get((int) i)))) {
+                ret.add(i);
+            }
+        }
+        return ret;
+    }
+
+    private static List<LogFilter> createFilters() {
+        List<LogFilter> ret = new ArrayList<>();
+        ret.add(new LogFilter().withContractAddress(ADDRESS_A));
+        ret.add(new LogFilter().withContractAddress(ADDRESS_A, ADDRESS_B));
+        ret.add(new LogFilter().withTopic(TOPIC));
+        ret.add(new LogFilter().withContractAddress(ADDRESS_B).withTopic(TOPIC));
+        ret.add(new LogFilter());
+        return ret;
+    }
+
+    @Test
+    public void testCandidateBlocks() {
+        Random rnd = new Random(0);
+        BloomBitsIndex index = new BloomBitsIndex(new HashMapDB<>());
+
+        List<byte[]> blooms = new ArrayList<>();
+        for (int i = 0; i < SECTION_SIZE * 2 + 100; i++) {
+            blooms.add(createBloom(i, rnd));
+        }
+        index.addSection(0, blooms.subList(0, SECTION_SIZE));
+        index.addSection(1, blooms.subList(SECTION_SIZE, SECTION_SIZE * 2));
+        assertEquals(2, index.getSectionsCount());
+
+        long[][] ranges = {{0, SECTION_SIZE * 2 - 1}, {100, 200}, {SECTION_SIZE - 10, SECTION_SIZE + 10},
+                {SECTION_SIZE * 2 - 20, SECTION_SIZE * 2 + 20}};
+
+        for (LogFilter filter : createFilters()) {
+            for (long[] range : ranges) {
+                // not indexed blocks are always candidates
+                List<Long> expected = matchBlooms(filter, blooms.subList(0, SECTION_SIZE * 2), range[0], range[1]);
+                assertEquals(expected, index.getCandidateBlocks(filter, range[0], range[1]));
+            }
+        }
+
+        List<Long> candidates = index.getCandidateBlocks(new LogFilter().withContractAddress(ADDRESS_A).withTopic(TOPIC),
+                0, SECTION_SIZE * 2 - 1);
+        for (long i = 0; i < SECTION_SIZE * 2; i += 7 * 13) {
+            assertTrue(candidates.contains(i));
+        }
+    }
+
+    @Test
+    public void testReopen() {
+        HashMapDB<byte[]> db = new HashMapDB<>();
+        BloomBitsIndex index = new BloomBitsIndex(db);
+
+        Random rnd = new Random(0);
+        List<byte[]> blooms = new ArrayList<>();
+        for (int i = 0; i < SECTION_SIZE; i++) {
+            blooms.add(createBloom(i, rnd));
+        }
+        index.addSection(0, blooms);
+
+        index = new BloomBitsIndex(db);
+        assertEquals(1, index.getSectionsCount());
+        LogFilter filter = new LogFilter().withContractAddress(ADDRESS_A);
+        assertEquals(matchBlooms(filter, blooms, 0, SECTION_SIZE - 1), index.getCandidateBlocks(filter, 0, SECTION_SIZE - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSectionGap() {
+        BloomBitsIndex index = new BloomBitsIndex(new HashMapDB<>());
+        List<byte[]> blooms = new ArrayList<>();
+        for (int i = 0; i < SECTION_SIZE; i++) {
+            blooms.add(new byte[256]);
+        }
+        index.addSection(1, blooms);
+    }
+
+    @Test
+    public void testIndexer() {
+        IndexedBlockStore blockStore = new IndexedBlockStore();
+        blockStore.init(new HashMapDB<byte[]>(), new HashMapDB<byte[]>());
+
+        int confirmations = 10;
+        Random rnd = new Random(0);
+        List<byte[]> blooms = new ArrayList<>();
+        Block parent = null;
+        BigInteger td = BigInteger.ZERO;
+        for (int i = 0; i < SECTION_SIZE + confirmations - 1; i++) {
+            byte[] bloom = createBloom(i, rnd);
+            BlockHeader header = new BlockHeader(parent == null ? new byte[32] : parent.getHash(), EMPTY, EMPTY,
+                    bloom, new byte[] {1}, i, EMPTY, 0L, 0L, EMPTY, EMPTY, EMPTY);
+            header.setTransactionsRoot(HashUtil.EMPTY_TRIE_HASH);
+            header.setReceiptsRoot(HashUtil.EMPTY_TRIE_HASH);
+            header.setStateRoot(HashUtil.EMPTY_TRIE_HASH);
+            parent = new Block(header, new ArrayList<Transaction>(), new ArrayList<BlockHeader>());
+            td = td.add(BigInteger.ONE);
+            blockStore.saveBlock(parent, td, true);
+            blooms.add(bloom);
+        }
+
+        BloomBitsIndex index = new BloomBitsIndex(new HashMapDB<>());
+        BloomBitsIndexer indexer = new BloomBitsIndexer(index, blockStore, confirmations);
+
+        // not confirmed yet
+        indexer.update();
+        assertEquals(0, index.getSectionsCount());
+
+        byte[] bloom = createBloom(SECTION_SIZE + confirmations - 1, rnd);
+        BlockHeader header = new BlockHeader(parent.getHash(), EMPTY, EMPTY, bloom, new byte[] {1},
+                parent.getNumber() + 1, EMPTY, 0L, 0L, EMPTY, EMPTY, EMPTY);
+        header.setTransactionsRoot(HashUtil.EMPTY_TRIE_HASH);
+        header.setReceiptsRoot(HashUtil.EMPTY_TRIE_HASH);
+        header.setStateRoot(HashUtil.EMPTY_TRIE_HASH);
+        blockStore.saveBlock(new Block(header, new ArrayList<Transaction>(), new ArrayList<BlockHeader>()),
+                td.add(BigInteger.ONE), true);
+        blooms.add(bloom);
+
+        indexer.update();
+        assertEquals(1, index.getSectionsCount());
+
+        for (LogFilter filter : createFilters()) {
+            assertEquals(matchBlooms(filter, blooms.subList(0, SECTION_SIZE), 0, blooms.size() - 1),
+                    index.getCandidateBlocks(filter, 0, blooms.size() - 1));
+        }
+
+        indexer.close();
+    }
+
+    @Ignore
+    @Test
+    public void testQueryPerformance() {
+        int blocks = 1_000_000;
+        int sections = blocks / SECTION_SIZE;
+        Random rnd = new Random(0);
+        BloomBitsIndex index = new BloomBitsIndex(new HashMapDB<>());
+        // 1M of blooms are kept as the headers would be kept by the block store
+        HashMapDB<byte[]> headerBlooms = new HashMapDB<>();
+
+        long t = System.currentTimeMillis();
+        for (int section = 0; section < sections; section++) {
+            List<byte[]> blooms = new ArrayList<>(SECTION_SIZE);
+            for (int i = 0; i < SECTION_SIZE; i++) {
+                long number = (long) section * SECTION_SIZE + i;
+                byte[] bloom = createBloom(number, rnd);
+                blooms.add(bloom);
+                headerBlooms.put(sha3(BigInteger.valueOf(number).toByteArray()), bloom);
+            }
+            index.addSection(section, blooms);
+        }
+        System.out.printf("Indexed %d blocks in %d ms%n", sections * SECTION_SIZE, System.currentTimeMillis() - t);
+
+        long to = (long) sections * SECTION_SIZE - 1;
+        for (LogFilter filter : createFilters()) {
+            t = System.currentTimeMillis();
+            int scanned = 0;
+            for (long number = 0; number <= to; number++) {
+                byte[] bloom = headerBlooms.get(sha3(BigInteger.valueOf(number).toByteArray()));
+                if (filter.matchBloom(new Bloom(bloom))) scanned++;
+            }
+            long scanTime = System.currentTimeMillis() - t;
+
+            t = System.currentTimeMillis();
+            List<Long> candidates = index.getCandidateBlocks(filter, 0, to);
+            long indexTime = System.currentTimeMillis() - t;
+
+            assertEquals(scanned, candidates.size());
+            System.out.printf("Candidates: %d, scan: %d ms, bloom bits: %d ms%n", scanned, scanTime, indexTime);
+        }
+    }
+}
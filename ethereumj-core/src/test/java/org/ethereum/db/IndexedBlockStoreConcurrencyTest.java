@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db;
+
+import org.ethereum.core.Block;
+import org.ethereum.core.BlockHeader;
+import org.ethereum.core.Transaction;
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks {@link IndexedBlockStore} reads running concurrently with import and rebranching
+ */
+public class IndexedBlockStoreConcurrencyTest {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private static Block createBlock(Block parent, int branch) {
+        byte[] parentHash = parent == null ? new byte[32] : parent.getHash();
+        long number = parent == null ? 0 : parent.getNumber() + 1;
+        BlockHeader header = new BlockHeader(parentHash, EMPTY, EMPTY, EMPTY, new byte[] {1}, number,
+                EMPTY, 0L, 0L, new byte[] {(byte) branch}, EMPTY, EMPTY);
+        header.setTransactionsRoot(HashUtil.EMPTY_TRIE_HASH);
+        header.setReceiptsRoot(HashUtil.EMPTY_TRIE_HASH);
+        header.setStateRoot(HashUtil.EMPTY_TRIE_HASH);
+        return new Block(header, new ArrayList<Transaction>(), new ArrayList<BlockHeader>());
+    }
+
+    private static List<Block> createChain(Block parent, int length, int branch) {
+        List<Block> ret = new ArrayList<>();
+        for (int i = 0; i < length; i++) {
+            parent = createBlock(parent, branch);
+            ret.add(parent);
+        }
+        return ret;
+    }
+
+    private static IndexedBlockStore createStore() {
+        IndexedBlockStore store = new IndexedBlockStore();
+        store.init(new HashMapDB<byte[]>(), new HashMapDB<byte[]>());
+        return store;
+    }
+
+    private static BigInteger td(Block block) {
+        return BigInteger.valueOf(block.getNumber() + 1);
+    }
+
+    @Test
+    public void testReBranch() {
+        IndexedBlockStore store = createStore();
+
+        List<Block> main = createChain(null, 21, 0);
+        for (Block block : main) store.saveBlock(block, td(block), true);
+
+        // fork from #10 up to #25
+        List<Block> fork = createChain(main.get(10), 15, 1);
+        for (Block block : fork) store.saveBlock(block, td(block).add(BigInteger.ONE), false);
+
+        assertArrayEquals(main.get(20).getHash(), store.getBestBlock().getHash());
+        assertEquals(25, store.getMaxNumber());
+
+        // levels above the main chain have no main chain blocks
+        assertNull(store.getChainBlockByNumber(21));
+        assertEquals(td(main.get(20)), store.getTotalDifficulty());
+
+        store.reBranch(fork.get(fork.size() - 1));
+
+        assertArrayEquals(fork.get(fork.size() - 1).getHash(), store.getBestBlock().getHash());
+        assertEquals(td(fork.get(fork.size() - 1)).add(BigInteger.ONE), store.getTotalDifficulty());
+        for (int i = 0; i <= 25; i++) {
+            Block expected = i <= 10 ? main.get(i) : fork.get(i - 11);
+            assertArrayEquals(expected.getHash(), store.getChainBlockByNumber(i).getHash());
+            assertArrayEquals(expected.getHash(), store.getBlockHashByNumber(i));
+        }
+        assertEquals(2, store.getBlocksByNumber(15).size());
+
+        // and back
+        store.reBranch(main.get(20));
+
+        assertArrayEquals(main.get(20).getHash(), store.getBestBlock().getHash());
+        for (int i = 0; i <= 20; i++) {
+            assertArrayEquals(main.get(i).getHash(), store.getChainBlockByNumber(i).getHash());
+        }
+        assertNull(store.getChainBlockByNumber(21));
+        assertEquals(td(fork.get(0)).add(BigInteger.ONE), store.getTotalDifficultyForHash(fork.get(0).getHash()));
+    }
+
+    @Test
+    public void testReadsWhileImporting() throws Exception {
+        runImportWithReaders(3000, 4, false);
+    }
+
+    @Ignore
+    @Test
+    public void testReadPerformance() throws Exception {
+        for (int threads : new int[] {1, 2, 4, 8}) {
+            runImportWithReaders(20000, threads, true);
+        }
+    }
+
+    /**
+     * Imports the chain switching to a fork every 100 blocks while reader threads
+     * check that main chain blocks are returned consistently
+     */
+    private void runImportWithReaders(int blocksCount, int readersCount, boolean printStats) throws Exception {
+        IndexedBlockStore store = createStore();
+        Block genesis = createBlock(null, 0);
+        store.saveBlock(genesis, td(genesis), true);
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        AtomicLong reads = new AtomicLong();
+        CountDownLatch finished = new CountDownLatch(readersCount);
+
+        for (int t = 0; t < readersCount; t++) {
+            new Thread(() -> {
+                try {
+                    long cnt = 0;
+                    while (!done.get()) {
+                        Block best = store.getBestBlock();
+                        assertNotNull(best);
+                        long number = (best.getNumber() * (cnt % 64)) / 64;
+                        Block block = store.getChainBlockByNumber(number);
+                        if (block != null) {
+                            assertEquals(number, block.getNumber());
+                            assertTrue(store.isBlockExist(block.getHash()));
+                            assertEquals(td(block).signum(), store.getTotalDifficultyForHash(block.getHash()).signum());
+                        }
+                        assertFalse(store.getListHashesEndWith(best.getHash(), 16).isEmpty());
+                        cnt += 4;
+                    }
+                    reads.addAndGet(cnt);
+                } catch (Throwable e) {
+                    error.compareAndSet(null, e);
+                } finally {
+                    finished.countDown();
+                }
+            }, "BlockStoreReader-" + t).start();
+        }
+
+        long s = System.nanoTime();
+        Block parent = genesis;
+        while (parent.getNumber() < blocksCount) {
+            List<Block> main = createChain(parent, 100, 0);
+            List<Block> fork = createChain(parent, 50, 1);
+            for (Block block : fork) store.saveBlock(block, td(block), false);
+            for (Block block : main) store.saveBlock(block, td(block), true);
+            // imported fork becomes the main chain and back again
+            store.reBranch(fork.get(fork.size() - 1));
+            store.reBranch(main.get(main.size() - 1));
+            parent = main.get(main.size() - 1);
+        }
+        long importTime = System.nanoTime() - s;
+
+        done.set(true);
+        finished.await();
+        if (error.get() != null) throw new AssertionError("Reader failed", error.get());
+
+        for (long i = 0; i <= blocksCount; i++) {
+            assertEquals(i, store.getChainBlockByNumber(i).getNumber());
+        }
+
+        if (printStats) {
+            System.out.printf("Readers: %d, import: %d blocks/s, reads: %d ops/s%n", readersCount,
+                    blocksCount * 1_000_000_000L / importTime, reads.get() * 1_000_000_000L / importTime);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db;
+
+import org.ethereum.core.AccountState;
+import org.ethereum.core.Repository;
+import org.ethereum.datasource.NoDeleteSource;
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.ethereum.vm.DataWord;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.ethereum.util.ByteUtil.intToBytes;
+import static org.junit.Assert.*;
+
+public class StateSnapshotTest {
+
+    private static final int ACCOUNTS = 30;
+    private static final int SLOTS = 20;
+
+    private static byte[] address(int i) {
+        return sha3(intToBytes(i));
+    }
+
+    /**
+     * Applies the same pseudo-random changes for the same seed
+     */
+    private static void applyBlock(Repository repo, long seed) {
+        Random rnd = new Random(seed);
+        for (int t = 0; t < 3; t++) {
+            Repository track = repo.startTracking();
+            for (int i = 0; i < 10; i++) {
+                byte[] addr = address(rnd.nextInt(ACCOUNTS));
+                int op = rnd.nextInt(20);
+                if (op == 0) {
+                    // the track can't use the account after deleting it
+                    track.delete(addr);
+                    break;
+                } else if (op < 8) {
+                    track.addBalance(addr, BigInteger.valueOf(1 + rnd.nextInt(100)));
+                } else {
+                    track.addStorageRow(addr, DataWord.of(rnd.nextInt(SLOTS)), DataWord.of(rnd.nextInt(4)));
+                }
+            }
+            track.commit();
+        }
+        repo.commit();
+    }
+
+    private static void assertSameState(Repository expected, Repository actual) {
+        for (int i = 0; i < ACCOUNTS; i++) {
+            byte[] addr = address(i);
+            AccountState expectedState = expected.getAccountState(addr);
+            AccountState actualState = actual.getAccountState(addr);
+            assertEquals(expectedState == null, actualState == null);
+            if (expectedState == null) continue;
+            assertArrayEquals(expectedState.getEncoded(), actualState.getEncoded());
+            for (int k = 0; k < SLOTS; k++) {
+                assertEquals(expected.getStorageValue(addr, DataWord.of(k)), actual.getStorageValue(addr, DataWord.of(k)));
+            }
+        }
+    }
+
+    /**
+     * The repository without trie nodes, can read only from the snapshot
+     */
+    private static Repository snapshotOnly(StateSnapshot snapshot, byte[] root) {
+        return new RepositoryRoot(new HashMapDB<byte[]>(), root, snapshot);
+    }
+
+    @Test
+    public void testChainAndForks() {
+        HashMapDB<byte[]> snapshotDS = new HashMapDB<>();
+        StateSnapshot snapshot = new StateSnapshot(snapshotDS, 8);
+        // old states are not pruned
+        Repository repo = new RepositoryRoot(new NoDeleteSource<>(new HashMapDB<byte[]>()), null, snapshot);
+        Repository trieRepo = new RepositoryRoot(new NoDeleteSource<>(new HashMapDB<byte[]>()));
+
+        List<byte[]> roots = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            applyBlock(repo, i);
+            applyBlock(trieRepo, i);
+            assertArrayEquals(trieRepo.getRoot(), repo.getRoot());
+            roots.add(repo.getRoot());
+
+            assertSameState(trieRepo, snapshotOnly(snapshot, repo.getRoot()));
+        }
+        assertEquals(8, snapshot.getLayersCount());
+        assertArrayEquals(roots.get(21), snapshot.getDiskRoot());
+        assertNull(snapshot.getLayer(roots.get(20)));
+
+        // fork from the 25th block state
+        Repository forkRepo = repo.getSnapshotTo(roots.get(25));
+        Repository forkTrieRepo = trieRepo.getSnapshotTo(roots.get(25));
+        for (int i = 100; i < 103; i++) {
+            applyBlock(forkRepo, i);
+            applyBlock(forkTrieRepo, i);
+            assertArrayEquals(forkTrieRepo.getRoot(), forkRepo.getRoot());
+        }
+        assertSameState(forkTrieRepo, snapshotOnly(snapshot, forkRepo.getRoot()));
+        assertSameState(trieRepo, snapshotOnly(snapshot, repo.getRoot()));
+        assertEquals(11, snapshot.getLayersCount());
+
+        // the main chain goes on and the fork is dropped once the fork point is merged to the disk
+        for (int i = 30; i < 35; i++) {
+            applyBlock(repo, i);
+            applyBlock(trieRepo, i);
+        }
+        assertSameState(trieRepo, snapshotOnly(snapshot, repo.getRoot()));
+        assertArrayEquals(roots.get(26), snapshot.getDiskRoot());
+        assertNull(snapshot.getLayer(forkRepo.getRoot()));
+        assertEquals(8, snapshot.getLayersCount());
+
+        // the stale fork state is still readable from the trie
+        assertSameState(forkTrieRepo, forkRepo.getSnapshotTo(forkRepo.getRoot()));
+
+        // diff layers are restored
+        StateSnapshot restored = new StateSnapshot(snapshotDS, 8);
+        assertEquals(8, restored.getLayersCount());
+        assertArrayEquals(roots.get(26), restored.getDiskRoot());
+        assertSameState(trieRepo, snapshotOnly(restored, repo.getRoot()));
+    }
+
+    @Test
+    public void testDeleteAndCreateAccount() {
+        StateSnapshot snapshot = new StateSnapshot(new HashMapDB<byte[]>(), 2);
+        Repository repo = new RepositoryRoot(new HashMapDB<byte[]>(), null, snapshot);
+
+        byte[] addr = address(1);
+        Repository track = repo.startTracking();
+        for (int i = 1; i <= 10; i++) {
+            track.addStorageRow(addr, DataWord.of(i), DataWord.of(i));
+        }
+        track.commit();
+        repo.commit();
+
+        // deleted and created again within the block
+        track = repo.startTracking();
+        track.delete(addr);
+        track.commit();
+        track = repo.startTracking();
+        track.addStorageRow(addr, DataWord.of(20), DataWord.of(20));
+        track.commit();
+        repo.commit();
+
+        // merge all the layers to the disk
+        for (int i = 0; i < 3; i++) {
+            track = repo.startTracking();
+            track.addBalance(address(2), BigInteger.ONE);
+            track.commit();
+            repo.commit();
+        }
+        assertArrayEquals(repo.getRoot(), snapshot.getLayer(repo.getRoot()).getRoot());
+
+        Repository snapshotOnly = snapshotOnly(snapshot, repo.getRoot());
+        for (int i = 1; i <= 10; i++) {
+            assertNull(snapshotOnly.getStorageValue(addr, DataWord.of(i)));
+        }
+        assertEquals(DataWord.of(20), snapshotOnly.getStorageValue(addr, DataWord.of(20)));
+        assertEquals(BigInteger.valueOf(3), snapshotOnly.getBalance(address(2)));
+    }
+
+    @Test
+    public void testStateNotInSnapshot() {
+        HashMapDB<byte[]> stateDS = new HashMapDB<>();
+        StateSnapshot snapshot = new StateSnapshot(new HashMapDB<byte[]>(), 8);
+        Repository trieRepo = new RepositoryRoot(new HashMapDB<byte[]>());
+        applyBlock(trieRepo, 1);
+        Repository noSnapshotRepo = new RepositoryRoot(stateDS);
+        applyBlock(noSnapshotRepo, 1);
+
+        // the state was built without the snapshot, the repository falls back to the trie
+        Repository repo = new RepositoryRoot(stateDS, noSnapshotRepo.getRoot(), snapshot);
+        assertSameState(trieRepo, repo);
+
+        applyBlock(repo, 2);
+        applyBlock(trieRepo, 2);
+        assertArrayEquals(trieRepo.getRoot(), repo.getRoot());
+        assertSameState(trieRepo, repo.getSnapshotTo(repo.getRoot()));
+        assertEquals(0, snapshot.getLayersCount());
+        assertNull(snapshot.getLayer(repo.getRoot()));
+    }
+}
@@ -23,6 +23,8 @@ import org.ethereum.config.net.MainNetConfig;
 import org.ethereum.core.Block;
 import org.ethereum.core.Transaction;
 import org.ethereum.core.TransactionInfo;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.crypto.ECKey;
 import org.ethereum.datasource.inmem.HashMapDB;
 import org.ethereum.util.blockchain.SolidityContract;
 import org.ethereum.util.blockchain.StandaloneBlockchain;
@@ -34,6 +36,7 @@ import org.junit.Test;
 
 import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * Created by Anton Nashatyrev on 08.04.2016.
@@ -116,6 +119,49 @@ public class TransactionStoreTest {
         Assert.assertTrue(Arrays.equals(txInfo.getBlockHash(), b2.getHash()));
     }
 
+    @Test
+    public void blockReceiptsTest() {
+        // receipts are stored per block and transactions included into several fork blocks
+        // are looked up in each of them
+        HashMapDB<byte[]> txDb = new HashMapDB<>();
+        StandaloneBlockchain bc = new StandaloneBlockchain();
+        TransactionStore transactionStore = new TransactionStore(txDb);
+        bc.getBlockchain().withTransactionStore(transactionStore);
+
+        ECKey alice = new ECKey();
+        Block b1 = bc.createBlock();
+        bc.sendEther(alice.getAddress(), BigInteger.valueOf(1000));
+        bc.sendEther(alice.getAddress(), BigInteger.valueOf(2000));
+        Block b2 = bc.createBlock();
+        Transaction tx1 = b2.getTransactionsList().get(0);
+        Transaction tx2 = b2.getTransactionsList().get(1);
+
+        List<TransactionReceipt> receipts = transactionStore.getBlockReceipts(b2.getHash());
+        Assert.assertEquals(2, receipts.size());
+        Assert.assertTrue(transactionStore.getBlockReceipts(b1.getHash()).isEmpty());
+
+        TransactionInfo info2 = transactionStore.get(tx2.getHash(), b2.getHash());
+        Assert.assertEquals(1, info2.getIndex());
+        Assert.assertArrayEquals(receipts.get(1).getEncoded(), info2.getReceipt().getEncoded());
+
+        bc.submitTransaction(tx1);
+        Block b2_ = bc.createForkBlock(b1);
+        Assert.assertEquals(2, transactionStore.get(tx1.getHash()).size());
+        Assert.assertEquals(1, transactionStore.get(tx2.getHash()).size());
+        Assert.assertArrayEquals(b2_.getHash(), transactionStore.get(tx1.getHash(), b2_.getHash()).getBlockHash());
+        Assert.assertNull(transactionStore.get(tx2.getHash(), b2_.getHash()));
+        Assert.assertArrayEquals(b2.getHash(), bc.getBlockchain().getTransactionInfo(tx1.getHash()).getBlockHash());
+
+        // storing the same block again doesn't duplicate lookup entries
+        transactionStore.put(b2, receipts);
+        Assert.assertEquals(2, transactionStore.get(tx1.getHash()).size());
+
+        // reading stored data
+        bc.getBlockchain().flush();
+        TransactionStore txStore = new TransactionStore(txDb);
+        Assert.assertArrayEquals(receipts.get(0).getEncoded(), txStore.get(tx1.getHash()).get(0).getReceipt().getEncoded());
+    }
+
     @Test
     public void backwardCompatibleDbTest() {
         // check that we can read previously saved entries (saved with legacy code)
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db.migrate;
+
+import org.ethereum.datasource.DataSourceArray;
+import org.ethereum.datasource.ObjectDataSource;
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.ethereum.db.IndexedBlockStore;
+import org.ethereum.db.IndexedBlockStore.BlockInfo;
+import org.ethereum.util.ByteUtil;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.*;
+
+public class MigrateBlockIndexFormatTest {
+
+    private static BlockInfo blockInfo(long number, int branch, boolean mainChain) {
+        BlockInfo info = new BlockInfo();
+        info.setHash(sha3(ByteUtil.merge(ByteUtil.longToBytes(number), new byte[] {(byte) branch})));
+        info.setTotalDifficulty(BigInteger.valueOf(number * 100 + branch));
+        info.setMainChain(mainChain);
+        return info;
+    }
+
+    @Test
+    public void testMigrateLegacyIndex() {
+        HashMapDB<byte[]> indexDS = new HashMapDB<>();
+        DataSourceArray<List<BlockInfo>> legacyIndex = new DataSourceArray<>(
+                new ObjectDataSource<>(indexDS, IndexedBlockStore.LEGACY_BLOCK_INFO_SERIALIZER, 0));
+
+        int levels = 25_000;
+        for (int i = 0; i < levels; i++) {
+            List<BlockInfo> level = new ArrayList<>();
+            // a fork on every 10th level
+            if (i % 10 == 0) level.add(blockInfo(i, 1, false));
+            level.add(blockInfo(i, 0, true));
+            legacyIndex.set(i, level);
+        }
+        assertNotEquals(IndexedBlockStore.INDEX_FORMAT_VERSION, indexDS.get(ByteUtil.intToBytes(10))[0]);
+
+        IndexedBlockStore blockStore = new IndexedBlockStore();
+        blockStore.init(indexDS, new HashMapDB<byte[]>());
+
+        // legacy levels are readable prior to migration
+        assertArrayEquals(blockInfo(10, 0, true).getHash(), blockStore.getBlockHashByNumber(10));
+
+        blockStore.load();
+
+        assertArrayEquals(new byte[] {IndexedBlockStore.INDEX_FORMAT_VERSION}, indexDS.get(IndexedBlockStore.INDEX_VERSION_KEY));
+        for (int i = 0; i < levels; i++) {
+            byte[] level = indexDS.get(ByteUtil.intToBytes(i));
+            assertEquals(IndexedBlockStore.INDEX_FORMAT_VERSION, level[0]);
+            assertEquals(1 + (i % 10 == 0 ? 2 : 1) * 65, level.length);
+        }
+        assertEquals(levels - 1, blockStore.getMaxNumber());
+        assertArrayEquals(blockInfo(levels - 1, 0, true).getHash(), blockStore.getBlockHashByNumber(levels - 1));
+        assertEquals(BigInteger.valueOf((levels - 1) * 100), blockStore.getTotalDifficulty());
+
+        List<byte[]> hashes = blockStore.getListHashesStartWith(9_995, 10);
+        assertEquals(10, hashes.size());
+        for (int i = 0; i < hashes.size(); i++) {
+            assertArrayEquals(blockInfo(9_995 + i, 0, true).getHash(), hashes.get(i));
+        }
+        assertEquals(5, blockStore.getListHashesStartWith(levels - 5, 10).size());
+
+        // the second run is a no-op
+        indexDS.put(ByteUtil.intToBytes(0), IndexedBlockStore.LEGACY_BLOCK_INFO_SERIALIZER.serialize(
+                IndexedBlockStore.BLOCK_INFO_SERIALIZER.deserialize(indexDS.get(ByteUtil.intToBytes(0)))));
+        blockStore.load();
+        assertNotEquals(IndexedBlockStore.INDEX_FORMAT_VERSION, indexDS.get(ByteUtil.intToBytes(0))[0]);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db.migrate;
+
+import org.ethereum.core.Block;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionInfo;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.crypto.ECKey;
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.ethereum.db.BlockStore;
+import org.ethereum.db.TransactionStore;
+import org.ethereum.util.RLP;
+import org.ethereum.util.blockchain.StandaloneBlockchain;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.*;
+
+public class MigrateTransactionStoreTest {
+
+    @Test
+    public void testMigrateLegacyReceipts() {
+        StandaloneBlockchain bc = new StandaloneBlockchain();
+        TransactionStore bcStore = new TransactionStore(new HashMapDB<>());
+        bc.getBlockchain().withTransactionStore(bcStore);
+
+        List<Block> blocks = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < i; j++) {
+                bc.sendEther(new ECKey().getAddress(), BigInteger.valueOf(1000 + j));
+            }
+            blocks.add(bc.createBlock());
+        }
+
+        // the same receipts in the legacy format
+        HashMapDB<byte[]> legacyDb = new HashMapDB<>();
+        for (Block block : blocks) {
+            List<TransactionReceipt> receipts = bcStore.getBlockReceipts(block.getHash());
+            for (int i = 0; i < receipts.size(); i++) {
+                TransactionInfo info = new TransactionInfo(receipts.get(i), block.getHash(), i);
+                legacyDb.put(block.getTransactionsList().get(i).getHash(), RLP.encodeList(info.getEncoded()));
+            }
+        }
+
+        // the transaction is also included into a fork block
+        Block block = blocks.get(4);
+        Transaction tx = block.getTransactionsList().get(2);
+        byte[] forkHash = sha3(block.getHash());
+        TransactionInfo forkInfo = new TransactionInfo(bcStore.getBlockReceipts(block.getHash()).get(2), forkHash, 0);
+        legacyDb.put(tx.getHash(), RLP.encodeList(new TransactionInfo(bcStore.getBlockReceipts(block.getHash()).get(2),
+                block.getHash(), 2).getEncoded(), forkInfo.getEncoded()));
+
+        TransactionStore txStore = new TransactionStore(legacyDb);
+        assertNull(txStore.getBlockReceipts(block.getHash()));
+        assertEquals(2, txStore.get(tx.getHash()).get(0).getIndex());
+        assertEquals(-1, txStore.getMigratedBlock());
+
+        BlockStore blockStore = bc.getBlockchain().getBlockStore();
+        new MigrateTransactionStore(txStore, blockStore).run();
+
+        assertEquals(Long.MAX_VALUE, txStore.getMigratedBlock());
+        for (Block b : blocks) {
+            List<TransactionReceipt> expected = bcStore.getBlockReceipts(b.getHash());
+            List<TransactionReceipt> migrated = txStore.getBlockReceipts(b.getHash());
+            if (b.getTransactionsList().isEmpty()) {
+                assertNull(migrated);
+                continue;
+            }
+            assertEquals(expected.size(), migrated.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertArrayEquals(expected.get(i).getEncoded(), migrated.get(i).getEncoded());
+                Transaction blockTx = b.getTransactionsList().get(i);
+                if (blockTx != tx) assertNull(txStore.getLegacy(blockTx.getHash()));
+                TransactionInfo info = txStore.get(blockTx.getHash(), b.getHash());
+                assertEquals(i, info.getIndex());
+            }
+        }
+
+        // the fork block entry is kept in the legacy format
+        assertEquals(1, txStore.getLegacy(tx.getHash()).size());
+        assertEquals(0, txStore.get(tx.getHash(), forkHash).getIndex());
+        assertEquals(2, txStore.get(tx.getHash()).size());
+
+        // the migration is done once
+        Block b6 = bc.createBlock();
+        new MigrateTransactionStore(txStore, blockStore).run();
+        assertNull(txStore.getBlockReceipts(b6.getHash()));
+    }
+}
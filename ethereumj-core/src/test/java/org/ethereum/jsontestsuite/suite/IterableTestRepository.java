@@ -178,6 +178,12 @@ public class IterableTestRepository implements Repository {
         return src.addBalance(addr, value);
     }
 
+    @Override
+    public boolean addCoinbaseFee(byte[] coinbase, BigInteger fee) {
+        addAccount(coinbase);
+        return src.addCoinbaseFee(coinbase, fee);
+    }
+
     @Override
     public Set<byte[]> getAccountsKeys() {
         Set<byte[]> ret = new ByteArraySet();
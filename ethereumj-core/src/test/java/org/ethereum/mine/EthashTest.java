@@ -22,15 +22,20 @@ import org.ethereum.TestUtils;
 import org.ethereum.config.SystemProperties;
 import org.ethereum.core.Block;
 import org.ethereum.util.ByteUtil;
+import org.ethereum.util.FileUtil;
 import org.ethereum.util.FastByteComparisons;
 import org.ethereum.util.blockchain.StandaloneBlockchain;
 import org.junit.*;
 import org.spongycastle.util.encoders.Hex;
 
+import java.io.File;
+import java.nio.file.Files;
 import java.util.List;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.ethereum.crypto.HashUtil.sha3;
 import static org.ethereum.util.ByteUtil.*;
@@ -139,6 +144,51 @@ public class EthashTest {
         System.out.println(Hex.toHexString(pair.getRight()));
     }
 
+    @Test
+    public void mappedDatasetTest() throws Exception {
+        EthashAlgo ethash = new EthashAlgo();
+        byte[] seed = "~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~".getBytes();
+        long cacheSize = 1024;
+        long fullSize = 1024 * 32;
+        int[] cache = ethash.makeCache(cacheSize, seed);
+        int[] full = ethash.calcDataset(fullSize, cache);
+
+        File dir = Files.createTempDirectory("ethash").toFile();
+        try {
+            File cacheFile = new File(dir, "mine-dag-light.dat");
+            EthashDataset mappedCache = EthashDataset.create(cacheFile, 30000, cacheSize);
+            mappedCache.put(0, cache);
+            mappedCache.commit();
+            assertArrayEquals(cache, mappedCache.toIntArray());
+
+            File fullFile = new File(dir, "mine-dag.dat");
+            EthashDataset mappedFull = EthashDataset.create(fullFile, 30000, fullSize);
+            AtomicLong progress = new AtomicLong();
+            ethash.calcDataset(cache, mappedFull, new ForkJoinPool(4), done -> progress.accumulateAndGet(done, Math::max));
+            Assert.assertEquals(mappedFull.getItemsCount(), progress.get());
+            mappedFull.commit();
+            assertArrayEquals(full, mappedFull.toIntArray());
+
+            Assert.assertNull(EthashDataset.open(fullFile, 60000, fullSize));
+            Assert.assertNull(EthashDataset.open(fullFile, 30000, fullSize * 2));
+            mappedFull = EthashDataset.open(fullFile, 30000, fullSize);
+            assertArrayEquals(full, mappedFull.toIntArray());
+
+            byte[] blockHash = "~~~X~~~~~~~~~~~~~~~~~~~~~~~~~~~~".getBytes();
+            for (long nonce = 0; nonce < 16; nonce++) {
+                Pair<byte[], byte[]> expected = ethash.hashimotoLight(fullSize, cache, blockHash, longToBytes(nonce));
+                Pair<byte[], byte[]> light = ethash.hashimotoLight(fullSize, mappedCache, blockHash, longToBytes(nonce));
+                Pair<byte[], byte[]> fullPair = ethash.hashimotoFull(fullSize, mappedFull, blockHash, longToBytes(nonce));
+                assertArrayEquals(expected.getLeft(), light.getLeft());
+                assertArrayEquals(expected.getRight(), light.getRight());
+                assertArrayEquals(expected.getLeft(), fullPair.getLeft());
+                assertArrayEquals(expected.getRight(), fullPair.getRight());
+            }
+        } finally {
+            FileUtil.recursiveDelete(dir.getAbsolutePath());
+        }
+    }
+
     @Test
     public void realBlockValidateTest1() {
         byte[] rlp = Hex.decode("f9021af90215a0809870664d9a43cf1827aa515de6374e2fad1bf64290a9f261dd49c525d6a0efa01dcc4de8dec75d7aab85b567b6ccd41ad312451b948a7413f0a142fd40d4934794f927a40c8b7f6e07c5af7fa2155b4864a4112b13a010c8ec4f62ecea600c616443bcf527d97e5b1c5bb4a9769c496d1bf32636c95da056e81f171bcc55a6ff8345e692c0f86e5b48e01b996cadc001622fb5e363b421a056e81f171bcc55a6ff8345e692c0f86e5b48e01b996cadc001622fb5e363b421b901000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000086015a1c28ae5e82bf958302472c808455c4e47b99476574682f76312e302e312f6c696e75782f676f312e342e32a0788ac534cb2f6a226a01535e29b11a96602d447aed972463b5cbcc7dd5d633f288e2ff1b6435006517c0c0");
@@ -301,6 +351,23 @@ public class EthashTest {
         System.out.println("Calculated in " + (System.currentTimeMillis() - s) / 1000 + " sec");
     }
 
+    @Test
+    @Ignore
+    public void datasetGenerationSpeed() {
+        EthashAlgo ethashAlgo = new EthashAlgo();
+        int[] cache = ethashAlgo.makeCache(16_000_000, ethashAlgo.getSeedHash(0));
+        EthashDataset dataset = EthashDataset.allocate(128 * 1024 * 1024);
+        for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads <<= 1) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long s = System.nanoTime();
+            ethashAlgo.calcDataset(cache, dataset, pool, done -> {});
+            long t = System.nanoTime() - s;
+            pool.shutdown();
+            System.out.println("Threads: " + threads + ", speed: " +
+                    (long) (dataset.getItemsCount() / (t / 1_000_000_000d)) + " items/sec");
+        }
+    }
+
     @Test
     @Ignore
     public void fullDagMineTime() throws ExecutionException, InterruptedException {
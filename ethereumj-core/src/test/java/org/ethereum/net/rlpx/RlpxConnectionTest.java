@@ -18,13 +18,22 @@
 package org.ethereum.net.rlpx;
 
 import com.google.common.collect.Lists;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
 import org.ethereum.crypto.ECKey;
 import org.ethereum.net.client.Capability;
+import org.ethereum.net.rlpx.discover.NodeStatistics;
+import org.ethereum.net.server.Channel;
 import org.junit.Before;
+import org.junit.Ignore;
 import org.junit.Test;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.security.SecureRandom;
+import java.util.Arrays;
 
 import static org.junit.Assert.*;
 
@@ -106,4 +115,89 @@ public class RlpxConnectionTest {
         assertNotNull(receivedMessage);
         assertArrayEquals(iMessage.nodeId, receivedMessage.nodeId);
     }
+
+    @Test
+    public void testFrameByteBuf() throws Exception {
+        byte[] payload = new byte[1000];
+        new SecureRandom().nextBytes(payload);
+
+        FrameCodec.Frame chunk = new FrameCodec.Frame(0x1234, payload);
+        chunk.contextId = 300;
+        chunk.totalFrameSize = 70000;
+
+        // direct buffer makes codec fall back to a heap one
+        ByteBuf wire = Unpooled.directBuffer();
+        iCodec.writeFrame(chunk, wire);
+        iCodec.writeFrame(new FrameCodec.Frame(0x10, new byte[0]), wire);
+        iCodec.writeFrame(new FrameCodec.Frame(0x11, Unpooled.wrappedBuffer(payload, 10, 17)), wire);
+
+        // frame is not consumed until fully available
+        ByteBuf in = Unpooled.buffer();
+        in.writeBytes(wire, 20);
+        assertNull(rCodec.readFrames(in));
+        in.writeBytes(wire, 100);
+        assertNull(rCodec.readFrames(in));
+        in.writeBytes(wire);
+
+        FrameCodec.Frame frame1 = rCodec.readFrames(in).get(0);
+        assertEquals(0x1234, frame1.getType());
+        assertEquals(300, frame1.contextId);
+        assertEquals(70000, frame1.totalFrameSize);
+        assertArrayEquals(payload, frame1.getPayloadBytes());
+
+        FrameCodec.Frame frame2 = rCodec.readFrames(in).get(0);
+        assertEquals(0x10, frame2.getType());
+        assertEquals(0, frame2.getSize());
+        assertEquals(-1, frame2.contextId);
+
+        FrameCodec.Frame frame3 = rCodec.readFrames(in).get(0);
+        assertEquals(0x11, frame3.getType());
+        assertArrayEquals(Arrays.copyOfRange(payload, 10, 27), frame3.getPayloadBytes());
+        assertEquals(0, in.readableBytes());
+        assertNull(rCodec.readFrames(in));
+    }
+
+    @Ignore
+    @Test
+    public void testLoopbackPerformance() throws Exception {
+        // mocks record every invocation and would blur allocation numbers
+        NodeStatistics stats = new NodeStatistics(new Node(new byte[0], "", 0));
+        Channel channel = new Channel() {
+            @Override
+            public NodeStatistics getNodeStatistics() {
+                return stats;
+            }
+        };
+
+        EmbeddedChannel iChannel = new EmbeddedChannel(new FrameCodecHandler(iCodec, channel));
+        EmbeddedChannel rChannel = new EmbeddedChannel(new FrameCodecHandler(rCodec, channel));
+        iChannel.config().setAllocator(PooledByteBufAllocator.DEFAULT);
+        rChannel.config().setAllocator(PooledByteBufAllocator.DEFAULT);
+
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        for (int size : new int[] {100, 1024, 16 * 1024, 256 * 1024}) {
+            byte[] payload = new byte[size];
+            new SecureRandom().nextBytes(payload);
+            int frames = (int) Math.max(1000, 64L * 1024 * 1024 / size);
+
+            for (int round = 0; round < 3; round++) {
+                long allocated = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+                long s = System.nanoTime();
+                for (int i = 0; i < frames; i++) {
+                    iChannel.writeOutbound(new FrameCodec.Frame(0x10, payload));
+                    ByteBuf wire = (ByteBuf) iChannel.readOutbound();
+                    rChannel.writeInbound(wire);
+                    FrameCodec.Frame frame = (FrameCodec.Frame) rChannel.readInbound();
+                    assertEquals(size, frame.getSize());
+                }
+                long time = System.nanoTime() - s;
+                allocated = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+
+                System.out.printf("Frame size %7d: %8.1f MB/s, %8d bytes allocated per frame%n", size,
+                        (double) size * frames / (1 << 20) / (time / 1_000_000_000d), allocated / frames);
+            }
+        }
+    }
 }
@@ -20,8 +20,11 @@
 
 package org.ethereum.net.rlpx;
 
+import org.ethereum.net.eth.message.BroadcastMessage;
+import org.ethereum.net.eth.message.StatusMessage;
 import org.ethereum.net.rlpx.discover.NodeStatistics;
 import org.ethereum.net.server.Channel;
+import org.ethereum.net.server.WireTrafficStats;
 import org.junit.Test;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -77,6 +80,39 @@ public class SnappyCodecTest {
         assertTrue(stats.contains(BAD_PROTOCOL.toString()));
     }
 
+    @Test
+    public void testSharedFrameCompressedOnce() throws Exception {
+        byte[] hash = new byte[32];
+        BroadcastMessage msg = new BroadcastMessage(new StatusMessage((byte) 63, 1, new byte[]{1}, hash, hash),
+                new WireTrafficStats.BroadcastStats());
+        byte[] encoded = msg.getEncoded();
+
+        List<Object> compressed = newArrayList();
+        for (int i = 0; i < 3; i++) {
+            FrameCodec.SharedFrame frame = FrameCodec.SharedFrame.encoded(0x10, msg);
+            new SnappyCodec(new Channel()).encode(null, frame, compressed);
+            frame.release();
+        }
+        assertEquals(3, compressed.size());
+        assertEquals(4, msg.refCnt());
+
+        for (Object o : compressed) {
+            FrameCodec.SharedFrame frame = (FrameCodec.SharedFrame) o;
+            List<Object> result = newArrayList();
+            new SnappyCodec(new Channel()).decode(null, frame, result);
+            FrameCodec.Frame decoded = (FrameCodec.Frame) result.get(0);
+            byte[] payload = new byte[decoded.getSize()];
+            decoded.getStream().read(payload);
+            assertArrayEquals(encoded, payload);
+            assertEquals(0x10, decoded.getType());
+            frame.release();
+        }
+
+        assertEquals(1, msg.refCnt());
+        assertTrue(msg.release());
+        assertEquals(0, msg.refCnt());
+    }
+
     private void snappyDecode(byte[] payload, Channel channel) throws Exception {
         SnappyCodec codec = new SnappyCodec(channel);
 
@@ -1170,6 +1170,54 @@ public class TrieTest {
         }
     }
 
+    @Test
+    public void testParallelHashing() {
+        Random rnd = new Random(0);
+        HashMapDB<byte[]> db1 = new HashMapDB<>();
+        HashMapDB<byte[]> db2 = new HashMapDB<>();
+        TrieImpl seq = new TrieImpl(db1);
+        seq.setAsync(false);
+        TrieImpl par = new TrieImpl(db2);
+
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 5000; i++) {
+                byte[] key = sha3(intToBytes(rnd.nextInt(20_000)));
+                if (rnd.nextInt(5) == 0) {
+                    seq.delete(key);
+                    par.delete(key);
+                } else {
+                    byte[] value = new byte[1 + rnd.nextInt(64)];
+                    rnd.nextBytes(value);
+                    seq.put(key, value);
+                    par.put(key, value);
+                }
+            }
+            assertArrayEquals(seq.getRootHash(), par.getRootHash());
+            seq.flush();
+            par.flush();
+            assertEquals(db1.keys().size(), db2.keys().size());
+        }
+
+        // a number of tries flushed at once
+        List<TrieImpl> tries = new ArrayList<>();
+        List<byte[]> roots = new ArrayList<>();
+        for (int t = 0; t < 20; t++) {
+            TrieImpl expected = new TrieImpl();
+            expected.setAsync(false);
+            TrieImpl trie = new TrieImpl();
+            for (int i = 0; i < t * 50; i++) {
+                expected.put(intToBytes(t * 1000 + i), intToBytes(i));
+                trie.put(intToBytes(t * 1000 + i), intToBytes(i));
+            }
+            tries.add(trie);
+            roots.add(expected.getRootHash());
+        }
+        TrieImpl.flushAll(tries);
+        for (int t = 0; t < tries.size(); t++) {
+            assertArrayEquals(roots.get(t), tries.get(t).getRootHash());
+        }
+    }
+
     @Ignore
     @Test
     public void perfTestRoot() {
@@ -26,6 +26,8 @@ import org.ethereum.db.ByteArrayWrapper;
 import org.ethereum.net.client.Capability;
 import org.ethereum.net.p2p.HelloMessage;
 import org.ethereum.net.swarm.Util;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -1803,4 +1805,166 @@ public class RLPTest {
         assertArrayEquals(shortItemData, decoded.get(7).getRLPData());
         assertArrayEquals(longItemData, decoded.get(8).getRLPData());
     }
+
+    @Test
+    public void testReaderMatchesDecode2() {
+        Random rnd = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            byte[] encoded = randomRlp(rnd, 0);
+            if (!((RLPElement) RLP.decode2(encoded).get(0) instanceof RLPList)) continue;
+
+            RLPList expected = (RLPList) RLP.decode2(encoded).get(0);
+            assertReaderEquals(expected, RLPReader.readList(encoded));
+            assertReaderEquals(expected, RLPReader.of(Unpooled.wrappedBuffer(encoded)).readList());
+            ByteBuf direct = Unpooled.directBuffer(encoded.length);
+            direct.writeBytes(encoded);
+            assertReaderEquals(expected, RLPReader.of(direct).readList());
+        }
+    }
+
+    private static byte[] randomRlp(Random rnd, int depth) {
+        if (depth < 3 && rnd.nextInt(3) == 0) {
+            byte[][] elements = new byte[rnd.nextInt(8)][];
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = randomRlp(rnd, depth + 1);
+            }
+            return RLP.encodeList(elements);
+        } else {
+            byte[] item = new byte[rnd.nextInt(4) == 0 ? rnd.nextInt(100) : rnd.nextInt(3)];
+            rnd.nextBytes(item);
+            return RLP.encodeElement(item);
+        }
+    }
+
+    private static void assertReaderEquals(RLPList expected, RLPReader reader) {
+        assertEquals(expected.size(), reader.count());
+        for (RLPElement element : expected) {
+            assertTrue(reader.hasNext());
+            if (element instanceof RLPList) {
+                assertTrue(reader.isList());
+                byte[] encoded = reader.getData();
+                assertArrayEquals(element.getRLPData(), Arrays.copyOfRange(encoded,
+                        reader.encodedOffset(), reader.encodedOffset() + reader.encodedLength()));
+                assertReaderEquals((RLPList) element, reader.readList());
+            } else {
+                assertFalse(reader.isList());
+                assertArrayEquals(element.getRLPData(), reader.readItem());
+            }
+        }
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void testReaderPrimitives() {
+        byte[] encoded = RLP.encodeList(RLP.encodeElement(new byte[0]), RLP.encodeInt(0x7f),
+                RLP.encodeBigInteger(BigInteger.valueOf(1_000_000_000_000L)), RLP.encodeElement(new byte[0]));
+        RLPReader reader = RLPReader.readList(encoded);
+        assertEquals(0, reader.readLong());
+        assertEquals(0x7f, reader.readLong());
+        assertEquals(BigInteger.valueOf(1_000_000_000_000L), reader.readBigInteger());
+        assertArrayEquals(ByteUtil.EMPTY_BYTE_ARRAY, reader.readItemOrEmpty());
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void testReaderInvalidEncoding() {
+        String[] invalid = {
+                "c4820102",             // list length exceeds data
+                "c28101",               // single byte encoded as byte string
+                "c3b80101",             // short item encoded as long item
+                "f80101",               // short list encoded as long list
+                "c4b9000101",           // length with leading zeros
+                "c2c3",                 // nested list length exceeds outer list
+        };
+        for (String hex : invalid) {
+            try {
+                RLPReader reader = RLPReader.readList(Hex.decode(hex));
+                while (reader.hasNext()) {
+                    if (reader.isList()) {
+                        reader.readList().count();
+                    } else {
+                        reader.readItem();
+                    }
+                }
+                fail("Should fail on " + hex);
+            } catch (RuntimeException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testWriterMatchesEncode() {
+        Random rnd = new Random(2);
+        for (int i = 0; i < 200; i++) {
+            byte[] expected = randomRlp(rnd, 0);
+            RLPElement decoded = RLP.decode2(expected).get(0);
+            assertArrayEquals(expected, RLPWriter.encode(w -> writeElement(w, decoded)));
+            assertEquals(expected.length, RLPWriter.sizeOf(w -> writeElement(w, decoded)));
+
+            ByteBuf heap = Unpooled.buffer(1);
+            heap.writeByte(0xff);
+            RLPWriter.encode(w -> writeElement(w, decoded), heap);
+            assertEquals(expected.length + 1, heap.readableBytes());
+            assertArrayEquals(expected, Arrays.copyOfRange(heap.array(), 1, heap.writerIndex()));
+
+            ByteBuf direct = Unpooled.directBuffer(1);
+            RLPWriter.encode(w -> writeElement(w, decoded), direct);
+            byte[] bytes = new byte[direct.readableBytes()];
+            direct.readBytes(bytes);
+            assertArrayEquals(expected, bytes);
+        }
+    }
+
+    private static void writeElement(RLPWriter writer, RLPElement element) {
+        if (element instanceof RLPList) {
+            writer.startList();
+            for (RLPElement child : (RLPList) element) {
+                writeElement(writer, child);
+            }
+            writer.endList();
+        } else {
+            writer.writeItem(element.getRLPData());
+        }
+    }
+
+    @Test
+    public void testWriterPrimitives() {
+        int[] ints = {0, 1, 0x7f, 0x80, 0xff, 0x100, 0xffff, 0x10000, 0xffffff, 0x1000000, Integer.MAX_VALUE, -1};
+        for (int i : ints) {
+            assertArrayEquals(RLP.encodeInt(i), RLPWriter.encode(w -> w.writeInt(i)));
+        }
+        long[] longs = {0, 1, 0x7f, 0x80, 1_000_000_000_000L, Long.MAX_VALUE};
+        for (long l : longs) {
+            assertArrayEquals(RLP.encodeBigInteger(BigInteger.valueOf(l)), RLPWriter.encode(w -> w.writeLong(l)));
+        }
+        BigInteger[] bigs = {BigInteger.ZERO, BigInteger.ONE, BigInteger.valueOf(0x80),
+                BigInteger.ONE.shiftLeft(63), BigInteger.ONE.shiftLeft(256).subtract(BigInteger.ONE)};
+        for (BigInteger b : bigs) {
+            assertArrayEquals(RLP.encodeBigInteger(b), RLPWriter.encode(w -> w.writeBigInteger(b)));
+        }
+        byte[][] items = {null, new byte[0], {0}, {0x7f}, {(byte) 0x80}, new byte[55], new byte[56], new byte[1024]};
+        for (byte[] item : items) {
+            assertArrayEquals(RLP.encodeElement(item), RLPWriter.encode(w -> w.writeItem(item)));
+        }
+        byte[] longList = new byte[60];
+        assertArrayEquals(RLP.encodeList(RLP.encodeElement(longList), RLP.encodeList()),
+                RLPWriter.encode(w -> w.startList().writeItem(longList).startList().endList().endList()));
+    }
+
+    @Test
+    public void testWriterUnbalancedLists() {
+        try {
+            RLPWriter.encode(w -> w.startList());
+            fail("List is not ended");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            RLPWriter.encode(w -> w.endList());
+            fail("No list to end");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
 }
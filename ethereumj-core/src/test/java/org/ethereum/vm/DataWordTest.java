@@ -17,11 +17,15 @@
  */
 package org.ethereum.vm;
 
+import org.ethereum.util.ByteUtil;
 import org.junit.Test;
 
 import org.spongycastle.util.encoders.Hex;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -410,6 +414,190 @@ public class DataWordTest {
         assertTrue(actual.isZero());
     }
 
+    @Test
+    public void testArithmeticMatchesBigInteger() {
+        Random rnd = new Random(42);
+        List<DataWord> words = new ArrayList<>();
+        for (String hex : new String[] {"00", "01", "02", "ff", "0100",
+                "ffffffffffffffff", "010000000000000000", "ffffffffffffffffffffffffffffffff",
+                "8000000000000000000000000000000000000000000000000000000000000000",
+                "7fffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff",
+                "ffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff",
+                "fffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffe"}) {
+            words.add(DataWord.of(hex));
+        }
+        for (int i = 0; i < 200; i++) {
+            // random lengths to get both short and full width numbers
+            byte[] bytes = new byte[1 + rnd.nextInt(32)];
+            rnd.nextBytes(bytes);
+            words.add(DataWord.of(bytes));
+        }
+
+        for (int i = 0; i < 20000; i++) {
+            DataWord a = words.get(rnd.nextInt(words.size()));
+            DataWord b = words.get(rnd.nextInt(words.size()));
+            DataWord c = words.get(rnd.nextInt(words.size()));
+
+            assertEquals(refAdd(a, b), a.add(b));
+            assertEquals(refSub(a, b), a.sub(b));
+            assertEquals(refMul(a, b), a.mul(b));
+            assertEquals(refDiv(a, b), a.div(b));
+            assertEquals(refSDiv(a, b), a.sDiv(b));
+            assertEquals(refMod(a, b), a.mod(b));
+            assertEquals(refSMod(a, b), a.sMod(b));
+            assertEquals(refAddMod(a, b, c), a.addmod(b, c));
+            assertEquals(refMulMod(a, b, c), a.mulmod(b, c));
+            assertEquals(refBNot(a), a.bnot());
+            assertEquals(Integer.signum(a.value().compareTo(b.value())), a.compareTo(b));
+            assertEquals(Integer.signum(a.sValue().compareTo(b.sValue())), a.sCompareTo(b));
+
+            DataWord shift = DataWord.of(rnd.nextInt(300));
+            assertEquals(refShiftLeft(a, shift), a.shiftLeft(shift));
+            assertEquals(refShiftRight(a, shift), a.shiftRight(shift));
+            assertEquals(refShiftRightSigned(a, shift), a.shiftRightSigned(shift));
+
+            byte k = (byte) rnd.nextInt(32);
+            assertEquals(refSignExtend(a, k), a.signExtend(k));
+
+            if (i % 10 == 0) {
+                assertEquals(refExp(a, b), a.exp(b));
+            }
+        }
+    }
+
+    @Test
+    public void testArithmeticPerformance() {
+        boolean enabled = false;
+
+        if (enabled) {
+            Random rnd = new Random(1);
+            DataWord[] words = new DataWord[1024];
+            for (int i = 0; i < words.length; i++) {
+                byte[] bytes = new byte[i % 2 == 0 ? 32 : 8];
+                rnd.nextBytes(bytes);
+                words[i] = DataWord.of(bytes);
+            }
+
+            int ITERATIONS = 3000000;
+            String[] ops = {"ADD", "SUB", "MUL", "DIV", "SDIV", "MOD", "ADDMOD", "MULMOD", "EXP"};
+
+            for (int round = 0; round < 3; round++) {
+                for (String op : ops) {
+                    int iterations = "EXP".equals(op) ? ITERATIONS / 30 : ITERATIONS;
+
+                    long now1 = System.nanoTime();
+                    for (int i = 0; i < iterations; i++) {
+                        DataWord a = words[i & 1023], b = words[(i * 7 + 1) & 1023], c = words[(i * 13 + 3) & 1023];
+                        runOp(op, a, b, c, false);
+                    }
+                    long limbs = System.nanoTime() - now1;
+
+                    long now2 = System.nanoTime();
+                    for (int i = 0; i < iterations; i++) {
+                        DataWord a = words[i & 1023], b = words[(i * 7 + 1) & 1023], c = words[(i * 13 + 3) & 1023];
+                        runOp(op, a, b, c, true);
+                    }
+                    long bigInt = System.nanoTime() - now2;
+
+                    System.out.printf("%-7s limbs: %6d ns/op, BigInteger: %6d ns/op%n", op,
+                            limbs / iterations, bigInt / iterations);
+                }
+            }
+        } else {
+            System.out.println("Arithmetic performance test is disabled.");
+        }
+    }
+
+    private static DataWord runOp(String op, DataWord a, DataWord b, DataWord c, boolean reference) {
+        switch (op) {
+            case "ADD":     return reference ? refAdd(a, b) : a.add(b);
+            case "SUB":     return reference ? refSub(a, b) : a.sub(b);
+            case "MUL":     return reference ? refMul(a, b) : a.mul(b);
+            case "DIV":     return reference ? refDiv(a, b) : a.div(b);
+            case "SDIV":    return reference ? refSDiv(a, b) : a.sDiv(b);
+            case "MOD":     return reference ? refMod(a, b) : a.mod(b);
+            case "ADDMOD":  return reference ? refAddMod(a, b, c) : a.addmod(b, c);
+            case "MULMOD":  return reference ? refMulMod(a, b, c) : a.mulmod(b, c);
+            case "EXP":     return reference ? refExp(a, b) : a.exp(b);
+            default: throw new IllegalArgumentException(op);
+        }
+    }
+
+    // BigInteger based reference implementations the limb arithmetic is checked against
+
+    private static DataWord ref(BigInteger value) {
+        return DataWord.of(ByteUtil.copyToArray(value.and(DataWord.MAX_VALUE)));
+    }
+
+    private static DataWord refAdd(DataWord a, DataWord b) {
+        return ref(a.value().add(b.value()));
+    }
+
+    private static DataWord refSub(DataWord a, DataWord b) {
+        return ref(a.value().subtract(b.value()));
+    }
+
+    private static DataWord refMul(DataWord a, DataWord b) {
+        return ref(a.value().multiply(b.value()));
+    }
+
+    private static DataWord refDiv(DataWord a, DataWord b) {
+        return b.isZero() ? DataWord.ZERO : ref(a.value().divide(b.value()));
+    }
+
+    private static DataWord refSDiv(DataWord a, DataWord b) {
+        return b.isZero() ? DataWord.ZERO : ref(a.sValue().divide(b.sValue()));
+    }
+
+    private static DataWord refMod(DataWord a, DataWord b) {
+        return b.isZero() ? DataWord.ZERO : ref(a.value().mod(b.value()));
+    }
+
+    private static DataWord refSMod(DataWord a, DataWord b) {
+        if (b.isZero()) return DataWord.ZERO;
+        BigInteger result = a.sValue().abs().mod(b.sValue().abs());
+        return ref(a.sValue().signum() == -1 ? result.negate() : result);
+    }
+
+    private static DataWord refAddMod(DataWord a, DataWord b, DataWord m) {
+        return m.isZero() ? DataWord.ZERO : ref(a.value().add(b.value()).mod(m.value()));
+    }
+
+    private static DataWord refMulMod(DataWord a, DataWord b, DataWord m) {
+        return m.isZero() ? DataWord.ZERO : ref(a.value().multiply(b.value()).mod(m.value()));
+    }
+
+    private static DataWord refExp(DataWord a, DataWord b) {
+        return ref(a.value().modPow(b.value(), DataWord._2_256));
+    }
+
+    private static DataWord refBNot(DataWord a) {
+        return ref(DataWord.MAX_VALUE.subtract(a.value()));
+    }
+
+    private static DataWord refShiftLeft(DataWord a, DataWord shift) {
+        if (shift.value().compareTo(BigInteger.valueOf(DataWord.MAX_POW)) >= 0) return DataWord.ZERO;
+        return ref(a.value().shiftLeft(shift.intValueSafe()));
+    }
+
+    private static DataWord refShiftRight(DataWord a, DataWord shift) {
+        if (shift.value().compareTo(BigInteger.valueOf(DataWord.MAX_POW)) >= 0) return DataWord.ZERO;
+        return ref(a.value().shiftRight(shift.intValueSafe()));
+    }
+
+    private static DataWord refShiftRightSigned(DataWord a, DataWord shift) {
+        if (shift.value().compareTo(BigInteger.valueOf(DataWord.MAX_POW)) >= 0) {
+            return a.isNegative() ? ref(BigInteger.ONE.negate()) : DataWord.ZERO;
+        }
+        return ref(a.sValue().shiftRight(shift.intValueSafe()));
+    }
+
+    private static DataWord refSignExtend(DataWord a, byte k) {
+        BigInteger mask = BigInteger.ONE.shiftLeft(k * 8 + 8).subtract(BigInteger.ONE);
+        BigInteger low = a.value().and(mask);
+        return ref(a.value().testBit(k * 8 + 7) ? low.or(DataWord.MAX_VALUE.xor(mask)) : low);
+    }
+
     public static BigInteger pow(BigInteger x, BigInteger y) {
         if (y.compareTo(BigInteger.ZERO) < 0)
             throw new IllegalArgumentException();
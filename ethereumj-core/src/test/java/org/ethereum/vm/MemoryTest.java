@@ -21,6 +21,7 @@ import org.ethereum.vm.program.Memory;
 import org.junit.Test;
 import org.spongycastle.util.encoders.Hex;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import static java.lang.Math.ceil;
@@ -528,6 +529,47 @@ public class MemoryTest {
         assertTrue(zero == 10);
     }
 
+    @Test
+    public void readBuffer() {
+
+        Memory memoryBuffer = new Memory();
+        byte[] data = new byte[3000];
+        for (int i = 0; i < data.length; ++i) data[i] = (byte) i;
+        memoryBuffer.write(0, data, data.length, false);
 
+        ByteBuffer buffer = memoryBuffer.readBuffer(1000, 1500);
+        assertEquals(1500, buffer.remaining());
+        for (int i = 0; i < 1500; ++i) {
+            assertEquals(data[1000 + i], buffer.get(i));
+        }
+
+        // view reflects subsequent writes
+        memoryBuffer.write(1000, new byte[] {-1}, 1, false);
+        assertEquals(-1, buffer.get(0));
+
+        // reading past the end extends memory
+        buffer = memoryBuffer.readBuffer(3000, 100);
+        assertEquals(100, buffer.remaining());
+        assertEquals(3104, memoryBuffer.size());
+        assertEquals(0, memoryBuffer.readBuffer(0, 0).remaining());
+    }
 
-}
\ No newline at end of file
+    @Test
+    public void extendGrowsCapacity() {
+
+        Memory memoryBuffer = new Memory();
+        byte[] word = new byte[WORD_SIZE];
+        for (int i = 0; i < 64 * CHUNK_SIZE; i += WORD_SIZE) {
+            Arrays.fill(word, (byte) (i / WORD_SIZE));
+            memoryBuffer.write(i, word, word.length, false);
+        }
+
+        assertEquals(64 * CHUNK_SIZE, memoryBuffer.size());
+        assertEquals(64 * CHUNK_SIZE, memoryBuffer.internalSize());
+        assertEquals(64, memoryBuffer.getChunks().size());
+        for (int i = 0; i < 64 * CHUNK_SIZE; i += WORD_SIZE) {
+            Arrays.fill(word, (byte) (i / WORD_SIZE));
+            assertEquals(DataWord.of(word), memoryBuffer.readWord(i));
+        }
+    }
+}
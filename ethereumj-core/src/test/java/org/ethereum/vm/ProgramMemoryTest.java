@@ -25,7 +25,10 @@ import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import org.spongycastle.util.encoders.Hex;
+
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import static org.junit.Assert.*;
 
@@ -348,4 +351,52 @@ public class ProgramMemoryTest {
         program.memorySave(offset, size, new byte[] {0x01});
         assertEquals(0, program.getMemSize());
     }
-}
\ No newline at end of file
+
+    /**
+     * Stores 256Kb of words in a loop then hashes the whole memory
+     */
+    private static final String MEMORY_HEAVY_CODE =
+            "6000" +            // PUSH1 0
+            "5b" +              // JUMPDEST
+            "808052" +          // DUP1 DUP1 MSTORE
+            "602001" +          // PUSH1 32 ADD
+            "8062040000" +      // DUP1 PUSH3 0x40000
+            "11600257" +        // GT PUSH1 2 JUMPI
+            "50" +              // POP
+            "6204000060002050" + // PUSH3 0x40000 PUSH1 0 SHA3 POP
+            "00";               // STOP
+
+    private Program runMemoryHeavy(VM vm) {
+        pi.setGas(10_000_000);
+        Program program = new Program(Hex.decode(MEMORY_HEAVY_CODE), pi);
+        while (!program.isStopped()) {
+            vm.step(program);
+        }
+        return program;
+    }
+
+    @Test
+    public void testMemoryHeavyProgram() {
+        Program program = runMemoryHeavy(new VM());
+        assertNull(program.getResult().getException());
+        assertEquals(0x40000, program.getMemSize());
+
+        byte[] memory = program.getMemory();
+        for (int i = 0; i < memory.length; i += 32) {
+            assertEquals(DataWord.of(i), DataWord.of(Arrays.copyOfRange(memory, i, i + 32)));
+        }
+    }
+
+    @Ignore
+    @Test
+    public void testMemoryHeavyPerformance() {
+        VM vm = new VM();
+        for (int i = 0; i < 10; i++) runMemoryHeavy(vm);
+
+        int runs = 100;
+        long s = System.nanoTime();
+        for (int i = 0; i < runs; i++) runMemoryHeavy(vm);
+        long t = System.nanoTime() - s;
+        System.out.println("Memory heavy program: " + t / runs / 1000 + " us/run");
+    }
+}
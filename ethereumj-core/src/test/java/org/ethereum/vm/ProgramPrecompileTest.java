@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm;
+
+import org.ethereum.vm.program.Program;
+import org.ethereum.vm.program.ProgramPrecompile;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the code analysis cached by {@link ProgramPrecompile} and that
+ * the basic block gas metering used by {@link VM#play(Program)} charges
+ * exactly what the op by op metering does
+ */
+public class ProgramPrecompileTest extends VMBaseOpTest {
+
+    // counts down from 10:
+    // [0] PUSH1 10 [2] JUMPDEST PUSH1 1 SWAP1 SUB DUP1 PUSH1 2 JUMPI [11] STOP
+    private static final String LOOP = "PUSH1 0x0a JUMPDEST PUSH1 0x01 SWAP1 SUB DUP1 PUSH1 0x02 JUMPI STOP";
+
+    @Test
+    public void testCompile() {
+        ProgramPrecompile precompile = ProgramPrecompile.compile(compile(LOOP));
+
+        assertTrue(precompile.hasJumpDest(2));
+        assertFalse(precompile.hasJumpDest(0));
+        assertFalse(precompile.hasJumpDest(-1));
+        assertFalse(precompile.hasJumpDest(100));
+
+        assertEquals(3, precompile.getBlockGas(0));
+        assertEquals(1 + 3 + 3 + 3 + 3 + 3 + 10, precompile.getBlockGas(2));
+        assertEquals(0, precompile.getBlockGas(3));
+        // STOP is not metered as a block
+        assertEquals(0, precompile.getBlockGas(11));
+    }
+
+    @Test
+    public void testPushDataIsNotJumpDest() {
+        // 0x5b here is PUSH1 data, not a JUMPDEST
+        ProgramPrecompile precompile = ProgramPrecompile.compile(compile("PUSH1 0x5b JUMPDEST"));
+
+        assertFalse(precompile.hasJumpDest(1));
+        assertTrue(precompile.hasJumpDest(2));
+    }
+
+    @Test
+    public void testSerialization() {
+        byte[] code = compile(LOOP + " PUSH1 0x00 MLOAD PUSH2 0x1234 GAS JUMPDEST ADD");
+        ProgramPrecompile precompile = ProgramPrecompile.compile(code);
+        ProgramPrecompile decoded = ProgramPrecompile.deserialize(precompile.serialize());
+
+        assertNotNull(decoded);
+        for (int pc = 0; pc < code.length; pc++) {
+            assertEquals(precompile.hasJumpDest(pc), decoded.hasJumpDest(pc));
+            assertEquals(precompile.getBlockGas(pc), decoded.getBlockGas(pc));
+        }
+        assertEquals(precompile.serialize().length, decoded.serialize().length);
+    }
+
+    @Test
+    public void testPushWordMemoized() {
+        byte[] code = compile("PUSH2 0x1234 PUSH1 0x00");
+        ProgramPrecompile precompile = ProgramPrecompile.compile(code);
+
+        DataWord word = precompile.getPushWord(code, 1, 2);
+        assertEquals(DataWord.of(0x1234), word);
+        assertSame(word, precompile.getPushWord(code, 1, 2));
+        assertEquals(DataWord.ZERO, precompile.getPushWord(code, 4, 1));
+    }
+
+    @Test
+    public void testPlayMatchesStep() {
+        byte[] code = compile(LOOP);
+
+        invoke.setGas(1_000_000);
+        Program played = new Program(code, invoke);
+        new VM().play(played);
+
+        Program stepped = new Program(code, invoke);
+        VM vm = new VM();
+        while (!stepped.isStopped()) {
+            vm.step(stepped);
+        }
+
+        assertNull(played.getResult().getException());
+        assertEquals(3 + 10 * 26, played.getResult().getGasUsed());
+        assertEquals(stepped.getResult().getGasUsed(), played.getResult().getGasUsed());
+        assertEquals(stepped.getStack().size(), played.getStack().size());
+        assertEquals(DataWord.ZERO, played.getStack().peek());
+    }
+
+    @Test
+    public void testOutOfGasInsideBlock() {
+        byte[] code = compile(LOOP);
+
+        // runs out in the middle of the third loop body
+        invoke.setGas(3 + 2 * 26 + 10);
+        Program played = new Program(code, invoke);
+        new VM().play(played);
+
+        assertNotNull(played.getResult().getException());
+        assertEquals(3 + 2 * 26 + 10, played.getResult().getGasUsed());
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm;
+
+import org.ethereum.vm.program.Stack;
+import org.ethereum.vm.program.listener.ProgramListenerAdaptor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.EmptyStackException;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StackTest {
+
+    @Test
+    public void testPushPopPeek() {
+        Stack stack = new Stack();
+        assertTrue(stack.isEmpty());
+
+        stack.push(DataWord.of(1));
+        stack.push(DataWord.of(2));
+        stack.push(DataWord.of(3));
+
+        assertEquals(3, stack.size());
+        assertEquals(DataWord.of(3), stack.peek());
+        assertEquals(DataWord.of(1), stack.get(0));
+        assertEquals(DataWord.of(3), stack.pop());
+        assertEquals(DataWord.of(2), stack.pop());
+        assertEquals(1, stack.size());
+    }
+
+    @Test(expected = EmptyStackException.class)
+    public void testPopEmpty() {
+        new Stack().pop();
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testOverflow() {
+        Stack stack = new Stack();
+        for (int i = 0; i <= Stack.MAX_SIZE; i++) {
+            stack.push(DataWord.of(i));
+        }
+    }
+
+    @Test
+    public void testDupSwap() {
+        Stack stack = new Stack();
+        for (int i = 1; i <= 16; i++) {
+            stack.push(DataWord.of(i));
+        }
+
+        stack.dup(16);
+        assertEquals(17, stack.size());
+        assertSame(stack.get(0), stack.peek());
+
+        stack.swap(stack.size() - 1, stack.size() - 2);
+        assertEquals(DataWord.of(16), stack.peek());
+        assertEquals(DataWord.of(1), stack.get(stack.size() - 2));
+
+        // inaccessible positions are ignored
+        stack.swap(stack.size() - 1, stack.size());
+        assertEquals(DataWord.of(16), stack.peek());
+    }
+
+    @Test
+    public void testIterationOrder() {
+        Stack stack = new Stack();
+        stack.push(DataWord.of(1));
+        stack.push(DataWord.of(2));
+
+        List<DataWord> items = new ArrayList<>();
+        for (DataWord item : stack) {
+            items.add(item);
+        }
+
+        assertArrayEquals(new DataWord[] {DataWord.of(1), DataWord.of(2)}, items.toArray());
+        assertArrayEquals(items.toArray(), stack.toArray());
+    }
+
+    @Test
+    public void testListener() {
+        final List<String> events = new ArrayList<>();
+        Stack stack = new Stack();
+        stack.setProgramListener(new ProgramListenerAdaptor() {
+            @Override
+            public void onStackPop() {
+                events.add("pop");
+            }
+
+            @Override
+            public void onStackPush(DataWord value) {
+                events.add("push " + value.intValue());
+            }
+
+            @Override
+            public void onStackSwap(int from, int to) {
+                events.add("swap " + from + " " + to);
+            }
+        });
+
+        stack.push(DataWord.of(1));
+        stack.push(DataWord.of(2));
+        stack.dup(2);
+        stack.swap(2, 0);
+        stack.pop();
+
+        assertEquals("[push 1, push 2, push 1, swap 2 0, pop]", events.toString());
+    }
+
+    @Test
+    public void testStackPerformance() {
+        boolean enabled = false;
+
+        if (enabled) {
+            int ITERATIONS = 20000000;
+            DataWord[] words = new DataWord[16];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = DataWord.of(i);
+            }
+
+            for (int round = 0; round < 3; round++) {
+                // PUSH, DUP4, SWAP2, POP sequence as array backed stack does it
+                Stack stack = new Stack();
+                for (DataWord word : words) stack.push(word);
+                long now1 = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    stack.push(words[i & 15]);
+                    stack.dup(4);
+                    stack.swap(stack.size() - 1, stack.size() - 3);
+                    stack.pop();
+                    stack.pop();
+                }
+                long arrayStack = System.nanoTime() - now1;
+
+                // the same sequence over synchronized java.util.Stack the operand stack used to extend
+                java.util.Stack<DataWord> vector = new java.util.Stack<>();
+                for (DataWord word : words) vector.push(word);
+                long now2 = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    vector.push(words[i & 15]);
+                    vector.push(vector.get(vector.size() - 4));
+                    int from = vector.size() - 1, to = vector.size() - 3;
+                    DataWord tmp = vector.get(from);
+                    vector.set(from, vector.set(to, tmp));
+                    vector.pop();
+                    vector.pop();
+                }
+                long vectorStack = System.nanoTime() - now2;
+
+                System.out.printf("Array stack: %.2f ns/op, java.util.Stack: %.2f ns/op%n",
+                        arrayStack / (ITERATIONS * 5.0), vectorStack / (ITERATIONS * 5.0));
+            }
+        } else {
+            System.out.println("Stack performance test is disabled.");
+        }
+    }
+}